@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2017 WSO2 Inc. (http://wso2.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.wso2.extension.siddhi.gpl.execution.streamingml.benchmark;
+
+import io.siddhi.core.SiddhiAppRuntime;
+import io.siddhi.core.stream.input.InputHandler;
+
+/**
+ * Benchmark of the streamingml:AMRulesRegressor stream processor over a model which is trained
+ * with {@link #NO_OF_TRAINING_EVENTS} events before the measurement starts.
+ */
+public class AMRulesRegressorBenchmark extends AbstractStreamProcessorBenchmark {
+
+    @Override
+    protected String getSiddhiApp() {
+        return "@App:name('AMRulesRegressorBenchmark') "
+                + "define stream TrainStream (" + featureDefinition() + "target double); "
+                + "define stream PredictStream (" + featureDefinition().replaceAll(", $", "") + "); "
+                + "@info(name = 'train') "
+                + "from TrainStream#streamingml:updateAMRulesRegressor('model', " + featureList() + ", target) "
+                + "select meanSquaredError insert into TrainOutputStream; "
+                + "@info(name = 'predict') "
+                + "from PredictStream#streamingml:AMRulesRegressor('model', " + featureList() + ") "
+                + "select prediction, meanSquaredError insert into OutputStream;";
+    }
+
+    @Override
+    protected void prepare(SiddhiAppRuntime siddhiAppRuntime) throws InterruptedException {
+        InputHandler trainHandler = siddhiAppRuntime.getInputHandler("TrainStream");
+        for (int i = 0; i < NO_OF_TRAINING_EVENTS; i++) {
+            trainHandler.send(BenchmarkDataGenerator.targetEventData(createFeatures(), random));
+        }
+    }
+
+    @Override
+    protected String getInputStreamName() {
+        return "PredictStream";
+    }
+
+    @Override
+    protected String getOutputStreamName() {
+        return "OutputStream";
+    }
+
+    @Override
+    protected Object[] createEventData() {
+        return BenchmarkDataGenerator.eventData(createFeatures());
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright (C) 2017 WSO2 Inc. (http://wso2.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.wso2.extension.siddhi.gpl.execution.streamingml.benchmark;
+
+import io.siddhi.core.SiddhiAppRuntime;
+import io.siddhi.core.SiddhiManager;
+import io.siddhi.core.event.Event;
+import io.siddhi.core.stream.input.InputHandler;
+import io.siddhi.core.stream.output.StreamCallback;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Base harness which drives a streaming ML stream processor through a real {@link SiddhiAppRuntime}.
+ * Each invocation sends one chunk of {@link #chunkSize} pre-generated events to the input stream.
+ * The {@link #throughput} benchmark reports events per second through the {@link EventCounter} counters,
+ * and the {@link #latency} benchmark samples the time taken to process a chunk, which is the per-event
+ * latency when {@link #chunkSize} is 1.
+ */
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@Warmup(iterations = 3, time = 10)
+@Measurement(iterations = 5, time = 10)
+public abstract class AbstractStreamProcessorBenchmark {
+    private static final long SEED = 7L;
+    private static final int NO_OF_CHUNKS = 64;
+    static final int NO_OF_TRAINING_EVENTS = 10000;
+
+    @Param({"4", "16", "64"})
+    public int featureCount;
+
+    @Param({"1", "100", "1000"})
+    public int chunkSize;
+
+    private SiddhiManager siddhiManager;
+    private SiddhiAppRuntime siddhiAppRuntime;
+    private InputHandler inputHandler;
+    private Event[][] chunks;
+    private final LongAdder noOfOutputEvents = new LongAdder();
+    protected Random random;
+
+    /**
+     * @return the Siddhi app which contains the stream processor under test
+     */
+    protected abstract String getSiddhiApp();
+
+    /**
+     * @return the name of the stream the benchmark sends events to
+     */
+    protected abstract String getInputStreamName();
+
+    /**
+     * @return the name of the stream which carries the output of the stream processor under test
+     */
+    protected abstract String getOutputStreamName();
+
+    /**
+     * @return data of a single event of the input stream
+     */
+    protected abstract Object[] createEventData();
+
+    /**
+     * Bring the models into a trained state before the measurement starts.
+     *
+     * @param siddhiAppRuntime runtime of the app returned by {@link #getSiddhiApp()}
+     */
+    protected void prepare(SiddhiAppRuntime siddhiAppRuntime) throws InterruptedException {
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws InterruptedException {
+        random = new Random(SEED);
+        siddhiManager = new SiddhiManager();
+        siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(getSiddhiApp());
+        siddhiAppRuntime.addCallback(getOutputStreamName(), new StreamCallback() {
+            @Override
+            public void receive(Event[] events) {
+                noOfOutputEvents.add(events.length);
+            }
+        });
+        siddhiAppRuntime.start();
+        prepare(siddhiAppRuntime);
+
+        inputHandler = siddhiAppRuntime.getInputHandler(getInputStreamName());
+        chunks = new Event[NO_OF_CHUNKS][];
+        for (int i = 0; i < NO_OF_CHUNKS; i++) {
+            chunks[i] = createChunk(chunkSize);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (noOfOutputEvents.sum() == 0) {
+            throw new IllegalStateException("No events were emitted from " + getOutputStreamName());
+        }
+        siddhiAppRuntime.shutdown();
+        siddhiManager.shutdown();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public void throughput(ChunkCursor cursor, EventCounter counter) throws InterruptedException {
+        inputHandler.send(chunks[cursor.next()]);
+        counter.events += chunkSize;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void latency(ChunkCursor cursor) throws InterruptedException {
+        inputHandler.send(chunks[cursor.next()]);
+    }
+
+    protected Event[] createChunk(int size) {
+        Event[] chunk = new Event[size];
+        for (int i = 0; i < size; i++) {
+            chunk[i] = new Event(System.currentTimeMillis(), createEventData());
+        }
+        return chunk;
+    }
+
+    protected String featureDefinition() {
+        StringBuilder definition = new StringBuilder();
+        for (int i = 0; i < featureCount; i++) {
+            definition.append("f").append(i).append(" double, ");
+        }
+        return definition.toString();
+    }
+
+    protected String featureList() {
+        StringBuilder features = new StringBuilder();
+        for (int i = 0; i < featureCount; i++) {
+            if (i > 0) {
+                features.append(", ");
+            }
+            features.append('f').append(i);
+        }
+        return features.toString();
+    }
+
+    protected double[] createFeatures() {
+        double[] features = new double[featureCount];
+        for (int i = 0; i < featureCount; i++) {
+            features[i] = random.nextDouble();
+        }
+        return features;
+    }
+
+    /**
+     * Round-robin position of a benchmark thread over the pre-generated chunks.
+     */
+    @State(Scope.Thread)
+    public static class ChunkCursor {
+        private int position;
+
+        int next() {
+            position = (position + 1) % NO_OF_CHUNKS;
+            return position;
+        }
+    }
+
+    /**
+     * Reports the number of events sent per second, independent of the chunk size.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class EventCounter {
+        public long events;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            events = 0;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2017 WSO2 Inc. (http://wso2.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.wso2.extension.siddhi.gpl.execution.streamingml.benchmark;
+
+import java.util.Random;
+
+/**
+ * Generates synthetic event data for the benchmarks. The data is learnable, so that the models grow
+ * in the same way they would on a real stream instead of staying at the root.
+ */
+final class BenchmarkDataGenerator {
+
+    private BenchmarkDataGenerator() {
+    }
+
+    static Object[] eventData(double[] features) {
+        Object[] data = new Object[features.length];
+        for (int i = 0; i < features.length; i++) {
+            data[i] = features[i];
+        }
+        return data;
+    }
+
+    /**
+     * @return features followed by a class label which is decided by the first two features
+     */
+    static Object[] labelledEventData(double[] features, int noOfClasses) {
+        Object[] data = new Object[features.length + 1];
+        for (int i = 0; i < features.length; i++) {
+            data[i] = features[i];
+        }
+        int classIndex = (int) (((features[0] + features[1]) / 2) * noOfClasses);
+        data[features.length] = "class" + Math.min(classIndex, noOfClasses - 1);
+        return data;
+    }
+
+    /**
+     * @return features followed by a noisy linear target value
+     */
+    static Object[] targetEventData(double[] features, Random random) {
+        Object[] data = new Object[features.length + 1];
+        double target = 0;
+        for (int i = 0; i < features.length; i++) {
+            data[i] = features[i];
+            target += (i + 1) * features[i];
+        }
+        data[features.length] = target + random.nextGaussian() * 0.1;
+        return data;
+    }
+
+    /**
+     * @return coordinates of a point around one of the given number of centers
+     */
+    static Object[] clusteredEventData(double[] features, int noOfClusters, Random random) {
+        Object[] data = new Object[features.length];
+        int center = random.nextInt(noOfClusters);
+        for (int i = 0; i < features.length; i++) {
+            data[i] = center * 10 + features[i];
+        }
+        return data;
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2017 WSO2 Inc. (http://wso2.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.wso2.extension.siddhi.gpl.execution.streamingml.benchmark;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+
+/**
+ * Runs the streaming ML benchmarks once per configured thread count and writes a JSON result file for
+ * each run, so that the numbers can be compared between releases.
+ * <p>
+ * The thread counts are given as a comma separated list through the {@code benchmark.threads} system
+ * property (default {@code 1}), and the results are written to the directory given through the
+ * {@code benchmark.results.dir} system property (default {@code benchmark-results}). Any other argument
+ * is passed to JMH as it is, e.g. {@code -p featureCount=16 HoeffdingTree}.
+ */
+public final class BenchmarkRunner {
+
+    private BenchmarkRunner() {
+    }
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        String[] threadCounts = System.getProperty("benchmark.threads", "1").split(",");
+        File resultsDir = new File(System.getProperty("benchmark.results.dir", "benchmark-results"));
+        if (!resultsDir.exists() && !resultsDir.mkdirs()) {
+            throw new IllegalStateException("Unable to create the results directory " + resultsDir);
+        }
+        CommandLineOptions commandLineOptions = new CommandLineOptions(args);
+        for (String threadCount : threadCounts) {
+            int threads = Integer.parseInt(threadCount.trim());
+            ChainedOptionsBuilder options = new OptionsBuilder()
+                    .parent(commandLineOptions)
+                    .threads(threads)
+                    .resultFormat(ResultFormatType.JSON)
+                    .result(new File(resultsDir, "streamingml-" + threads + "-threads.json").getPath());
+            if (commandLineOptions.getIncludes().isEmpty()) {
+                options.include(AbstractStreamProcessorBenchmark.class.getPackage().getName() + ".*Benchmark");
+            }
+            new Runner(options.build()).run();
+        }
+    }
+}
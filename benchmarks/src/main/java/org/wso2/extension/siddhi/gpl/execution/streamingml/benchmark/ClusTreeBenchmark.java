@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2017 WSO2 Inc. (http://wso2.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.wso2.extension.siddhi.gpl.execution.streamingml.benchmark;
+
+import io.siddhi.core.SiddhiAppRuntime;
+import io.siddhi.core.stream.input.InputHandler;
+import org.openjdk.jmh.annotations.Param;
+
+/**
+ * Benchmark of the streamingml:clusTree stream processor. The class count is used as the number of
+ * macro clusters, and the data points are drawn around that many centers.
+ */
+public class ClusTreeBenchmark extends AbstractStreamProcessorBenchmark {
+
+    @Param({"2", "10"})
+    public int classCount;
+
+    @Param({"100", "1000"})
+    public int noOfEventsToRefreshMacroModel;
+
+    @Override
+    protected String getSiddhiApp() {
+        return "@App:name('ClusTreeBenchmark') "
+                + "define stream InputStream (" + featureDefinition().replaceAll(", $", "") + "); "
+                + "@info(name = 'cluster') "
+                + "from InputStream#streamingml:clusTree(" + classCount + ", 40, " + noOfEventsToRefreshMacroModel
+                + ", 5, 1000, " + featureList() + ") "
+                + "select euclideanDistanceToClosestCentroid insert into OutputStream;";
+    }
+
+    @Override
+    protected void prepare(SiddhiAppRuntime siddhiAppRuntime) throws InterruptedException {
+        // make sure a macro model exists so that every measured event is populated with a prediction
+        InputHandler inputHandler = siddhiAppRuntime.getInputHandler("InputStream");
+        for (int i = 0; i < noOfEventsToRefreshMacroModel; i++) {
+            inputHandler.send(createEventData());
+        }
+    }
+
+    @Override
+    protected String getInputStreamName() {
+        return "InputStream";
+    }
+
+    @Override
+    protected String getOutputStreamName() {
+        return "OutputStream";
+    }
+
+    @Override
+    protected Object[] createEventData() {
+        return BenchmarkDataGenerator.clusteredEventData(createFeatures(), classCount, random);
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2017 WSO2 Inc. (http://wso2.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.wso2.extension.siddhi.gpl.execution.streamingml.benchmark;
+
+import org.openjdk.jmh.annotations.Param;
+
+/**
+ * Benchmark of the streamingml:updateHoeffdingTree stream processor.
+ */
+public class HoeffdingTreeUpdaterBenchmark extends AbstractStreamProcessorBenchmark {
+
+    @Param({"2", "10"})
+    public int classCount;
+
+    @Override
+    protected String getSiddhiApp() {
+        return "@App:name('HoeffdingTreeUpdaterBenchmark') "
+                + "define stream TrainStream (" + featureDefinition() + "label string); "
+                + "@info(name = 'train') "
+                + "from TrainStream#streamingml:updateHoeffdingTree('model', " + classCount + ", "
+                + featureList() + ", label) "
+                + "select accuracy insert into OutputStream;";
+    }
+
+    @Override
+    protected String getInputStreamName() {
+        return "TrainStream";
+    }
+
+    @Override
+    protected String getOutputStreamName() {
+        return "OutputStream";
+    }
+
+    @Override
+    protected Object[] createEventData() {
+        return BenchmarkDataGenerator.labelledEventData(createFeatures(), classCount);
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2017 WSO2 Inc. (http://wso2.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.wso2.extension.siddhi.gpl.execution.streamingml.classification;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Class labels of a classifier, indexed in the order they are first seen
+ * <p>
+ * The index of a label is looked up in a hash map and the label of an index in an array, so that neither
+ * training nor prediction scans the labels. The dictionary is not thread-safe, it is guarded by the lock of the
+ * model which owns it.
+ */
+public class LabelDictionary implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final Map<String, Integer> indices;
+    private String[] labels;
+    private int size;
+
+    public LabelDictionary() {
+        this(new ArrayList<String>());
+    }
+
+    /**
+     * @param labels labels in the order of their indices, e.g., read from a snapshot of a model
+     */
+    public LabelDictionary(List<String> labels) {
+        this.indices = new HashMap<>(Math.max(16, labels.size() * 2));
+        this.labels = new String[Math.max(4, labels.size())];
+        for (String label : labels) {
+            add(label);
+        }
+    }
+
+    /**
+     * @param label class label
+     * @return index of the label, or -1 if the label has not been added
+     */
+    public int indexOf(String label) {
+        Integer index = indices.get(label);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * Add a label which has not been added yet
+     *
+     * @param label class label
+     * @return index of the label
+     */
+    public int add(String label) {
+        if (size == labels.length) {
+            labels = Arrays.copyOf(labels, size * 2);
+        }
+        labels[size] = label;
+        indices.put(label, size);
+        return size++;
+    }
+
+    /**
+     * @param index index of a label
+     * @return the label of the index
+     */
+    public String getLabel(int index) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        return labels[index];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the labels in the order of their indices
+     */
+    public List<String> toList() {
+        return new ArrayList<String>(Arrays.asList(labels).subList(0, size));
+    }
+}
@@ -0,0 +1,433 @@
+/*
+ * Copyright (C) 2017 WSO2 Inc. (http://wso2.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.wso2.extension.siddhi.gpl.execution.streamingml.classification.adaptiverandomforest;
+
+import io.siddhi.annotation.Example;
+import io.siddhi.annotation.Extension;
+import io.siddhi.annotation.Parameter;
+import io.siddhi.annotation.ReturnAttribute;
+import io.siddhi.annotation.SystemParameter;
+import io.siddhi.annotation.util.DataType;
+import io.siddhi.core.config.SiddhiQueryContext;
+import io.siddhi.core.event.ComplexEventChunk;
+import io.siddhi.core.event.stream.MetaStreamEvent;
+import io.siddhi.core.event.stream.StreamEvent;
+import io.siddhi.core.event.stream.StreamEventCloner;
+import io.siddhi.core.event.stream.holder.StreamEventClonerHolder;
+import io.siddhi.core.event.stream.populater.ComplexEventPopulater;
+import io.siddhi.core.executor.ConstantExpressionExecutor;
+import io.siddhi.core.executor.ExpressionExecutor;
+import io.siddhi.core.executor.VariableExpressionExecutor;
+import io.siddhi.core.query.processor.ProcessingMode;
+import io.siddhi.core.query.processor.Processor;
+import io.siddhi.core.query.processor.stream.StreamProcessor;
+import io.siddhi.core.util.config.ConfigReader;
+import io.siddhi.core.util.snapshot.state.State;
+import io.siddhi.core.util.snapshot.state.StateFactory;
+import io.siddhi.query.api.definition.AbstractDefinition;
+import io.siddhi.query.api.definition.Attribute;
+import io.siddhi.query.api.exception.SiddhiAppValidationException;
+import org.apache.log4j.Logger;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.classification.ClassifierPrequentialModelEvaluation;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.classification.adaptiverandomforest.util.AdaptiveRandomForestConfig;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.classification.adaptiverandomforest.util.AdaptiveRandomForestModel;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.AsyncModelTrainer;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.CoreUtils;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.EnsembleExecutor;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.FeatureExtractor;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.MappedModelStore;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.ModelCheckpoint;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.ModelEvents;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.ModelRegistry;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.ModelStatistics;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Build/update using an Adaptive Random Forest Model.
+ * {@link AdaptiveRandomForestUpdaterStreamProcessorExtension}
+ */
+@Extension(
+        name = "updateAdaptiveRandomForest",
+        namespace = "streamingml",
+        description = "This extension performs the build/update of an Adaptive Random Forest for evolving data "
+                + "streams. Each tree of the forest is trained on the events with Poisson weights, splits on a "
+                + "random subset of the features, and is replaced by a background tree when `ADWIN` detects a "
+                + "drift in its error. The trees are trained in parallel.",
+        parameters = {
+                @Parameter(name = "model.name",
+                        description = "The name of the model to be built/updated.",
+                        type = {DataType.STRING}),
+                @Parameter(name = "no.of.classes",
+                        description = "The number of class labels in the datastream.",
+                        type = {DataType.INT}),
+                @Parameter(name = "ensemble.size",
+                        description = "The number of trees of the forest.",
+                        type = {DataType.INT},
+                        optional = true,
+                        defaultValue = "10"),
+                @Parameter(name = "lambda",
+                        description = "The mean of the Poisson distribution of the weight of an event for a tree.",
+                        type = {DataType.DOUBLE},
+                        optional = true,
+                        defaultValue = "6.0"),
+                @Parameter(name = "grace.period",
+                        description = "The number of instances a leaf should observe between split attempts.",
+                        type = {DataType.INT},
+                        optional = true,
+                        defaultValue = "50"),
+                @Parameter(name = "split.confidence",
+                        description = "The amount of error that should be allowed in a split decision. When the" +
+                                " value specified is closer to 0, it takes longer to output the decision.",
+                        type = {DataType.DOUBLE},
+                        optional = true,
+                        defaultValue = "0.01"),
+                @Parameter(name = "tie.break.threshold",
+                        description = "The threshold at which a split must be forced to break ties.",
+                        type = {DataType.DOUBLE},
+                        optional = true,
+                        defaultValue = "0.05D"),
+                @Parameter(name = "model.features",
+                        description = "The features of the model that should be attributes of the stream.",
+                        type = {DataType.DOUBLE, DataType.INT})
+        },
+        systemParameter = {
+                @SystemParameter(name = "ensembleParallelism",
+                        description = "The fork-join pool on which the trees are trained in parallel. `common` "
+                                + "uses the common pool of the JVM, `1` trains the trees one after the other on "
+                                + "the training thread, and any other number starts a pool of that many threads "
+                                + "for the query.",
+                        defaultValue = "common",
+                        possibleParameters = {"common", "Any positive integer"}),
+                @SystemParameter(name = "trainingMode",
+                        description = "Whether the model is trained on the event processing thread (`sync`), or on "
+                                + "a dedicated worker thread fed through a bounded queue (`async`). In the `async` "
+                                + "mode, the events are output without waiting for the training, with the "
+                                + "accuracy most recently computed by the worker.",
+                        defaultValue = "sync",
+                        possibleParameters = {"sync", "async"}),
+                @SystemParameter(name = "trainingQueueSize",
+                        description = "The number of events that can wait to be trained on in the `async` training "
+                                + "mode. It is rounded up to a power of two.",
+                        defaultValue = "1024",
+                        possibleParameters = "Any positive integer"),
+                @SystemParameter(name = "backpressurePolicy",
+                        description = "How the events are handled when the training queue is full in the `async` "
+                                + "training mode. `block` waits for space in the queue, `dropOldest` discards the "
+                                + "oldest queued event, and `sample` discards every second event once the queue is "
+                                + "half full and every event once it is full.",
+                        defaultValue = "block",
+                        possibleParameters = {"block", "dropOldest", "sample"}),
+                @SystemParameter(name = "modelStoreDirectory",
+                        description = "The directory in which the model is kept in a memory-mapped file, named "
+                                + "after the Siddhi app and the model. The file is written in the background after "
+                                + "each checkpoint of the Siddhi app at which the model has changed, and when the app "
+                                + "is shut down, and the model is read from it when the app is started, so that a "
+                                + "restarted node uses the model right away. "
+                                + "The model is not kept in a file if the directory is `none`.",
+                        defaultValue = "none",
+                        possibleParameters = "Any directory path")
+        },
+        returnAttributes = {
+                @ReturnAttribute(name = "accuracy",
+                        description = "The accuracy evaluation of the model(Prequnetial Evaluation)",
+                        type = {DataType.DOUBLE})
+        },
+        examples = {
+                @Example(
+                        syntax = "define stream StreamA (attribute_0 double, attribute_1 double, "
+                                + "attribute_2 double, attribute_3 double, attribute_4 string );\n"
+                                + "\n"
+                                + "from StreamA#streamingml:updateAdaptiveRandomForest('model1', 3) \n"
+                                + "select attribute_0, attribute_1, attribute_2, attribute_3, "
+                                + "accuracy insert into OutputStream;",
+                        description = "This query builds/updates an Adaptive Random Forest named `model1` of 10 "
+                                + "trees under 3 classes using `attribute_0`, `attribute_1`, `attribute_2`, and "
+                                + "`attribute_3` as features, and `attribute_4` as the label. The accuracy "
+                                + "evaluation is output to the `OutputStream` stream"
+                ),
+                @Example(
+                        syntax = "define stream StreamA (attribute_0 double, attribute_1 double, "
+                                + "attribute_2 double, attribute_3 double, attribute_4 string );\n"
+                                + "\n"
+                                + "from StreamA#streamingml:updateAdaptiveRandomForest('model1', 3, 20, 6.0, 100, "
+                                + "0.01, 0.05) \n"
+                                + "select attribute_0, attribute_1, attribute_2, attribute_3, "
+                                + "accuracy insert into OutputStream;",
+                        description = "This query builds/updates an Adaptive Random Forest named `model1` of 20 "
+                                + "trees, weighting the events for each tree with a Poisson distribution of mean "
+                                + "6.0, with a grace period of 100, 0.01 of allowable error in split decision and "
+                                + "0.05 of breaktie threshold. `attribute_0`, `attribute_1`, `attribute_2`, and "
+                                + "`attribute_3` are used as features, and `attribute_4` as the label. The accuracy "
+                                + "evaluation is output to the OutputStream stream."
+                )
+        }
+)
+public class AdaptiveRandomForestUpdaterStreamProcessorExtension extends
+        StreamProcessor<AdaptiveRandomForestUpdaterStreamProcessorExtension.ExtensionState> {
+
+    private static final Logger logger = Logger.getLogger(AdaptiveRandomForestUpdaterStreamProcessorExtension.class);
+
+    private static final int MINIMUM_NUMBER_OF_FEATURES = 3;
+    private static final int MINIMUM_NUMBER_OF_PARAMETERS = 2;
+    private static final int NUMBER_OF_HYPER_PARAMETERS = AdaptiveRandomForestConfig.NUMBER_OF_HYPER_PARAMETERS;
+
+    private int noOfFeatures;
+    private int noOfParameters;
+    private int noOfClasses;
+    private String modelName;
+    private AdaptiveRandomForestModel model;
+
+    private FeatureExtractor featureExtractor;
+    private VariableExpressionExecutor classLabelVariableExecutor;
+
+    private double[] cepEvent;
+    private final Object[] outputData = new Object[1];
+    private ClassifierPrequentialModelEvaluation evolutionModel;
+    private EnsembleExecutor executor;
+    private AsyncModelTrainer trainer;
+    private MappedModelStore modelStore;
+    private ModelStatistics statistics;
+    private volatile double accuracy;
+    //set attributes for OutputStream
+    private List<Attribute> attributes = new ArrayList<>();
+
+    @Override
+    protected StateFactory<ExtensionState> init(MetaStreamEvent metaStreamEvent, AbstractDefinition inputDefinition,
+                                                ExpressionExecutor[] attributeExpressionExecutors,
+                                                ConfigReader configReader,
+                                                StreamEventClonerHolder streamEventClonerHolder,
+                                                boolean outputExpectsExpiredEvents, boolean findToBeExecuted,
+                                                SiddhiQueryContext siddhiQueryContext) {
+        String siddhiAppName = siddhiQueryContext.getSiddhiAppContext().getName();
+        String modelPrefix;
+        noOfFeatures = inputDefinition.getAttributeList().size();
+        noOfParameters = attributeExpressionLength - noOfFeatures;
+        int classIndex = attributeExpressionLength - 1;
+
+        if (attributeExpressionLength >= MINIMUM_NUMBER_OF_PARAMETERS + MINIMUM_NUMBER_OF_FEATURES) {
+            if (attributeExpressionExecutors[0] instanceof ConstantExpressionExecutor) {
+                ConstantExpressionExecutor modelNameExecutor =
+                        (ConstantExpressionExecutor) attributeExpressionExecutors[0];
+                if (modelNameExecutor.getReturnType() == Attribute.Type.STRING) {
+                    modelPrefix = (String) modelNameExecutor.getValue();
+                    // model name = user given name + siddhi app name
+                    modelName = siddhiAppName + "." + modelPrefix;
+                } else {
+                    throw new SiddhiAppValidationException(
+                            "Invalid parameter type found for the model.name argument, "
+                                    + "required " + Attribute.Type.STRING + " but found "
+                                    + modelNameExecutor.getReturnType().toString());
+                }
+            } else {
+                throw new SiddhiAppValidationException("Model.name must be (ConstantExpressionExecutor) but found "
+                        + attributeExpressionExecutors[0].getClass().getCanonicalName());
+            }
+
+            //2nd parameter
+            if (attributeExpressionExecutors[1] instanceof ConstantExpressionExecutor) {
+                ConstantExpressionExecutor numberOfClassesExecutor =
+                        (ConstantExpressionExecutor) attributeExpressionExecutors[1];
+                if (numberOfClassesExecutor.getReturnType() == Attribute.Type.INT) {
+                    noOfClasses = (Integer) numberOfClassesExecutor.getValue();
+                    if (noOfClasses < 2) {
+                        throw new SiddhiAppValidationException(
+                                "Number of classes must be greater than 1 but found " + noOfClasses);
+                    }
+                } else {
+                    throw new SiddhiAppValidationException(
+                            "Invalid parameter type found for the number_of_classes argument, required "
+                                    + Attribute.Type.INT + " but found " +
+                                    numberOfClassesExecutor.getReturnType().toString());
+                }
+            } else {
+                throw new SiddhiAppValidationException(
+                        "Number of classes must be (ConstantExpressionExecutor) but found "
+                                + attributeExpressionExecutors[1].getClass().getCanonicalName());
+            }
+            if (noOfFeatures > 2) {
+                featureExtractor = new FeatureExtractor(CoreUtils
+                        .extractAndValidateFeatures(inputDefinition, attributeExpressionExecutors,
+                                (attributeExpressionLength - noOfFeatures), (noOfFeatures - 1)), modelName);
+                cepEvent = new double[noOfFeatures];
+
+                classLabelVariableExecutor = CoreUtils
+                        .extractAndValidateClassLabel(inputDefinition, attributeExpressionExecutors,
+                                classIndex);
+            } else {
+                throw new SiddhiAppValidationException(
+                        "Number of features must be greater than 2 but" + " found "
+                                + noOfFeatures);
+            }
+            AdaptiveRandomForestConfig config;
+            if (noOfParameters == MINIMUM_NUMBER_OF_PARAMETERS) {
+                config = new AdaptiveRandomForestConfig();
+            } else if (noOfParameters == (MINIMUM_NUMBER_OF_PARAMETERS + NUMBER_OF_HYPER_PARAMETERS)) {
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Adaptive Random Forest is configured with hyper-parameters");
+                }
+                config = AdaptiveRandomForestConfig.fromParameters(attributeExpressionExecutors,
+                        MINIMUM_NUMBER_OF_PARAMETERS);
+            } else {
+                throw new SiddhiAppValidationException(String.format("Number of hyper-parameters needed for model"
+                                + " manual configuration is %s but found %s",
+                        NUMBER_OF_HYPER_PARAMETERS, (noOfParameters - MINIMUM_NUMBER_OF_PARAMETERS)));
+            }
+            modelStore = MappedModelStore.fromConfig(configReader);
+            model = ModelRegistry.getInstance().getOrCreateModel(AdaptiveRandomForestModel.class, modelName,
+                    name -> MappedModelStore.loadOrCreate(modelStore, name, AdaptiveRandomForestModel::fromSnapshot,
+                            AdaptiveRandomForestModel::new));
+            if (model.getStreamHeader() == null) {
+                if (logger.isDebugEnabled()) {
+                    logger.debug(String.format("Model [%s] has not been initialized.", modelName));
+                }
+                // the hyper-parameters build the trees of the forest, hence they only apply to a new model
+                model.init(noOfFeatures, noOfClasses, config);
+            } else if (model.getNoOfFeatures() != noOfFeatures) {
+                throw new SiddhiAppValidationException(String.format("Model [%s] expects %s features, but the "
+                                + "streamingml:updateAdaptiveRandomForest specifies %s features.", modelName,
+                        model.getNoOfFeatures(), noOfFeatures));
+            }
+            evolutionModel = new ClassifierPrequentialModelEvaluation();
+            evolutionModel.reset(noOfClasses);
+            executor = EnsembleExecutor.fromConfig(configReader, modelName);
+            trainer = AsyncModelTrainer.fromConfig(configReader, modelName, noOfFeatures,
+                    (features, classValue) -> accuracy = model.trainOnEvent(evolutionModel, features,
+                            (String) classValue, executor));
+            statistics = ModelStatistics.create(siddhiQueryContext, modelPrefix, "training");
+            statistics.registerSizeGauge("noOfBackgroundTrees", model::getNoOfBackgroundTrees);
+            statistics.registerMemoryUsage(model);
+        } else {
+            throw new SiddhiAppValidationException(String.format("Invalid number of attributes for "
+                            + "streamingml:updateAdaptiveRandomForest. This Stream Processor requires at least %s ,"
+                            + "parameters namely, model.name, number_of_classes and %s features but found %s "
+                            + "parameters and %s features", MINIMUM_NUMBER_OF_PARAMETERS, MINIMUM_NUMBER_OF_FEATURES,
+                    (attributeExpressionLength - noOfFeatures), noOfFeatures));
+        }
+        attributes.add(new Attribute("accuracy", Attribute.Type.DOUBLE));
+        return () -> new ExtensionState(model, trainer, modelStore);
+    }
+
+
+    @Override
+    protected void process(ComplexEventChunk<StreamEvent> streamEventChunk, Processor nextProcessor,
+                           StreamEventCloner streamEventCloner, ComplexEventPopulater complexEventPopulater,
+                           ExtensionState state) {
+        synchronized (this) {
+            statistics.markIn();
+            while (streamEventChunk.hasNext()) {
+                StreamEvent streamEvent = streamEventChunk.next();
+                statistics.eventIn();
+                String classValue = classLabelVariableExecutor.execute(streamEvent).toString();
+                featureExtractor.extractFeatures(streamEvent, cepEvent);
+                if (trainer == null) {
+                    outputData[0] = model.trainOnEvent(evolutionModel, cepEvent, classValue, executor);
+                } else {
+                    trainer.offer(cepEvent, classValue);
+                    outputData[0] = accuracy;
+                }
+                complexEventPopulater.populateComplexEvent(streamEvent, outputData);
+            }
+            statistics.markOut();
+            nextProcessor.process(streamEventChunk);
+        }
+    }
+
+    @Override
+    public void start() {
+        executor.start();
+        if (trainer != null) {
+            trainer.start();
+        }
+    }
+
+    @Override
+    public void stop() {
+        if (trainer != null) {
+            trainer.stop();
+        }
+        executor.stop();
+        if (modelStore != null) {
+            modelStore.save(modelName, model::toSnapshot);
+        }
+        ModelRegistry.getInstance().deleteModel(AdaptiveRandomForestModel.class, modelName);
+    }
+
+    @Override
+    public List<Attribute> getReturnAttributes() {
+        return attributes;
+    }
+
+    @Override
+    public ProcessingMode getProcessingMode() {
+        return ProcessingMode.BATCH;
+    }
+
+    static class ExtensionState extends State {
+        private final AdaptiveRandomForestModel model;
+        private final AsyncModelTrainer trainer;
+        private final MappedModelStore modelStore;
+        private final ModelCheckpoint checkpoint = new ModelCheckpoint();
+
+        ExtensionState(AdaptiveRandomForestModel model, AsyncModelTrainer trainer, MappedModelStore modelStore) {
+            this.model = model;
+            this.trainer = trainer;
+            this.modelStore = modelStore;
+        }
+
+        @Override
+        public boolean canDestroy() {
+            return false;
+        }
+
+        @Override
+        public Map<String, Object> snapshot() {
+            if (trainer != null) {
+                trainer.flush();
+            }
+            ModelEvents.ModelSnapshot event = ModelEvents.beginSnapshot(model.getModelName(), false);
+            Map<String, Object> currentState = new HashMap<>();
+            boolean snapshotRequired = checkpoint.isSnapshotRequired(model.getVersion());
+            if (snapshotRequired) {
+                byte[] snapshot = model.toSnapshot();
+                if (modelStore != null) {
+                    modelStore.saveInBackground(model.getModelName(), () -> snapshot);
+                }
+                currentState.put("AdaptiveRandomForestModel", checkpoint.toSnapshot(snapshot));
+            }
+            ModelEvents.commitSnapshot(event, !snapshotRequired);
+            return currentState;
+        }
+
+        @Override
+        public void restore(Map<String, Object> state) {
+            if (trainer != null) {
+                trainer.flush();
+            }
+            ModelEvents.ModelSnapshot event = ModelEvents.beginSnapshot(model.getModelName(), true);
+            Object snapshot = ModelCheckpoint.getLatestState(state.get("AdaptiveRandomForestModel"));
+            if (snapshot instanceof byte[]) {
+                model.restoreFrom(AdaptiveRandomForestModel.fromSnapshot(model.getModelName(), (byte[]) snapshot));
+            }
+            checkpoint.reset();
+            ModelEvents.commitSnapshot(event, false);
+        }
+    }
+}
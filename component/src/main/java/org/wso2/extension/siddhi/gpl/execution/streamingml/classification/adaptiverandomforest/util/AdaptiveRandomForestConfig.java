@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2017 WSO2 Inc. (http://wso2.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.wso2.extension.siddhi.gpl.execution.streamingml.classification.adaptiverandomforest.util;
+
+import io.siddhi.core.executor.ConstantExpressionExecutor;
+import io.siddhi.core.executor.ExpressionExecutor;
+import io.siddhi.query.api.definition.Attribute;
+import io.siddhi.query.api.exception.SiddhiAppValidationException;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.CoreUtils;
+
+/**
+ * Hyper-parameters of an Adaptive Random Forest, read once from the query and used to build the members of each
+ * model initialized by the query.
+ */
+public class AdaptiveRandomForestConfig {
+    public static final int NUMBER_OF_HYPER_PARAMETERS = 5;
+    private static final String[] HYPER_PARAMETERS = {"Ensemble Size", "Lambda", "GracePeriod",
+            "Allowable Split Error", "Tie Break Threshold"};
+
+    //default configurations of the Adaptive Random Forest of MOA
+    private int ensembleSize = 10;
+    private double lambda = 6.0;
+    private int gracePeriod = 50;
+    private double allowableSplitError = 0.01;
+    private double tieBreakThreshold = 0.05;
+
+    /**
+     * Read the hyper-parameters from the parameters of the query
+     *
+     * @param attributeExpressionExecutors parameters of the query
+     * @param firstIndex                   index of the first hyper-parameter
+     * @return the hyper-parameters
+     */
+    public static AdaptiveRandomForestConfig fromParameters(ExpressionExecutor[] attributeExpressionExecutors,
+                                                            int firstIndex) {
+        AdaptiveRandomForestConfig config = new AdaptiveRandomForestConfig();
+        for (int i = firstIndex; i < firstIndex + NUMBER_OF_HYPER_PARAMETERS; i++) {
+            ExpressionExecutor executor = attributeExpressionExecutors[i];
+            if (!(executor instanceof ConstantExpressionExecutor)) {
+                throw new SiddhiAppValidationException(String.format("%s must be (ConstantExpressionExecutor) "
+                                + "but found %s in position %s.", HYPER_PARAMETERS[i - firstIndex],
+                        executor.getClass().getCanonicalName(), (i + 1)));
+            }
+            Object value = ((ConstantExpressionExecutor) executor).getValue();
+            switch (i - firstIndex) {
+                case 0:
+                    if (executor.getReturnType() == Attribute.Type.INT && (Integer) value > 0) {
+                        config.ensembleSize = (Integer) value;
+                    } else {
+                        throw new SiddhiAppValidationException(String.format("Ensemble Size must be a positive "
+                                        + "%s. But found %s of type %s at position %s", Attribute.Type.INT, value,
+                                executor.getReturnType(), (i + 1)));
+                    }
+                    break;
+                case 1:
+                    if (CoreUtils.isNumeric(executor.getReturnType()) && ((Number) value).doubleValue() > 0) {
+                        config.lambda = ((Number) value).doubleValue();
+                    } else {
+                        throw new SiddhiAppValidationException(String.format("Lambda must be a positive %s. "
+                                        + "But found %s of type %s at position %s.", Attribute.Type.DOUBLE, value,
+                                executor.getReturnType(), (i + 1)));
+                    }
+                    break;
+                case 2:
+                    if (executor.getReturnType() == Attribute.Type.INT) {
+                        config.gracePeriod = (Integer) value;
+                    } else {
+                        throw new SiddhiAppValidationException(String.format("GracePeriod must be an %s."
+                                        + " But found %s at position %s", Attribute.Type.INT,
+                                executor.getReturnType(), (i + 1)));
+                    }
+                    break;
+                case 3:
+                    if (executor.getReturnType() == Attribute.Type.DOUBLE) {
+                        config.allowableSplitError = (double) value;
+                    } else {
+                        throw new SiddhiAppValidationException(String.format("Allowable Split Error must be a "
+                                        + "%s. But found %s at position %s.", Attribute.Type.DOUBLE,
+                                executor.getReturnType(), (i + 1)));
+                    }
+                    break;
+                default:
+                    if (CoreUtils.isNumeric(executor.getReturnType())) {
+                        config.tieBreakThreshold = ((Number) value).doubleValue();
+                    } else {
+                        throw new SiddhiAppValidationException(String.format("Tie Break Threshold must be "
+                                        + "a %s. But found %s in position %s.", Attribute.Type.DOUBLE,
+                                executor.getReturnType(), (i + 1)));
+                    }
+            }
+        }
+        return config;
+    }
+
+    public int getEnsembleSize() {
+        return ensembleSize;
+    }
+
+    public double getLambda() {
+        return lambda;
+    }
+
+    public int getGracePeriod() {
+        return gracePeriod;
+    }
+
+    public double getAllowableSplitError() {
+        return allowableSplitError;
+    }
+
+    public double getTieBreakThreshold() {
+        return tieBreakThreshold;
+    }
+}
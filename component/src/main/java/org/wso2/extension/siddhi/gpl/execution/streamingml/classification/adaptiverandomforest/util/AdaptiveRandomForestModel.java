@@ -0,0 +1,473 @@
+/*
+ * Copyright (C) 2017 WSO2 Inc. (http://wso2.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.wso2.extension.siddhi.gpl.execution.streamingml.classification.adaptiverandomforest.util;
+
+import com.yahoo.labs.samoa.instances.Attribute;
+import com.yahoo.labs.samoa.instances.DenseInstance;
+import com.yahoo.labs.samoa.instances.Instance;
+import com.yahoo.labs.samoa.instances.Instances;
+import com.yahoo.labs.samoa.instances.InstancesHeader;
+import io.siddhi.core.exception.SiddhiAppRuntimeException;
+import moa.classifiers.core.driftdetection.ADWINChangeDetector;
+import moa.classifiers.trees.ARFHoeffdingTree;
+import moa.core.MiscUtils;
+import org.apache.log4j.Logger;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.classification.ClassifierPrequentialModelEvaluation;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.classification.LabelDictionary;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.CoreUtils;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.EnsembleExecutor;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.MathUtil;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.ModelSnapshotReader;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.ModelSnapshotType;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.ModelSnapshotWriter;
+
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Represents an Adaptive Random Forest model
+ * <p>
+ * Each member of the forest is a Hoeffding tree splitting on a random subspace of the features, trained on the
+ * events with Poisson weights as in online bagging. A member starts a background tree once its ADWIN warning
+ * detector fires, and is replaced by the background tree once its drift detector fires. The members train and vote
+ * in parallel on an {@link EnsembleExecutor}.
+ * <p>
+ * As the Hoeffding Adaptive Tree model does, training takes the write lock of the model, while predictions only
+ * take the read lock.
+ */
+public class AdaptiveRandomForestModel {
+    private static final Logger logger = Logger.getLogger(AdaptiveRandomForestModel.class);
+    private static final int SNAPSHOT_VERSION = 1;
+
+    // ADWIN confidences of the warning and the drift detectors of the Adaptive Random Forest of MOA
+    private static final double WARNING_DELTA = 1e-4;
+    private static final double DRIFT_DELTA = 1e-5;
+
+    private final String modelName;
+    private InstancesHeader streamHeader;
+    private int noOfFeatures;
+    private int noOfClasses;
+    private double lambda;
+    private Member[] members;
+    private LabelDictionary classes = new LabelDictionary();
+    private final StampedLock lock = new StampedLock();
+    // incremented on each update of the model, so that checkpoints can skip an unchanged model
+    private long version;
+    // size of the last snapshot, which sizes the buffer of the next one
+    private int snapshotSize;
+
+    // values of the event being trained on, shared by the instances of the members. Guarded by the write lock.
+    private double[] trainValues;
+    private Instance trainInstance;
+    private double[] trainVotes;
+
+    public AdaptiveRandomForestModel(String modelName) {
+        this.modelName = modelName;
+    }
+
+    /**
+     * Restore the state of this model from a snapshot of it, so that the stream processors which hold a
+     * reference to this model continue with the restored state.
+     *
+     * @param model snapshot of the model
+     */
+    public void restoreFrom(AdaptiveRandomForestModel model) {
+        long stamp = lock.writeLock();
+        try {
+            version++;
+            this.streamHeader = model.streamHeader;
+            this.noOfFeatures = model.noOfFeatures;
+            this.noOfClasses = model.noOfClasses;
+            this.lambda = model.lambda;
+            this.members = model.members;
+            this.classes = model.classes;
+            if (streamHeader != null) {
+                createTrainingInstances();
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Write the state of the model into a binary snapshot. The model is only locked while it is being written.
+     *
+     * @return snapshot of the model, read by {@link #fromSnapshot(String, byte[])}
+     */
+    public byte[] toSnapshot() {
+        ModelSnapshotWriter writer = new ModelSnapshotWriter(ModelSnapshotType.ADAPTIVE_RANDOM_FOREST,
+                SNAPSHOT_VERSION, snapshotSize);
+        long stamp = lock.readLock();
+        try {
+            writer.writeBoolean(members != null);
+            if (members != null) {
+                writer.writeInt(noOfFeatures);
+                writer.writeInt(noOfClasses);
+                writer.writeDouble(lambda);
+                writer.writeStrings(classes.toList());
+                writer.writeLearner(members);
+            }
+        } finally {
+            lock.unlockRead(stamp);
+        }
+        snapshotSize = writer.size();
+        return writer.toByteArray();
+    }
+
+    /**
+     * Read a model from a binary snapshot written by {@link #toSnapshot()}
+     *
+     * @param modelName name of the model
+     * @param snapshot  snapshot of the model
+     * @return the model
+     */
+    public static AdaptiveRandomForestModel fromSnapshot(String modelName, byte[] snapshot) {
+        return fromSnapshot(modelName, ByteBuffer.wrap(snapshot));
+    }
+
+    /**
+     * Read a model from a binary snapshot written by {@link #toSnapshot()}, e.g., mapped from a file
+     *
+     * @param modelName name of the model
+     * @param snapshot  snapshot of the model
+     * @return the model
+     */
+    public static AdaptiveRandomForestModel fromSnapshot(String modelName, ByteBuffer snapshot) {
+        ModelSnapshotReader reader = new ModelSnapshotReader(snapshot, ModelSnapshotType.ADAPTIVE_RANDOM_FOREST,
+                SNAPSHOT_VERSION);
+        AdaptiveRandomForestModel model = new AdaptiveRandomForestModel(modelName);
+        if (reader.readBoolean()) {
+            model.noOfFeatures = reader.readInt();
+            model.noOfClasses = reader.readInt();
+            model.lambda = reader.readDouble();
+            model.classes = new LabelDictionary(reader.readStrings());
+            model.members = reader.readLearner(Member[].class);
+            model.streamHeader = model.members[0].tree.getModelContext();
+            model.createTrainingInstances();
+        }
+        return model;
+    }
+
+    /**
+     * Initialize the model with input stream definition, and build its members with the hyper-parameters.
+     *
+     * @param noOfAttributes number of feature attributes, including the class label
+     * @param noOfClasses    number of classes
+     * @param config         hyper-parameters of the forest
+     */
+    public void init(int noOfAttributes, int noOfClasses, AdaptiveRandomForestConfig config) {
+        if (logger.isDebugEnabled()) {
+            logger.debug(String.format("Model [%s] is being initialized with %s members.", modelName,
+                    config.getEnsembleSize()));
+        }
+        long stamp = lock.writeLock();
+        try {
+            version++;
+            this.noOfFeatures = noOfAttributes;
+            this.noOfClasses = noOfClasses;
+            this.lambda = config.getLambda();
+            this.streamHeader = createMOAInstanceHeader(noOfAttributes);
+            // each split of a member considers sqrt(m) + 1 of the m features, as MOA does by default
+            int noOfFeatureAttributes = noOfAttributes - 1;
+            int subspaceSize = Math.min(noOfFeatureAttributes,
+                    (int) Math.round(Math.sqrt(noOfFeatureAttributes)) + 1);
+            ARFHoeffdingTree template = new ARFHoeffdingTree();
+            template.gracePeriodOption.setValue(config.getGracePeriod());
+            template.splitConfidenceOption.setValue(config.getAllowableSplitError());
+            template.tieThresholdOption.setValue(config.getTieBreakThreshold());
+            template.subspaceSizeOption.setValue(subspaceSize);
+            template.setModelContext(streamHeader);
+            template.prepareForUse();
+            members = new Member[config.getEnsembleSize()];
+            for (int i = 0; i < members.length; i++) {
+                members[i] = new Member(template, i);
+            }
+            classes = new LabelDictionary();
+            createTrainingInstances();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Train the members of the model on event instance. Once all the class labels have been seen, the prequential
+     * accuracy of the model is evaluated with the votes of the members before they are trained on the event.
+     *
+     * @param modelEvaluation Prequential Model Evaluator.
+     * @param cepEvent        event data
+     * @param classLabel      class label of the cepEvent
+     * @param executor        runs the members in parallel
+     * @return Prequential accuracy, or 0 if not all class labels have been seen
+     */
+    public double trainOnEvent(ClassifierPrequentialModelEvaluation modelEvaluation, double[] cepEvent,
+                               String classLabel, EnsembleExecutor executor) {
+        long stamp = lock.writeLock();
+        try {
+            version++;
+            boolean evaluated = classes.size() == noOfClasses;
+            int classIndex = noOfFeatures - 1;
+            System.arraycopy(cepEvent, 0, trainValues, 0, classIndex);
+            trainValues[classIndex] = addClass(classLabel);
+            executor.forEach(members.length, i -> members[i].train(lambda));
+            if (!evaluated) {
+                return 0;
+            }
+            Arrays.fill(trainVotes, 0);
+            for (Member member : members) {
+                addVotes(trainVotes, member.trainVotes);
+            }
+            modelEvaluation.addResult(trainInstance, trainVotes);
+            return MathUtil.roundOff(modelEvaluation.getFractionCorrectlyClassified(), 3);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Predict the class label for event with feature attributes, with the votes of the members weighted by their
+     * accuracy
+     *
+     * @param cepEvent Event data.
+     * @param executor runs the members in parallel
+     * @return predicted class label, probability of the prediction.
+     */
+    public Object[] getPrediction(double[] cepEvent, EnsembleExecutor executor) {
+        long stamp = lock.readLock();
+        try {
+            Instance testInstance = createMOAInstance(cepEvent);
+            double[][] memberVotes = new double[members.length][];
+            executor.forEach(members.length, i -> memberVotes[i] = members[i].getWeightedVotes(testInstance));
+            double[] votes = new double[noOfClasses];
+            for (double[] vote : memberVotes) {
+                addVotes(votes, vote);
+            }
+            int classIndex = CoreUtils.argMaxIndex(votes);
+            double confidenceLevel = MathUtil.roundOff((CoreUtils.argMax(votes) / MathUtil.sum(votes)), 3);
+            return new Object[]{classes.getLabel(classIndex), confidenceLevel};
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private static void addVotes(double[] votes, double[] memberVotes) {
+        for (int i = 0; i < memberVotes.length && i < votes.length; i++) {
+            votes[i] += memberVotes[i];
+        }
+    }
+
+    /**
+     * Create the instances reused for training, backed by an array which is overwritten for each event. Each
+     * member has its own instance, as the weight of the event differs between the members.
+     */
+    private void createTrainingInstances() {
+        trainValues = new double[noOfFeatures];
+        trainInstance = createMOAInstance(trainValues);
+        trainVotes = new double[noOfClasses];
+        for (Member member : members) {
+            member.instance = createMOAInstance(trainValues);
+        }
+    }
+
+    private Instance createMOAInstance(double[] cepEvent) {
+        Instance instance = new DenseInstance(1.0D, cepEvent);
+        instance.setDataset(streamHeader);
+        return instance;
+    }
+
+    private InstancesHeader createMOAInstanceHeader(int numberOfAttributes) {
+        List<Attribute> attributes = new ArrayList<Attribute>();
+        for (int i = 0; i < numberOfAttributes - 1; i++) {
+            attributes.add(new Attribute("numeric" + (i + 1)));
+        }
+        List<String> classLabels = new ArrayList<String>();
+        for (int i = 0; i < this.noOfClasses; i++) {
+            classLabels.add("class" + (i + 1));
+        }
+        attributes.add(new Attribute("class", classLabels));
+        InstancesHeader streamHeader = new InstancesHeader(new Instances("AdaptiveRandomForest", attributes, 0));
+        streamHeader.setClassIndex(numberOfAttributes - 1);
+        return streamHeader;
+    }
+
+    private int addClass(String label) {
+        int index = classes.indexOf(label);
+        if (index >= 0) {
+            return index;
+        }
+        if (classes.size() < noOfClasses) {
+            return classes.add(label);
+        }
+        throw new SiddhiAppRuntimeException(String.format("Number of classes %s is expected from the model "
+                + "%s but found %s", noOfClasses, modelName, classes.size()));
+    }
+
+    public String getModelName() {
+        return modelName;
+    }
+
+    public InstancesHeader getStreamHeader() {
+        return streamHeader;
+    }
+
+    public int getNoOfFeatures() {
+        return noOfFeatures;
+    }
+
+    public List<String> getClasses() {
+        long stamp = lock.readLock();
+        try {
+            return this.classes.toList();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * @return number of members which are training a background tree after a warning of a drift
+     */
+    public long getNoOfBackgroundTrees() {
+        long stamp = lock.readLock();
+        try {
+            long noOfBackgroundTrees = 0;
+            if (members != null) {
+                for (Member member : members) {
+                    if (member.backgroundTree != null) {
+                        noOfBackgroundTrees++;
+                    }
+                }
+            }
+            return noOfBackgroundTrees;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * @return version of the model, which changes whenever the model is updated
+     */
+    public long getVersion() {
+        long stamp = lock.readLock();
+        try {
+            return version;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * A tree of the forest along with its drift detectors. A member is only accessed by one thread at a time.
+     */
+    private static class Member implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        // untrained tree copied to start a new tree
+        private final ARFHoeffdingTree template;
+        private final Random random;
+        private final ADWINChangeDetector warningDetector = createDetector(WARNING_DELTA);
+        private final ADWINChangeDetector driftDetector = createDetector(DRIFT_DELTA);
+        private ARFHoeffdingTree tree;
+        private ARFHoeffdingTree backgroundTree;
+        // prequential accuracy of the tree since it was started
+        private double noOfEvaluations;
+        private double noOfCorrectPredictions;
+
+        // instance of the event being trained on, and the weighted votes for it before training
+        private transient Instance instance;
+        private transient double[] trainVotes;
+
+        private Member(ARFHoeffdingTree template, int seed) {
+            this.template = template;
+            this.random = new Random(seed);
+            this.tree = newTree();
+        }
+
+        private static ADWINChangeDetector createDetector(double delta) {
+            ADWINChangeDetector detector = new ADWINChangeDetector();
+            detector.deltaAdwinOption.setValue(delta);
+            detector.resetLearning();
+            return detector;
+        }
+
+        private ARFHoeffdingTree newTree() {
+            ARFHoeffdingTree newTree = (ARFHoeffdingTree) template.copy();
+            newTree.setRandomSeed(random.nextInt());
+            newTree.resetLearning();
+            return newTree;
+        }
+
+        /**
+         * Test the tree on the instance of the member, then train the trees on it with a Poisson weight, and
+         * replace the tree if a drift is detected
+         */
+        private void train(double lambda) {
+            double[] votes = tree.getVotesForInstance(instance);
+            boolean correct = MathUtil.sum(votes) > 0 && CoreUtils.argMaxIndex(votes) == (int) instance.classValue();
+            trainVotes = weigh(votes);
+            noOfEvaluations++;
+            if (correct) {
+                noOfCorrectPredictions++;
+            }
+            int weight = MiscUtils.poisson(lambda, random);
+            if (weight > 0) {
+                instance.setWeight(weight);
+                tree.trainOnInstance(instance);
+                if (backgroundTree != null) {
+                    backgroundTree.trainOnInstance(instance);
+                }
+            }
+            double error = correct ? 0 : 1;
+            warningDetector.input(error);
+            if (warningDetector.getChange()) {
+                backgroundTree = newTree();
+                warningDetector.resetLearning();
+            }
+            driftDetector.input(error);
+            if (driftDetector.getChange()) {
+                tree = backgroundTree != null ? backgroundTree : newTree();
+                backgroundTree = null;
+                warningDetector.resetLearning();
+                driftDetector.resetLearning();
+                noOfEvaluations = 0;
+                noOfCorrectPredictions = 0;
+            }
+        }
+
+        private double[] getWeightedVotes(Instance testInstance) {
+            return weigh(tree.getVotesForInstance(testInstance));
+        }
+
+        /**
+         * Normalize the votes and weigh them by the accuracy of the tree. As MOA weighs by the accuracy in
+         * percent, a tree without correct predictions gets the weight of an accuracy of 1%.
+         */
+        private double[] weigh(double[] votes) {
+            double sum = MathUtil.sum(votes);
+            if (sum > 0) {
+                double accuracy = noOfCorrectPredictions > 0 ? noOfCorrectPredictions / noOfEvaluations : 0.01;
+                for (int i = 0; i < votes.length; i++) {
+                    votes[i] = votes[i] / sum * accuracy;
+                }
+            }
+            return votes;
+        }
+    }
+}
@@ -20,19 +20,18 @@ import io.siddhi.annotation.Example;
 import io.siddhi.annotation.Extension;
 import io.siddhi.annotation.Parameter;
 import io.siddhi.annotation.ReturnAttribute;
+import io.siddhi.annotation.SystemParameter;
 import io.siddhi.annotation.util.DataType;
 import io.siddhi.core.config.SiddhiQueryContext;
-import io.siddhi.core.event.ComplexEvent;
 import io.siddhi.core.event.ComplexEventChunk;
 import io.siddhi.core.event.stream.MetaStreamEvent;
 import io.siddhi.core.event.stream.StreamEvent;
 import io.siddhi.core.event.stream.StreamEventCloner;
 import io.siddhi.core.event.stream.holder.StreamEventClonerHolder;
 import io.siddhi.core.event.stream.populater.ComplexEventPopulater;
-import io.siddhi.core.exception.SiddhiAppRuntimeException;
+import io.siddhi.core.exception.SiddhiAppCreationException;
 import io.siddhi.core.executor.ConstantExpressionExecutor;
 import io.siddhi.core.executor.ExpressionExecutor;
-import io.siddhi.core.executor.VariableExpressionExecutor;
 import io.siddhi.core.query.processor.ProcessingMode;
 import io.siddhi.core.query.processor.Processor;
 import io.siddhi.core.query.processor.stream.StreamProcessor;
@@ -42,9 +41,13 @@ import io.siddhi.core.util.snapshot.state.StateFactory;
 import io.siddhi.query.api.definition.AbstractDefinition;
 import io.siddhi.query.api.definition.Attribute;
 import io.siddhi.query.api.exception.SiddhiAppValidationException;
-import org.wso2.extension.siddhi.gpl.execution.streamingml.classification.hoeffdingtree.util.AdaptiveHoeffdingModelsHolder;
 import org.wso2.extension.siddhi.gpl.execution.streamingml.classification.hoeffdingtree.util.AdaptiveHoeffdingTreeModel;
 import org.wso2.extension.siddhi.gpl.execution.streamingml.util.CoreUtils;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.FeatureExtractor;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.MappedModelStore;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.ModelCheckpoint;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.ModelRegistry;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.ModelStatistics;
 
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -65,10 +68,26 @@ import java.util.Map;
                         description = "The name of the model to be used for prediction.",
                         type = {DataType.STRING})
         },
+        systemParameter = {
+                @SystemParameter(name = "predictionOutput",
+                        description = "Whether the prediction is the class label (`label`), or the index of the "
+                                + "class as an `int` (`index`). The classes are indexed in the order their labels "
+                                + "are first seen by `streamingml:updateHoeffdingTree`.",
+                        defaultValue = "label",
+                        possibleParameters = {"label", "index"}),
+                @SystemParameter(name = "modelStoreDirectory",
+                        description = "The directory of the memory-mapped model files written by "
+                                + "`streamingml:updateHoeffdingTree`. If the model has not been built in this node "
+                                + "yet, it is read from its file, so that predictions start right away after a "
+                                + "restart.",
+                        defaultValue = "none",
+                        possibleParameters = "Any directory path")
+        },
         returnAttributes = {
                 @ReturnAttribute(name = "prediction",
-                        description = "The predicted class label.",
-                        type = {DataType.STRING}),
+                        description = "The predicted class label, or the index of the predicted class if the "
+                                + "`predictionOutput` is `index`.",
+                        type = {DataType.STRING, DataType.INT}),
                 @ReturnAttribute(name = "confidenceLevel",
                         description = "The probability of the prediction.",
                         type = {DataType.DOUBLE})
@@ -97,11 +116,18 @@ public class HoeffdingClassifierStreamProcessorExtension extends
         StreamProcessor<HoeffdingClassifierStreamProcessorExtension.ExtensionState> {
     private static final int MINIMUM_NUMBER_OF_FEATURES = 2;
     private static final int MINIMUM_NUMBER_OF_PARAMETERS = 1;
+    private static final String PREDICTION_OUTPUT = "predictionOutput";
+    private static final String LABEL_OUTPUT = "label";
+    private static final String INDEX_OUTPUT = "index";
 
     private String modelName;
+    private AdaptiveHoeffdingTreeModel model;
     private int noOfFeatures;
-    private List<VariableExpressionExecutor> featureVariableExpressionExecutors = new ArrayList<>();
-    private double[] cepEvent;
+    private FeatureExtractor featureExtractor;
+    private boolean classIndexOutput;
+    private ModelStatistics statistics;
+    // chunks of different threads are processed in parallel, hence each thread has its own buffer
+    private final ThreadLocal<double[]> featureBuffer = ThreadLocal.withInitial(() -> new double[noOfFeatures]);
     //set attributes for Output Stream
     private List<Attribute> attributes = new ArrayList<Attribute>();
 
@@ -146,16 +172,28 @@ public class HoeffdingClassifierStreamProcessorExtension extends
                 throw new SiddhiAppValidationException("Parameter model.name must be a constant but found "
                         + attributeExpressionExecutors[0].getClass().getCanonicalName());
             }
-            featureVariableExpressionExecutors = CoreUtils
+            featureExtractor = new FeatureExtractor(CoreUtils
                     .extractAndValidateFeatures(inputDefinition, attributeExpressionExecutors,
-                            (attributeExpressionLength - noOfFeatures), noOfFeatures);
-            AdaptiveHoeffdingTreeModel model
-                    = AdaptiveHoeffdingModelsHolder.getInstance().getHoeffdingModel(modelName);
-            if (!CoreUtils.isInitialized(model, (noOfFeatures + 1))) {
+                            (attributeExpressionLength - noOfFeatures), noOfFeatures), modelName);
+            model = ModelRegistry.getInstance().getModel(AdaptiveHoeffdingTreeModel.class, modelName);
+            MappedModelStore modelStore = MappedModelStore.fromConfig(configReader);
+            if (model == null && modelStore != null) {
+                model = ModelRegistry.getInstance().getOrCreateModel(AdaptiveHoeffdingTreeModel.class, modelName,
+                        name -> modelStore.load(name, AdaptiveHoeffdingTreeModel::fromSnapshot));
+            }
+            if (model == null || !CoreUtils.isInitialized(model, (noOfFeatures + 1))) {
                 throw new SiddhiAppValidationException(String.format("Model [%s] needs to initialized "
                         + "prior to be used with streamingml:hoeffdingTreeClassifier. "
                         + "Perform streamingml:updateHoeffdingTree process first.", modelName));
             }
+            String predictionOutput = configReader.readConfig(PREDICTION_OUTPUT, LABEL_OUTPUT).trim();
+            if (INDEX_OUTPUT.equalsIgnoreCase(predictionOutput)) {
+                classIndexOutput = true;
+            } else if (!LABEL_OUTPUT.equalsIgnoreCase(predictionOutput)) {
+                throw new SiddhiAppCreationException(String.format("%s should be either %s or %s but found %s",
+                        PREDICTION_OUTPUT, LABEL_OUTPUT, INDEX_OUTPUT, predictionOutput));
+            }
+            statistics = ModelStatistics.create(siddhiQueryContext, modelPrefix, "prediction");
         } else {
             throw new SiddhiAppValidationException(String.format("Invalid number of parameters for "
                             + "streamingml:hoeffdingTreeClassifier. This Stream Processor requires "
@@ -163,39 +201,29 @@ public class HoeffdingClassifierStreamProcessorExtension extends
                             + " but found %s parameters", (MINIMUM_NUMBER_OF_PARAMETERS + MINIMUM_NUMBER_OF_FEATURES),
                     MINIMUM_NUMBER_OF_FEATURES, attributeExpressionExecutors.length));
         }
-        attributes.add(new Attribute("prediction", Attribute.Type.STRING));
+        attributes.add(new Attribute("prediction", classIndexOutput ? Attribute.Type.INT : Attribute.Type.STRING));
         attributes.add(new Attribute("confidenceLevel", Attribute.Type.DOUBLE));
-        return () -> new ExtensionState();
+        return () -> new ExtensionState(model);
     }
 
     @Override
     protected void process(ComplexEventChunk<StreamEvent> streamEventChunk, Processor nextProcessor,
                            StreamEventCloner streamEventCloner, ComplexEventPopulater complexEventPopulater,
                            ExtensionState state) {
-        synchronized (this) {
-            while (streamEventChunk.hasNext()) {
-                ComplexEvent complexEvent = streamEventChunk.next();
-                cepEvent = new double[noOfFeatures];
-                // Set feature_attributes
-                for (int i = 0; i < noOfFeatures; i++) {
-                    try {
-                        cepEvent[i] = ((Number) featureVariableExpressionExecutors.get(i)
-                                .execute(complexEvent)).doubleValue();
-                    } catch (ClassCastException e) {
-                        throw new SiddhiAppRuntimeException(String.format("Incompatible attribute feature type"
-                                + " at position %s. Not of any numeric type. Please refer the stream definition "
-                                + "for Model[%s]", (i + 1), modelName));
-                    }
-                }
-                AdaptiveHoeffdingTreeModel model = AdaptiveHoeffdingModelsHolder.getInstance()
-                        .getHoeffdingModel(modelName);
-                Object[] outputData = model.getPrediction(cepEvent);
-                int indexPredict = (int) outputData[0];
-                outputData[0] = model.getClasses().get(indexPredict);
-                complexEventPopulater.populateComplexEvent(complexEvent, outputData);
-            }
-            nextProcessor.process(streamEventChunk);
+        // predictions only take the read lock of the model, hence chunks from different threads are
+        // processed in parallel
+        double[] cepEvent = featureBuffer.get();
+        statistics.markIn();
+        while (streamEventChunk.hasNext()) {
+            StreamEvent streamEvent = streamEventChunk.next();
+            statistics.eventIn();
+            // Set feature_attributes
+            featureExtractor.extractFeatures(streamEvent, cepEvent);
+            Object[] outputData = model.getPrediction(cepEvent, classIndexOutput);
+            complexEventPopulater.populateComplexEvent(streamEvent, outputData);
         }
+        statistics.markOut();
+        nextProcessor.process(streamEventChunk);
     }
 
 
@@ -205,7 +233,7 @@ public class HoeffdingClassifierStreamProcessorExtension extends
 
     @Override
     public void stop() {
-        AdaptiveHoeffdingModelsHolder.getInstance().deleteHoeffdingModel(modelName);
+        ModelRegistry.getInstance().deleteModel(AdaptiveHoeffdingTreeModel.class, modelName);
     }
 
 
@@ -221,6 +249,12 @@ public class HoeffdingClassifierStreamProcessorExtension extends
     }
 
     static class ExtensionState extends State {
+        private final AdaptiveHoeffdingTreeModel model;
+        private final ModelCheckpoint checkpoint = new ModelCheckpoint();
+
+        ExtensionState(AdaptiveHoeffdingTreeModel model) {
+            this.model = model;
+        }
 
         @Override
         public boolean canDestroy() {
@@ -230,16 +264,17 @@ public class HoeffdingClassifierStreamProcessorExtension extends
         @Override
         public Map<String, Object> snapshot() {
             Map<String, Object> currentState = new HashMap<>();
-            currentState.put("AdaptiveHoeffdingModelsMap", AdaptiveHoeffdingModelsHolder.
-                    getInstance().getClonedHoeffdingModelMap());
+            if (checkpoint.isSnapshotRequired(model.getVersion())) {
+                currentState.put("AdaptiveHoeffdingModelsMap", ModelCheckpoint.toBase(model.toSnapshot()));
+            }
             return currentState;
         }
 
         @Override
         public void restore(Map<String, Object> state) {
-            AdaptiveHoeffdingModelsHolder.getInstance().
-                    setHoeffdingModelMap((Map<String, AdaptiveHoeffdingTreeModel>) state.
-                            get("AdaptiveHoeffdingModelsMap"));
+            CoreUtils.restoreHoeffdingModel(model, ModelCheckpoint.getLatestState(
+                    state.get("AdaptiveHoeffdingModelsMap")));
+            checkpoint.reset();
         }
     }
 }
@@ -20,16 +20,16 @@ import io.siddhi.annotation.Example;
 import io.siddhi.annotation.Extension;
 import io.siddhi.annotation.Parameter;
 import io.siddhi.annotation.ReturnAttribute;
+import io.siddhi.annotation.SystemParameter;
 import io.siddhi.annotation.util.DataType;
 import io.siddhi.core.config.SiddhiQueryContext;
-import io.siddhi.core.event.ComplexEvent;
 import io.siddhi.core.event.ComplexEventChunk;
 import io.siddhi.core.event.stream.MetaStreamEvent;
 import io.siddhi.core.event.stream.StreamEvent;
 import io.siddhi.core.event.stream.StreamEventCloner;
 import io.siddhi.core.event.stream.holder.StreamEventClonerHolder;
 import io.siddhi.core.event.stream.populater.ComplexEventPopulater;
-import io.siddhi.core.exception.SiddhiAppRuntimeException;
+import io.siddhi.core.exception.SiddhiAppCreationException;
 import io.siddhi.core.executor.ConstantExpressionExecutor;
 import io.siddhi.core.executor.ExpressionExecutor;
 import io.siddhi.core.executor.VariableExpressionExecutor;
@@ -44,9 +44,16 @@ import io.siddhi.query.api.definition.Attribute;
 import io.siddhi.query.api.exception.SiddhiAppValidationException;
 import org.apache.log4j.Logger;
 import org.wso2.extension.siddhi.gpl.execution.streamingml.classification.ClassifierPrequentialModelEvaluation;
-import org.wso2.extension.siddhi.gpl.execution.streamingml.classification.hoeffdingtree.util.AdaptiveHoeffdingModelsHolder;
 import org.wso2.extension.siddhi.gpl.execution.streamingml.classification.hoeffdingtree.util.AdaptiveHoeffdingTreeModel;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.classification.hoeffdingtree.util.HoeffdingTreeConfig;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.AsyncModelTrainer;
 import org.wso2.extension.siddhi.gpl.execution.streamingml.util.CoreUtils;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.FeatureExtractor;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.MappedModelStore;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.ModelCheckpoint;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.ModelEvents;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.ModelRegistry;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.ModelStatistics;
 
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -117,6 +124,42 @@ import java.util.Map;
                         description = "The features of the model that should be attributes of the stream.",
                         type = {DataType.DOUBLE, DataType.INT})
         },
+        systemParameter = {
+                @SystemParameter(name = "dynamicClasses",
+                        description = "Whether a class label beyond `no.of.classes` adds a class to the model "
+                                + "(`true`), or fails the event (`false`). The tree keeps what it has learnt when a "
+                                + "class is added.",
+                        defaultValue = "false",
+                        possibleParameters = {"true", "false"}),
+                @SystemParameter(name = "trainingMode",
+                        description = "Whether the model is trained on the event processing thread (`sync`), or on "
+                                + "a dedicated worker thread fed through a bounded queue (`async`). In the `async` "
+                                + "mode, the events are output without waiting for the training, with the "
+                                + "accuracy most recently computed by the worker.",
+                        defaultValue = "sync",
+                        possibleParameters = {"sync", "async"}),
+                @SystemParameter(name = "trainingQueueSize",
+                        description = "The number of events that can wait to be trained on in the `async` training "
+                                + "mode. It is rounded up to a power of two.",
+                        defaultValue = "1024",
+                        possibleParameters = "Any positive integer"),
+                @SystemParameter(name = "backpressurePolicy",
+                        description = "How the events are handled when the training queue is full in the `async` "
+                                + "training mode. `block` waits for space in the queue, `dropOldest` discards the "
+                                + "oldest queued event, and `sample` discards every second event once the queue is "
+                                + "half full and every event once it is full.",
+                        defaultValue = "block",
+                        possibleParameters = {"block", "dropOldest", "sample"}),
+                @SystemParameter(name = "modelStoreDirectory",
+                        description = "The directory in which the model is kept in a memory-mapped file, named "
+                                + "after the Siddhi app and the model. The file is written in the background after "
+                                + "each checkpoint of the Siddhi app at which the model has changed, and when the app "
+                                + "is shut down, and the model is read from it when the app is started, so that a "
+                                + "restarted node uses the model right away. "
+                                + "The model is not kept in a file if the directory is `none`.",
+                        defaultValue = "none",
+                        possibleParameters = "Any directory path")
+        },
         returnAttributes = {
                 @ReturnAttribute(name = "accuracy",
                         description = "The accuracy evaluation of the model(Prequnetial Evaluation)",
@@ -160,18 +203,25 @@ public class HoeffdingClassifierUpdaterStreamProcessorExtension extends
 
     private static final int MINIMUM_NUMBER_OF_FEATURES = 3;
     private static final int MINIMUM_NUMBER_OF_PARAMETERS = 2;
-    private static final int NUMBER_OF_HYPER_PARAMETERS = 7;
+    private static final int NUMBER_OF_HYPER_PARAMETERS = HoeffdingTreeConfig.NUMBER_OF_HYPER_PARAMETERS;
+    private static final String DYNAMIC_CLASSES = "dynamicClasses";
 
     private int noOfFeatures;
     private int noOfParameters;
     private int noOfClasses;
     private String modelName;
+    private AdaptiveHoeffdingTreeModel model;
 
-    private List<VariableExpressionExecutor> featureVariableExpressionExecutors = new ArrayList<>();
+    private FeatureExtractor featureExtractor;
     private VariableExpressionExecutor classLabelVariableExecutor;
 
     private double[] cepEvent;
+    private final Object[] outputData = new Object[1];
     private ClassifierPrequentialModelEvaluation evolutionModel;
+    private AsyncModelTrainer trainer;
+    private MappedModelStore modelStore;
+    private ModelStatistics statistics;
+    private volatile double accuracy;
     //set attributes for OutputStream
     private List<Attribute> attributes = new ArrayList<>();
 
@@ -229,9 +279,10 @@ public class HoeffdingClassifierUpdaterStreamProcessorExtension extends
                                 + attributeExpressionExecutors[1].getClass().getCanonicalName());
             }
             if (noOfFeatures > 2) {
-                featureVariableExpressionExecutors = CoreUtils
+                featureExtractor = new FeatureExtractor(CoreUtils
                         .extractAndValidateFeatures(inputDefinition, attributeExpressionExecutors,
-                                (attributeExpressionLength - noOfFeatures), (noOfFeatures - 1));
+                                (attributeExpressionLength - noOfFeatures), (noOfFeatures - 1)), modelName);
+                cepEvent = new double[noOfFeatures];
 
                 classLabelVariableExecutor = CoreUtils
                         .extractAndValidateClassLabel(inputDefinition, attributeExpressionExecutors,
@@ -241,14 +292,22 @@ public class HoeffdingClassifierUpdaterStreamProcessorExtension extends
                         "Number of features must be greater than 2 but" + " found "
                                 + noOfFeatures);
             }
-            AdaptiveHoeffdingTreeModel model
-                    = AdaptiveHoeffdingModelsHolder.getInstance().getHoeffdingModel(modelName);
+            modelStore = MappedModelStore.fromConfig(configReader);
+            model = ModelRegistry.getInstance().getOrCreateModel(AdaptiveHoeffdingTreeModel.class, modelName,
+                    name -> MappedModelStore.loadOrCreate(modelStore, name, AdaptiveHoeffdingTreeModel::fromSnapshot,
+                            AdaptiveHoeffdingTreeModel::new));
             if (!CoreUtils.isInitialized(model, noOfFeatures)) {
                 if (logger.isDebugEnabled()) {
                     logger.debug(String.format("Model [%s] has not been initialized.", modelName));
                 }
                 model.init(noOfFeatures, noOfClasses);
             }
+            String dynamicClasses = configReader.readConfig(DYNAMIC_CLASSES, "false").trim();
+            if (!"true".equalsIgnoreCase(dynamicClasses) && !"false".equalsIgnoreCase(dynamicClasses)) {
+                throw new SiddhiAppCreationException(String.format("%s should be either true or false but found %s",
+                        DYNAMIC_CLASSES, dynamicClasses));
+            }
+            model.setDynamicClasses(Boolean.parseBoolean(dynamicClasses));
             if (noOfParameters > MINIMUM_NUMBER_OF_PARAMETERS) {
                 //configuation with hyper-parameters
                 if (noOfParameters == (MINIMUM_NUMBER_OF_PARAMETERS + NUMBER_OF_HYPER_PARAMETERS)) {
@@ -256,7 +315,8 @@ public class HoeffdingClassifierUpdaterStreamProcessorExtension extends
                     if (logger.isDebugEnabled()) {
                         logger.debug("Hoeffding Adaptive Tree is configured with hyper-parameters");
                     }
-                    configureModelWithHyperParameters(modelName);
+                    HoeffdingTreeConfig.fromParameters(attributeExpressionExecutors, MINIMUM_NUMBER_OF_PARAMETERS)
+                            .applyTo(model);
                 } else {
                     throw new SiddhiAppValidationException(String.format("Number of hyper-parameters needed for model"
                                     + " manual configuration is %s but found %s",
@@ -266,6 +326,12 @@ public class HoeffdingClassifierUpdaterStreamProcessorExtension extends
             }
             evolutionModel = new ClassifierPrequentialModelEvaluation();
             evolutionModel.reset(noOfClasses);
+            trainer = AsyncModelTrainer.fromConfig(configReader, modelName, noOfFeatures,
+                    (features, classValue) -> accuracy = model.trainOnEvent(evolutionModel, features,
+                            (String) classValue));
+            statistics = ModelStatistics.create(siddhiQueryContext, modelPrefix, "training");
+            statistics.registerSizeGauge("noOfNodes", model::getNoOfNodes);
+            statistics.registerMemoryUsage(model);
         } else {
             throw new SiddhiAppValidationException(String.format("Invalid number of attributes for "
                             + "streamingml:updateHoeffdingTree. This Stream Processor requires at least %s ,"
@@ -274,7 +340,7 @@ public class HoeffdingClassifierUpdaterStreamProcessorExtension extends
                     (attributeExpressionLength - noOfFeatures), noOfFeatures));
         }
         attributes.add(new Attribute("accuracy", Attribute.Type.DOUBLE));
-        return () -> new ExtensionState();
+        return () -> new ExtensionState(model, trainer, modelStore);
     }
 
 
@@ -283,171 +349,41 @@ public class HoeffdingClassifierUpdaterStreamProcessorExtension extends
                            StreamEventCloner streamEventCloner, ComplexEventPopulater complexEventPopulater,
                            ExtensionState state) {
         synchronized (this) {
+            statistics.markIn();
             while (streamEventChunk.hasNext()) {
-                ComplexEvent complexEvent = streamEventChunk.next();
-                String classValue = classLabelVariableExecutor.execute(complexEvent).toString();
-                cepEvent = new double[noOfFeatures];
-                for (int i = 0; i < noOfFeatures - 1; i++) {
-                    try {
-                        cepEvent[i] = ((Number) featureVariableExpressionExecutors.get(i)
-                                .execute(complexEvent)).doubleValue();
-                    } catch (ClassCastException e) {
-                        throw new SiddhiAppRuntimeException(String.format("Incompatible attribute feature type"
-                                + " at position %s. Not of any numeric type. Please refer the stream definition "
-                                + "for Model[%s]", (i + 1), modelName));
-                    }
-                }
-                AdaptiveHoeffdingTreeModel model = AdaptiveHoeffdingModelsHolder.getInstance()
-                        .getHoeffdingModel(modelName);
-                double accuracy;
-                if (model.getClasses().size() == noOfClasses) {
-                    accuracy = model.evaluationTrainOnEvent(evolutionModel, cepEvent, classValue);
+                StreamEvent streamEvent = streamEventChunk.next();
+                statistics.eventIn();
+                String classValue = classLabelVariableExecutor.execute(streamEvent).toString();
+                featureExtractor.extractFeatures(streamEvent, cepEvent);
+                if (trainer == null) {
+                    outputData[0] = model.trainOnEvent(evolutionModel, cepEvent, classValue);
                 } else {
-                    model.trainOnEvent(cepEvent, classValue);
-                    accuracy = 0;
+                    trainer.offer(cepEvent, classValue);
+                    outputData[0] = accuracy;
                 }
-                complexEventPopulater.populateComplexEvent(complexEvent, new Object[]{accuracy});
+                complexEventPopulater.populateComplexEvent(streamEvent, outputData);
             }
+            statistics.markOut();
             nextProcessor.process(streamEventChunk);
         }
     }
 
-    private void configureModelWithHyperParameters(String modelName) {
-        //default configurations for Hoeffding Adaptive tree
-        int gracePeriod = 200;
-        int splittingCriteria = 1;
-        double allowableSplitError = 1e-7;
-        double tieBreakThreshold = 0.05;
-        boolean binarySplit = false;
-        boolean prePruning = false;
-        int leafPredictionStrategy = 2;
-
-        int parameterPosition = MINIMUM_NUMBER_OF_PARAMETERS;
-
-        List<String> hyperParameters = new ArrayList<>();
-        hyperParameters.add("GracePeriod");
-        hyperParameters.add("Splitting Criteria");
-        hyperParameters.add("Allowable Split Error");
-        hyperParameters.add("Tie Break Threshold");
-        hyperParameters.add("Binary Split");
-        hyperParameters.add("Prepruning");
-        hyperParameters.add("Leaf Prediction Strategy");
-
-        for (int i = parameterPosition; i < noOfParameters; i++) {
-            if (attributeExpressionExecutors[i] instanceof ConstantExpressionExecutor) {
-                switch (i) {
-                    case 2:
-                        if (attributeExpressionExecutors[2].getReturnType() == Attribute.Type.INT) {
-                            gracePeriod = (Integer) ((ConstantExpressionExecutor)
-                                    attributeExpressionExecutors[2])
-                                    .getValue();
-                            parameterPosition++;
-                        } else {
-                            throw new SiddhiAppValidationException(String.format("GracePeriod must be an %s."
-                                            + " But found %s at position %s", Attribute.Type.INT,
-                                    attributeExpressionExecutors[2].getReturnType(), (i + 1)));
-                        }
-                        break;
-                    case 3:
-                        if (attributeExpressionExecutors[3].getReturnType() == Attribute.Type.INT) {
-                            splittingCriteria = (Integer) ((ConstantExpressionExecutor)
-                                    attributeExpressionExecutors[3]).getValue();
-                            parameterPosition++;
-                        } else {
-                            throw new SiddhiAppValidationException(String.format("Splitting Criteria must be an %s. "
-                                            + "0=InfoGainSplitCriterion and 1=GiniSplitCriterion"
-                                            + " But found %s in position %s.", Attribute.Type.INT,
-                                    attributeExpressionExecutors[3].getReturnType(), (i + 1)));
-                        }
-                        break;
-                    case 4:
-                        if (attributeExpressionExecutors[4].getReturnType() == Attribute.Type.DOUBLE) {
-                            allowableSplitError = (double) ((ConstantExpressionExecutor)
-                                    attributeExpressionExecutors[4])
-                                    .getValue();
-                            parameterPosition++;
-                        } else {
-                            throw new SiddhiAppValidationException(String.format("Allowable Split Error must be a "
-                                            + "%s. But found %s at position %s.", Attribute.Type.DOUBLE,
-                                    attributeExpressionExecutors[4].getReturnType(), (i + 1)));
-                        }
-                        break;
-                    case 5:
-                        Attribute.Type tieThresholdType = attributeExpressionExecutors[5].getReturnType();
-                        if (CoreUtils.isNumeric(tieThresholdType)) {
-                            tieBreakThreshold = ((Number) ((ConstantExpressionExecutor)
-                                    attributeExpressionExecutors[5]).getValue()).doubleValue();
-                            parameterPosition++;
-                        } else {
-                            throw new SiddhiAppValidationException(String.format("Tie Break Threshold must be "
-                                            + "a %s. But found %s in position %s.", Attribute.Type.DOUBLE,
-                                    attributeExpressionExecutors[5].getReturnType(), (i + 1)));
-                        }
-                        break;
-                    case 6:
-                        if (attributeExpressionExecutors[6].getReturnType() == Attribute.Type.BOOL) {
-                            binarySplit = (boolean) ((ConstantExpressionExecutor)
-                                    attributeExpressionExecutors[6]).getValue();
-                            parameterPosition++;
-                        } else {
-                            throw new SiddhiAppValidationException(String.format("Enabling Binary Split must be "
-                                            + "a %s. But found %s in position %s.", Attribute.Type.BOOL,
-                                    attributeExpressionExecutors[6].getReturnType(), (i + 1)));
-                        }
-                        break;
-                    case 7:
-                        if (attributeExpressionExecutors[7].getReturnType() == Attribute.Type.BOOL) {
-                            prePruning = (boolean) ((ConstantExpressionExecutor)
-                                    attributeExpressionExecutors[7])
-                                    .getValue();
-                            parameterPosition++;
-                        } else {
-                            throw new SiddhiAppValidationException(String.format("Disabling PrePruning must be "
-                                            + "a %s. But found %s in position %s.", Attribute.Type.BOOL,
-                                    attributeExpressionExecutors[7].getReturnType(), (i + 1)));
-                        }
-                        break;
-                    case 8:
-                        if (attributeExpressionExecutors[8].getReturnType() == Attribute.Type.INT) {
-                            leafPredictionStrategy = (int) ((ConstantExpressionExecutor)
-                                    attributeExpressionExecutors[8])
-                                    .getValue();
-                            parameterPosition++;
-                        } else {
-                            throw new SiddhiAppValidationException(String.format("Leaf Prediction Strategy must "
-                                            + "be an %s. 0=majority class, 1=naive Bayes, 2=naive Bayes adaptive. "
-                                            + "But found %s in position %s.", Attribute.Type.INT,
-                                    attributeExpressionExecutors[8].getReturnType(), (i + 1)));
-                        }
-                        break;
-                    default:
-                }
-            } else {
-                throw new SiddhiAppValidationException(String.format("%s must be (ConstantExpressionExecutor) "
-                                + "but found %s in position %s.", hyperParameters.get(i - MINIMUM_NUMBER_OF_PARAMETERS),
-                        attributeExpressionExecutors[i].getClass().getCanonicalName(), (i + 1)));
-            }
-        }
-
-        if (parameterPosition == (NUMBER_OF_HYPER_PARAMETERS + MINIMUM_NUMBER_OF_PARAMETERS)) {
-            AdaptiveHoeffdingTreeModel model = AdaptiveHoeffdingModelsHolder.getInstance()
-                    .getHoeffdingModel(modelName);
-            model.setConfigurations(gracePeriod, splittingCriteria, allowableSplitError,
-                    tieBreakThreshold, binarySplit, prePruning, leafPredictionStrategy);
-        } else {
-            throw new SiddhiAppValidationException("Number of hyper-parameters needed for model "
-                    + "manual configuration is " + NUMBER_OF_HYPER_PARAMETERS + " but found "
-                    + (parameterPosition - MINIMUM_NUMBER_OF_PARAMETERS));
-        }
-    }
-
     @Override
     public void start() {
+        if (trainer != null) {
+            trainer.start();
+        }
     }
 
     @Override
     public void stop() {
-        AdaptiveHoeffdingModelsHolder.getInstance().deleteHoeffdingModel(modelName);
+        if (trainer != null) {
+            trainer.stop();
+        }
+        if (modelStore != null) {
+            modelStore.save(modelName, model::toMappedSnapshot);
+        }
+        ModelRegistry.getInstance().deleteModel(AdaptiveHoeffdingTreeModel.class, modelName);
     }
 
     @Override
@@ -461,6 +397,16 @@ public class HoeffdingClassifierUpdaterStreamProcessorExtension extends
     }
 
     static class ExtensionState extends State {
+        private final AdaptiveHoeffdingTreeModel model;
+        private final AsyncModelTrainer trainer;
+        private final MappedModelStore modelStore;
+        private final ModelCheckpoint checkpoint = new ModelCheckpoint();
+
+        ExtensionState(AdaptiveHoeffdingTreeModel model, AsyncModelTrainer trainer, MappedModelStore modelStore) {
+            this.model = model;
+            this.trainer = trainer;
+            this.modelStore = modelStore;
+        }
 
         @Override
         public boolean canDestroy() {
@@ -469,17 +415,32 @@ public class HoeffdingClassifierUpdaterStreamProcessorExtension extends
 
         @Override
         public Map<String, Object> snapshot() {
+            if (trainer != null) {
+                trainer.flush();
+            }
+            ModelEvents.ModelSnapshot event = ModelEvents.beginSnapshot(model.getModelName(), false);
             Map<String, Object> currentState = new HashMap<>();
-            currentState.put("AdaptiveHoeffdingModelsMap", AdaptiveHoeffdingModelsHolder.
-                    getInstance().getClonedHoeffdingModelMap());
+            boolean snapshotRequired = checkpoint.isSnapshotRequired(model.getVersion());
+            if (snapshotRequired) {
+                if (modelStore != null) {
+                    modelStore.saveInBackground(model.getModelName(), model::toMappedSnapshot);
+                }
+                currentState.put("AdaptiveHoeffdingModelsMap", checkpoint.toSnapshot(model.toSnapshot()));
+            }
+            ModelEvents.commitSnapshot(event, !snapshotRequired);
             return currentState;
         }
 
         @Override
         public void restore(Map<String, Object> state) {
-            AdaptiveHoeffdingModelsHolder.getInstance().
-                    setHoeffdingModelMap((Map<String, AdaptiveHoeffdingTreeModel>) state.
-                            get("AdaptiveHoeffdingModelsMap"));
+            if (trainer != null) {
+                trainer.flush();
+            }
+            ModelEvents.ModelSnapshot event = ModelEvents.beginSnapshot(model.getModelName(), true);
+            CoreUtils.restoreHoeffdingModel(model, ModelCheckpoint.getLatestState(
+                    state.get("AdaptiveHoeffdingModelsMap")));
+            checkpoint.reset();
+            ModelEvents.commitSnapshot(event, false);
         }
     }
 }
@@ -0,0 +1,243 @@
+/*
+ * Copyright (C) 2017 WSO2 Inc. (http://wso2.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.wso2.extension.siddhi.gpl.execution.streamingml.classification.hoeffdingtree;
+
+import io.siddhi.annotation.Example;
+import io.siddhi.annotation.Extension;
+import io.siddhi.annotation.Parameter;
+import io.siddhi.annotation.ReturnAttribute;
+import io.siddhi.annotation.SystemParameter;
+import io.siddhi.annotation.util.DataType;
+import io.siddhi.core.config.SiddhiQueryContext;
+import io.siddhi.core.event.ComplexEventChunk;
+import io.siddhi.core.event.stream.MetaStreamEvent;
+import io.siddhi.core.event.stream.StreamEvent;
+import io.siddhi.core.event.stream.StreamEventCloner;
+import io.siddhi.core.event.stream.holder.StreamEventClonerHolder;
+import io.siddhi.core.event.stream.populater.ComplexEventPopulater;
+import io.siddhi.core.exception.SiddhiAppCreationException;
+import io.siddhi.core.executor.ConstantExpressionExecutor;
+import io.siddhi.core.executor.ExpressionExecutor;
+import io.siddhi.core.executor.VariableExpressionExecutor;
+import io.siddhi.core.query.processor.ProcessingMode;
+import io.siddhi.core.query.processor.Processor;
+import io.siddhi.core.query.processor.stream.StreamProcessor;
+import io.siddhi.core.util.config.ConfigReader;
+import io.siddhi.core.util.snapshot.state.State;
+import io.siddhi.core.util.snapshot.state.StateFactory;
+import io.siddhi.query.api.definition.AbstractDefinition;
+import io.siddhi.query.api.definition.Attribute;
+import io.siddhi.query.api.exception.SiddhiAppValidationException;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.classification.hoeffdingtree.util.AdaptiveHoeffdingTreeModel;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.CoreUtils;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.FeatureExtractor;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.KeyedModels;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.ModelRegistry;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.ModelStatistics;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Predict using the Hoeffding Adaptive Tree model of a key.
+ * built via @{@link KeyedHoeffdingClassifierUpdaterStreamProcessorExtension}
+ */
+@Extension(
+        name = "keyedHoeffdingTreeClassifier",
+        namespace = "streamingml",
+        description = "This extension performs classification using the Hoeffding Adaptive Tree built for the value " +
+                "of a key attribute by `streamingml:updateKeyedHoeffdingTree`. If no model has been built for the " +
+                "key yet, or the model of the key has been evicted, the prediction and its confidence are `null`.",
+        parameters = {
+                @Parameter(name = "model.name",
+                        description = "The name of the family of models to be used for prediction.",
+                        type = {DataType.STRING}),
+                @Parameter(name = "model.key",
+                        description = "The attribute of the stream whose value selects the model to be used for " +
+                                "prediction.",
+                        type = {DataType.STRING, DataType.INT, DataType.LONG}),
+                @Parameter(name = "model.features",
+                        description = "The features of the model that should be attributes of the stream.",
+                        type = {DataType.DOUBLE, DataType.INT})
+        },
+        systemParameter = {
+                @SystemParameter(name = "predictionOutput",
+                        description = "Whether the prediction is the class label (`label`), or the index of the "
+                                + "class as an `int` (`index`). The classes are indexed in the order their labels "
+                                + "are first seen by the model of the key.",
+                        defaultValue = "label",
+                        possibleParameters = {"label", "index"})
+        },
+        returnAttributes = {
+                @ReturnAttribute(name = "prediction",
+                        description = "The predicted class label, or the index of the predicted class if the "
+                                + "`predictionOutput` is `index`.",
+                        type = {DataType.STRING, DataType.INT}),
+                @ReturnAttribute(name = "confidenceLevel",
+                        description = "The probability of the prediction.",
+                        type = {DataType.DOUBLE})
+        },
+        examples = {
+                @Example(
+                        syntax = "define stream StreamA (sensorId string, attribute_0 double, attribute_1 double, "
+                                + "attribute_2 double, attribute_3 double);\n"
+                                + "\n"
+                                + "from StreamA#streamingml:keyedHoeffdingTreeClassifier('model1', sensorId, "
+                                + " attribute_0, attribute_1, attribute_2, attribute_3) \n"
+                                + "select sensorId, attribute_0, attribute_1, attribute_2, attribute_3, "
+                                + "prediction, confidenceLevel insert into OutputStream;",
+                        description = "This query uses the Hoeffding Tree model of the `sensorId` in the family " +
+                                "`model1` to predict the label of the feature vector represented by " +
+                                "`attribute_0`, `attribute_1`, `attribute_2`, and `attribute_3`. The predicted " +
+                                "label along with the prediction confidence and the feature vector are output to " +
+                                "the `OutputStream` stream."
+                )
+        }
+)
+public class KeyedHoeffdingClassifierStreamProcessorExtension extends StreamProcessor<State> {
+    private static final int MINIMUM_NUMBER_OF_FEATURES = 2;
+    private static final int MINIMUM_NUMBER_OF_PARAMETERS = 2;
+    private static final String PREDICTION_OUTPUT = "predictionOutput";
+    private static final String LABEL_OUTPUT = "label";
+    private static final String INDEX_OUTPUT = "index";
+    // output of the keys without a model
+    private static final Object[] NO_PREDICTION = new Object[2];
+
+    private String modelName;
+    private KeyedModels<AdaptiveHoeffdingTreeModel> models;
+    private int noOfFeatures;
+    private FeatureExtractor featureExtractor;
+    private VariableExpressionExecutor keyVariableExecutor;
+    private boolean classIndexOutput;
+    private ModelStatistics statistics;
+    // chunks of different threads are processed in parallel, hence each thread has its own buffer
+    private final ThreadLocal<double[]> featureBuffer = ThreadLocal.withInitial(() -> new double[noOfFeatures]);
+    //set attributes for Output Stream
+    private List<Attribute> attributes = new ArrayList<Attribute>();
+
+    @Override
+    protected StateFactory<State> init(MetaStreamEvent metaStreamEvent, AbstractDefinition inputDefinition,
+                                       ExpressionExecutor[] attributeExpressionExecutors, ConfigReader configReader,
+                                       StreamEventClonerHolder streamEventClonerHolder,
+                                       boolean outputExpectsExpiredEvents, boolean findToBeExecuted,
+                                       SiddhiQueryContext siddhiQueryContext) {
+        String siddhiAppName = siddhiQueryContext.getSiddhiAppContext().getName();
+        String modelPrefix;
+        // the key attribute is not a feature of the models
+        noOfFeatures = inputDefinition.getAttributeList().size() - 1;
+        if (attributeExpressionExecutors.length >= (MINIMUM_NUMBER_OF_FEATURES + MINIMUM_NUMBER_OF_PARAMETERS)) {
+            if (noOfFeatures < MINIMUM_NUMBER_OF_FEATURES) {
+                throw new SiddhiAppValidationException(String.format("Invalid number of feature attributes for "
+                                + "streamingml:keyedHoeffdingTreeClassifier. This Stream Processor requires at "
+                                + "least %s feature attributes, but found %s feature attributes",
+                        MINIMUM_NUMBER_OF_FEATURES, noOfFeatures));
+            }
+            if (noOfFeatures != (attributeExpressionLength - MINIMUM_NUMBER_OF_PARAMETERS)) {
+                throw new SiddhiAppValidationException(String.format("Invalid number of feature attributes for "
+                                + "streamingml:keyedHoeffdingTreeClassifier. This Stream Processor is defined with "
+                                + "%s features, but found %s feature attributes",
+                        noOfFeatures, (attributeExpressionLength - MINIMUM_NUMBER_OF_PARAMETERS)));
+            }
+            if (attributeExpressionExecutors[0] instanceof ConstantExpressionExecutor) {
+                if (attributeExpressionExecutors[0].getReturnType() == Attribute.Type.STRING) {
+                    modelPrefix = (String) ((ConstantExpressionExecutor) attributeExpressionExecutors[0]).getValue();
+                    // model name = user given name + siddhi app name
+                    modelName = siddhiAppName + "." + modelPrefix;
+                } else {
+                    throw new SiddhiAppValidationException(
+                            "Invalid parameter type found for the model.name argument, "
+                                    + "required " + Attribute.Type.STRING
+                                    + " but found " + attributeExpressionExecutors[0].
+                                    getReturnType().toString());
+                }
+            } else {
+                throw new SiddhiAppValidationException("Parameter model.name must be a constant but found "
+                        + attributeExpressionExecutors[0].getClass().getCanonicalName());
+            }
+            keyVariableExecutor = CoreUtils.extractAndValidateKey(inputDefinition, attributeExpressionExecutors, 1);
+            featureExtractor = new FeatureExtractor(CoreUtils
+                    .extractAndValidateFeatures(inputDefinition, attributeExpressionExecutors,
+                            MINIMUM_NUMBER_OF_PARAMETERS, noOfFeatures), modelName);
+            models = ModelRegistry.getInstance().getKeyedModels(AdaptiveHoeffdingTreeModel.class, modelName);
+            if (models == null || !CoreUtils.isInitialized(models.getPrototype(), (noOfFeatures + 1))) {
+                throw new SiddhiAppValidationException(String.format("Models [%s] need to be initialized "
+                        + "prior to be used with streamingml:keyedHoeffdingTreeClassifier. "
+                        + "Perform streamingml:updateKeyedHoeffdingTree process first.", modelName));
+            }
+            String predictionOutput = configReader.readConfig(PREDICTION_OUTPUT, LABEL_OUTPUT).trim();
+            if (INDEX_OUTPUT.equalsIgnoreCase(predictionOutput)) {
+                classIndexOutput = true;
+            } else if (!LABEL_OUTPUT.equalsIgnoreCase(predictionOutput)) {
+                throw new SiddhiAppCreationException(String.format("%s should be either %s or %s but found %s",
+                        PREDICTION_OUTPUT, LABEL_OUTPUT, INDEX_OUTPUT, predictionOutput));
+            }
+            statistics = ModelStatistics.create(siddhiQueryContext, modelPrefix, "prediction");
+        } else {
+            throw new SiddhiAppValidationException(String.format("Invalid number of parameters for "
+                            + "streamingml:keyedHoeffdingTreeClassifier. This Stream Processor requires at least "
+                            + "%s parameters, namely, model.name, model.key and at least %s feature_attributes, "
+                            + "but found %s parameters", (MINIMUM_NUMBER_OF_PARAMETERS + MINIMUM_NUMBER_OF_FEATURES),
+                    MINIMUM_NUMBER_OF_FEATURES, attributeExpressionExecutors.length));
+        }
+        attributes.add(new Attribute("prediction", classIndexOutput ? Attribute.Type.INT : Attribute.Type.STRING));
+        attributes.add(new Attribute("confidenceLevel", Attribute.Type.DOUBLE));
+        return null;
+    }
+
+    @Override
+    protected void process(ComplexEventChunk<StreamEvent> streamEventChunk, Processor nextProcessor,
+                           StreamEventCloner streamEventCloner, ComplexEventPopulater complexEventPopulater,
+                           State state) {
+        // predictions only take the read lock of the models, hence chunks from different threads are
+        // processed in parallel
+        double[] cepEvent = featureBuffer.get();
+        statistics.markIn();
+        while (streamEventChunk.hasNext()) {
+            StreamEvent streamEvent = streamEventChunk.next();
+            statistics.eventIn();
+            AdaptiveHoeffdingTreeModel model = models.findModel(keyVariableExecutor.execute(streamEvent));
+            Object[] outputData;
+            if (model != null) {
+                featureExtractor.extractFeatures(streamEvent, cepEvent);
+                outputData = model.getPrediction(cepEvent, classIndexOutput);
+            } else {
+                outputData = NO_PREDICTION;
+            }
+            complexEventPopulater.populateComplexEvent(streamEvent, outputData);
+        }
+        statistics.markOut();
+        nextProcessor.process(streamEventChunk);
+    }
+
+    @Override
+    public void start() {
+    }
+
+    @Override
+    public void stop() {
+    }
+
+    @Override
+    public List<Attribute> getReturnAttributes() {
+        return attributes;
+    }
+
+    @Override
+    public ProcessingMode getProcessingMode() {
+        return ProcessingMode.BATCH;
+    }
+}
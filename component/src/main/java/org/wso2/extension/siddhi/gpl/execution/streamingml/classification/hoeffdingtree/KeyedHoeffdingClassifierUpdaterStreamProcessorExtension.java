@@ -0,0 +1,406 @@
+/*
+ * Copyright (C) 2017 WSO2 Inc. (http://wso2.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.wso2.extension.siddhi.gpl.execution.streamingml.classification.hoeffdingtree;
+
+import io.siddhi.annotation.Example;
+import io.siddhi.annotation.Extension;
+import io.siddhi.annotation.Parameter;
+import io.siddhi.annotation.ReturnAttribute;
+import io.siddhi.annotation.SystemParameter;
+import io.siddhi.annotation.util.DataType;
+import io.siddhi.core.config.SiddhiQueryContext;
+import io.siddhi.core.event.ComplexEventChunk;
+import io.siddhi.core.event.stream.MetaStreamEvent;
+import io.siddhi.core.event.stream.StreamEvent;
+import io.siddhi.core.event.stream.StreamEventCloner;
+import io.siddhi.core.event.stream.holder.StreamEventClonerHolder;
+import io.siddhi.core.event.stream.populater.ComplexEventPopulater;
+import io.siddhi.core.executor.ConstantExpressionExecutor;
+import io.siddhi.core.executor.ExpressionExecutor;
+import io.siddhi.core.executor.VariableExpressionExecutor;
+import io.siddhi.core.query.processor.ProcessingMode;
+import io.siddhi.core.query.processor.Processor;
+import io.siddhi.core.query.processor.stream.StreamProcessor;
+import io.siddhi.core.util.config.ConfigReader;
+import io.siddhi.core.util.snapshot.state.Snapshot;
+import io.siddhi.core.util.snapshot.state.State;
+import io.siddhi.core.util.snapshot.state.StateFactory;
+import io.siddhi.query.api.definition.AbstractDefinition;
+import io.siddhi.query.api.definition.Attribute;
+import io.siddhi.query.api.exception.SiddhiAppValidationException;
+import org.apache.log4j.Logger;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.classification.ClassifierPrequentialModelEvaluation;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.classification.hoeffdingtree.util.AdaptiveHoeffdingTreeModel;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.classification.hoeffdingtree.util.HoeffdingTreeConfig;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.CoreUtils;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.FeatureExtractor;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.KeyedModelCheckpoint;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.KeyedModelStore;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.KeyedModels;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.ModelRegistry;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Build/update a Hoeffding Adaptive Tree Model per key.
+ * {@link KeyedHoeffdingClassifierUpdaterStreamProcessorExtension}
+ */
+@Extension(
+        name = "updateKeyedHoeffdingTree",
+        namespace = "streamingml",
+        description = "This extension performs the build/update of a Hoeffding Adaptive Tree per value of a key " +
+                "attribute, e.g., one model per sensor. All the models share the hyper-parameters of the query. " +
+                "The number of models kept is bounded, and the least recently used models are evicted first. " +
+                "The models are used for prediction by `streamingml:keyedHoeffdingTreeClassifier`.",
+        parameters = {
+                @Parameter(name = "model.name",
+                        description = "The name of the family of models to be built/updated.",
+                        type = {DataType.STRING}),
+                @Parameter(name = "model.key",
+                        description = "The attribute of the stream whose value selects the model to be " +
+                                "built/updated.",
+                        type = {DataType.STRING, DataType.INT, DataType.LONG}),
+                @Parameter(name = "no.of.classes",
+                        description = "The number of class labels in the datastream.",
+                        type = {DataType.INT}),
+                @Parameter(name = "grace.period",
+                        description = "The number of instances a leaf should observe between split attempts.",
+                        type = {DataType.INT},
+                        optional = true,
+                        defaultValue = "200"),
+                @Parameter(name = "split.criterion",
+                        description = "The split criterion to be used. Possible values are as follows:\n" +
+                                "`0`:InfoGainSplitCriterion\n" +
+                                "`1`:GiniSplitCriterion",
+                        type = {DataType.INT},
+                        optional = true,
+                        defaultValue = "0:InfoGainSplitCriterion"),
+                @Parameter(name = "split.confidence",
+                        description = "The amount of error that should be allowed in a split decision.",
+                        type = {DataType.DOUBLE},
+                        optional = true,
+                        defaultValue = "1e-7"),
+                @Parameter(name = "tie.break.threshold",
+                        description = "The threshold at which a split must be forced to break ties.",
+                        type = {DataType.DOUBLE},
+                        optional = true,
+                        defaultValue = "0.05D"),
+                @Parameter(name = "binary.split",
+                        description = "If this parameter is set to `true`, only binary splits are allowed.",
+                        type = {DataType.BOOL},
+                        optional = true,
+                        defaultValue = "false"),
+                @Parameter(name = "pre.prune",
+                        description = "If this parameter is set to `true`, pre-pruning is allowed.",
+                        type = {DataType.BOOL},
+                        optional = true,
+                        defaultValue = "false"),
+                @Parameter(name = "leaf.prediction.strategy",
+                        description = "This specifies the leaf prediction strategy to be used. Possible values are " +
+                                "as follows:\n" +
+                                "`0`:Majority class \n" +
+                                "`1`:Naive Bayes\n" +
+                                "`2`:Naive Bayes Adaptive.",
+                        type = {DataType.INT},
+                        optional = true,
+                        defaultValue = "2:Naive Bayes Adaptive"),
+                @Parameter(name = "model.features",
+                        description = "The features of the model that should be attributes of the stream.",
+                        type = {DataType.DOUBLE, DataType.INT})
+        },
+        systemParameter = {
+                @SystemParameter(name = "maxNoOfModels",
+                        description = "The maximum number of models kept by a query, as a count of models " +
+                                "rather than of memory. Once it is reached, the least recently used model is " +
+                                "evicted, and its key starts over with a new model.",
+                        defaultValue = "10000",
+                        possibleParameters = "Any positive integer"),
+                @SystemParameter(name = "modelIdleTimeout",
+                        description = "The time in milliseconds after which a model that has not been used is " +
+                                "evicted. `0` keeps the models until the maximum number of models is reached.",
+                        defaultValue = "0",
+                        possibleParameters = "Any non negative integer")
+        },
+        returnAttributes = {
+                @ReturnAttribute(name = "accuracy",
+                        description = "The accuracy evaluation of the model of the key (Prequential Evaluation)",
+                        type = {DataType.DOUBLE})
+        },
+        examples = {
+                @Example(
+                        syntax = "define stream StreamA (sensorId string, attribute_0 double, attribute_1 double, "
+                                + "attribute_2 double, attribute_3 double, attribute_4 string );\n"
+                                + "\n"
+                                + "from StreamA#streamingml:updateKeyedHoeffdingTree('model1', sensorId, 3) \n"
+                                + "select sensorId, attribute_0, attribute_1, attribute_2, attribute_3, "
+                                + "accuracy insert into OutputStream;",
+                        description = "This query builds/updates a HoeffdingTree model under 3 classes for each " +
+                                "`sensorId`, using `attribute_0`, `attribute_1`, `attribute_2`, and `attribute_3` " +
+                                "as features, and `attribute_4` as the label. The accuracy evaluation of the model " +
+                                "of the sensor is output to the `OutputStream` stream"
+                )
+        }
+)
+public class KeyedHoeffdingClassifierUpdaterStreamProcessorExtension extends
+        StreamProcessor<KeyedHoeffdingClassifierUpdaterStreamProcessorExtension.ExtensionState> {
+
+    private static final Logger logger =
+            Logger.getLogger(KeyedHoeffdingClassifierUpdaterStreamProcessorExtension.class);
+
+    private static final int MINIMUM_NUMBER_OF_FEATURES = 3;
+    private static final int MINIMUM_NUMBER_OF_PARAMETERS = 3;
+    private static final int NUMBER_OF_HYPER_PARAMETERS = HoeffdingTreeConfig.NUMBER_OF_HYPER_PARAMETERS;
+
+    private int noOfFeatures;
+    private int noOfClasses;
+    private String modelName;
+    private HoeffdingTreeConfig config;
+    private AdaptiveHoeffdingTreeModel prototype;
+    private KeyedModelStore<KeyedModel> emptyModelStore;
+    // stores of the states of the query, one per partition key if the query is partitioned
+    private final List<KeyedModelStore<KeyedModel>> modelStores = new CopyOnWriteArrayList<>();
+
+    private FeatureExtractor featureExtractor;
+    private VariableExpressionExecutor keyVariableExecutor;
+    private VariableExpressionExecutor classLabelVariableExecutor;
+
+    private double[] cepEvent;
+    private final Object[] outputData = new Object[1];
+    //set attributes for OutputStream
+    private List<Attribute> attributes = new ArrayList<>();
+
+    @Override
+    protected StateFactory<ExtensionState> init(MetaStreamEvent metaStreamEvent, AbstractDefinition inputDefinition,
+                                                ExpressionExecutor[] attributeExpressionExecutors,
+                                                ConfigReader configReader,
+                                                StreamEventClonerHolder streamEventClonerHolder,
+                                                boolean outputExpectsExpiredEvents, boolean findToBeExecuted,
+                                                SiddhiQueryContext siddhiQueryContext) {
+        String siddhiAppName = siddhiQueryContext.getSiddhiAppContext().getName();
+        // the key attribute is not a feature of the models
+        noOfFeatures = inputDefinition.getAttributeList().size() - 1;
+        int noOfParameters = attributeExpressionLength - noOfFeatures;
+        int classIndex = attributeExpressionLength - 1;
+
+        if (attributeExpressionLength >= MINIMUM_NUMBER_OF_PARAMETERS + MINIMUM_NUMBER_OF_FEATURES) {
+            if (attributeExpressionExecutors[0] instanceof ConstantExpressionExecutor) {
+                ConstantExpressionExecutor modelNameExecutor =
+                        (ConstantExpressionExecutor) attributeExpressionExecutors[0];
+                if (modelNameExecutor.getReturnType() == Attribute.Type.STRING) {
+                    // model name = user given name + siddhi app name
+                    modelName = siddhiAppName + "." + modelNameExecutor.getValue();
+                } else {
+                    throw new SiddhiAppValidationException(
+                            "Invalid parameter type found for the model.name argument, "
+                                    + "required " + Attribute.Type.STRING + " but found "
+                                    + modelNameExecutor.getReturnType().toString());
+                }
+            } else {
+                throw new SiddhiAppValidationException("Model.name must be (ConstantExpressionExecutor) but found "
+                        + attributeExpressionExecutors[0].getClass().getCanonicalName());
+            }
+
+            //2nd parameter
+            keyVariableExecutor = CoreUtils.extractAndValidateKey(inputDefinition, attributeExpressionExecutors, 1);
+
+            //3rd parameter
+            if (attributeExpressionExecutors[2] instanceof ConstantExpressionExecutor) {
+                ConstantExpressionExecutor numberOfClassesExecutor =
+                        (ConstantExpressionExecutor) attributeExpressionExecutors[2];
+                if (numberOfClassesExecutor.getReturnType() == Attribute.Type.INT) {
+                    noOfClasses = (Integer) numberOfClassesExecutor.getValue();
+                    if (noOfClasses < 2) {
+                        throw new SiddhiAppValidationException(
+                                "Number of classes must be greater than 1 but found " + noOfClasses);
+                    }
+                } else {
+                    throw new SiddhiAppValidationException(
+                            "Invalid parameter type found for the number_of_classes argument, required "
+                                    + Attribute.Type.INT + " but found " +
+                                    numberOfClassesExecutor.getReturnType().toString());
+                }
+            } else {
+                throw new SiddhiAppValidationException(
+                        "Number of classes must be (ConstantExpressionExecutor) but found "
+                                + attributeExpressionExecutors[2].getClass().getCanonicalName());
+            }
+            if (noOfFeatures > 2) {
+                featureExtractor = new FeatureExtractor(CoreUtils
+                        .extractAndValidateFeatures(inputDefinition, attributeExpressionExecutors,
+                                noOfParameters, (noOfFeatures - 1)), modelName);
+                cepEvent = new double[noOfFeatures];
+
+                classLabelVariableExecutor = CoreUtils
+                        .extractAndValidateClassLabel(inputDefinition, attributeExpressionExecutors,
+                                classIndex);
+            } else {
+                throw new SiddhiAppValidationException(
+                        "Number of features must be greater than 2 but" + " found "
+                                + noOfFeatures);
+            }
+            if (noOfParameters > MINIMUM_NUMBER_OF_PARAMETERS) {
+                //configuation with hyper-parameters, shared by the models of all the keys
+                if (noOfParameters == (MINIMUM_NUMBER_OF_PARAMETERS + NUMBER_OF_HYPER_PARAMETERS)) {
+                    config = HoeffdingTreeConfig.fromParameters(attributeExpressionExecutors,
+                            MINIMUM_NUMBER_OF_PARAMETERS);
+                } else {
+                    throw new SiddhiAppValidationException(String.format("Number of hyper-parameters needed for "
+                                    + "model manual configuration is %s but found %s",
+                            NUMBER_OF_HYPER_PARAMETERS, (noOfParameters - MINIMUM_NUMBER_OF_PARAMETERS)));
+                }
+            }
+            // the models are created as their keys arrive, hence the configuration is validated upfront
+            prototype = createModel("prototype");
+            emptyModelStore = KeyedModelStore.fromConfig(configReader, this::createKeyedModel);
+            ModelRegistry.getInstance().putKeyedModels(AdaptiveHoeffdingTreeModel.class, modelName,
+                    new PredictionModels());
+        } else {
+            throw new SiddhiAppValidationException(String.format("Invalid number of attributes for "
+                            + "streamingml:updateKeyedHoeffdingTree. This Stream Processor requires at least %s ,"
+                            + "parameters namely, model.name, model.key, number_of_classes and %s features but "
+                            + "found %s parameters and %s features", MINIMUM_NUMBER_OF_PARAMETERS,
+                    MINIMUM_NUMBER_OF_FEATURES, (attributeExpressionLength - noOfFeatures), noOfFeatures));
+        }
+        attributes.add(new Attribute("accuracy", Attribute.Type.DOUBLE));
+        return ExtensionState::new;
+    }
+
+    private AdaptiveHoeffdingTreeModel createModel(Object key) {
+        AdaptiveHoeffdingTreeModel model = new AdaptiveHoeffdingTreeModel(modelName + "." + key);
+        model.init(noOfFeatures, noOfClasses);
+        if (config != null) {
+            config.applyTo(model);
+        }
+        return model;
+    }
+
+    private KeyedModel createKeyedModel(Object key) {
+        if (logger.isDebugEnabled()) {
+            logger.debug(String.format("Model of key [%s] of [%s] is being created.", key, modelName));
+        }
+        return new KeyedModel(createModel(key));
+    }
+
+    @Override
+    protected void process(ComplexEventChunk<StreamEvent> streamEventChunk, Processor nextProcessor,
+                           StreamEventCloner streamEventCloner, ComplexEventPopulater complexEventPopulater,
+                           ExtensionState state) {
+        synchronized (this) {
+            while (streamEventChunk.hasNext()) {
+                StreamEvent streamEvent = streamEventChunk.next();
+                KeyedModel keyedModel = state.models.getModel(keyVariableExecutor.execute(streamEvent));
+                String classValue = classLabelVariableExecutor.execute(streamEvent).toString();
+                featureExtractor.extractFeatures(streamEvent, cepEvent);
+                outputData[0] = keyedModel.model.trainOnEvent(keyedModel.evaluation, cepEvent, classValue);
+                complexEventPopulater.populateComplexEvent(streamEvent, outputData);
+            }
+            nextProcessor.process(streamEventChunk);
+        }
+    }
+
+    @Override
+    public void start() {
+
+    }
+
+    @Override
+    public void stop() {
+        ModelRegistry.getInstance().deleteKeyedModels(AdaptiveHoeffdingTreeModel.class, modelName);
+    }
+
+    @Override
+    public List<Attribute> getReturnAttributes() {
+        return attributes;
+    }
+
+    @Override
+    public ProcessingMode getProcessingMode() {
+        return ProcessingMode.BATCH;
+    }
+
+    /**
+     * Model of a key, with the prequential evaluation of it
+     */
+    private class KeyedModel {
+        private final AdaptiveHoeffdingTreeModel model;
+        private final ClassifierPrequentialModelEvaluation evaluation = new ClassifierPrequentialModelEvaluation();
+
+        private KeyedModel(AdaptiveHoeffdingTreeModel model) {
+            this.model = model;
+            evaluation.reset(noOfClasses);
+        }
+    }
+
+    /**
+     * Models of the keys as used by {@link KeyedHoeffdingClassifierStreamProcessorExtension}
+     */
+    private class PredictionModels implements KeyedModels<AdaptiveHoeffdingTreeModel> {
+
+        @Override
+        public AdaptiveHoeffdingTreeModel findModel(Object key) {
+            for (KeyedModelStore<KeyedModel> models : modelStores) {
+                KeyedModel keyedModel = models.findModel(key);
+                if (keyedModel != null) {
+                    return keyedModel.model;
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public AdaptiveHoeffdingTreeModel getPrototype() {
+            return prototype;
+        }
+    }
+
+    class ExtensionState extends State {
+        private final KeyedModelStore<KeyedModel> models = emptyModelStore.newEmptyStore();
+        private final KeyedModelCheckpoint<KeyedModel> checkpoint = new KeyedModelCheckpoint<>(models,
+                keyedModel -> keyedModel.model.toSnapshot(), (key, snapshot) -> new KeyedModel(
+                AdaptiveHoeffdingTreeModel.fromSnapshot(modelName + "." + key, snapshot)));
+
+        ExtensionState() {
+            modelStores.add(models);
+        }
+
+        @Override
+        public boolean canDestroy() {
+            return false;
+        }
+
+        @Override
+        public Map<String, Object> snapshot() {
+            Map<String, Object> currentState = new HashMap<>();
+            Snapshot snapshot = checkpoint.snapshot();
+            if (snapshot != null) {
+                currentState.put("AdaptiveHoeffdingModelsMap", snapshot);
+            }
+            return currentState;
+        }
+
+        @Override
+        public void restore(Map<String, Object> state) {
+            synchronized (KeyedHoeffdingClassifierUpdaterStreamProcessorExtension.this) {
+                checkpoint.restore(state.get("AdaptiveHoeffdingModelsMap"));
+            }
+        }
+    }
+}
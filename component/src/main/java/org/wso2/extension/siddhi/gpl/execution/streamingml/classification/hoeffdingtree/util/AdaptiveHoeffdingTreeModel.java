@@ -29,26 +29,70 @@ import moa.streams.InstanceStream;
 import moa.tasks.TaskMonitor;
 import org.apache.log4j.Logger;
 import org.wso2.extension.siddhi.gpl.execution.streamingml.classification.ClassifierPrequentialModelEvaluation;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.classification.LabelDictionary;
 import org.wso2.extension.siddhi.gpl.execution.streamingml.util.CoreUtils;
 import org.wso2.extension.siddhi.gpl.execution.streamingml.util.MathUtil;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.ModelEvents;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.ModelSnapshotReader;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.ModelSnapshotType;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.ModelSnapshotWriter;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+
+import static org.wso2.extension.siddhi.gpl.execution.streamingml.classification.hoeffdingtree.util.HoeffdingTreeStructure.ACTIVE_LEAVES;
+import static org.wso2.extension.siddhi.gpl.execution.streamingml.classification.hoeffdingtree.util.HoeffdingTreeStructure.ALTERNATE_TREES;
+import static org.wso2.extension.siddhi.gpl.execution.streamingml.classification.hoeffdingtree.util.HoeffdingTreeStructure.INACTIVE_LEAVES;
+import static org.wso2.extension.siddhi.gpl.execution.streamingml.classification.hoeffdingtree.util.HoeffdingTreeStructure.PRUNED_ALTERNATE_TREES;
+import static org.wso2.extension.siddhi.gpl.execution.streamingml.classification.hoeffdingtree.util.HoeffdingTreeStructure.SPLIT_NODES;
+import static org.wso2.extension.siddhi.gpl.execution.streamingml.classification.hoeffdingtree.util.HoeffdingTreeStructure.SWITCHED_ALTERNATE_TREES;
 
 /**
  * Represents the Hoeffding Adaptive Tree Model
+ * <p>
+ * The model is shared between the stream processors which train it and the ones which use it for prediction.
+ * Training takes the write lock of the model, while predictions only take the read lock, so that predictions
+ * from many query threads proceed in parallel and only wait for the single event being trained on.
+ * <p>
+ * A mapped snapshot, written into a model store, holds the compiled tree as well as the MOA tree. A model read from
+ * a mapped snapshot predicts with the compiled tree, and only reads the MOA tree once it is needed, e.g., to train
+ * the model, so that a model mapped from a model store is used without deserializing the MOA tree. The snapshots
+ * of the checkpoints only hold the deflated MOA tree.
  */
 public class AdaptiveHoeffdingTreeModel extends AbstractOptionHandler {
     private static final long serialVersionUID = 1L;
     private static final Logger logger = Logger.getLogger(AdaptiveHoeffdingTreeModel.class);
+    private static final int SNAPSHOT_VERSION = 2;
 
     private String modelName;
     private InstancesHeader streamHeader;
     private int noOfFeatures;
     private int noOfClasses;
     private HoeffdingAdaptiveTree hoeffdingAdaptiveTree;
-    private List<String> classes = new ArrayList<String>();
+    // serialized tree of the snapshot the model was read from, until it is read by getTree(), or null
+    private transient volatile ByteBuffer treeImage;
+    private LabelDictionary classes = new LabelDictionary();
+    // whether a label beyond the number of classes adds a class rather than failing. Set by the updater.
+    private transient boolean dynamicClasses;
+    private final StampedLock lock = new StampedLock();
+    // incremented on each update of the model, so that checkpoints can skip an unchanged model
+    private transient long version;
+    // size of the last snapshot, which sizes the buffer of the next one
+    private transient int snapshotSize;
+
+    // instances reused for training, so that no instance is created per event. Guarded by the write lock.
+    private transient double[] trainValues;
+    private transient Instance trainInstance;
+    private transient double[] testValues;
+    private transient Instance testInstance;
+
+    // structure of the tree, which is tracked to compile the tree again once it changes. Guarded by the lock.
+    private final transient HoeffdingTreeStructure structure = new HoeffdingTreeStructure();
+    // prediction-only image of the tree, compiled for the version of the structure it was compiled for
+    private transient volatile CompiledHoeffdingTree compiledTree;
+    private transient volatile long compiledStructureVersion = -1;
 
     @Override
     public void getDescription(StringBuilder stringBuilder, int i) {
@@ -61,12 +105,140 @@ public class AdaptiveHoeffdingTreeModel extends AbstractOptionHandler {
     }
 
     public AdaptiveHoeffdingTreeModel(AdaptiveHoeffdingTreeModel model) {
-        this.modelName = model.modelName;
-        this.streamHeader = model.streamHeader;
-        this.noOfFeatures = model.noOfFeatures;
-        this.noOfClasses = model.noOfClasses;
-        this.hoeffdingAdaptiveTree = model.hoeffdingAdaptiveTree;
-        this.classes = model.classes;
+        long stamp = model.lock.readLock();
+        try {
+            this.modelName = model.modelName;
+            this.streamHeader = model.streamHeader;
+            this.noOfFeatures = model.noOfFeatures;
+            this.noOfClasses = model.noOfClasses;
+            this.hoeffdingAdaptiveTree = model.getTree();
+            this.classes = new LabelDictionary(model.classes.toList());
+        } finally {
+            model.lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Restore the state of this model from a snapshot of it, so that the stream processors which hold a
+     * reference to this model continue with the restored state.
+     *
+     * @param model snapshot of the model
+     */
+    public void restoreFrom(AdaptiveHoeffdingTreeModel model) {
+        long stamp = lock.writeLock();
+        try {
+            version++;
+            this.streamHeader = model.streamHeader;
+            this.noOfFeatures = model.noOfFeatures;
+            this.noOfClasses = model.noOfClasses;
+            this.hoeffdingAdaptiveTree = model.hoeffdingAdaptiveTree;
+            this.treeImage = model.treeImage;
+            this.classes = model.classes;
+            structure.invalidate();
+            if (treeImage != null) {
+                compiledTree = model.compiledTree;
+                compiledStructureVersion = structure.getVersion();
+            }
+            if (streamHeader != null) {
+                createTrainingInstances();
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Write the state of the model into a binary snapshot. The model is only locked while it is being written.
+     *
+     * @return snapshot of the model, read by {@link #fromSnapshot(String, byte[])}
+     */
+    public byte[] toSnapshot() {
+        return writeSnapshot(false).toByteArray();
+    }
+
+    /**
+     * Write the state of the model into a binary snapshot to be mapped from a file, which also holds the compiled
+     * tree, and whose MOA tree is not deflated so that it is read in place. The model is only locked while it is
+     * being written.
+     *
+     * @return snapshot of the model, read by {@link #fromSnapshot(String, ByteBuffer)}
+     */
+    public byte[] toMappedSnapshot() {
+        return writeSnapshot(true).toUncompressedByteArray();
+    }
+
+    private ModelSnapshotWriter writeSnapshot(boolean mapped) {
+        ModelSnapshotWriter writer = new ModelSnapshotWriter(ModelSnapshotType.HOEFFDING_TREE, SNAPSHOT_VERSION,
+                snapshotSize);
+        long stamp = lock.readLock();
+        try {
+            ByteBuffer treeImage = this.treeImage;
+            writer.writeBoolean(hoeffdingAdaptiveTree != null || treeImage != null);
+            if (hoeffdingAdaptiveTree != null || treeImage != null) {
+                writer.writeInt(noOfFeatures);
+                writer.writeInt(noOfClasses);
+                writer.writeStrings(classes.toList());
+                CompiledHoeffdingTree compiledTree = mapped ? getCompiledTree() : null;
+                compiledTree = compiledTree == null ? null : compiledTree.materialize();
+                writer.writeBoolean(compiledTree != null);
+                if (compiledTree != null) {
+                    compiledTree.writeTo(writer);
+                }
+                if (treeImage != null) {
+                    writer.writeLearnerImage(treeImage);
+                } else {
+                    writer.writeLearner(hoeffdingAdaptiveTree);
+                }
+            }
+        } finally {
+            lock.unlockRead(stamp);
+        }
+        snapshotSize = writer.size();
+        return writer;
+    }
+
+    /**
+     * Read a model from a binary snapshot written by {@link #toSnapshot()}
+     *
+     * @param modelName name of the model
+     * @param snapshot  snapshot of the model
+     * @return the model
+     */
+    public static AdaptiveHoeffdingTreeModel fromSnapshot(String modelName, byte[] snapshot) {
+        return fromSnapshot(modelName, ByteBuffer.wrap(snapshot));
+    }
+
+    /**
+     * Read a model from a binary snapshot written by {@link #toSnapshot()} or {@link #toMappedSnapshot()}, e.g.,
+     * mapped from a file
+     *
+     * @param modelName name of the model
+     * @param snapshot  snapshot of the model
+     * @return the model
+     */
+    public static AdaptiveHoeffdingTreeModel fromSnapshot(String modelName, ByteBuffer snapshot) {
+        ModelSnapshotReader reader = new ModelSnapshotReader(snapshot, ModelSnapshotType.HOEFFDING_TREE,
+                SNAPSHOT_VERSION);
+        AdaptiveHoeffdingTreeModel model = new AdaptiveHoeffdingTreeModel(modelName);
+        if (reader.readBoolean()) {
+            model.noOfFeatures = reader.readInt();
+            model.noOfClasses = reader.readInt();
+            model.classes = new LabelDictionary(reader.readStrings());
+            CompiledHoeffdingTree compiledTree = reader.getVersion() >= 2 && reader.readBoolean()
+                    ? CompiledHoeffdingTree.readFrom(reader) : null;
+            if (compiledTree != null) {
+                // the compiled tree predicts until the MOA tree is needed
+                model.compiledTree = compiledTree;
+                model.compiledStructureVersion = model.structure.getVersion();
+                model.treeImage = reader.readLearnerImage();
+                model.streamHeader = model.createMOAInstanceHeader(model.noOfFeatures);
+            } else {
+                model.hoeffdingAdaptiveTree = reader.readLearner(HoeffdingAdaptiveTree.class);
+                model.streamHeader = model.hoeffdingAdaptiveTree.getModelContext();
+            }
+            model.createTrainingInstances();
+        }
+        return model;
     }
 
     /**
@@ -79,12 +251,21 @@ public class AdaptiveHoeffdingTreeModel extends AbstractOptionHandler {
         if (logger.isDebugEnabled()) {
             logger.debug(String.format("Model [%s] is being initialized.", this.modelName));
         }
-        this.noOfFeatures = noOfAttributes;
-        this.noOfClasses = noOfClasses;
-        this.streamHeader = createMOAInstanceHeader(this.noOfFeatures);
-        this.hoeffdingAdaptiveTree = new HoeffdingAdaptiveTree();
-        this.hoeffdingAdaptiveTree.setModelContext(streamHeader);
-        this.hoeffdingAdaptiveTree.prepareForUse();
+        long stamp = lock.writeLock();
+        try {
+            version++;
+            structure.invalidate();
+            this.noOfFeatures = noOfAttributes;
+            this.noOfClasses = noOfClasses;
+            this.streamHeader = createMOAInstanceHeader(this.noOfFeatures);
+            this.hoeffdingAdaptiveTree = new HoeffdingAdaptiveTree();
+            this.treeImage = null;
+            this.hoeffdingAdaptiveTree.setModelContext(streamHeader);
+            this.hoeffdingAdaptiveTree.prepareForUse();
+            createTrainingInstances();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
     }
 
     /**
@@ -105,19 +286,28 @@ public class AdaptiveHoeffdingTreeModel extends AbstractOptionHandler {
         if (logger.isDebugEnabled()) {
             logger.debug(String.format("Model [%s] is being configured with hyper-parameters.", this.modelName));
         }
-        hoeffdingAdaptiveTree.gracePeriodOption.setValue(gracePeriod);
-        if (splittingCriteria == 0) {
-            hoeffdingAdaptiveTree.splitCriterionOption
-                    .setValueViaCLIString("InfoGainSplitCriterion");
-        } else {
-            hoeffdingAdaptiveTree.splitCriterionOption
-                    .setValueViaCLIString("GiniSplitCriterion");
+        long stamp = lock.writeLock();
+        try {
+            version++;
+            // the leaf prediction may change, which the compiled tree is compiled for
+            structure.invalidate();
+            HoeffdingAdaptiveTree hoeffdingAdaptiveTree = getTree();
+            hoeffdingAdaptiveTree.gracePeriodOption.setValue(gracePeriod);
+            if (splittingCriteria == 0) {
+                hoeffdingAdaptiveTree.splitCriterionOption
+                        .setValueViaCLIString("InfoGainSplitCriterion");
+            } else {
+                hoeffdingAdaptiveTree.splitCriterionOption
+                        .setValueViaCLIString("GiniSplitCriterion");
+            }
+            hoeffdingAdaptiveTree.splitConfidenceOption.setValue(allowableSplitError);
+            hoeffdingAdaptiveTree.tieThresholdOption.setValue(breakTieThreshold);
+            hoeffdingAdaptiveTree.binarySplitsOption.setValue(binarySplitOption);
+            hoeffdingAdaptiveTree.noPrePruneOption.setValue(disablePrePruning);
+            hoeffdingAdaptiveTree.leafpredictionOption.setChosenIndex(leafpredictionStrategy);
+        } finally {
+            lock.unlockWrite(stamp);
         }
-        hoeffdingAdaptiveTree.splitConfidenceOption.setValue(allowableSplitError);
-        hoeffdingAdaptiveTree.tieThresholdOption.setValue(breakTieThreshold);
-        hoeffdingAdaptiveTree.binarySplitsOption.setValue(binarySplitOption);
-        hoeffdingAdaptiveTree.noPrePruneOption.setValue(disablePrePruning);
-        hoeffdingAdaptiveTree.leafpredictionOption.setChosenIndex(leafpredictionStrategy);
     }
 
     /**
@@ -126,11 +316,81 @@ public class AdaptiveHoeffdingTreeModel extends AbstractOptionHandler {
      * @param classLabel class  label of the cepEvent
      */
     public void trainOnEvent(double[] cepEvent, String classLabel) {
-        cepEvent[noOfFeatures - 1] = addClass(classLabel);
-        Instance trainInstance = createMOAInstance(cepEvent);
-        trainInstance.setClassValue(cepEvent[noOfFeatures - 1]);
+        long stamp = lock.writeLock();
+        try {
+            version++;
+            train(cepEvent, classLabel);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Train the model on event instance. Once all the class labels have been seen, the prequential accuracy of
+     * the model is evaluated before training on the event.
+     * @param modelEvaluation Prequential Model Evaluator.
+     * @param cepEvent        event data
+     * @param classLabel      class label of the cepEvent
+     * @return Prequential accuracy, or 0 if not all class labels have been seen
+     */
+    public double trainOnEvent(ClassifierPrequentialModelEvaluation modelEvaluation, double[] cepEvent,
+                               String classLabel) {
+        long stamp = lock.writeLock();
+        try {
+            version++;
+            if (classes.size() == noOfClasses) {
+                return evaluateAndTrain(modelEvaluation, cepEvent, classLabel);
+            } else {
+                train(cepEvent, classLabel);
+                return 0;
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private void train(double[] cepEvent, String classLabel) {
+        int classIndex = noOfFeatures - 1;
+        // a new class may rebuild the training instances, hence the class is added first
+        int classValue = addClass(classLabel);
+        System.arraycopy(cepEvent, 0, trainValues, 0, classIndex);
+        trainValues[classIndex] = classValue;
         //training on the event instance
+        trainOnInstance();
+    }
+
+    /**
+     * Train the tree on the training instance, track the structure of the tree, and record the growth of the tree
+     * if a recording has enabled it
+     */
+    private void trainOnInstance() {
+        HoeffdingAdaptiveTree hoeffdingAdaptiveTree = getTree();
+        if (!HoeffdingTreeStructure.isSupported() || !ModelEvents.isHoeffdingTreeGrowthEnabled()) {
+            hoeffdingAdaptiveTree.trainOnInstanceImpl(trainInstance);
+            structure.update(hoeffdingAdaptiveTree);
+            return;
+        }
+        ModelEvents.HoeffdingTreeGrowth event = new ModelEvents.HoeffdingTreeGrowth();
+        int[] before = HoeffdingTreeStructure.readCounters(hoeffdingAdaptiveTree);
+        event.begin();
         hoeffdingAdaptiveTree.trainOnInstanceImpl(trainInstance);
+        event.end();
+        structure.update(hoeffdingAdaptiveTree);
+        int[] after = HoeffdingTreeStructure.readCounters(hoeffdingAdaptiveTree);
+        if (before == null || after == null) {
+            return;
+        }
+        event.splits = after[SPLIT_NODES] - before[SPLIT_NODES];
+        event.alternateTreesStarted = after[ALTERNATE_TREES] - before[ALTERNATE_TREES];
+        event.branchesReplaced = after[SWITCHED_ALTERNATE_TREES] - before[SWITCHED_ALTERNATE_TREES];
+        event.alternateTreesPruned = after[PRUNED_ALTERNATE_TREES] - before[PRUNED_ALTERNATE_TREES];
+        if (event.splits != 0 || event.alternateTreesStarted != 0 || event.branchesReplaced != 0
+                || event.alternateTreesPruned != 0) {
+            event.model = modelName;
+            event.noOfSplitNodes = after[SPLIT_NODES];
+            event.noOfLeaves = after[ACTIVE_LEAVES] + after[INACTIVE_LEAVES];
+            event.commit();
+        }
     }
 
     /**
@@ -142,14 +402,25 @@ public class AdaptiveHoeffdingTreeModel extends AbstractOptionHandler {
      */
     public double evaluationTrainOnEvent(ClassifierPrequentialModelEvaluation modelEvaluation,
                                          double[] cepEvent, String classValue) {
-        int classIndex = cepEvent.length - 1;
-        //create instance with only the feature attributes
-        double[] test = Arrays.copyOfRange(cepEvent, 0, classIndex);
-        Instance testInstance = createMOAInstance(test);
-        double[] votes = hoeffdingAdaptiveTree.getVotesForInstance(testInstance);
-        cepEvent[classIndex] = getClasses().indexOf(classValue);
-        Instance trainInstance = createMOAInstance(cepEvent);
-        hoeffdingAdaptiveTree.trainOnInstanceImpl(trainInstance);
+        long stamp = lock.writeLock();
+        try {
+            version++;
+            return evaluateAndTrain(modelEvaluation, cepEvent, classValue);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private double evaluateAndTrain(ClassifierPrequentialModelEvaluation modelEvaluation,
+                                    double[] cepEvent, String classValue) {
+        int classIndex = noOfFeatures - 1;
+        int classLabelIndex = addClass(classValue);
+        //test instance with only the feature attributes
+        System.arraycopy(cepEvent, 0, testValues, 0, classIndex);
+        double[] votes = getTree().getVotesForInstance(testInstance);
+        System.arraycopy(cepEvent, 0, trainValues, 0, classIndex);
+        trainValues[classIndex] = classLabelIndex;
+        trainOnInstance();
         modelEvaluation.addResult(trainInstance, votes);
         return MathUtil.roundOff(modelEvaluation.getFractionCorrectlyClassified(), 3);
     }
@@ -157,14 +428,90 @@ public class AdaptiveHoeffdingTreeModel extends AbstractOptionHandler {
     /**
      * Predict the class label for event with fearure attributes
      * @param cepEvent Event data.
-     * @return predicted class index, probability of the prediction.
+     * @return predicted class label, probability of the prediction.
      */
     public Object[] getPrediction(double[] cepEvent) {
-        Instance testInstance = createMOAInstance(cepEvent);
-        double[] votes = hoeffdingAdaptiveTree.getVotesForInstance(testInstance);
-        int classIndex = CoreUtils.argMaxIndex(votes);
-        double confidenceLevel = getPredictionConfidence(votes);
-        return new Object[]{classIndex, confidenceLevel};
+        return getPrediction(cepEvent, false);
+    }
+
+    /**
+     * Predict the class for event with fearure attributes
+     * @param cepEvent   Event data.
+     * @param classIndex whether the index of the predicted class is returned rather than its label
+     * @return predicted class label or index, probability of the prediction.
+     */
+    public Object[] getPrediction(double[] cepEvent, boolean classIndex) {
+        long stamp = lock.readLock();
+        try {
+            CompiledHoeffdingTree compiledTree = getCompiledTree();
+            double[] votes;
+            if (compiledTree != null) {
+                votes = compiledTree.getVotes(cepEvent);
+            } else {
+                Instance testInstance = createMOAInstance(cepEvent);
+                votes = getTree().getVotesForInstance(testInstance);
+            }
+            int predictedIndex = CoreUtils.argMaxIndex(votes);
+            double confidenceLevel = getPredictionConfidence(votes);
+            return new Object[]{classIndex ? (Object) predictedIndex : classes.getLabel(predictedIndex),
+                    confidenceLevel};
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Return the compiled tree of the current structure of the tree. As the compiled tree reads the statistics of
+     * the leaves from the tree, it is only compiled again once the structure of the tree changes, and only one of
+     * the readers which race to compile it compiles it. Called under the read lock.
+     *
+     * @return the compiled tree, or null if the predictions are to be made by MOA
+     */
+    private CompiledHoeffdingTree getCompiledTree() {
+        long structureVersion = structure.getVersion();
+        if (compiledStructureVersion == structureVersion) {
+            return compiledTree;
+        }
+        synchronized (this) {
+            if (compiledStructureVersion != structureVersion) {
+                compiledTree = CompiledHoeffdingTree.compile(getTree(), noOfClasses, noOfFeatures - 1);
+                compiledStructureVersion = structureVersion;
+            }
+            return compiledTree;
+        }
+    }
+
+    /**
+     * Return the MOA tree, reading it from the snapshot the model was read from if it has not been read yet.
+     * Called under the read or the write lock.
+     *
+     * @return the tree, or null if the model has not been initialized
+     */
+    private HoeffdingAdaptiveTree getTree() {
+        if (treeImage != null) {
+            // readers may race to read the tree, hence only one of them reads it
+            synchronized (this) {
+                ByteBuffer treeImage = this.treeImage;
+                if (treeImage != null) {
+                    HoeffdingAdaptiveTree tree = ModelSnapshotReader.readLearner(treeImage,
+                            HoeffdingAdaptiveTree.class, ModelSnapshotType.HOEFFDING_TREE);
+                    tree.setModelContext(streamHeader);
+                    hoeffdingAdaptiveTree = tree;
+                    this.treeImage = null;
+                }
+            }
+        }
+        return hoeffdingAdaptiveTree;
+    }
+
+    /**
+     * Create the instances reused for training, backed by arrays which are overwritten for each event
+     */
+    private void createTrainingInstances() {
+        trainValues = new double[noOfFeatures];
+        trainInstance = createMOAInstance(trainValues);
+        testValues = new double[noOfFeatures - 1];
+        testInstance = createMOAInstance(testValues);
     }
 
     /**
@@ -203,22 +550,39 @@ public class AdaptiveHoeffdingTreeModel extends AbstractOptionHandler {
 
     /**
      * Add a Class label
-     * @param label
-     * @return
+     * @param label class label
+     * @return index of the class label
      */
     private int addClass(String label) {
-        // Set class value
-        if (classes.contains(label)) {
-            return classes.indexOf(label);
-        } else {
-            if (classes.size() < noOfClasses) {
-                classes.add(label);
-                return classes.indexOf(label);
-            } else {
+        int index = classes.indexOf(label);
+        if (index >= 0) {
+            return index;
+        }
+        if (classes.size() >= noOfClasses) {
+            if (!dynamicClasses) {
                 throw new SiddhiAppRuntimeException(String.format("Number of classes %s is expected from the model "
                         + "%s but found %s", noOfClasses, modelName, classes.size()));
             }
+            growClasses(classes.size() + 1);
         }
+        return classes.add(label);
+    }
+
+    /**
+     * Rebuild the schema of the instances with more classes. The tree keeps what it has learnt, as the class
+     * distributions of its nodes grow with the classes they observe. Called under the write lock.
+     * @param noOfClasses new number of classes
+     */
+    private void growClasses(int noOfClasses) {
+        if (logger.isDebugEnabled()) {
+            logger.debug(String.format("Model [%s] grows from %s to %s classes.", modelName, this.noOfClasses,
+                    noOfClasses));
+        }
+        this.noOfClasses = noOfClasses;
+        structure.invalidate();
+        this.streamHeader = createMOAInstanceHeader(noOfFeatures);
+        getTree().setModelContext(streamHeader);
+        createTrainingInstances();
     }
 
     /**
@@ -239,13 +603,69 @@ public class AdaptiveHoeffdingTreeModel extends AbstractOptionHandler {
     }
 
     public List<String> getClasses() {
-        return this.classes;
+        long stamp = lock.readLock();
+        try {
+            return this.classes.toList();
+        } finally {
+            lock.unlockRead(stamp);
+        }
     }
 
     public int getNoOfFeatures() {
         return this.noOfFeatures;
     }
 
+    /**
+     * @return number of classes of the model, which grows with the classes seen if the classes are dynamic
+     */
+    public int getNoOfClasses() {
+        long stamp = lock.readLock();
+        try {
+            return noOfClasses;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Set whether a class label beyond the number of classes of the model adds a class to the model, rather than
+     * failing the event. The setting is not part of the snapshots of the model.
+     * @param dynamicClasses whether the number of classes grows with the class labels seen
+     */
+    public void setDynamicClasses(boolean dynamicClasses) {
+        long stamp = lock.writeLock();
+        try {
+            this.dynamicClasses = dynamicClasses;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * @return number of nodes of the tree and its alternate trees, or -1 if they cannot be counted
+     */
+    public long getNoOfNodes() {
+        long stamp = lock.readLock();
+        try {
+            HoeffdingAdaptiveTree hoeffdingAdaptiveTree = getTree();
+            return hoeffdingAdaptiveTree == null ? 0 : CompiledHoeffdingTree.countNodes(hoeffdingAdaptiveTree);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * @return version of the model, which changes whenever the model is updated
+     */
+    public long getVersion() {
+        long stamp = lock.readLock();
+        try {
+            return version;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
     @Override
     protected void prepareForUseImpl(TaskMonitor taskMonitor, ObjectRepository objectRepository) {
     }
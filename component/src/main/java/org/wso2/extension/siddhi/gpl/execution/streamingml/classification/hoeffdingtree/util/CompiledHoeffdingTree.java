@@ -0,0 +1,604 @@
+/*
+ * Copyright (C) 2017 WSO2 Inc. (http://wso2.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.wso2.extension.siddhi.gpl.execution.streamingml.classification.hoeffdingtree.util;
+
+import moa.classifiers.core.attributeclassobservers.AttributeClassObserver;
+import moa.classifiers.core.attributeclassobservers.GaussianNumericAttributeClassObserver;
+import moa.classifiers.core.attributeclassobservers.NullAttributeClassObserver;
+import moa.classifiers.core.conditionaltests.NumericAttributeBinaryTest;
+import moa.classifiers.trees.HoeffdingAdaptiveTree;
+import moa.classifiers.trees.HoeffdingTree;
+import moa.core.AutoExpandVector;
+import moa.core.DoubleVector;
+import moa.core.GaussianEstimator;
+import org.apache.log4j.Logger;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.ModelSnapshotReader;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.ModelSnapshotWriter;
+
+import java.lang.reflect.Field;
+import java.util.Arrays;
+
+/**
+ * Prediction-only image of a {@link HoeffdingAdaptiveTree}, compiled into flat arrays indexed by node, so that an
+ * event is scored without creating a MOA instance, without virtual calls per node and without allocating votes.
+ * <p>
+ * The votes are the ones of {@link HoeffdingAdaptiveTree#getVotesForInstance}: the votes of the leaves reached in
+ * the tree and in the alternate trees grown below its split nodes are summed, and the votes of a leaf are its
+ * class distribution or its naive Bayes prediction, scaled by the estimated error of the leaf.
+ * <p>
+ * A compiled tree holds the structure of the tree, while the class distributions, the estimated errors and the
+ * attribute observers of its nodes are read from the nodes of the tree, so that it keeps voting the same as the
+ * tree while the tree is trained, and only has to be compiled again once the structure of the tree changes, as
+ * tracked by {@link HoeffdingTreeStructure}. It is therefore only used under the lock which guards the training of
+ * the tree.
+ * <p>
+ * A compiled tree is written into the mapped snapshots of its model along with the statistics of its nodes, so
+ * that a model mapped from a snapshot predicts right away. A tree read from a snapshot only holds the statistics it
+ * was written with.
+ * A tree with nodes or split tests other than the ones grown from numeric attributes cannot be compiled.
+ */
+public class CompiledHoeffdingTree {
+    private static final Logger logger = Logger.getLogger(CompiledHoeffdingTree.class);
+
+    private static final int NO_NODE = -1;
+    private static final int LEAF = -1;
+    private static final byte SKIP = 0;
+    private static final byte ZERO = 1;
+    private static final byte POINT = 2;
+    private static final byte GAUSSIAN = 3;
+
+    private static final Field TREE_ROOT;
+    private static final Field SPLIT_TEST;
+    private static final Field EQUALS_PASSES_TEST;
+    private static final Field ALTERNATE_TREE;
+    private static final Field OBSERVED_CLASS_DISTRIBUTION;
+    private static final Field ATTRIBUTE_OBSERVERS;
+    private static final Field MC_CORRECT_WEIGHT;
+    private static final Field NB_CORRECT_WEIGHT;
+    private static final Field ESTIMATORS_PER_CLASS;
+
+    // votes reused by each thread which scores events
+    private static final ThreadLocal<Votes> VOTES = ThreadLocal.withInitial(Votes::new);
+
+    static {
+        Field[] fields;
+        try {
+            fields = new Field[]{
+                    HoeffdingTree.class.getDeclaredField("treeRoot"),
+                    HoeffdingTree.SplitNode.class.getDeclaredField("splitTest"),
+                    NumericAttributeBinaryTest.class.getDeclaredField("equalsPassesTest"),
+                    HoeffdingAdaptiveTree.AdaSplitNode.class.getDeclaredField("alternateTree"),
+                    HoeffdingTree.Node.class.getDeclaredField("observedClassDistribution"),
+                    HoeffdingTree.ActiveLearningNode.class.getDeclaredField("attributeObservers"),
+                    HoeffdingTree.LearningNodeNBAdaptive.class.getDeclaredField("mcCorrectWeight"),
+                    HoeffdingTree.LearningNodeNBAdaptive.class.getDeclaredField("nbCorrectWeight"),
+                    GaussianNumericAttributeClassObserver.class.getDeclaredField("attValDistPerClass")};
+            for (Field field : fields) {
+                field.setAccessible(true);
+            }
+        } catch (NoSuchFieldException | RuntimeException e) {
+            logger.warn("Hoeffding trees cannot be compiled for this version of MOA, hence the predictions are "
+                    + "made by MOA.", e);
+            fields = new Field[9];
+        }
+        TREE_ROOT = fields[0];
+        SPLIT_TEST = fields[1];
+        EQUALS_PASSES_TEST = fields[2];
+        ALTERNATE_TREE = fields[3];
+        OBSERVED_CLASS_DISTRIBUTION = fields[4];
+        ATTRIBUTE_OBSERVERS = fields[5];
+        MC_CORRECT_WEIGHT = fields[6];
+        NB_CORRECT_WEIGHT = fields[7];
+        ESTIMATORS_PER_CLASS = fields[8];
+    }
+
+    private final int noOfClasses;
+    private final int noOfAttributes;
+
+    // split nodes: the attribute and the threshold of the split, and the children. LEAF as attribute for a leaf.
+    private int[] attributes;
+    private double[] thresholds;
+    private boolean[] equalsPasses;
+    private int[] leftChildren;
+    private int[] rightChildren;
+    private int[] alternateTrees;
+    // nodes of a compiled tree: the class distribution of each node, and the leaf and the attribute observers of
+    // each leaf, read from the tree for each vote. Null for a tree read from a snapshot.
+    private DoubleVector[] nodeDistributions;
+    private HoeffdingAdaptiveTree.AdaLearningNode[] leaves;
+    private AutoExpandVector<?>[] leafObservers;
+    private int leafPrediction;
+    // nodes of a tree read from a snapshot: the class distribution, or the prior of each class for a naive Bayes
+    // leaf
+    private double[] distributions;
+    // leaves: the estimated error, and the offset of the estimators of a naive Bayes leaf or NO_NODE
+    private double[] errors;
+    private int[] estimatorOffsets;
+    // naive Bayes leaves: the estimator of each class and attribute
+    private byte[] estimatorKinds;
+    private double[] means;
+    private double[] stdDevs;
+
+    private int noOfNodes;
+    private int noOfEstimators;
+
+    private CompiledHoeffdingTree(int noOfClasses, int noOfAttributes) {
+        this.noOfClasses = noOfClasses;
+        this.noOfAttributes = noOfAttributes;
+    }
+
+    /**
+     * Compile a trained tree
+     *
+     * @param tree           the tree
+     * @param noOfClasses    number of classes
+     * @param noOfAttributes number of feature attributes
+     * @return the compiled tree, or null if the tree is empty or holds nodes which cannot be compiled, or if the
+     * structure of the tree cannot be tracked for this version of MOA
+     */
+    public static CompiledHoeffdingTree compile(HoeffdingAdaptiveTree tree, int noOfClasses, int noOfAttributes) {
+        if (TREE_ROOT == null || !HoeffdingTreeStructure.isSupported()) {
+            return null;
+        }
+        try {
+            HoeffdingTree.Node root = (HoeffdingTree.Node) TREE_ROOT.get(tree);
+            if (root == null) {
+                return null;
+            }
+            CompiledHoeffdingTree compiledTree = new CompiledHoeffdingTree(noOfClasses, noOfAttributes);
+            compiledTree.leafPrediction = tree.leafpredictionOption.getChosenIndex();
+            compiledTree.allocate(16);
+            compiledTree.addNode(root);
+            return compiledTree;
+        } catch (IllegalAccessException | UnsupportedOperationException e) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("Hoeffding tree cannot be compiled, hence the predictions are made by MOA.", e);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Copy the statistics the nodes of the tree hold now, so that the tree can be written into a snapshot
+     *
+     * @return the tree with the statistics of its nodes, or null if the leaves hold attribute observers which
+     * cannot be written
+     */
+    public CompiledHoeffdingTree materialize() {
+        if (leaves == null) {
+            return this;
+        }
+        CompiledHoeffdingTree tree = new CompiledHoeffdingTree(noOfClasses, noOfAttributes);
+        tree.noOfNodes = noOfNodes;
+        tree.attributes = Arrays.copyOf(attributes, noOfNodes);
+        tree.thresholds = Arrays.copyOf(thresholds, noOfNodes);
+        tree.equalsPasses = Arrays.copyOf(equalsPasses, noOfNodes);
+        tree.leftChildren = Arrays.copyOf(leftChildren, noOfNodes);
+        tree.rightChildren = Arrays.copyOf(rightChildren, noOfNodes);
+        tree.alternateTrees = Arrays.copyOf(alternateTrees, noOfNodes);
+        tree.distributions = new double[noOfNodes * noOfClasses];
+        tree.errors = new double[noOfNodes];
+        tree.estimatorOffsets = new int[noOfNodes];
+        Arrays.fill(tree.estimatorOffsets, NO_NODE);
+        tree.estimatorKinds = new byte[0];
+        tree.means = new double[0];
+        tree.stdDevs = new double[0];
+        try {
+            for (int node = 0; node < noOfNodes; node++) {
+                for (int i = 0; i < noOfClasses; i++) {
+                    tree.distributions[node * noOfClasses + i] = nodeDistributions[node].getValue(i);
+                }
+                HoeffdingAdaptiveTree.AdaLearningNode leaf = leaves[node];
+                if (leaf != null) {
+                    tree.errors[node] = leaf.getErrorEstimation();
+                    if (isNaiveBayes(leaf)) {
+                        tree.estimatorOffsets[node] = tree.addEstimators(node, leafObservers[node]);
+                    }
+                }
+            }
+        } catch (UnsupportedOperationException e) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("Hoeffding tree cannot be written into a snapshot.", e);
+            }
+            return null;
+        }
+        return tree;
+    }
+
+    /**
+     * Write a tree returned by {@link #materialize()} into the snapshot of its model, so that the model read from
+     * the snapshot predicts without reading its MOA tree first
+     *
+     * @param writer writer of the snapshot
+     */
+    public void writeTo(ModelSnapshotWriter writer) {
+        if (leaves != null) {
+            throw new IllegalStateException("Statistics of the nodes of the tree have to be materialized first");
+        }
+        writer.writeInt(noOfClasses);
+        writer.writeInt(noOfAttributes);
+        writer.writeInts(Arrays.copyOf(attributes, noOfNodes));
+        writer.writeDoubles(Arrays.copyOf(thresholds, noOfNodes));
+        byte[] equalsPassesBytes = new byte[noOfNodes];
+        for (int i = 0; i < noOfNodes; i++) {
+            equalsPassesBytes[i] = (byte) (equalsPasses[i] ? 1 : 0);
+        }
+        writer.writeBytes(equalsPassesBytes);
+        writer.writeInts(Arrays.copyOf(leftChildren, noOfNodes));
+        writer.writeInts(Arrays.copyOf(rightChildren, noOfNodes));
+        writer.writeInts(Arrays.copyOf(alternateTrees, noOfNodes));
+        writer.writeDoubles(Arrays.copyOf(distributions, noOfNodes * noOfClasses));
+        writer.writeDoubles(Arrays.copyOf(errors, noOfNodes));
+        writer.writeInts(Arrays.copyOf(estimatorOffsets, noOfNodes));
+        writer.writeBytes(Arrays.copyOf(estimatorKinds, noOfEstimators));
+        writer.writeDoubles(Arrays.copyOf(means, noOfEstimators));
+        writer.writeDoubles(Arrays.copyOf(stdDevs, noOfEstimators));
+    }
+
+    /**
+     * Read a tree written by {@link #writeTo(ModelSnapshotWriter)}
+     *
+     * @param reader reader of the snapshot
+     * @return the tree
+     */
+    public static CompiledHoeffdingTree readFrom(ModelSnapshotReader reader) {
+        CompiledHoeffdingTree tree = new CompiledHoeffdingTree(reader.readInt(), reader.readInt());
+        tree.attributes = reader.readInts();
+        tree.noOfNodes = tree.attributes.length;
+        tree.thresholds = reader.readDoubles();
+        byte[] equalsPassesBytes = reader.readBytes();
+        tree.equalsPasses = new boolean[equalsPassesBytes.length];
+        for (int i = 0; i < equalsPassesBytes.length; i++) {
+            tree.equalsPasses[i] = equalsPassesBytes[i] != 0;
+        }
+        tree.leftChildren = reader.readInts();
+        tree.rightChildren = reader.readInts();
+        tree.alternateTrees = reader.readInts();
+        tree.distributions = reader.readDoubles();
+        tree.errors = reader.readDoubles();
+        tree.estimatorOffsets = reader.readInts();
+        tree.estimatorKinds = reader.readBytes();
+        tree.noOfEstimators = tree.estimatorKinds.length;
+        tree.means = reader.readDoubles();
+        tree.stdDevs = reader.readDoubles();
+        return tree;
+    }
+
+    /**
+     * Count the nodes of a tree, the nodes of its alternate trees included
+     *
+     * @param tree the tree
+     * @return number of nodes, or -1 if the nodes cannot be counted for this version of MOA
+     */
+    public static int countNodes(HoeffdingAdaptiveTree tree) {
+        if (TREE_ROOT == null) {
+            return -1;
+        }
+        try {
+            return countNodes((HoeffdingTree.Node) TREE_ROOT.get(tree));
+        } catch (IllegalAccessException e) {
+            return -1;
+        }
+    }
+
+    private static int countNodes(HoeffdingTree.Node node) throws IllegalAccessException {
+        if (node == null) {
+            return 0;
+        }
+        int noOfNodes = 1;
+        if (node instanceof HoeffdingTree.SplitNode) {
+            HoeffdingTree.SplitNode splitNode = (HoeffdingTree.SplitNode) node;
+            for (int i = 0; i < splitNode.numChildren(); i++) {
+                noOfNodes += countNodes(splitNode.getChild(i));
+            }
+            if (node instanceof HoeffdingAdaptiveTree.AdaSplitNode) {
+                noOfNodes += countNodes((HoeffdingTree.Node) ALTERNATE_TREE.get(splitNode));
+            }
+        }
+        return noOfNodes;
+    }
+
+    /**
+     * Compute the votes for each class, the same as {@link HoeffdingAdaptiveTree#getVotesForInstance} does as long
+     * as the structure of the tree is the one it was compiled from.
+     *
+     * @param features values of the feature attributes
+     * @return votes for each class. The array is reused for the next event scored by the calling thread.
+     */
+    public double[] getVotes(double[] features) {
+        Votes votes = VOTES.get();
+        if (votes.votes.length != noOfClasses) {
+            votes.votes = new double[noOfClasses];
+            votes.leafVotes = new double[noOfClasses];
+        } else {
+            Arrays.fill(votes.votes, 0);
+        }
+        addVotes(0, features, votes);
+        return votes.votes;
+    }
+
+    private void addVotes(int node, double[] features, Votes votes) {
+        int attribute = attributes[node];
+        if (attribute == LEAF) {
+            if (leaves != null) {
+                addCompiledLeafVotes(node, features, votes.votes, votes.leafVotes);
+            } else {
+                addLeafVotes(node, features, votes.votes, votes.leafVotes);
+            }
+            return;
+        }
+        double value = features[attribute];
+        if (!Double.isNaN(value)) {
+            int child = value == thresholds[node]
+                    ? (equalsPasses[node] ? leftChildren[node] : rightChildren[node])
+                    : (value < thresholds[node] ? leftChildren[node] : rightChildren[node]);
+            if (child != NO_NODE) {
+                addVotes(child, features, votes);
+            } else {
+                // a missing child votes with the class distribution of its parent
+                int offset = node * noOfClasses;
+                for (int i = 0; i < noOfClasses; i++) {
+                    votes.votes[i] += leaves != null ? nodeDistributions[node].getValue(i) : distributions[offset + i];
+                }
+            }
+        }
+        if (alternateTrees[node] != NO_NODE) {
+            addVotes(alternateTrees[node], features, votes);
+        }
+    }
+
+    /**
+     * Add the votes of a leaf of a compiled tree, computed from the statistics the leaf holds now
+     */
+    private void addCompiledLeafVotes(int node, double[] features, double[] votes, double[] leafVotes) {
+        HoeffdingAdaptiveTree.AdaLearningNode leaf = leaves[node];
+        DoubleVector distribution = nodeDistributions[node];
+        double sum = 0;
+        if (isNaiveBayes(leaf)) {
+            // the naive Bayes prediction of MOA, without creating an instance for it
+            double classSum = distribution.sumOfValues();
+            int noOfValues = distribution.numValues();
+            AutoExpandVector<?> observers = leafObservers[node];
+            for (int i = 0; i < noOfClasses; i++) {
+                double vote = 0;
+                if (i < noOfValues) {
+                    vote = distribution.getValue(i) / classSum;
+                    for (int attribute = 0; attribute < noOfAttributes; attribute++) {
+                        AttributeClassObserver observer = (AttributeClassObserver) observers.get(attribute);
+                        if (observer != null && !Double.isNaN(features[attribute])) {
+                            vote *= observer.probabilityOfAttributeValueGivenClass(features[attribute], i);
+                        }
+                    }
+                }
+                leafVotes[i] = vote;
+                sum += vote;
+            }
+        } else {
+            for (int i = 0; i < noOfClasses; i++) {
+                leafVotes[i] = distribution.getValue(i);
+                sum += leafVotes[i];
+            }
+        }
+        double error = leaf.getErrorEstimation();
+        double scale = sum * error * error;
+        for (int i = 0; i < noOfClasses; i++) {
+            votes[i] += scale > 0 ? leafVotes[i] / scale : leafVotes[i];
+        }
+    }
+
+    /**
+     * @return whether a leaf predicts with naive Bayes rather than with its majority class
+     */
+    private boolean isNaiveBayes(HoeffdingAdaptiveTree.AdaLearningNode leaf) {
+        if (leafPrediction != 2) {
+            return leafPrediction == 1;
+        }
+        try {
+            return MC_CORRECT_WEIGHT.getDouble(leaf) <= NB_CORRECT_WEIGHT.getDouble(leaf);
+        } catch (IllegalAccessException e) {
+            // the fields are made accessible once they are looked up
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Add the votes of a leaf of a tree read from a snapshot
+     */
+    private void addLeafVotes(int node, double[] features, double[] votes, double[] leafVotes) {
+        int offset = node * noOfClasses;
+        double sum = 0;
+        for (int i = 0; i < noOfClasses; i++) {
+            double vote = distributions[offset + i];
+            if (estimatorOffsets[node] != NO_NODE) {
+                vote = naiveBayesVote(vote, estimatorOffsets[node] + i * noOfAttributes, features);
+            }
+            leafVotes[i] = vote;
+            sum += vote;
+        }
+        double scale = sum * errors[node] * errors[node];
+        for (int i = 0; i < noOfClasses; i++) {
+            votes[i] += scale > 0 ? leafVotes[i] / scale : leafVotes[i];
+        }
+    }
+
+    private double naiveBayesVote(double prior, int offset, double[] features) {
+        // multiplied in the same order as MOA does, so that the votes are the same
+        double vote = prior;
+        for (int i = 0; i < noOfAttributes; i++) {
+            double value = features[i];
+            byte kind = estimatorKinds[offset + i];
+            if (kind == SKIP || Double.isNaN(value)) {
+                continue;
+            }
+            if (kind == ZERO) {
+                vote *= 0;
+            } else if (kind == POINT) {
+                vote *= value == means[offset + i] ? 1 : 0;
+            } else {
+                // the density of GaussianEstimator, computed the same way
+                double stdDev = stdDevs[offset + i];
+                double diff = value - means[offset + i];
+                vote *= 1.0 / (GaussianEstimator.NORMAL_CONSTANT * stdDev)
+                        * Math.exp(-(diff * diff / (2.0 * stdDev * stdDev)));
+            }
+        }
+        return vote;
+    }
+
+    /**
+     * Add a node and its subtree
+     *
+     * @return index of the node
+     * @throws UnsupportedOperationException if the subtree holds nodes which cannot be compiled
+     */
+    private int addNode(HoeffdingTree.Node node) throws IllegalAccessException {
+        int index = newNode((DoubleVector) OBSERVED_CLASS_DISTRIBUTION.get(node));
+        if (node instanceof HoeffdingAdaptiveTree.AdaSplitNode) {
+            HoeffdingTree.SplitNode splitNode = (HoeffdingTree.SplitNode) node;
+            Object splitTest = SPLIT_TEST.get(splitNode);
+            if (!(splitTest instanceof NumericAttributeBinaryTest) || splitNode.numChildren() != 2) {
+                throw new UnsupportedOperationException("Split test " + splitTest + " cannot be compiled");
+            }
+            NumericAttributeBinaryTest numericTest = (NumericAttributeBinaryTest) splitTest;
+            attributes[index] = numericTest.getAttsTestDependsOn()[0];
+            thresholds[index] = numericTest.getSplitValue();
+            equalsPasses[index] = EQUALS_PASSES_TEST.getBoolean(numericTest);
+            // the arrays grow while the subtrees are added, hence are only indexed once the subtrees are added
+            int leftChild = addChild(splitNode.getChild(0));
+            int rightChild = addChild(splitNode.getChild(1));
+            HoeffdingTree.Node alternateTree = (HoeffdingTree.Node) ALTERNATE_TREE.get(splitNode);
+            // the leaves of an alternate tree vote, unless the alternate tree is a single leaf
+            int alternateRoot = alternateTree instanceof HoeffdingAdaptiveTree.AdaSplitNode
+                    ? addNode(alternateTree) : NO_NODE;
+            leftChildren[index] = leftChild;
+            rightChildren[index] = rightChild;
+            alternateTrees[index] = alternateRoot;
+        } else if (node instanceof HoeffdingAdaptiveTree.AdaLearningNode) {
+            attributes[index] = LEAF;
+            leaves[index] = (HoeffdingAdaptiveTree.AdaLearningNode) node;
+            leafObservers[index] = (AutoExpandVector<?>) ATTRIBUTE_OBSERVERS.get(node);
+        } else {
+            throw new UnsupportedOperationException("Node " + node.getClass().getName() + " cannot be compiled");
+        }
+        return index;
+    }
+
+    private int addChild(HoeffdingTree.Node child) throws IllegalAccessException {
+        return child == null ? NO_NODE : addNode(child);
+    }
+
+    private void allocate(int capacity) {
+        attributes = new int[capacity];
+        thresholds = new double[capacity];
+        equalsPasses = new boolean[capacity];
+        leftChildren = new int[capacity];
+        rightChildren = new int[capacity];
+        alternateTrees = new int[capacity];
+        nodeDistributions = new DoubleVector[capacity];
+        leaves = new HoeffdingAdaptiveTree.AdaLearningNode[capacity];
+        leafObservers = new AutoExpandVector<?>[capacity];
+    }
+
+    private int newNode(DoubleVector distribution) {
+        if (noOfNodes == attributes.length) {
+            int capacity = noOfNodes << 1;
+            attributes = Arrays.copyOf(attributes, capacity);
+            thresholds = Arrays.copyOf(thresholds, capacity);
+            equalsPasses = Arrays.copyOf(equalsPasses, capacity);
+            leftChildren = Arrays.copyOf(leftChildren, capacity);
+            rightChildren = Arrays.copyOf(rightChildren, capacity);
+            alternateTrees = Arrays.copyOf(alternateTrees, capacity);
+            nodeDistributions = Arrays.copyOf(nodeDistributions, capacity);
+            leaves = Arrays.copyOf(leaves, capacity);
+            leafObservers = Arrays.copyOf(leafObservers, capacity);
+        }
+        int index = noOfNodes++;
+        leftChildren[index] = NO_NODE;
+        rightChildren[index] = NO_NODE;
+        alternateTrees[index] = NO_NODE;
+        // MOA grows the distribution on demand, hence it is read with getValue, which is 0 beyond its length
+        nodeDistributions[index] = distribution;
+        return index;
+    }
+
+    /**
+     * Add the estimators of a naive Bayes leaf, and replace its class distribution with the prior of each class
+     *
+     * @return offset of the estimators
+     * @throws UnsupportedOperationException if the leaf holds attribute observers which cannot be written
+     */
+    @SuppressWarnings("unchecked")
+    private int addEstimators(int index, AutoExpandVector<?> observers) {
+        int distributionOffset = index * noOfClasses;
+        double sum = 0;
+        for (int i = 0; i < noOfClasses; i++) {
+            sum += distributions[distributionOffset + i];
+        }
+        for (int i = 0; i < noOfClasses; i++) {
+            distributions[distributionOffset + i] /= sum;
+        }
+
+        int size = noOfClasses * noOfAttributes;
+        if (noOfEstimators + size > estimatorKinds.length) {
+            int capacity = Math.max(estimatorKinds.length << 1, noOfEstimators + size);
+            estimatorKinds = Arrays.copyOf(estimatorKinds, capacity);
+            means = Arrays.copyOf(means, capacity);
+            stdDevs = Arrays.copyOf(stdDevs, capacity);
+        }
+        int offset = noOfEstimators;
+        noOfEstimators += size;
+        for (int attribute = 0; attribute < noOfAttributes; attribute++) {
+            AttributeClassObserver observer = (AttributeClassObserver) observers.get(attribute);
+            AutoExpandVector<GaussianEstimator> estimators = null;
+            if (observer instanceof GaussianNumericAttributeClassObserver) {
+                estimators = (AutoExpandVector<GaussianEstimator>) readField(ESTIMATORS_PER_CLASS, observer);
+            } else if (observer != null && !(observer instanceof NullAttributeClassObserver)) {
+                throw new UnsupportedOperationException("Attribute observer " + observer.getClass().getName()
+                        + " cannot be compiled");
+            }
+            for (int i = 0; i < noOfClasses; i++) {
+                int estimator = offset + i * noOfAttributes + attribute;
+                if (observer == null) {
+                    estimatorKinds[estimator] = SKIP;
+                } else if (estimators == null || estimators.get(i) == null
+                        || estimators.get(i).getTotalWeightObserved() <= 0) {
+                    estimatorKinds[estimator] = ZERO;
+                } else {
+                    GaussianEstimator gaussian = estimators.get(i);
+                    means[estimator] = gaussian.getMean();
+                    stdDevs[estimator] = gaussian.getStdDev();
+                    estimatorKinds[estimator] = stdDevs[estimator] > 0 ? GAUSSIAN : POINT;
+                }
+            }
+        }
+        return offset;
+    }
+
+    private static Object readField(Field field, Object object) {
+        try {
+            return field.get(object);
+        } catch (IllegalAccessException e) {
+            // the fields are made accessible once they are looked up
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static class Votes {
+        private double[] votes = new double[0];
+        private double[] leafVotes = new double[0];
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2017 WSO2 Inc. (http://wso2.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.wso2.extension.siddhi.gpl.execution.streamingml.classification.hoeffdingtree.util;
+
+import io.siddhi.core.executor.ConstantExpressionExecutor;
+import io.siddhi.core.executor.ExpressionExecutor;
+import io.siddhi.query.api.definition.Attribute;
+import io.siddhi.query.api.exception.SiddhiAppValidationException;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.CoreUtils;
+
+/**
+ * Hyper-parameters of a Hoeffding Adaptive Tree, read once from the query and applied to each model configured
+ * by the query.
+ */
+public class HoeffdingTreeConfig {
+    public static final int NUMBER_OF_HYPER_PARAMETERS = 7;
+    private static final String[] HYPER_PARAMETERS = {"GracePeriod", "Splitting Criteria", "Allowable Split Error",
+            "Tie Break Threshold", "Binary Split", "Prepruning", "Leaf Prediction Strategy"};
+
+    //default configurations for Hoeffding Adaptive tree
+    private int gracePeriod = 200;
+    private int splittingCriteria = 1;
+    private double allowableSplitError = 1e-7;
+    private double tieBreakThreshold = 0.05;
+    private boolean binarySplit = false;
+    private boolean prePruning = false;
+    private int leafPredictionStrategy = 2;
+
+    /**
+     * Read the hyper-parameters from the parameters of the query
+     *
+     * @param attributeExpressionExecutors parameters of the query
+     * @param firstIndex                   index of the first hyper-parameter
+     * @return the hyper-parameters
+     */
+    public static HoeffdingTreeConfig fromParameters(ExpressionExecutor[] attributeExpressionExecutors,
+                                                     int firstIndex) {
+        HoeffdingTreeConfig config = new HoeffdingTreeConfig();
+        for (int i = firstIndex; i < firstIndex + NUMBER_OF_HYPER_PARAMETERS; i++) {
+            ExpressionExecutor executor = attributeExpressionExecutors[i];
+            if (!(executor instanceof ConstantExpressionExecutor)) {
+                throw new SiddhiAppValidationException(String.format("%s must be (ConstantExpressionExecutor) "
+                                + "but found %s in position %s.", HYPER_PARAMETERS[i - firstIndex],
+                        executor.getClass().getCanonicalName(), (i + 1)));
+            }
+            Object value = ((ConstantExpressionExecutor) executor).getValue();
+            switch (i - firstIndex) {
+                case 0:
+                    if (executor.getReturnType() == Attribute.Type.INT) {
+                        config.gracePeriod = (Integer) value;
+                    } else {
+                        throw new SiddhiAppValidationException(String.format("GracePeriod must be an %s."
+                                        + " But found %s at position %s", Attribute.Type.INT,
+                                executor.getReturnType(), (i + 1)));
+                    }
+                    break;
+                case 1:
+                    if (executor.getReturnType() == Attribute.Type.INT) {
+                        config.splittingCriteria = (Integer) value;
+                    } else {
+                        throw new SiddhiAppValidationException(String.format("Splitting Criteria must be an %s. "
+                                        + "0=InfoGainSplitCriterion and 1=GiniSplitCriterion"
+                                        + " But found %s in position %s.", Attribute.Type.INT,
+                                executor.getReturnType(), (i + 1)));
+                    }
+                    break;
+                case 2:
+                    if (executor.getReturnType() == Attribute.Type.DOUBLE) {
+                        config.allowableSplitError = (double) value;
+                    } else {
+                        throw new SiddhiAppValidationException(String.format("Allowable Split Error must be a "
+                                        + "%s. But found %s at position %s.", Attribute.Type.DOUBLE,
+                                executor.getReturnType(), (i + 1)));
+                    }
+                    break;
+                case 3:
+                    if (CoreUtils.isNumeric(executor.getReturnType())) {
+                        config.tieBreakThreshold = ((Number) value).doubleValue();
+                    } else {
+                        throw new SiddhiAppValidationException(String.format("Tie Break Threshold must be "
+                                        + "a %s. But found %s in position %s.", Attribute.Type.DOUBLE,
+                                executor.getReturnType(), (i + 1)));
+                    }
+                    break;
+                case 4:
+                    if (executor.getReturnType() == Attribute.Type.BOOL) {
+                        config.binarySplit = (boolean) value;
+                    } else {
+                        throw new SiddhiAppValidationException(String.format("Enabling Binary Split must be "
+                                        + "a %s. But found %s in position %s.", Attribute.Type.BOOL,
+                                executor.getReturnType(), (i + 1)));
+                    }
+                    break;
+                case 5:
+                    if (executor.getReturnType() == Attribute.Type.BOOL) {
+                        config.prePruning = (boolean) value;
+                    } else {
+                        throw new SiddhiAppValidationException(String.format("Disabling PrePruning must be "
+                                        + "a %s. But found %s in position %s.", Attribute.Type.BOOL,
+                                executor.getReturnType(), (i + 1)));
+                    }
+                    break;
+                default:
+                    if (executor.getReturnType() == Attribute.Type.INT) {
+                        config.leafPredictionStrategy = (int) value;
+                    } else {
+                        throw new SiddhiAppValidationException(String.format("Leaf Prediction Strategy must "
+                                        + "be an %s. 0=majority class, 1=naive Bayes, 2=naive Bayes adaptive. "
+                                        + "But found %s in position %s.", Attribute.Type.INT,
+                                executor.getReturnType(), (i + 1)));
+                    }
+            }
+        }
+        return config;
+    }
+
+    /**
+     * Configure the model with the hyper-parameters
+     */
+    public void applyTo(AdaptiveHoeffdingTreeModel model) {
+        model.setConfigurations(gracePeriod, splittingCriteria, allowableSplitError, tieBreakThreshold, binarySplit,
+                prePruning, leafPredictionStrategy);
+    }
+}
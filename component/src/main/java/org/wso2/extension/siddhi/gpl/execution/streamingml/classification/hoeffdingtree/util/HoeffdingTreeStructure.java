@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2017 WSO2 Inc. (http://wso2.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.wso2.extension.siddhi.gpl.execution.streamingml.classification.hoeffdingtree.util;
+
+import moa.classifiers.trees.HoeffdingAdaptiveTree;
+import moa.classifiers.trees.HoeffdingTree;
+import org.apache.log4j.Logger;
+
+import java.lang.reflect.Field;
+
+/**
+ * Tracks the structure of a {@link HoeffdingAdaptiveTree}, so that a {@link CompiledHoeffdingTree}, which reads
+ * the statistics of the leaves from the tree as it is trained, is only compiled again once the tree is split,
+ * grows, switches or prunes an alternate tree, deactivates a leaf or is reset.
+ * <p>
+ * The structure is read from the counters MOA keeps of the nodes and the alternate trees of the tree, and from its
+ * root. The version of the structure is incremented each time the structure is found to have changed, or the
+ * structure is invalidated, e.g., once the tree is replaced.
+ */
+public class HoeffdingTreeStructure {
+    private static final Logger logger = Logger.getLogger(HoeffdingTreeStructure.class);
+
+    // counters of the nodes and the alternate trees of a tree
+    static final int SPLIT_NODES = 0;
+    static final int ACTIVE_LEAVES = 1;
+    static final int INACTIVE_LEAVES = 2;
+    static final int ALTERNATE_TREES = 3;
+    static final int SWITCHED_ALTERNATE_TREES = 4;
+    static final int PRUNED_ALTERNATE_TREES = 5;
+
+    private static final Field[] COUNTERS;
+    private static final Field TREE_ROOT;
+
+    static {
+        Field[] fields;
+        Field treeRoot;
+        try {
+            fields = new Field[]{
+                    HoeffdingTree.class.getDeclaredField("decisionNodeCount"),
+                    HoeffdingTree.class.getDeclaredField("activeLeafNodeCount"),
+                    HoeffdingTree.class.getDeclaredField("inactiveLeafNodeCount"),
+                    HoeffdingAdaptiveTree.class.getDeclaredField("alternateTrees"),
+                    HoeffdingAdaptiveTree.class.getDeclaredField("switchedAlternateTrees"),
+                    HoeffdingAdaptiveTree.class.getDeclaredField("prunedAlternateTrees")};
+            treeRoot = HoeffdingTree.class.getDeclaredField("treeRoot");
+            for (Field field : fields) {
+                field.setAccessible(true);
+            }
+            treeRoot.setAccessible(true);
+        } catch (NoSuchFieldException | RuntimeException e) {
+            logger.warn("The structure of Hoeffding trees cannot be tracked for this version of MOA, hence the "
+                    + "predictions are made by MOA and the growth of the trees is not recorded.", e);
+            fields = null;
+            treeRoot = null;
+        }
+        COUNTERS = fields;
+        TREE_ROOT = treeRoot;
+    }
+
+    private final int[] counters = new int[COUNTERS == null ? 0 : COUNTERS.length];
+    private Object root;
+    private long version;
+
+    /**
+     * @return whether the structure of trees can be tracked for this version of MOA
+     */
+    public static boolean isSupported() {
+        return COUNTERS != null;
+    }
+
+    /**
+     * Read the counters of the nodes and the alternate trees of a tree
+     *
+     * @param tree the tree
+     * @return the counters, or null if they cannot be read
+     */
+    static int[] readCounters(HoeffdingAdaptiveTree tree) {
+        if (COUNTERS == null) {
+            return null;
+        }
+        int[] counters = new int[COUNTERS.length];
+        return readCounters(tree, counters) ? counters : null;
+    }
+
+    private static boolean readCounters(HoeffdingAdaptiveTree tree, int[] counters) {
+        try {
+            for (int i = 0; i < counters.length; i++) {
+                counters[i] = COUNTERS[i].getInt(tree);
+            }
+            return true;
+        } catch (IllegalAccessException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Compare the structure with the one of the tree, and increment the version if the tree has changed since the
+     * last update
+     *
+     * @param tree the tree, after it is trained
+     * @return true if the structure has changed
+     */
+    public boolean update(HoeffdingAdaptiveTree tree) {
+        if (COUNTERS == null) {
+            return false;
+        }
+        boolean changed;
+        try {
+            Object root = TREE_ROOT.get(tree);
+            changed = root != this.root;
+            this.root = root;
+            for (int i = 0; i < counters.length; i++) {
+                int counter = COUNTERS[i].getInt(tree);
+                changed |= counter != counters[i];
+                counters[i] = counter;
+            }
+        } catch (IllegalAccessException e) {
+            // the structure cannot be compared, hence is taken to have changed
+            changed = true;
+        }
+        if (!changed) {
+            return false;
+        }
+        version++;
+        return true;
+    }
+
+    /**
+     * Take the structure to have changed, e.g., once the tree is replaced or the number of classes grows
+     */
+    public void invalidate() {
+        root = null;
+        version++;
+    }
+
+    /**
+     * @return version of the structure, which changes whenever the structure changes
+     */
+    public long getVersion() {
+        return version;
+    }
+}
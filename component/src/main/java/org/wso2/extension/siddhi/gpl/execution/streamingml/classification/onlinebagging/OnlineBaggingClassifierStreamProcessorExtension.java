@@ -0,0 +1,280 @@
+/*
+ * Copyright (C) 2017 WSO2 Inc. (http://wso2.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.wso2.extension.siddhi.gpl.execution.streamingml.classification.onlinebagging;
+
+import io.siddhi.annotation.Example;
+import io.siddhi.annotation.Extension;
+import io.siddhi.annotation.Parameter;
+import io.siddhi.annotation.ReturnAttribute;
+import io.siddhi.annotation.SystemParameter;
+import io.siddhi.annotation.util.DataType;
+import io.siddhi.core.config.SiddhiQueryContext;
+import io.siddhi.core.event.ComplexEventChunk;
+import io.siddhi.core.event.stream.MetaStreamEvent;
+import io.siddhi.core.event.stream.StreamEvent;
+import io.siddhi.core.event.stream.StreamEventCloner;
+import io.siddhi.core.event.stream.holder.StreamEventClonerHolder;
+import io.siddhi.core.event.stream.populater.ComplexEventPopulater;
+import io.siddhi.core.exception.SiddhiAppCreationException;
+import io.siddhi.core.executor.ConstantExpressionExecutor;
+import io.siddhi.core.executor.ExpressionExecutor;
+import io.siddhi.core.query.processor.ProcessingMode;
+import io.siddhi.core.query.processor.Processor;
+import io.siddhi.core.query.processor.stream.StreamProcessor;
+import io.siddhi.core.util.config.ConfigReader;
+import io.siddhi.core.util.snapshot.state.State;
+import io.siddhi.core.util.snapshot.state.StateFactory;
+import io.siddhi.query.api.definition.AbstractDefinition;
+import io.siddhi.query.api.definition.Attribute;
+import io.siddhi.query.api.exception.SiddhiAppValidationException;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.classification.onlinebagging.util.OnlineBaggingModel;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.CoreUtils;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.FeatureExtractor;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.MappedModelStore;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.ModelCheckpoint;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.ModelRegistry;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.ModelStatistics;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Predict using an Online Bagging model.
+ * built via @{@link OnlineBaggingClassifierUpdaterStreamProcessorExtension}
+ */
+@Extension(
+        name = "onlineBaggingClassifier",
+        namespace = "streamingml",
+        description = "This extension performs classification using an online bagging ensemble built by "
+                + "`streamingml:updateOnlineBagging`. The trees vote one after the other, and by default the "
+                + "voting stops once the remaining trees cannot change the predicted class.",
+        parameters = {
+                @Parameter(name = "model.name",
+                        description = "The name of the model to be used for prediction.",
+                        type = {DataType.STRING})
+        },
+        systemParameter = {
+                @SystemParameter(name = "votingMode",
+                        description = "Whether all the trees vote for each event (`full`), or the voting stops "
+                                + "once the lead of the predicted class is larger than the number of trees left to "
+                                + "vote (`earlyExit`). Both modes predict the same class, but the confidence level "
+                                + "of `earlyExit` is only computed from the trees that voted.",
+                        defaultValue = "earlyExit",
+                        possibleParameters = {"full", "earlyExit"}),
+                @SystemParameter(name = "modelStoreDirectory",
+                        description = "The directory of the memory-mapped model files written by "
+                                + "`streamingml:updateOnlineBagging`. If the model has not been built in "
+                                + "this node yet, it is read from its file, so that predictions start right away "
+                                + "after a restart.",
+                        defaultValue = "none",
+                        possibleParameters = "Any directory path")
+        },
+        returnAttributes = {
+                @ReturnAttribute(name = "prediction",
+                        description = "The predicted class label.",
+                        type = {DataType.STRING}),
+                @ReturnAttribute(name = "confidenceLevel",
+                        description = "The probability of the prediction.",
+                        type = {DataType.DOUBLE})
+        },
+        examples = {
+                @Example(
+                        syntax = "define stream StreamA (attribute_0 double, attribute_1 double, "
+                                + "attribute_2 double, attribute_3 double);\n" +
+                                "\n"
+                                + "from StreamA#streamingml:onlineBaggingClassifier('model1', "
+                                + " attribute_0, attribute_1, attribute_2, attribute_3) \n"
+                                + "select attribute_0, attribute_1, attribute_2, attribute_3, "
+                                + "prediction, confidenceLevel insert into OutputStream;",
+                        description = "This query uses an online bagging ensemble named `model1` to predict the " +
+                                "label of the feature vector represented by `attribute_0`, `attribute_1`, " +
+                                "`attribute_2`, and `attribute_3` attributes. The predicted label along with the " +
+                                "prediction confidence and the feature vector are output to the `OutputStream` " +
+                                "stream."
+                )
+        }
+)
+public class OnlineBaggingClassifierStreamProcessorExtension extends
+        StreamProcessor<OnlineBaggingClassifierStreamProcessorExtension.ExtensionState> {
+    private static final int MINIMUM_NUMBER_OF_FEATURES = 2;
+    private static final int MINIMUM_NUMBER_OF_PARAMETERS = 1;
+    private static final String VOTING_MODE = "votingMode";
+    private static final String FULL_VOTING = "full";
+    private static final String EARLY_EXIT_VOTING = "earlyExit";
+
+    private String modelName;
+    private OnlineBaggingModel model;
+    private int noOfFeatures;
+    private FeatureExtractor featureExtractor;
+    private boolean earlyExit;
+    private ModelStatistics statistics;
+    // chunks of different threads are processed in parallel, hence each thread has its own buffer
+    private final ThreadLocal<double[]> featureBuffer = ThreadLocal.withInitial(() -> new double[noOfFeatures]);
+    //set attributes for Output Stream
+    private List<Attribute> attributes = new ArrayList<Attribute>();
+
+    @Override
+    protected StateFactory<ExtensionState> init(MetaStreamEvent metaStreamEvent, AbstractDefinition inputDefinition,
+                                                ExpressionExecutor[] attributeExpressionExecutors,
+                                                ConfigReader configReader,
+                                                StreamEventClonerHolder streamEventClonerHolder,
+                                                boolean outputExpectsExpiredEvents, boolean findToBeExecuted,
+                                                SiddhiQueryContext siddhiQueryContext) {
+        String siddhiAppName = siddhiQueryContext.getSiddhiAppContext().getName();
+        String modelPrefix;
+        noOfFeatures = inputDefinition.getAttributeList().size();
+        if (attributeExpressionExecutors.length >= (MINIMUM_NUMBER_OF_FEATURES + MINIMUM_NUMBER_OF_PARAMETERS)) {
+            if (noOfFeatures < MINIMUM_NUMBER_OF_FEATURES) {
+                throw new SiddhiAppValidationException(String.format("Invalid number of feature attributes for "
+                                + "streamingml:onlineBaggingClassifier. This Stream Processor requires at "
+                                + "least %s feature attributes, but found %s feature attributes",
+                        MINIMUM_NUMBER_OF_FEATURES, noOfFeatures));
+            }
+            if (noOfFeatures != (attributeExpressionLength - MINIMUM_NUMBER_OF_PARAMETERS)) {
+                throw new SiddhiAppValidationException(String.format("Invalid number of feature attributes for "
+                                + "streamingml:onlineBaggingClassifier. This Stream Processor is defined "
+                                + "with %s features, but found %s feature attributes",
+                        noOfFeatures, (attributeExpressionLength - MINIMUM_NUMBER_OF_PARAMETERS)));
+            }
+            if (attributeExpressionExecutors[0] instanceof ConstantExpressionExecutor) {
+                if (attributeExpressionExecutors[0].getReturnType() == Attribute.Type.STRING) {
+                    modelPrefix = (String) ((ConstantExpressionExecutor) attributeExpressionExecutors[0])
+                            .getValue();
+                    // model name = user given name + siddhi app name
+                    modelName = siddhiAppName + "." + modelPrefix;
+                } else {
+                    throw new SiddhiAppValidationException(
+                            "Invalid parameter type found for the model.name argument, "
+                                    + "required " + Attribute.Type.STRING
+                                    + " but found " + attributeExpressionExecutors[0].
+                                    getReturnType().toString());
+                }
+            } else {
+                throw new SiddhiAppValidationException("Parameter model.name must be a constant but found "
+                        + attributeExpressionExecutors[0].getClass().getCanonicalName());
+            }
+            featureExtractor = new FeatureExtractor(CoreUtils
+                    .extractAndValidateFeatures(inputDefinition, attributeExpressionExecutors,
+                            (attributeExpressionLength - noOfFeatures), noOfFeatures), modelName);
+            model = ModelRegistry.getInstance().getModel(OnlineBaggingModel.class, modelName);
+            MappedModelStore modelStore = MappedModelStore.fromConfig(configReader);
+            if (model == null && modelStore != null) {
+                model = ModelRegistry.getInstance().getOrCreateModel(OnlineBaggingModel.class, modelName,
+                        name -> modelStore.load(name, OnlineBaggingModel::fromSnapshot));
+            }
+            if (model == null || model.getStreamHeader() == null) {
+                throw new SiddhiAppValidationException(String.format("Model [%s] needs to initialized "
+                        + "prior to be used with streamingml:onlineBaggingClassifier. "
+                        + "Perform streamingml:updateOnlineBagging process first.", modelName));
+            }
+            if (model.getNoOfFeatures() != noOfFeatures + 1) {
+                throw new SiddhiAppValidationException(String.format("Model [%s] expects %s features, but the "
+                                + "streamingml:onlineBaggingClassifier specifies %s features.", modelName,
+                        model.getNoOfFeatures() - 1, noOfFeatures));
+            }
+            String votingMode = configReader.readConfig(VOTING_MODE, EARLY_EXIT_VOTING).trim();
+            if (EARLY_EXIT_VOTING.equalsIgnoreCase(votingMode)) {
+                earlyExit = true;
+            } else if (!FULL_VOTING.equalsIgnoreCase(votingMode)) {
+                throw new SiddhiAppCreationException(String.format("%s should be either %s or %s but found %s",
+                        VOTING_MODE, FULL_VOTING, EARLY_EXIT_VOTING, votingMode));
+            }
+            statistics = ModelStatistics.create(siddhiQueryContext, modelPrefix, "prediction");
+        } else {
+            throw new SiddhiAppValidationException(String.format("Invalid number of parameters for "
+                            + "streamingml:onlineBaggingClassifier. This Stream Processor requires "
+                            + "at least %s parameters, namely, model.name and at least %s feature_attributes,"
+                            + " but found %s parameters", (MINIMUM_NUMBER_OF_PARAMETERS + MINIMUM_NUMBER_OF_FEATURES),
+                    MINIMUM_NUMBER_OF_FEATURES, attributeExpressionExecutors.length));
+        }
+        attributes.add(new Attribute("prediction", Attribute.Type.STRING));
+        attributes.add(new Attribute("confidenceLevel", Attribute.Type.DOUBLE));
+        return () -> new ExtensionState(model);
+    }
+
+    @Override
+    protected void process(ComplexEventChunk<StreamEvent> streamEventChunk, Processor nextProcessor,
+                           StreamEventCloner streamEventCloner, ComplexEventPopulater complexEventPopulater,
+                           ExtensionState state) {
+        // predictions only take the read lock of the model, hence chunks from different threads are
+        // processed in parallel
+        double[] cepEvent = featureBuffer.get();
+        statistics.markIn();
+        while (streamEventChunk.hasNext()) {
+            StreamEvent streamEvent = streamEventChunk.next();
+            statistics.eventIn();
+            featureExtractor.extractFeatures(streamEvent, cepEvent);
+            Object[] outputData = model.getPrediction(cepEvent, earlyExit);
+            complexEventPopulater.populateComplexEvent(streamEvent, outputData);
+        }
+        statistics.markOut();
+        nextProcessor.process(streamEventChunk);
+    }
+
+    @Override
+    public void start() {
+    }
+
+    @Override
+    public void stop() {
+        ModelRegistry.getInstance().deleteModel(OnlineBaggingModel.class, modelName);
+    }
+
+    @Override
+    public List<Attribute> getReturnAttributes() {
+        return attributes;
+    }
+
+    @Override
+    public ProcessingMode getProcessingMode() {
+        return ProcessingMode.BATCH;
+    }
+
+    static class ExtensionState extends State {
+        private final OnlineBaggingModel model;
+        private final ModelCheckpoint checkpoint = new ModelCheckpoint();
+
+        ExtensionState(OnlineBaggingModel model) {
+            this.model = model;
+        }
+
+        @Override
+        public boolean canDestroy() {
+            return false;
+        }
+
+        @Override
+        public Map<String, Object> snapshot() {
+            Map<String, Object> currentState = new HashMap<>();
+            if (checkpoint.isSnapshotRequired(model.getVersion())) {
+                currentState.put("OnlineBaggingModel", ModelCheckpoint.toBase(model.toSnapshot()));
+            }
+            return currentState;
+        }
+
+        @Override
+        public void restore(Map<String, Object> state) {
+            Object snapshot = ModelCheckpoint.getLatestState(state.get("OnlineBaggingModel"));
+            if (snapshot instanceof byte[]) {
+                model.restoreFrom(OnlineBaggingModel.fromSnapshot(model.getModelName(), (byte[]) snapshot));
+            }
+            checkpoint.reset();
+        }
+    }
+}
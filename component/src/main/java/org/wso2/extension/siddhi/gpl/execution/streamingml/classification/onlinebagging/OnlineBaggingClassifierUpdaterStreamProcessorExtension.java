@@ -0,0 +1,403 @@
+/*
+ * Copyright (C) 2017 WSO2 Inc. (http://wso2.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.wso2.extension.siddhi.gpl.execution.streamingml.classification.onlinebagging;
+
+import io.siddhi.annotation.Example;
+import io.siddhi.annotation.Extension;
+import io.siddhi.annotation.Parameter;
+import io.siddhi.annotation.ReturnAttribute;
+import io.siddhi.annotation.SystemParameter;
+import io.siddhi.annotation.util.DataType;
+import io.siddhi.core.config.SiddhiQueryContext;
+import io.siddhi.core.event.ComplexEventChunk;
+import io.siddhi.core.event.stream.MetaStreamEvent;
+import io.siddhi.core.event.stream.StreamEvent;
+import io.siddhi.core.event.stream.StreamEventCloner;
+import io.siddhi.core.event.stream.holder.StreamEventClonerHolder;
+import io.siddhi.core.event.stream.populater.ComplexEventPopulater;
+import io.siddhi.core.executor.ConstantExpressionExecutor;
+import io.siddhi.core.executor.ExpressionExecutor;
+import io.siddhi.core.executor.VariableExpressionExecutor;
+import io.siddhi.core.query.processor.ProcessingMode;
+import io.siddhi.core.query.processor.Processor;
+import io.siddhi.core.query.processor.stream.StreamProcessor;
+import io.siddhi.core.util.config.ConfigReader;
+import io.siddhi.core.util.snapshot.state.State;
+import io.siddhi.core.util.snapshot.state.StateFactory;
+import io.siddhi.query.api.definition.AbstractDefinition;
+import io.siddhi.query.api.definition.Attribute;
+import io.siddhi.query.api.exception.SiddhiAppValidationException;
+import org.apache.log4j.Logger;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.classification.ClassifierPrequentialModelEvaluation;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.classification.onlinebagging.util.OnlineBaggingConfig;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.classification.onlinebagging.util.OnlineBaggingModel;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.AsyncModelTrainer;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.CoreUtils;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.FeatureExtractor;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.MappedModelStore;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.ModelCheckpoint;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.ModelEvents;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.ModelRegistry;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.ModelStatistics;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Build/update using an Online Bagging Model.
+ * {@link OnlineBaggingClassifierUpdaterStreamProcessorExtension}
+ */
+@Extension(
+        name = "updateOnlineBagging",
+        namespace = "streamingml",
+        description = "This extension performs the build/update of an online bagging ensemble of Hoeffding "
+                + "Adaptive Trees for evolving data streams. Each tree is trained on the events with Poisson "
+                + "weights, and the tree with the highest error is reset when `ADWIN` detects an increase in the "
+                + "error of any tree. A lambda of 1 gives the online bagging of Oza and Russell, while the default "
+                + "lambda of 6 gives the Leveraging Bagging of Bifet et al.",
+        parameters = {
+                @Parameter(name = "model.name",
+                        description = "The name of the model to be built/updated.",
+                        type = {DataType.STRING}),
+                @Parameter(name = "no.of.classes",
+                        description = "The number of class labels in the datastream.",
+                        type = {DataType.INT}),
+                @Parameter(name = "ensemble.size",
+                        description = "The number of trees of the ensemble.",
+                        type = {DataType.INT},
+                        optional = true,
+                        defaultValue = "10"),
+                @Parameter(name = "lambda",
+                        description = "The mean of the Poisson distribution of the weight of an event for a tree.",
+                        type = {DataType.DOUBLE},
+                        optional = true,
+                        defaultValue = "6.0"),
+                @Parameter(name = "model.features",
+                        description = "The features of the model that should be attributes of the stream.",
+                        type = {DataType.DOUBLE, DataType.INT})
+        },
+        systemParameter = {
+                @SystemParameter(name = "trainingMode",
+                        description = "Whether the model is trained on the event processing thread (`sync`), or on "
+                                + "a dedicated worker thread fed through a bounded queue (`async`). In the `async` "
+                                + "mode, the events are output without waiting for the training, with the "
+                                + "accuracy most recently computed by the worker.",
+                        defaultValue = "sync",
+                        possibleParameters = {"sync", "async"}),
+                @SystemParameter(name = "trainingQueueSize",
+                        description = "The number of events that can wait to be trained on in the `async` training "
+                                + "mode. It is rounded up to a power of two.",
+                        defaultValue = "1024",
+                        possibleParameters = "Any positive integer"),
+                @SystemParameter(name = "backpressurePolicy",
+                        description = "How the events are handled when the training queue is full in the `async` "
+                                + "training mode. `block` waits for space in the queue, `dropOldest` discards the "
+                                + "oldest queued event, and `sample` discards every second event once the queue is "
+                                + "half full and every event once it is full.",
+                        defaultValue = "block",
+                        possibleParameters = {"block", "dropOldest", "sample"}),
+                @SystemParameter(name = "modelStoreDirectory",
+                        description = "The directory in which the model is kept in a memory-mapped file, named "
+                                + "after the Siddhi app and the model. The file is written in the background after "
+                                + "each checkpoint of the Siddhi app at which the model has changed, and when the app "
+                                + "is shut down, and the model is read from it when the app is started, so that a "
+                                + "restarted node uses the model right away. "
+                                + "The model is not kept in a file if the directory is `none`.",
+                        defaultValue = "none",
+                        possibleParameters = "Any directory path")
+        },
+        returnAttributes = {
+                @ReturnAttribute(name = "accuracy",
+                        description = "The accuracy evaluation of the model(Prequnetial Evaluation)",
+                        type = {DataType.DOUBLE})
+        },
+        examples = {
+                @Example(
+                        syntax = "define stream StreamA (attribute_0 double, attribute_1 double, "
+                                + "attribute_2 double, attribute_3 double, attribute_4 string );\n"
+                                + "\n"
+                                + "from StreamA#streamingml:updateOnlineBagging('model1', 3) \n"
+                                + "select attribute_0, attribute_1, attribute_2, attribute_3, "
+                                + "accuracy insert into OutputStream;",
+                        description = "This query builds/updates an online bagging ensemble named `model1` of 10 "
+                                + "trees under 3 classes using `attribute_0`, `attribute_1`, `attribute_2`, and "
+                                + "`attribute_3` as features, and `attribute_4` as the label. The accuracy "
+                                + "evaluation is output to the `OutputStream` stream"
+                ),
+                @Example(
+                        syntax = "define stream StreamA (attribute_0 double, attribute_1 double, "
+                                + "attribute_2 double, attribute_3 double, attribute_4 string );\n"
+                                + "\n"
+                                + "from StreamA#streamingml:updateOnlineBagging('model1', 3, 20, 1.0) \n"
+                                + "select attribute_0, attribute_1, attribute_2, attribute_3, "
+                                + "accuracy insert into OutputStream;",
+                        description = "This query builds/updates an online bagging ensemble named `model1` of 20 "
+                                + "trees, weighting the events for each tree with a Poisson distribution of mean "
+                                + "1.0. `attribute_0`, `attribute_1`, `attribute_2`, and `attribute_3` are used as "
+                                + "features, and `attribute_4` as the label. The accuracy evaluation is output to the "
+                                + "OutputStream stream."
+                )
+        }
+)
+public class OnlineBaggingClassifierUpdaterStreamProcessorExtension extends
+        StreamProcessor<OnlineBaggingClassifierUpdaterStreamProcessorExtension.ExtensionState> {
+
+    private static final Logger logger = Logger.getLogger(OnlineBaggingClassifierUpdaterStreamProcessorExtension.class);
+
+    private static final int MINIMUM_NUMBER_OF_FEATURES = 3;
+    private static final int MINIMUM_NUMBER_OF_PARAMETERS = 2;
+    private static final int NUMBER_OF_HYPER_PARAMETERS = OnlineBaggingConfig.NUMBER_OF_HYPER_PARAMETERS;
+
+    private int noOfFeatures;
+    private int noOfParameters;
+    private int noOfClasses;
+    private String modelName;
+    private OnlineBaggingModel model;
+
+    private FeatureExtractor featureExtractor;
+    private VariableExpressionExecutor classLabelVariableExecutor;
+
+    private double[] cepEvent;
+    private final Object[] outputData = new Object[1];
+    private ClassifierPrequentialModelEvaluation evolutionModel;
+    private AsyncModelTrainer trainer;
+    private MappedModelStore modelStore;
+    private ModelStatistics statistics;
+    private volatile double accuracy;
+    //set attributes for OutputStream
+    private List<Attribute> attributes = new ArrayList<>();
+
+    @Override
+    protected StateFactory<ExtensionState> init(MetaStreamEvent metaStreamEvent, AbstractDefinition inputDefinition,
+                                                ExpressionExecutor[] attributeExpressionExecutors,
+                                                ConfigReader configReader,
+                                                StreamEventClonerHolder streamEventClonerHolder,
+                                                boolean outputExpectsExpiredEvents, boolean findToBeExecuted,
+                                                SiddhiQueryContext siddhiQueryContext) {
+        String siddhiAppName = siddhiQueryContext.getSiddhiAppContext().getName();
+        String modelPrefix;
+        noOfFeatures = inputDefinition.getAttributeList().size();
+        noOfParameters = attributeExpressionLength - noOfFeatures;
+        int classIndex = attributeExpressionLength - 1;
+
+        if (attributeExpressionLength >= MINIMUM_NUMBER_OF_PARAMETERS + MINIMUM_NUMBER_OF_FEATURES) {
+            if (attributeExpressionExecutors[0] instanceof ConstantExpressionExecutor) {
+                ConstantExpressionExecutor modelNameExecutor =
+                        (ConstantExpressionExecutor) attributeExpressionExecutors[0];
+                if (modelNameExecutor.getReturnType() == Attribute.Type.STRING) {
+                    modelPrefix = (String) modelNameExecutor.getValue();
+                    // model name = user given name + siddhi app name
+                    modelName = siddhiAppName + "." + modelPrefix;
+                } else {
+                    throw new SiddhiAppValidationException(
+                            "Invalid parameter type found for the model.name argument, "
+                                    + "required " + Attribute.Type.STRING + " but found "
+                                    + modelNameExecutor.getReturnType().toString());
+                }
+            } else {
+                throw new SiddhiAppValidationException("Model.name must be (ConstantExpressionExecutor) but found "
+                        + attributeExpressionExecutors[0].getClass().getCanonicalName());
+            }
+
+            //2nd parameter
+            if (attributeExpressionExecutors[1] instanceof ConstantExpressionExecutor) {
+                ConstantExpressionExecutor numberOfClassesExecutor =
+                        (ConstantExpressionExecutor) attributeExpressionExecutors[1];
+                if (numberOfClassesExecutor.getReturnType() == Attribute.Type.INT) {
+                    noOfClasses = (Integer) numberOfClassesExecutor.getValue();
+                    if (noOfClasses < 2) {
+                        throw new SiddhiAppValidationException(
+                                "Number of classes must be greater than 1 but found " + noOfClasses);
+                    }
+                } else {
+                    throw new SiddhiAppValidationException(
+                            "Invalid parameter type found for the number_of_classes argument, required "
+                                    + Attribute.Type.INT + " but found " +
+                                    numberOfClassesExecutor.getReturnType().toString());
+                }
+            } else {
+                throw new SiddhiAppValidationException(
+                        "Number of classes must be (ConstantExpressionExecutor) but found "
+                                + attributeExpressionExecutors[1].getClass().getCanonicalName());
+            }
+            if (noOfFeatures > 2) {
+                featureExtractor = new FeatureExtractor(CoreUtils
+                        .extractAndValidateFeatures(inputDefinition, attributeExpressionExecutors,
+                                (attributeExpressionLength - noOfFeatures), (noOfFeatures - 1)), modelName);
+                cepEvent = new double[noOfFeatures];
+
+                classLabelVariableExecutor = CoreUtils
+                        .extractAndValidateClassLabel(inputDefinition, attributeExpressionExecutors,
+                                classIndex);
+            } else {
+                throw new SiddhiAppValidationException(
+                        "Number of features must be greater than 2 but" + " found "
+                                + noOfFeatures);
+            }
+            OnlineBaggingConfig config;
+            if (noOfParameters == MINIMUM_NUMBER_OF_PARAMETERS) {
+                config = new OnlineBaggingConfig();
+            } else if (noOfParameters == (MINIMUM_NUMBER_OF_PARAMETERS + NUMBER_OF_HYPER_PARAMETERS)) {
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Online Bagging is configured with hyper-parameters");
+                }
+                config = OnlineBaggingConfig.fromParameters(attributeExpressionExecutors,
+                        MINIMUM_NUMBER_OF_PARAMETERS);
+            } else {
+                throw new SiddhiAppValidationException(String.format("Number of hyper-parameters needed for model"
+                                + " manual configuration is %s but found %s",
+                        NUMBER_OF_HYPER_PARAMETERS, (noOfParameters - MINIMUM_NUMBER_OF_PARAMETERS)));
+            }
+            modelStore = MappedModelStore.fromConfig(configReader);
+            model = ModelRegistry.getInstance().getOrCreateModel(OnlineBaggingModel.class, modelName,
+                    name -> MappedModelStore.loadOrCreate(modelStore, name, OnlineBaggingModel::fromSnapshot,
+                            OnlineBaggingModel::new));
+            if (model.getStreamHeader() == null) {
+                if (logger.isDebugEnabled()) {
+                    logger.debug(String.format("Model [%s] has not been initialized.", modelName));
+                }
+                // the hyper-parameters build the trees of the ensemble, hence they only apply to a new model
+                model.init(noOfFeatures, noOfClasses, config);
+            } else if (model.getNoOfFeatures() != noOfFeatures) {
+                throw new SiddhiAppValidationException(String.format("Model [%s] expects %s features, but the "
+                                + "streamingml:updateOnlineBagging specifies %s features.", modelName,
+                        model.getNoOfFeatures(), noOfFeatures));
+            }
+            evolutionModel = new ClassifierPrequentialModelEvaluation();
+            evolutionModel.reset(noOfClasses);
+            trainer = AsyncModelTrainer.fromConfig(configReader, modelName, noOfFeatures,
+                    (features, classValue) -> accuracy = model.trainOnEvent(evolutionModel, features,
+                            (String) classValue));
+            statistics = ModelStatistics.create(siddhiQueryContext, modelPrefix, "training");
+            statistics.registerMemoryUsage(model);
+        } else {
+            throw new SiddhiAppValidationException(String.format("Invalid number of attributes for "
+                            + "streamingml:updateOnlineBagging. This Stream Processor requires at least %s ,"
+                            + "parameters namely, model.name, number_of_classes and %s features but found %s "
+                            + "parameters and %s features", MINIMUM_NUMBER_OF_PARAMETERS, MINIMUM_NUMBER_OF_FEATURES,
+                    (attributeExpressionLength - noOfFeatures), noOfFeatures));
+        }
+        attributes.add(new Attribute("accuracy", Attribute.Type.DOUBLE));
+        return () -> new ExtensionState(model, trainer, modelStore);
+    }
+
+
+    @Override
+    protected void process(ComplexEventChunk<StreamEvent> streamEventChunk, Processor nextProcessor,
+                           StreamEventCloner streamEventCloner, ComplexEventPopulater complexEventPopulater,
+                           ExtensionState state) {
+        synchronized (this) {
+            statistics.markIn();
+            while (streamEventChunk.hasNext()) {
+                StreamEvent streamEvent = streamEventChunk.next();
+                statistics.eventIn();
+                String classValue = classLabelVariableExecutor.execute(streamEvent).toString();
+                featureExtractor.extractFeatures(streamEvent, cepEvent);
+                if (trainer == null) {
+                    outputData[0] = model.trainOnEvent(evolutionModel, cepEvent, classValue);
+                } else {
+                    trainer.offer(cepEvent, classValue);
+                    outputData[0] = accuracy;
+                }
+                complexEventPopulater.populateComplexEvent(streamEvent, outputData);
+            }
+            statistics.markOut();
+            nextProcessor.process(streamEventChunk);
+        }
+    }
+
+    @Override
+    public void start() {
+        if (trainer != null) {
+            trainer.start();
+        }
+    }
+
+    @Override
+    public void stop() {
+        if (trainer != null) {
+            trainer.stop();
+        }
+        if (modelStore != null) {
+            modelStore.save(modelName, model::toSnapshot);
+        }
+        ModelRegistry.getInstance().deleteModel(OnlineBaggingModel.class, modelName);
+    }
+
+    @Override
+    public List<Attribute> getReturnAttributes() {
+        return attributes;
+    }
+
+    @Override
+    public ProcessingMode getProcessingMode() {
+        return ProcessingMode.BATCH;
+    }
+
+    static class ExtensionState extends State {
+        private final OnlineBaggingModel model;
+        private final AsyncModelTrainer trainer;
+        private final MappedModelStore modelStore;
+        private final ModelCheckpoint checkpoint = new ModelCheckpoint();
+
+        ExtensionState(OnlineBaggingModel model, AsyncModelTrainer trainer, MappedModelStore modelStore) {
+            this.model = model;
+            this.trainer = trainer;
+            this.modelStore = modelStore;
+        }
+
+        @Override
+        public boolean canDestroy() {
+            return false;
+        }
+
+        @Override
+        public Map<String, Object> snapshot() {
+            if (trainer != null) {
+                trainer.flush();
+            }
+            ModelEvents.ModelSnapshot event = ModelEvents.beginSnapshot(model.getModelName(), false);
+            Map<String, Object> currentState = new HashMap<>();
+            boolean snapshotRequired = checkpoint.isSnapshotRequired(model.getVersion());
+            if (snapshotRequired) {
+                byte[] snapshot = model.toSnapshot();
+                if (modelStore != null) {
+                    modelStore.saveInBackground(model.getModelName(), () -> snapshot);
+                }
+                currentState.put("OnlineBaggingModel", checkpoint.toSnapshot(snapshot));
+            }
+            ModelEvents.commitSnapshot(event, !snapshotRequired);
+            return currentState;
+        }
+
+        @Override
+        public void restore(Map<String, Object> state) {
+            if (trainer != null) {
+                trainer.flush();
+            }
+            ModelEvents.ModelSnapshot event = ModelEvents.beginSnapshot(model.getModelName(), true);
+            Object snapshot = ModelCheckpoint.getLatestState(state.get("OnlineBaggingModel"));
+            if (snapshot instanceof byte[]) {
+                model.restoreFrom(OnlineBaggingModel.fromSnapshot(model.getModelName(), (byte[]) snapshot));
+            }
+            checkpoint.reset();
+            ModelEvents.commitSnapshot(event, false);
+        }
+    }
+}
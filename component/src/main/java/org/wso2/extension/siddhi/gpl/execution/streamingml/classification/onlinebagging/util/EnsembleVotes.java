@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2017 WSO2 Inc. (http://wso2.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.wso2.extension.siddhi.gpl.execution.streamingml.classification.onlinebagging.util;
+
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.MathUtil;
+
+import java.util.function.IntFunction;
+
+/**
+ * Adds up the votes of the members of an ensemble, each member voting with its votes normalized to sum up to 1
+ * <p>
+ * As a member adds at most 1 to the votes of a class, the voting may stop once the lead of the winning class is
+ * larger than the number of members left to vote.
+ */
+public final class EnsembleVotes {
+
+    private EnsembleVotes() {
+    }
+
+    /**
+     * Add up the votes of the members, in the order of the members
+     *
+     * @param votes       votes of the classes, added to
+     * @param noOfMembers number of members of the ensemble
+     * @param memberVotes votes of the member of the given index
+     * @param earlyExit   whether the voting stops once the remaining members cannot change the winner
+     * @return number of members which voted
+     */
+    public static int vote(double[] votes, int noOfMembers, IntFunction<double[]> memberVotes, boolean earlyExit) {
+        for (int i = 0; i < noOfMembers; i++) {
+            addNormalizedVotes(votes, memberVotes.apply(i));
+            if (earlyExit && isDecided(votes, noOfMembers - i - 1)) {
+                return i + 1;
+            }
+        }
+        return noOfMembers;
+    }
+
+    /**
+     * Whether the winner of the votes cannot change, as each of the remaining members adds at most 1 to the votes
+     * of a class. The lead has to be strict, as {@link
+     * org.wso2.extension.siddhi.gpl.execution.streamingml.util.CoreUtils#argMaxIndex} breaks a tie by the lower
+     * index.
+     *
+     * @param votes                votes of the members which voted
+     * @param noOfRemainingMembers number of members which have not voted yet
+     * @return true if the remaining members cannot change the class with the most votes
+     */
+    public static boolean isDecided(double[] votes, int noOfRemainingMembers) {
+        double first = Double.NEGATIVE_INFINITY;
+        double second = Double.NEGATIVE_INFINITY;
+        for (double vote : votes) {
+            if (vote > first) {
+                second = first;
+                first = vote;
+            } else if (vote > second) {
+                second = vote;
+            }
+        }
+        return first - second > noOfRemainingMembers;
+    }
+
+    /**
+     * Add the votes of a member, normalized to sum up to 1
+     */
+    static void addNormalizedVotes(double[] votes, double[] memberVotes) {
+        double sum = MathUtil.sum(memberVotes);
+        if (sum > 0) {
+            for (int i = 0; i < memberVotes.length && i < votes.length; i++) {
+                votes[i] += memberVotes[i] / sum;
+            }
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2017 WSO2 Inc. (http://wso2.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.wso2.extension.siddhi.gpl.execution.streamingml.classification.onlinebagging.util;
+
+import io.siddhi.core.executor.ConstantExpressionExecutor;
+import io.siddhi.core.executor.ExpressionExecutor;
+import io.siddhi.query.api.definition.Attribute;
+import io.siddhi.query.api.exception.SiddhiAppValidationException;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.CoreUtils;
+
+/**
+ * Hyper-parameters of an online bagging ensemble, read once from the query and used to build the members of each
+ * model initialized by the query.
+ */
+public class OnlineBaggingConfig {
+    public static final int NUMBER_OF_HYPER_PARAMETERS = 2;
+    private static final String[] HYPER_PARAMETERS = {"Ensemble Size", "Lambda"};
+
+    //default configurations of the Leveraging Bagging of MOA
+    private int ensembleSize = 10;
+    private double lambda = 6.0;
+
+    /**
+     * Read the hyper-parameters from the parameters of the query
+     *
+     * @param attributeExpressionExecutors parameters of the query
+     * @param firstIndex                   index of the first hyper-parameter
+     * @return the hyper-parameters
+     */
+    public static OnlineBaggingConfig fromParameters(ExpressionExecutor[] attributeExpressionExecutors,
+                                                     int firstIndex) {
+        OnlineBaggingConfig config = new OnlineBaggingConfig();
+        for (int i = firstIndex; i < firstIndex + NUMBER_OF_HYPER_PARAMETERS; i++) {
+            ExpressionExecutor executor = attributeExpressionExecutors[i];
+            if (!(executor instanceof ConstantExpressionExecutor)) {
+                throw new SiddhiAppValidationException(String.format("%s must be (ConstantExpressionExecutor) "
+                                + "but found %s in position %s.", HYPER_PARAMETERS[i - firstIndex],
+                        executor.getClass().getCanonicalName(), (i + 1)));
+            }
+            Object value = ((ConstantExpressionExecutor) executor).getValue();
+            if (i == firstIndex) {
+                if (executor.getReturnType() == Attribute.Type.INT && (Integer) value > 0) {
+                    config.ensembleSize = (Integer) value;
+                } else {
+                    throw new SiddhiAppValidationException(String.format("Ensemble Size must be a positive "
+                                    + "%s. But found %s of type %s at position %s", Attribute.Type.INT, value,
+                            executor.getReturnType(), (i + 1)));
+                }
+            } else {
+                if (CoreUtils.isNumeric(executor.getReturnType()) && ((Number) value).doubleValue() > 0) {
+                    config.lambda = ((Number) value).doubleValue();
+                } else {
+                    throw new SiddhiAppValidationException(String.format("Lambda must be a positive %s. "
+                                    + "But found %s of type %s at position %s.", Attribute.Type.DOUBLE, value,
+                            executor.getReturnType(), (i + 1)));
+                }
+            }
+        }
+        return config;
+    }
+
+    public int getEnsembleSize() {
+        return ensembleSize;
+    }
+
+    public double getLambda() {
+        return lambda;
+    }
+}
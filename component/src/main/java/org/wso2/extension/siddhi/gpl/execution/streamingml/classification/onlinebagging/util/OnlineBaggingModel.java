@@ -0,0 +1,469 @@
+/*
+ * Copyright (C) 2017 WSO2 Inc. (http://wso2.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.wso2.extension.siddhi.gpl.execution.streamingml.classification.onlinebagging.util;
+
+import com.yahoo.labs.samoa.instances.Attribute;
+import com.yahoo.labs.samoa.instances.DenseInstance;
+import com.yahoo.labs.samoa.instances.Instance;
+import com.yahoo.labs.samoa.instances.Instances;
+import com.yahoo.labs.samoa.instances.InstancesHeader;
+import io.siddhi.core.exception.SiddhiAppRuntimeException;
+import moa.classifiers.core.driftdetection.ADWIN;
+import moa.classifiers.trees.HoeffdingAdaptiveTree;
+import moa.core.MiscUtils;
+import org.apache.log4j.Logger;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.classification.ClassifierPrequentialModelEvaluation;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.classification.LabelDictionary;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.classification.hoeffdingtree.util.CompiledHoeffdingTree;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.classification.hoeffdingtree.util.HoeffdingTreeStructure;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.CoreUtils;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.MathUtil;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.ModelSnapshotReader;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.ModelSnapshotType;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.ModelSnapshotWriter;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Represents an online bagging ensemble of Hoeffding Adaptive Trees
+ * <p>
+ * Each member is trained on an event with a weight drawn from a Poisson distribution of mean lambda. A lambda of 1
+ * is the online bagging of Oza and Russell, while a larger lambda, along with the ADWIN detectors which reset the
+ * member with the highest error once a drift is detected, is the Leveraging Bagging of Bifet et al.
+ * <p>
+ * Each member votes with its normalized votes, hence with a weight of at most 1. A prediction may therefore stop
+ * once the lead of the winning class is larger than the number of members left to vote, as those members cannot
+ * change the winner any more. The members vote with compiled images of their trees, compiled again once the
+ * structures of their trees change, as the Hoeffding Adaptive Tree model compiles its tree.
+ * <p>
+ * As the Hoeffding Adaptive Tree model does, training takes the write lock of the model, while predictions only
+ * take the read lock.
+ */
+public class OnlineBaggingModel {
+    private static final Logger logger = Logger.getLogger(OnlineBaggingModel.class);
+    private static final int SNAPSHOT_VERSION = 1;
+    private static final int RANDOM_SEED = 1;
+
+    private final String modelName;
+    private InstancesHeader streamHeader;
+    private int noOfFeatures;
+    private int noOfClasses;
+    private double lambda;
+    private HoeffdingAdaptiveTree[] members;
+    private ADWIN[] errorDetectors;
+    private Random random;
+    private LabelDictionary classes = new LabelDictionary();
+    private final StampedLock lock = new StampedLock();
+    // incremented on each update of the model, so that checkpoints can skip an unchanged model
+    private long version;
+    // size of the last snapshot, which sizes the buffer of the next one
+    private int snapshotSize;
+
+    // instances reused for training, so that no instance is created per event. Guarded by the write lock.
+    private double[] trainValues;
+    private Instance trainInstance;
+    private double[] trainVotes;
+    private boolean[] correctMembers;
+
+    // structures of the members, which are tracked to compile a member again once it changes. Guarded by the lock.
+    private HoeffdingTreeStructure[] structures;
+    // prediction-only images of the members, compiled for the structures of the members they were compiled for
+    private volatile CompiledMembers compiledMembers;
+
+    public OnlineBaggingModel(String modelName) {
+        this.modelName = modelName;
+    }
+
+    /**
+     * Restore the state of this model from a snapshot of it, so that the stream processors which hold a
+     * reference to this model continue with the restored state.
+     *
+     * @param model snapshot of the model
+     */
+    public void restoreFrom(OnlineBaggingModel model) {
+        long stamp = lock.writeLock();
+        try {
+            version++;
+            this.streamHeader = model.streamHeader;
+            this.noOfFeatures = model.noOfFeatures;
+            this.noOfClasses = model.noOfClasses;
+            this.lambda = model.lambda;
+            this.members = model.members;
+            this.errorDetectors = model.errorDetectors;
+            this.random = model.random;
+            this.classes = model.classes;
+            if (streamHeader != null) {
+                createTrainingInstances();
+                trackStructures();
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Write the state of the model into a binary snapshot. The model is only locked while it is being written.
+     *
+     * @return snapshot of the model, read by {@link #fromSnapshot(String, byte[])}
+     */
+    public byte[] toSnapshot() {
+        ModelSnapshotWriter writer = new ModelSnapshotWriter(ModelSnapshotType.ONLINE_BAGGING, SNAPSHOT_VERSION,
+                snapshotSize);
+        long stamp = lock.readLock();
+        try {
+            writer.writeBoolean(members != null);
+            if (members != null) {
+                writer.writeInt(noOfFeatures);
+                writer.writeInt(noOfClasses);
+                writer.writeDouble(lambda);
+                writer.writeStrings(classes.toList());
+                writer.writeLearner(members);
+                writer.writeLearner(errorDetectors);
+                writer.writeLearner(random);
+            }
+        } finally {
+            lock.unlockRead(stamp);
+        }
+        snapshotSize = writer.size();
+        return writer.toByteArray();
+    }
+
+    /**
+     * Read a model from a binary snapshot written by {@link #toSnapshot()}
+     *
+     * @param modelName name of the model
+     * @param snapshot  snapshot of the model
+     * @return the model
+     */
+    public static OnlineBaggingModel fromSnapshot(String modelName, byte[] snapshot) {
+        return fromSnapshot(modelName, ByteBuffer.wrap(snapshot));
+    }
+
+    /**
+     * Read a model from a binary snapshot written by {@link #toSnapshot()}, e.g., mapped from a file
+     *
+     * @param modelName name of the model
+     * @param snapshot  snapshot of the model
+     * @return the model
+     */
+    public static OnlineBaggingModel fromSnapshot(String modelName, ByteBuffer snapshot) {
+        ModelSnapshotReader reader = new ModelSnapshotReader(snapshot, ModelSnapshotType.ONLINE_BAGGING,
+                SNAPSHOT_VERSION);
+        OnlineBaggingModel model = new OnlineBaggingModel(modelName);
+        if (reader.readBoolean()) {
+            model.noOfFeatures = reader.readInt();
+            model.noOfClasses = reader.readInt();
+            model.lambda = reader.readDouble();
+            model.classes = new LabelDictionary(reader.readStrings());
+            model.members = reader.readLearner(HoeffdingAdaptiveTree[].class);
+            model.errorDetectors = reader.readLearner(ADWIN[].class);
+            model.random = reader.readLearner(Random.class);
+            model.streamHeader = model.members[0].getModelContext();
+            model.createTrainingInstances();
+            model.trackStructures();
+        }
+        return model;
+    }
+
+    /**
+     * Initialize the model with input stream definition, and build its members with the hyper-parameters.
+     *
+     * @param noOfAttributes number of feature attributes, including the class label
+     * @param noOfClasses    number of classes
+     * @param config         hyper-parameters of the ensemble
+     */
+    public void init(int noOfAttributes, int noOfClasses, OnlineBaggingConfig config) {
+        if (logger.isDebugEnabled()) {
+            logger.debug(String.format("Model [%s] is being initialized with %s members.", modelName,
+                    config.getEnsembleSize()));
+        }
+        long stamp = lock.writeLock();
+        try {
+            version++;
+            this.noOfFeatures = noOfAttributes;
+            this.noOfClasses = noOfClasses;
+            this.lambda = config.getLambda();
+            this.streamHeader = createMOAInstanceHeader(noOfAttributes);
+            this.members = new HoeffdingAdaptiveTree[config.getEnsembleSize()];
+            this.errorDetectors = new ADWIN[members.length];
+            for (int i = 0; i < members.length; i++) {
+                members[i] = new HoeffdingAdaptiveTree();
+                members[i].setModelContext(streamHeader);
+                members[i].prepareForUse();
+                errorDetectors[i] = new ADWIN();
+            }
+            this.random = new Random(RANDOM_SEED);
+            this.classes = new LabelDictionary();
+            createTrainingInstances();
+            trackStructures();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Train the members of the model on event instance. Once all the class labels have been seen, the prequential
+     * accuracy of the model is evaluated with the votes of all the members before they are trained on the event.
+     *
+     * @param modelEvaluation Prequential Model Evaluator.
+     * @param cepEvent        event data
+     * @param classLabel      class label of the cepEvent
+     * @return Prequential accuracy, or 0 if not all class labels have been seen
+     */
+    public double trainOnEvent(ClassifierPrequentialModelEvaluation modelEvaluation, double[] cepEvent,
+                               String classLabel) {
+        long stamp = lock.writeLock();
+        try {
+            version++;
+            boolean evaluated = classes.size() == noOfClasses;
+            int classIndex = noOfFeatures - 1;
+            System.arraycopy(cepEvent, 0, trainValues, 0, classIndex);
+            int classValue = addClass(classLabel);
+            trainValues[classIndex] = classValue;
+            Arrays.fill(trainVotes, 0);
+            for (int i = 0; i < members.length; i++) {
+                double[] votes = members[i].getVotesForInstance(trainInstance);
+                correctMembers[i] = MathUtil.sum(votes) > 0 && CoreUtils.argMaxIndex(votes) == classValue;
+                EnsembleVotes.addNormalizedVotes(trainVotes, votes);
+            }
+            if (evaluated) {
+                trainInstance.setWeight(1.0D);
+                modelEvaluation.addResult(trainInstance, trainVotes);
+            }
+            trainMembers();
+            return evaluated ? MathUtil.roundOff(modelEvaluation.getFractionCorrectlyClassified(), 3) : 0;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Train each member on the training instance with a Poisson weight, and reset the member with the highest
+     * error if the error of any member has increased. The structures of the members are tracked once they are
+     * trained.
+     */
+    private void trainMembers() {
+        boolean drift = false;
+        for (int i = 0; i < members.length; i++) {
+            int weight = MiscUtils.poisson(lambda, random);
+            if (weight > 0) {
+                trainInstance.setWeight(weight);
+                members[i].trainOnInstance(trainInstance);
+            }
+            double error = errorDetectors[i].getEstimation();
+            if (errorDetectors[i].setInput(correctMembers[i] ? 0 : 1)
+                    && errorDetectors[i].getEstimation() > error) {
+                drift = true;
+            }
+        }
+        if (drift) {
+            int worstMember = 0;
+            for (int i = 1; i < members.length; i++) {
+                if (errorDetectors[i].getEstimation() > errorDetectors[worstMember].getEstimation()) {
+                    worstMember = i;
+                }
+            }
+            if (logger.isDebugEnabled()) {
+                logger.debug(String.format("Member %s of model [%s] is reset after a drift.", worstMember,
+                        modelName));
+            }
+            members[worstMember].resetLearning();
+            errorDetectors[worstMember] = new ADWIN();
+        }
+        for (int i = 0; i < members.length; i++) {
+            structures[i].update(members[i]);
+        }
+    }
+
+    /**
+     * Predict the class label for event with feature attributes
+     *
+     * @param cepEvent  Event data.
+     * @param earlyExit whether the members stop voting once the remaining members cannot change the winner. The
+     *                  probability of the prediction is then the one among the members which voted.
+     * @return predicted class label, probability of the prediction.
+     */
+    public Object[] getPrediction(double[] cepEvent, boolean earlyExit) {
+        long stamp = lock.readLock();
+        try {
+            CompiledHoeffdingTree[] compiledMembers = getCompiledMembers();
+            Instance testInstance = Arrays.asList(compiledMembers).contains(null) ? createMOAInstance(cepEvent) : null;
+            double[] votes = new double[noOfClasses];
+            EnsembleVotes.vote(votes, members.length, i -> compiledMembers[i] != null
+                    ? compiledMembers[i].getVotes(cepEvent) : members[i].getVotesForInstance(testInstance), earlyExit);
+            int classIndex = CoreUtils.argMaxIndex(votes);
+            double confidenceLevel = MathUtil.roundOff((CoreUtils.argMax(votes) / MathUtil.sum(votes)), 3);
+            return new Object[]{classes.getLabel(classIndex), confidenceLevel};
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Return the compiled members of the current structures of the members. As the Hoeffding Adaptive Tree model
+     * does, a member is only compiled again once its structure changes, and only one of the readers which race to
+     * compile it compiles it. Called under the read lock.
+     *
+     * @return the compiled members, a member being null if it could not be compiled
+     */
+    private CompiledHoeffdingTree[] getCompiledMembers() {
+        CompiledMembers compiled = compiledMembers;
+        if (compiled != null && compiled.isCompiledFor(structures)) {
+            return compiled.members;
+        }
+        synchronized (this) {
+            compiled = compiledMembers;
+            if (compiled == null || !compiled.isCompiledFor(structures)) {
+                compiled = new CompiledMembers(compiled, structures, members, noOfClasses, noOfFeatures - 1);
+                compiledMembers = compiled;
+            }
+            return compiled.members;
+        }
+    }
+
+    /**
+     * Track the structures of the members afresh, once the members are replaced
+     */
+    private void trackStructures() {
+        structures = new HoeffdingTreeStructure[members.length];
+        for (int i = 0; i < members.length; i++) {
+            structures[i] = new HoeffdingTreeStructure();
+            structures[i].update(members[i]);
+        }
+    }
+
+    /**
+     * Create the instance reused for training, backed by an array which is overwritten for each event
+     */
+    private void createTrainingInstances() {
+        trainValues = new double[noOfFeatures];
+        trainInstance = createMOAInstance(trainValues);
+        trainVotes = new double[noOfClasses];
+        correctMembers = new boolean[members.length];
+    }
+
+    private Instance createMOAInstance(double[] cepEvent) {
+        Instance instance = new DenseInstance(1.0D, cepEvent);
+        instance.setDataset(streamHeader);
+        return instance;
+    }
+
+    private InstancesHeader createMOAInstanceHeader(int numberOfAttributes) {
+        List<Attribute> attributes = new ArrayList<Attribute>();
+        for (int i = 0; i < numberOfAttributes - 1; i++) {
+            attributes.add(new Attribute("numeric" + (i + 1)));
+        }
+        List<String> classLabels = new ArrayList<String>();
+        for (int i = 0; i < this.noOfClasses; i++) {
+            classLabels.add("class" + (i + 1));
+        }
+        attributes.add(new Attribute("class", classLabels));
+        InstancesHeader streamHeader = new InstancesHeader(new Instances("OnlineBagging", attributes, 0));
+        streamHeader.setClassIndex(numberOfAttributes - 1);
+        return streamHeader;
+    }
+
+    private int addClass(String label) {
+        int index = classes.indexOf(label);
+        if (index >= 0) {
+            return index;
+        }
+        if (classes.size() < noOfClasses) {
+            return classes.add(label);
+        }
+        throw new SiddhiAppRuntimeException(String.format("Number of classes %s is expected from the model "
+                + "%s but found %s", noOfClasses, modelName, classes.size()));
+    }
+
+    public String getModelName() {
+        return modelName;
+    }
+
+    public InstancesHeader getStreamHeader() {
+        return streamHeader;
+    }
+
+    public int getNoOfFeatures() {
+        return noOfFeatures;
+    }
+
+    public List<String> getClasses() {
+        long stamp = lock.readLock();
+        try {
+            return this.classes.toList();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * @return version of the model, which changes whenever the model is updated
+     */
+    public long getVersion() {
+        long stamp = lock.readLock();
+        try {
+            return version;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Compiled members, along with the structures of the members they were compiled for
+     */
+    private static class CompiledMembers {
+        private final HoeffdingTreeStructure[] structures;
+        private final long[] structureVersions;
+        private final CompiledHoeffdingTree[] members;
+
+        /**
+         * Compile the members whose structures have changed since the previous members were compiled
+         */
+        private CompiledMembers(CompiledMembers previous, HoeffdingTreeStructure[] structures,
+                                HoeffdingAdaptiveTree[] members, int noOfClasses, int noOfAttributes) {
+            this.structures = structures;
+            this.structureVersions = new long[members.length];
+            this.members = new CompiledHoeffdingTree[members.length];
+            for (int i = 0; i < members.length; i++) {
+                structureVersions[i] = structures[i].getVersion();
+                if (previous != null && previous.structures == structures
+                        && previous.structureVersions[i] == structureVersions[i]) {
+                    this.members[i] = previous.members[i];
+                } else {
+                    this.members[i] = CompiledHoeffdingTree.compile(members[i], noOfClasses, noOfAttributes);
+                }
+            }
+        }
+
+        private boolean isCompiledFor(HoeffdingTreeStructure[] structures) {
+            if (structures != this.structures) {
+                return false;
+            }
+            for (int i = 0; i < structures.length; i++) {
+                if (structures[i].getVersion() != structureVersions[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
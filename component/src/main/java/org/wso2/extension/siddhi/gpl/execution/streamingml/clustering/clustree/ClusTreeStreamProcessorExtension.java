@@ -21,6 +21,7 @@ import io.siddhi.annotation.Example;
 import io.siddhi.annotation.Extension;
 import io.siddhi.annotation.Parameter;
 import io.siddhi.annotation.ReturnAttribute;
+import io.siddhi.annotation.SystemParameter;
 import io.siddhi.annotation.util.DataType;
 import io.siddhi.core.config.SiddhiQueryContext;
 import io.siddhi.core.event.ComplexEventChunk;
@@ -30,8 +31,6 @@ import io.siddhi.core.event.stream.StreamEventCloner;
 import io.siddhi.core.event.stream.holder.StreamEventClonerHolder;
 import io.siddhi.core.event.stream.populater.ComplexEventPopulater;
 import io.siddhi.core.exception.SiddhiAppCreationException;
-import io.siddhi.core.exception.SiddhiAppRuntimeException;
-import io.siddhi.core.executor.ConstantExpressionExecutor;
 import io.siddhi.core.executor.ExpressionExecutor;
 import io.siddhi.core.executor.VariableExpressionExecutor;
 import io.siddhi.core.query.processor.ProcessingMode;
@@ -43,20 +42,24 @@ import io.siddhi.core.util.snapshot.state.StateFactory;
 import io.siddhi.query.api.definition.AbstractDefinition;
 import io.siddhi.query.api.definition.Attribute;
 import org.apache.log4j.Logger;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.clustering.clustree.util.ClusTreeConfig;
 import org.wso2.extension.siddhi.gpl.execution.streamingml.clustering.clustree.util.ClusTreeModel;
-import org.wso2.extension.siddhi.gpl.execution.streamingml.clustering.clustree.util.DataPoint;
 import org.wso2.extension.siddhi.gpl.execution.streamingml.clustering.clustree.util.KMeansModel;
-import org.wso2.extension.siddhi.gpl.execution.streamingml.clustering.clustree.util.Trainer;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.clustering.clustree.util.KMeansRefresher;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.clustering.clustree.util.MacroModelUpdate;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.clustering.clustree.util.WeightedPointSet;
 import org.wso2.extension.siddhi.gpl.execution.streamingml.util.CoreUtils;
-import org.wso2.extension.siddhi.gpl.execution.streamingml.util.MathUtil;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.FeatureExtractor;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.ModelCheckpoint;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.ModelEvents;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.ModelSnapshotWriter;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.ModelStatistics;
 
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Future;
 
 /**
  * performs clustree with batch update of kmeans model using ClusTree model
@@ -121,6 +124,65 @@ import java.util.concurrent.Future;
                 )
 
         },
+        systemParameter = {
+                @SystemParameter(name = "centroidIndex",
+                        description = "How the nearest centroid to an event is found. `kdTree` indexes the " +
+                                "centroids in a KD-tree each time the macro cluster model is refreshed, `none` " +
+                                "compares the event with every centroid, and `auto` indexes the centroids only " +
+                                "when there are at least 32 of them.",
+                        defaultValue = "auto",
+                        possibleParameters = {"auto", "kdTree", "none"}),
+                @SystemParameter(name = "kMeansAlgorithm",
+                        description = "The algorithm that builds the macro cluster model from the micro clusters. " +
+                                "`lloyd` computes the distance from each micro cluster to every centroid in each " +
+                                "iteration, while `hamerly` skips the micro clusters whose nearest centroid cannot " +
+                                "have changed, which makes the refreshes of large micro cluster sets faster. Both " +
+                                "find the same centroids.",
+                        defaultValue = "lloyd",
+                        possibleParameters = {"lloyd", "hamerly"}),
+                @SystemParameter(name = "kMeansTolerance",
+                        description = "The distance up to which each centroid may move in an iteration for the " +
+                                "macro cluster model to have converged. If it is `0`, the iterations continue " +
+                                "until the centroids do not move or the maximum number of iterations is reached.",
+                        defaultValue = "0",
+                        possibleParameters = "Any non negative number"),
+                @SystemParameter(name = "kMeansSeeding",
+                        description = "How the initial centroids of the macro cluster model are chosen among the " +
+                                "micro clusters. `firstDistinct` takes the first distinct micro clusters, " +
+                                "`kMeansPlusPlus` chooses them at random with weighted k-means++, which spreads " +
+                                "them over the micro clusters so that fewer iterations are needed, and " +
+                                "`kMeansParallel` uses k-means||, which samples the candidates in a few passes " +
+                                "over large micro cluster sets. The random choices are seeded with a constant.",
+                        defaultValue = "firstDistinct",
+                        possibleParameters = {"firstDistinct", "kMeansPlusPlus", "kMeansParallel"}),
+                @SystemParameter(name = "kMeansWarmStart",
+                        description = "If `true`, each refresh of the macro cluster model starts from the " +
+                                "centroids of the previous refresh instead of seeding new ones, hence it only " +
+                                "corrects the centroids for the micro clusters that changed since then.",
+                        defaultValue = "false",
+                        possibleParameters = {"true", "false"}),
+                @SystemParameter(name = "kMeansWarmStartIterations",
+                        description = "The maximum number of iterations of a refresh that starts from the " +
+                                "previous centroids. If it is `0`, the maximum number of iterations of the " +
+                                "query applies.",
+                        defaultValue = "0",
+                        possibleParameters = "Any non negative integer"),
+                @SystemParameter(name = "macroModelUpdate",
+                        description = "How the macro cluster model follows the stream once it has all of its " +
+                                "centroids. `refresh` runs k-means on the micro clusters after every " +
+                                "`no.of.events.to.refresh.macro.model` events, while `miniBatch` moves the " +
+                                "centroids towards each mini-batch of events with a learning rate per centroid, " +
+                                "which keeps the cost of each event constant instead of spending the cost of a " +
+                                "k-means run at once. The learning rate of a centroid does not drop below " +
+                                "1 / `horizon`.",
+                        defaultValue = "refresh",
+                        possibleParameters = {"refresh", "miniBatch"}),
+                @SystemParameter(name = "miniBatchSize",
+                        description = "The number of events by which the centroids are moved at once when " +
+                                "`macroModelUpdate` is `miniBatch`.",
+                        defaultValue = "10",
+                        possibleParameters = "Any positive integer")
+        },
         returnAttributes = {
                 @ReturnAttribute(
                         name = "euclideanDistanceToClosestCentroid",
@@ -170,16 +232,16 @@ import java.util.concurrent.Future;
         }
 )
 public class ClusTreeStreamProcessorExtension extends StreamProcessor<ClusTreeStreamProcessorExtension.ExtensionState> {
-    private final int separateThreadThreshold = 5000;
-    private int noOfClusters;
-    private int noOfEventsToRefreshMacroModel = 500;
+    private ClusTreeConfig config;
+    private int noOfEventsToRefreshMacroModel;
     private int noOfDimensions;
-    private int maxIterations = 40;
     private double[] coordinateValuesOfCurrentDataPoint;
 
     private ExecutorService executorService;
 
-    private List<VariableExpressionExecutor> featureVariableExpressionExecutors = new LinkedList<>();
+    private FeatureExtractor featureExtractor;
+    private ModelStatistics statistics;
+    private final TrackedModels trackedModels = new TrackedModels();
     private static final Logger logger = Logger.getLogger(ClusTreeStreamProcessorExtension.class.getName());
     //setting return attributes
     List<Attribute> attributeList;
@@ -195,9 +257,6 @@ public class ClusTreeStreamProcessorExtension extends StreamProcessor<ClusTreeSt
         final int maxConstantParams = 5;
         final int minNoOfFeatures = 1;
         int maxNoOfFeatures = inputDefinition.getAttributeList().size();
-        int maxHeightOfTree = 8;
-        int horizon = 1000;
-        int attributeStartIndex;
         if (attributeExpressionLength < minConstantParams + minNoOfFeatures ||
                 attributeExpressionLength > maxConstantParams + maxNoOfFeatures) {
             throw new SiddhiAppCreationException("Invalid number of parameters. User can either choose to give " +
@@ -206,113 +265,30 @@ public class ClusTreeStreamProcessorExtension extends StreamProcessor<ClusTreeSt
                     attributeExpressionLength + " parameters.");
         }
 
-        //expressionExecutors[0] --> numberOfClusters
-        if (!(attributeExpressionExecutors[0] instanceof ConstantExpressionExecutor)) {
-            throw new SiddhiAppCreationException("noOfClusters has to be a constant but found " +
-                    this.attributeExpressionExecutors[0].getClass().getCanonicalName());
-        }
-        if (attributeExpressionExecutors[0].getReturnType() == Attribute.Type.INT) {
-            noOfClusters = (Integer) ((ConstantExpressionExecutor) attributeExpressionExecutors[0]).getValue();
-            if (noOfClusters <= 0) {
-                throw new SiddhiAppCreationException("noOfClusters should be a positive integer " +
-                        "but found " + noOfClusters);
-            }
-        } else {
-            throw new SiddhiAppCreationException("noOfClusters should be of type int but found " +
-                    attributeExpressionExecutors[0].getReturnType());
-        }
-
-        if (attributeExpressionExecutors[1] instanceof VariableExpressionExecutor &&
-                attributeExpressionLength == minConstantParams + maxNoOfFeatures) {
-            attributeStartIndex = 1;
-        } else {
-            attributeStartIndex = 5;
-            //expressionExecutors[1] --> maxIterations
-            if (!(attributeExpressionExecutors[1] instanceof ConstantExpressionExecutor)) {
-                throw new SiddhiAppCreationException("Maximum iterations has to be a constant but found " +
-                        this.attributeExpressionExecutors[1].getClass().getCanonicalName());
-            }
-            if (attributeExpressionExecutors[1].getReturnType() == Attribute.Type.INT) {
-                maxIterations = (Integer) ((ConstantExpressionExecutor)
-                        attributeExpressionExecutors[1]).getValue();
-                if (maxIterations <= 0) {
-                    throw new SiddhiAppCreationException("maxIterations should be a positive integer " +
-                            "but found " + maxIterations);
-                }
-            } else {
-                throw new SiddhiAppCreationException("Maximum iterations should be of type int but found " +
-                        attributeExpressionExecutors[1].getReturnType());
-            }
-
-            //expressionExecutors[2] --> noOfEventsToRefreshMacroModel
-            if (!(attributeExpressionExecutors[2] instanceof ConstantExpressionExecutor)) {
-                throw new SiddhiAppCreationException("noOfEventsToRefreshMacroModel has to be a constant but found " +
-                        this.attributeExpressionExecutors[2].getClass().getCanonicalName());
-            }
-            if (attributeExpressionExecutors[2].getReturnType() == Attribute.Type.INT) {
-                noOfEventsToRefreshMacroModel = (Integer) ((ConstantExpressionExecutor)
-                        attributeExpressionExecutors[2]).getValue();
-                if (noOfEventsToRefreshMacroModel <= 0) {
-                    throw new SiddhiAppCreationException("noOfEventsToRefreshMacroModel should be a positive integer " +
-                            "but found " + noOfEventsToRefreshMacroModel);
-                }
-            } else {
-                throw new SiddhiAppCreationException("noOfEventsToRefreshMacroModel should be of type int but found " +
-                        attributeExpressionExecutors[2].getReturnType());
-            }
-
-            //expressionExecutors[3] --> maxHeightOfTree
-            if (!(attributeExpressionExecutors[3] instanceof ConstantExpressionExecutor)) {
-                throw new SiddhiAppCreationException("maxHeightOfTree has to be a constant but found " +
-                        this.attributeExpressionExecutors[3].getClass().getCanonicalName());
-            }
-
-            if (attributeExpressionExecutors[3].getReturnType() == Attribute.Type.INT) {
-                maxHeightOfTree = (Integer) ((ConstantExpressionExecutor)
-                        attributeExpressionExecutors[3]).getValue();
-                double minHeightOfTree = (Math.log(noOfClusters) / Math.log(3));
-                minHeightOfTree = MathUtil.roundOff(minHeightOfTree, 4);
-                if (maxHeightOfTree < minHeightOfTree) {
-                    throw new SiddhiAppCreationException("maxHeightOfTree should be an int greater than " +
-                            minHeightOfTree + " but found " + maxHeightOfTree);
-                }
-            } else {
-                throw new SiddhiAppCreationException("maxHeightOfTree should be of type int but found " +
-                        attributeExpressionExecutors[3].getReturnType());
-            }
-            maxHeightOfTree -= 1; //MOA implementation is in such a way that if we pass 0 to maxHeightOfTree
-            // it will build a tree with one level. but user should be able to give 1 and get one level.
-
-            //expressionExecutors[4] --> horizon
-            if (!(attributeExpressionExecutors[4] instanceof ConstantExpressionExecutor)) {
-                throw new SiddhiAppCreationException("horizon has to be a constant but found " +
-                        this.attributeExpressionExecutors[4].getClass().getCanonicalName());
-            }
-
-            if (attributeExpressionExecutors[4].getReturnType() == Attribute.Type.INT) {
-                horizon = (Integer) ((ConstantExpressionExecutor)
-                        attributeExpressionExecutors[4]).getValue();
-                if (horizon <= 0) {
-                    throw new SiddhiAppCreationException("horizon should be a positive integer " +
-                            "but found " + horizon);
-                }
-            } else {
-                throw new SiddhiAppCreationException("horizon should be of type int but found " +
-                        attributeExpressionExecutors[4].getReturnType());
-            }
-        }
+        boolean withHyperParameters = !(attributeExpressionExecutors[1] instanceof VariableExpressionExecutor &&
+                attributeExpressionLength == minConstantParams + maxNoOfFeatures);
+        config = ClusTreeConfig.fromParameters(attributeExpressionExecutors, 0, withHyperParameters)
+                .withSystemParameters(configReader);
+        noOfEventsToRefreshMacroModel = config.getNoOfEventsToRefreshMacroModel();
+        int attributeStartIndex = withHyperParameters ? maxConstantParams : minConstantParams;
 
         noOfDimensions = attributeExpressionExecutors.length - attributeStartIndex;
         coordinateValuesOfCurrentDataPoint = new double[noOfDimensions];
 
         //validating all the attributes to be variables
-        featureVariableExpressionExecutors = CoreUtils.extractAndValidateFeatures(inputDefinition,
-                attributeExpressionExecutors, attributeStartIndex, noOfDimensions);
+        featureExtractor = new FeatureExtractor(CoreUtils.extractAndValidateFeatures(inputDefinition,
+                attributeExpressionExecutors, attributeStartIndex, noOfDimensions), null);
 
-        ClusTreeModel clusTreeModel = new ClusTreeModel();
-        clusTreeModel.init(maxHeightOfTree, horizon);
+        ClusTreeModel clusTreeModel = config.createClusTreeModel();
 
         executorService = siddhiQueryContext.getSiddhiAppContext().getExecutorService();
+        statistics = ModelStatistics.create(siddhiQueryContext, siddhiQueryContext.getName(), "clustering");
+        statistics.registerSizeGauge("noOfMicroClusters", () -> trackedModels.noOfMicroClusters);
+        statistics.registerSizeGauge("noOfCentroids", () -> {
+            KMeansModel kMeansModel = trackedModels.kMeansModel;
+            return kMeansModel == null ? 0 : kMeansModel.getNoOfCentroids();
+        });
+        statistics.registerMemoryUsage(trackedModels);
 
         attributeList = new ArrayList<>(1 + noOfDimensions);
         attributeList.add(new Attribute("euclideanDistanceToClosestCentroid", Attribute.Type.DOUBLE));
@@ -327,38 +303,35 @@ public class ClusTreeStreamProcessorExtension extends StreamProcessor<ClusTreeSt
                            StreamEventCloner streamEventCloner, ComplexEventPopulater complexEventPopulater,
                            ExtensionState state) {
         synchronized (this) {
+            statistics.markIn();
             while (complexEventChunk.hasNext()) {
                 StreamEvent streamEvent = complexEventChunk.next();
+                statistics.eventIn();
                 state.noOfEventsReceived++;
 
                 //validating and getting coordinate values
-                for (int i = 0; i < noOfDimensions; i++) {
-                    try {
-                        Number content = (Number) featureVariableExpressionExecutors.get(i).execute(streamEvent);
-                        coordinateValuesOfCurrentDataPoint[i] = content.doubleValue();
-                    } catch (ClassCastException e) {
-                        throw new SiddhiAppRuntimeException("coordinate values should be int/float/double/long " +
-                                "but found " +
-                                featureVariableExpressionExecutors.get(i).execute(streamEvent).getClass());
-                    }
-                }
+                featureExtractor.extractFeatures(streamEvent, coordinateValuesOfCurrentDataPoint);
 
                 //train the ClusTree Model with the datapoint
                 state.clusTreeModel.trainOnEvent(coordinateValuesOfCurrentDataPoint);
 
-                //train the model periodically
-                if (state.noOfEventsReceived % noOfEventsToRefreshMacroModel == 0) {
-                    List<DataPoint> dpa = state.clusTreeModel.getMicroClusteringAsDPArray();
-                    if (noOfEventsToRefreshMacroModel < separateThreadThreshold) {
-                        state.kMeansModel.refresh(dpa, noOfClusters, maxIterations,
-                                noOfDimensions);
+                if (config.getMacroModelUpdate() == MacroModelUpdate.MINI_BATCH
+                        && state.kMeansModel.getNoOfCentroids() == config.getNoOfClusters()) {
+                    //the centroids follow the events in mini-batches instead of being refreshed
+                    state.kMeansModel.trainOnMiniBatch(coordinateValuesOfCurrentDataPoint, config);
+                } else if (state.noOfEventsReceived % noOfEventsToRefreshMacroModel == 0) {
+                    //train the model periodically
+                    WeightedPointSet microClusters = state.clusTreeModel.getMicroClusteringAsPointSet(
+                            noOfDimensions);
+                    trackedModels.noOfMicroClusters = microClusters.size();
+                    if (!state.kMeansModel.isTrained()
+                            || config.getMacroModelUpdate() == MacroModelUpdate.MINI_BATCH) {
+                        //the first model is built inline, so that predictions start from this event. So are the
+                        //models of the mini-batch mode, which are built only until all the centroids are found
+                        state.kMeansModel.refresh(microClusters, config);
                     } else {
-                        Trainer trainer = new Trainer(state.kMeansModel, dpa, noOfClusters, maxIterations,
-                                noOfDimensions);
-                        Future f = executorService.submit(trainer);
-                        if (logger.isDebugEnabled()) {
-                            logger.debug("Is train the model periodically done: " + f.isDone());
-                        }
+                        //later ones are built in the background while predictions use the current model
+                        state.kMeansRefresher.submit(state.kMeansModel, microClusters);
                     }
                 }
 
@@ -371,6 +344,9 @@ public class ClusTreeStreamProcessorExtension extends StreamProcessor<ClusTreeSt
                             state.kMeansModel.getPrediction(coordinateValuesOfCurrentDataPoint));
                 }
             }
+            trackedModels.clusTreeModel = state.clusTreeModel;
+            trackedModels.kMeansModel = state.kMeansModel;
+            statistics.markOut();
         }
         nextProcessor.process(complexEventChunk);
     }
@@ -396,14 +372,28 @@ public class ClusTreeStreamProcessorExtension extends StreamProcessor<ClusTreeSt
         return ProcessingMode.BATCH;
     }
 
+    /**
+     * Models of the state processed last, reported by the statistics of the query. They are held apart from the
+     * state, so that the estimated memory usage covers the models alone.
+     */
+    private static class TrackedModels {
+        private volatile ClusTreeModel clusTreeModel;
+        private volatile KMeansModel kMeansModel;
+        // number of micro clusters when the macro cluster model was last refreshed
+        private volatile int noOfMicroClusters;
+    }
+
     class ExtensionState extends State {
         private ClusTreeModel clusTreeModel;
         private KMeansModel kMeansModel;
         private int noOfEventsReceived;
+        private final KMeansRefresher kMeansRefresher;
+        private final ModelCheckpoint checkpoint = new ModelCheckpoint();
 
         private ExtensionState(ClusTreeModel clusTreeModel) {
            this.clusTreeModel = clusTreeModel;
-           kMeansModel = new KMeansModel();
+           kMeansModel = new KMeansModel(noOfDimensions);
+           kMeansRefresher = new KMeansRefresher(executorService, config);
         }
 
         @Override
@@ -413,22 +403,53 @@ public class ClusTreeStreamProcessorExtension extends StreamProcessor<ClusTreeSt
 
         @Override
         public Map<String, Object> snapshot() {
+            ModelEvents.ModelSnapshot event = ModelEvents.beginSnapshot(siddhiQueryContext.getName(), false);
+            Map<String, Object> map = new HashMap();
+            int noOfEvents;
+            ModelSnapshotWriter clusTreeWriter = null;
+            KMeansModel kMeansModel;
+            boolean snapshotRequired;
+            // the ClusTree is only serialized while the events are held back, and is encoded afterwards. The
+            // k-means model is written from the centroids it has published, which are never modified.
             synchronized (ClusTreeStreamProcessorExtension.this) {
-                Map<String, Object> map = new HashMap();
-                map.put("noOfEventsReceived", noOfEventsReceived);
-                map.put("clusTreeModel", clusTreeModel);
-                map.put("kMeansModel", kMeansModel);
-                return map;
-
+                noOfEvents = noOfEventsReceived;
+                kMeansModel = this.kMeansModel;
+                // the k-means model changes as well when a refresh completes after the events are received
+                snapshotRequired = checkpoint.isSnapshotRequired(noOfEvents + kMeansModel.getNoOfRefreshes());
+                if (snapshotRequired) {
+                    clusTreeWriter = clusTreeModel.writeSnapshot();
+                }
             }
+            if (snapshotRequired) {
+                map.put("noOfEventsReceived", ModelCheckpoint.toBase(noOfEvents));
+                map.put("clusTreeModel", ModelCheckpoint.toBase(clusTreeWriter.toByteArray()));
+                map.put("kMeansModel", ModelCheckpoint.toBase(kMeansModel.toSnapshot()));
+            }
+            ModelEvents.commitSnapshot(event, !snapshotRequired);
+            return map;
         }
 
         @Override
         public void restore(Map<String, Object> map) {
             synchronized (ClusTreeStreamProcessorExtension.this) {
-                noOfEventsReceived = (Integer) map.get("noOfEventsReceived");
-                clusTreeModel = (ClusTreeModel) map.get("clusTreeModel");
-                kMeansModel = (KMeansModel) map.get("kMeansModel");
+                ModelEvents.ModelSnapshot event = ModelEvents.beginSnapshot(siddhiQueryContext.getName(), true);
+                Object noOfEvents = ModelCheckpoint.getLatestState(map.get("noOfEventsReceived"));
+                Object clusTreeSnapshot = ModelCheckpoint.getLatestState(map.get("clusTreeModel"));
+                Object kMeansSnapshot = ModelCheckpoint.getLatestState(map.get("kMeansModel"));
+                if (noOfEvents instanceof Integer) {
+                    noOfEventsReceived = (Integer) noOfEvents;
+                }
+                if (clusTreeSnapshot instanceof byte[]) {
+                    clusTreeModel = ClusTreeModel.fromSnapshot((byte[]) clusTreeSnapshot);
+                } else if (clusTreeSnapshot instanceof ClusTreeModel) {
+                    // the earlier releases persisted the model itself
+                    clusTreeModel = (ClusTreeModel) clusTreeSnapshot;
+                }
+                if (kMeansSnapshot != null) {
+                    kMeansModel = KMeansModel.fromState(kMeansSnapshot, noOfDimensions);
+                }
+                checkpoint.reset();
+                ModelEvents.commitSnapshot(event, false);
             }
         }
     }
@@ -0,0 +1,426 @@
+/*
+ * Copyright (C) 2017 WSO2 Inc. (http://wso2.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.wso2.extension.siddhi.gpl.execution.streamingml.clustering.clustree;
+
+import io.siddhi.annotation.Example;
+import io.siddhi.annotation.Extension;
+import io.siddhi.annotation.Parameter;
+import io.siddhi.annotation.ReturnAttribute;
+import io.siddhi.annotation.SystemParameter;
+import io.siddhi.annotation.util.DataType;
+import io.siddhi.core.config.SiddhiQueryContext;
+import io.siddhi.core.event.ComplexEventChunk;
+import io.siddhi.core.event.stream.MetaStreamEvent;
+import io.siddhi.core.event.stream.StreamEvent;
+import io.siddhi.core.event.stream.StreamEventCloner;
+import io.siddhi.core.event.stream.holder.StreamEventClonerHolder;
+import io.siddhi.core.event.stream.populater.ComplexEventPopulater;
+import io.siddhi.core.exception.SiddhiAppCreationException;
+import io.siddhi.core.executor.ConstantExpressionExecutor;
+import io.siddhi.core.executor.ExpressionExecutor;
+import io.siddhi.core.executor.VariableExpressionExecutor;
+import io.siddhi.core.query.processor.ProcessingMode;
+import io.siddhi.core.query.processor.Processor;
+import io.siddhi.core.query.processor.stream.StreamProcessor;
+import io.siddhi.core.util.config.ConfigReader;
+import io.siddhi.core.util.snapshot.state.Snapshot;
+import io.siddhi.core.util.snapshot.state.State;
+import io.siddhi.core.util.snapshot.state.StateFactory;
+import io.siddhi.query.api.definition.AbstractDefinition;
+import io.siddhi.query.api.definition.Attribute;
+import org.apache.log4j.Logger;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.clustering.clustree.util.ClusTreeConfig;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.clustering.clustree.util.ClusTreeModel;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.clustering.clustree.util.KMeansModel;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.clustering.clustree.util.KMeansRefresher;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.clustering.clustree.util.MacroModelUpdate;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.clustering.clustree.util.WeightedPointSet;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.CoreUtils;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.FeatureExtractor;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.KeyedModelCheckpoint;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.KeyedModelStore;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.ModelSnapshotReader;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.ModelSnapshotType;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.ModelSnapshotWriter;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * performs clustree per key with batch update of the kmeans model of each key
+ */
+@Extension(
+        name = "keyedClusTree",
+        namespace = "streamingml",
+        description = "This extension performs clustering on a streaming data set with a ClusTree and a k-means " +
+                "macro cluster model per value of a key attribute, e.g., one model per sensor. All the models share " +
+                "the hyper-parameters of the query. The number of models kept is bounded, and the least recently " +
+                "used models are evicted first.",
+        parameters = {
+                @Parameter(
+                        name = "model.key",
+                        description = "The attribute of the stream whose value selects the model to be used.",
+                        type = {DataType.STRING, DataType.INT, DataType.LONG}
+                ),
+                @Parameter(
+                        name = "no.of.clusters",
+                        description = "The assumed number of natural clusters (`numberOfClusters`) in the data set.",
+                        type = {DataType.INT}
+                ),
+                @Parameter(
+                        name = "max.iterations",
+                        description = "The number of times the process should be iterated.",
+                        type = {DataType.INT},
+                        optional = true,
+                        defaultValue = "40"
+                ),
+                @Parameter(
+                        name = "no.of.events.to.refresh.macro.model",
+                        description = "The number of new events of a key that should arrive in order to recalculate " +
+                                "the k-means macro cluster centers of the key.",
+                        type = DataType.INT,
+                        optional = true,
+                        defaultValue = "500"
+                ),
+                @Parameter(
+                        name = "max.height.of.tree",
+                        description = "This defines the maximum number of levels that should exist in the ClusTree " +
+                                "of a key.",
+                        type = DataType.INT,
+                        optional = true,
+                        defaultValue = "8"
+                ),
+                @Parameter(
+                        name = "horizon",
+                        description = "This controls the decay of weights of old micro-clusters to manage " +
+                                "the concept drift.",
+                        type = DataType.INT,
+                        optional = true,
+                        defaultValue = "1000"
+                ),
+                @Parameter(
+                        name = "model.features",
+                        description = "This is a variable length argument. Depending on the dimensionality of " +
+                                "data points, you receive coordinates as features along each axis.",
+                        type = {DataType.DOUBLE, DataType.FLOAT, DataType.INT, DataType.LONG}
+                )
+        },
+        systemParameter = {
+                @SystemParameter(name = "maxNoOfModels",
+                        description = "The maximum number of models kept by a query, as a count of models " +
+                                "rather than of memory. Once it is reached, the least recently used model is " +
+                                "evicted, and its key starts over with a new model.",
+                        defaultValue = "10000",
+                        possibleParameters = "Any positive integer"),
+                @SystemParameter(name = "modelIdleTimeout",
+                        description = "The time in milliseconds after which a model that has not been used is " +
+                                "evicted. `0` keeps the models until the maximum number of models is reached.",
+                        defaultValue = "0",
+                        possibleParameters = "Any non negative integer"),
+                @SystemParameter(name = "centroidIndex",
+                        description = "How the nearest centroid to an event is found. `kdTree` indexes the " +
+                                "centroids in a KD-tree each time the macro cluster model is refreshed, `none` " +
+                                "compares the event with every centroid, and `auto` indexes the centroids only " +
+                                "when there are at least 32 of them.",
+                        defaultValue = "auto",
+                        possibleParameters = {"auto", "kdTree", "none"}),
+                @SystemParameter(name = "kMeansAlgorithm",
+                        description = "The algorithm that builds the macro cluster model from the micro clusters. " +
+                                "`lloyd` computes the distance from each micro cluster to every centroid in each " +
+                                "iteration, while `hamerly` skips the micro clusters whose nearest centroid cannot " +
+                                "have changed, which makes the refreshes of large micro cluster sets faster. Both " +
+                                "find the same centroids.",
+                        defaultValue = "lloyd",
+                        possibleParameters = {"lloyd", "hamerly"}),
+                @SystemParameter(name = "kMeansTolerance",
+                        description = "The distance up to which each centroid may move in an iteration for the " +
+                                "macro cluster model to have converged. If it is `0`, the iterations continue " +
+                                "until the centroids do not move or the maximum number of iterations is reached.",
+                        defaultValue = "0",
+                        possibleParameters = "Any non negative number"),
+                @SystemParameter(name = "kMeansSeeding",
+                        description = "How the initial centroids of the macro cluster model are chosen among the " +
+                                "micro clusters. `firstDistinct` takes the first distinct micro clusters, " +
+                                "`kMeansPlusPlus` chooses them at random with weighted k-means++, which spreads " +
+                                "them over the micro clusters so that fewer iterations are needed, and " +
+                                "`kMeansParallel` uses k-means||, which samples the candidates in a few passes " +
+                                "over large micro cluster sets. The random choices are seeded with a constant.",
+                        defaultValue = "firstDistinct",
+                        possibleParameters = {"firstDistinct", "kMeansPlusPlus", "kMeansParallel"}),
+                @SystemParameter(name = "kMeansWarmStart",
+                        description = "If `true`, each refresh of the macro cluster model starts from the " +
+                                "centroids of the previous refresh instead of seeding new ones, hence it only " +
+                                "corrects the centroids for the micro clusters that changed since then.",
+                        defaultValue = "false",
+                        possibleParameters = {"true", "false"}),
+                @SystemParameter(name = "kMeansWarmStartIterations",
+                        description = "The maximum number of iterations of a refresh that starts from the " +
+                                "previous centroids. If it is `0`, the maximum number of iterations of the " +
+                                "query applies.",
+                        defaultValue = "0",
+                        possibleParameters = "Any non negative integer"),
+                @SystemParameter(name = "macroModelUpdate",
+                        description = "How the macro cluster model follows the stream once it has all of its " +
+                                "centroids. `refresh` runs k-means on the micro clusters after every " +
+                                "`no.of.events.to.refresh.macro.model` events, while `miniBatch` moves the " +
+                                "centroids towards each mini-batch of events with a learning rate per centroid, " +
+                                "which keeps the cost of each event constant instead of spending the cost of a " +
+                                "k-means run at once. The learning rate of a centroid does not drop below " +
+                                "1 / `horizon`.",
+                        defaultValue = "refresh",
+                        possibleParameters = {"refresh", "miniBatch"}),
+                @SystemParameter(name = "miniBatchSize",
+                        description = "The number of events by which the centroids are moved at once when " +
+                                "`macroModelUpdate` is `miniBatch`.",
+                        defaultValue = "10",
+                        possibleParameters = "Any positive integer")
+        },
+        returnAttributes = {
+                @ReturnAttribute(
+                        name = "euclideanDistanceToClosestCentroid",
+                        description = "This represents the Euclidean distance between the current data point and the " +
+                                "closest centroid of the model of the key.",
+                        type = {DataType.DOUBLE}
+                ),
+                @ReturnAttribute(
+                        name = "closestCentroidCoordinate",
+                        description = "This is a variable length attribute. Depending on the dimensionality(`d`) " +
+                                "`closestCentroidCoordinate1` to `closestCentroidCoordinated` are returned, which " +
+                                "are the coordinates of the closest centroid of the model of the key.",
+                        type = {DataType.DOUBLE}
+                )
+        },
+        examples = {
+                @Example(
+                        syntax = "define stream InputStream (sensorId string, x double, y double);\n" +
+                                "@info(name = 'query1') \n" +
+                                "from InputStream#streamingml:keyedClusTree(sensorId, 2, 10, 20, 5, 50, x, y) \n" +
+                                "select sensorId, closestCentroidCoordinate1, closestCentroidCoordinate2, x, y \n" +
+                                "insert into OutputStream;",
+                        description = "This query clusters the 2D inputs of each `sensorId` into two macro " +
+                                "clusters, which are refreshed after every 20 events of the sensor."
+                )
+        }
+)
+public class KeyedClusTreeStreamProcessorExtension extends
+        StreamProcessor<KeyedClusTreeStreamProcessorExtension.ExtensionState> {
+    private static final Logger logger = Logger.getLogger(KeyedClusTreeStreamProcessorExtension.class.getName());
+
+    private int noOfDimensions;
+    private double[] coordinateValuesOfCurrentDataPoint;
+    private ClusTreeConfig config;
+    private KeyedModelStore<KeyedClustering> emptyModelStore;
+
+    private ExecutorService executorService;
+
+    private FeatureExtractor featureExtractor;
+    private VariableExpressionExecutor keyVariableExecutor;
+    //setting return attributes
+    private List<Attribute> attributeList;
+
+    @Override
+    protected StateFactory<ExtensionState> init(MetaStreamEvent metaStreamEvent, AbstractDefinition inputDefinition,
+                                                ExpressionExecutor[] attributeExpressionExecutors,
+                                                ConfigReader configReader,
+                                                StreamEventClonerHolder streamEventClonerHolder,
+                                                boolean outputExpectsExpiredEvents, boolean findToBeExecuted,
+                                                SiddhiQueryContext siddhiQueryContext) {
+        final int minConstantParams = 2;
+        final int maxConstantParams = minConstantParams + ClusTreeConfig.NUMBER_OF_HYPER_PARAMETERS;
+        final int minNoOfFeatures = 1;
+        // the key attribute is not a feature of the models
+        int maxNoOfFeatures = inputDefinition.getAttributeList().size() - 1;
+        if (attributeExpressionLength < minConstantParams + minNoOfFeatures ||
+                attributeExpressionLength > maxConstantParams + maxNoOfFeatures) {
+            throw new SiddhiAppCreationException("Invalid number of parameters. User can either choose to give " +
+                    "all 4 hyper parameters or none at all. So query can have between " + (minConstantParams +
+                    minNoOfFeatures) + " or " + (maxConstantParams + maxNoOfFeatures) + " but found " +
+                    attributeExpressionLength + " parameters.");
+        }
+
+        //expressionExecutors[0] --> key
+        keyVariableExecutor = CoreUtils.extractAndValidateKey(inputDefinition, attributeExpressionExecutors, 0);
+
+        boolean withHyperParameters = attributeExpressionExecutors[minConstantParams]
+                instanceof ConstantExpressionExecutor;
+        config = ClusTreeConfig.fromParameters(attributeExpressionExecutors, 1, withHyperParameters)
+                .withSystemParameters(configReader);
+        int attributeStartIndex = withHyperParameters ? maxConstantParams : minConstantParams;
+
+        noOfDimensions = attributeExpressionLength - attributeStartIndex;
+        coordinateValuesOfCurrentDataPoint = new double[noOfDimensions];
+
+        //validating all the attributes to be variables
+        featureExtractor = new FeatureExtractor(CoreUtils.extractAndValidateFeatures(inputDefinition,
+                attributeExpressionExecutors, attributeStartIndex, noOfDimensions), null);
+
+        executorService = siddhiQueryContext.getSiddhiAppContext().getExecutorService();
+        emptyModelStore = KeyedModelStore.fromConfig(configReader, key -> {
+            if (logger.isDebugEnabled()) {
+                logger.debug(String.format("Model of key [%s] is being created.", key));
+            }
+            return createKeyedClustering(config.createClusTreeModel(), new KMeansModel(noOfDimensions), 0);
+        });
+
+        attributeList = new ArrayList<>(1 + noOfDimensions);
+        attributeList.add(new Attribute("euclideanDistanceToClosestCentroid", Attribute.Type.DOUBLE));
+        for (int i = 1; i <= noOfDimensions; i++) {
+            attributeList.add(new Attribute("closestCentroidCoordinate" + i, Attribute.Type.DOUBLE));
+        }
+        return ExtensionState::new;
+    }
+
+    private KeyedClustering createKeyedClustering(ClusTreeModel clusTreeModel, KMeansModel kMeansModel,
+                                                  long noOfEventsReceived) {
+        KeyedClustering clustering = new KeyedClustering(clusTreeModel, kMeansModel, noOfEventsReceived);
+        clustering.kMeansRefresher = new KMeansRefresher(executorService, config);
+        return clustering;
+    }
+
+    @Override
+    protected void process(ComplexEventChunk<StreamEvent> complexEventChunk, Processor nextProcessor,
+                           StreamEventCloner streamEventCloner, ComplexEventPopulater complexEventPopulater,
+                           ExtensionState state) {
+        synchronized (this) {
+            while (complexEventChunk.hasNext()) {
+                StreamEvent streamEvent = complexEventChunk.next();
+                KeyedClustering clustering = state.models.getModel(keyVariableExecutor.execute(streamEvent));
+                clustering.noOfEventsReceived++;
+
+                //validating and getting coordinate values
+                featureExtractor.extractFeatures(streamEvent, coordinateValuesOfCurrentDataPoint);
+
+                //train the ClusTree Model of the key with the datapoint
+                clustering.clusTreeModel.trainOnEvent(coordinateValuesOfCurrentDataPoint);
+
+                if (config.getMacroModelUpdate() == MacroModelUpdate.MINI_BATCH
+                        && clustering.kMeansModel.getNoOfCentroids() == config.getNoOfClusters()) {
+                    //the centroids follow the events in mini-batches instead of being refreshed
+                    clustering.kMeansModel.trainOnMiniBatch(coordinateValuesOfCurrentDataPoint, config);
+                } else if (clustering.noOfEventsReceived % config.getNoOfEventsToRefreshMacroModel() == 0) {
+                    //train the model of the key periodically
+                    WeightedPointSet microClusters = clustering.clusTreeModel.getMicroClusteringAsPointSet(
+                            noOfDimensions);
+                    if (!clustering.kMeansModel.isTrained()
+                            || config.getMacroModelUpdate() == MacroModelUpdate.MINI_BATCH) {
+                        //the first model is built inline, so that predictions start from this event. So are the
+                        //models of the mini-batch mode, which are built only until all the centroids are found
+                        clustering.kMeansModel.refresh(microClusters, config);
+                    } else {
+                        //later ones are built in the background while predictions use the current model
+                        clustering.kMeansRefresher.submit(clustering.kMeansModel, microClusters);
+                    }
+                }
+
+                //make prediction if the model of the key is trained
+                if (clustering.kMeansModel.isTrained()) {
+                    complexEventPopulater.populateComplexEvent(streamEvent,
+                            clustering.kMeansModel.getPrediction(coordinateValuesOfCurrentDataPoint));
+                }
+            }
+        }
+        nextProcessor.process(complexEventChunk);
+    }
+
+    @Override
+    public void start() {
+
+    }
+
+    @Override
+    public void stop() {
+
+    }
+
+    @Override
+    public List<Attribute> getReturnAttributes() {
+        return attributeList;
+    }
+
+    @Override
+    public ProcessingMode getProcessingMode() {
+        return ProcessingMode.BATCH;
+    }
+
+    private KeyedClustering fromSnapshot(byte[] snapshot) {
+        ModelSnapshotReader reader = new ModelSnapshotReader(snapshot, ModelSnapshotType.KEYED_CLUSTERING,
+                KeyedClustering.SNAPSHOT_VERSION);
+        long noOfEventsReceived = reader.readLong();
+        return createKeyedClustering(ClusTreeModel.fromSnapshot(reader.readBytes()),
+                KMeansModel.fromSnapshot(reader.readBytes()), noOfEventsReceived);
+    }
+
+    /**
+     * ClusTree and k-means models of a key
+     */
+    private static class KeyedClustering {
+        private static final int SNAPSHOT_VERSION = 1;
+        private final ClusTreeModel clusTreeModel;
+        private final KMeansModel kMeansModel;
+        private long noOfEventsReceived;
+        private transient KMeansRefresher kMeansRefresher;
+
+        private KeyedClustering(ClusTreeModel clusTreeModel, KMeansModel kMeansModel, long noOfEventsReceived) {
+            this.clusTreeModel = clusTreeModel;
+            this.kMeansModel = kMeansModel;
+            this.noOfEventsReceived = noOfEventsReceived;
+        }
+
+        private byte[] toSnapshot() {
+            ModelSnapshotWriter writer = new ModelSnapshotWriter(ModelSnapshotType.KEYED_CLUSTERING,
+                    SNAPSHOT_VERSION);
+            writer.writeLong(noOfEventsReceived);
+            writer.writeBytes(clusTreeModel.toSnapshot());
+            writer.writeBytes(kMeansModel.toSnapshot());
+            return writer.toByteArray();
+        }
+    }
+
+    class ExtensionState extends State {
+        private final KeyedModelStore<KeyedClustering> models = emptyModelStore.newEmptyStore();
+        private final KeyedModelCheckpoint<KeyedClustering> checkpoint = new KeyedModelCheckpoint<>(models,
+                KeyedClustering::toSnapshot, (key, snapshot) -> fromSnapshot(snapshot));
+
+        @Override
+        public boolean canDestroy() {
+            return false;
+        }
+
+        @Override
+        public Map<String, Object> snapshot() {
+            synchronized (KeyedClusTreeStreamProcessorExtension.this) {
+                Map<String, Object> map = new HashMap<>();
+                Snapshot snapshot = checkpoint.snapshot();
+                if (snapshot != null) {
+                    map.put("models", snapshot);
+                }
+                return map;
+            }
+        }
+
+        @Override
+        public void restore(Map<String, Object> map) {
+            synchronized (KeyedClusTreeStreamProcessorExtension.this) {
+                checkpoint.restore(map.get("models"));
+            }
+        }
+    }
+}
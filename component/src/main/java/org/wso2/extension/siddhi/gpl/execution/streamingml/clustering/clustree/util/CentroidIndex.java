@@ -0,0 +1,231 @@
+/*
+ * Copyright (C) 2017 WSO2 Inc. (http://wso2.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.wso2.extension.siddhi.gpl.execution.streamingml.clustering.clustree.util;
+
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.MathUtil;
+
+/**
+ * KD-tree over a set of centroids, so that the nearest centroid to a point is found without computing the distance
+ * to every centroid.
+ * <p>
+ * Each node splits its centroids at the median of the dimension in which they spread the most, down to leaves of
+ * at most {@link #LEAF_SIZE} centroids. A search visits the side of a split holding the point first, and skips the
+ * other side if the distance from the point to the split is larger than the distance to the nearest centroid found
+ * so far. The nearest centroid is the same one as found by {@link DistanceKernel#nearest}, including the first one
+ * on a tie, as the distances are computed the same way.
+ * <p>
+ * The tree is built once for the centroids published by a refresh, and never modified afterwards.
+ */
+public class CentroidIndex {
+    static final int LEAF_SIZE = 8;
+    private static final int LEAF = -1;
+
+    private final double[] centroids;
+    private final int noOfCentroids;
+    private final int noOfDimensions;
+
+    // centroids in the order of the leaves, so that a leaf is scanned over contiguous coordinates
+    private final double[] leafCentroids;
+    private final int[] leafCentroidIndices;
+
+    // nodes: a split node has a split dimension, while a leaf node holds the centroids from start to end
+    private int[] splitDimensions;
+    private double[] splitValues;
+    private int[] leftChildren;
+    private int[] rightChildren;
+    private int[] starts;
+    private int[] ends;
+    private int noOfNodes;
+
+    private CentroidIndex(double[] centroids, int noOfCentroids, int noOfDimensions) {
+        this.centroids = centroids;
+        this.noOfCentroids = noOfCentroids;
+        this.noOfDimensions = noOfDimensions;
+        this.leafCentroids = new double[noOfCentroids * noOfDimensions];
+        this.leafCentroidIndices = new int[noOfCentroids];
+        // leaves are never empty, hence there are less than twice as many nodes as centroids
+        int maxNoOfNodes = 2 * noOfCentroids;
+        splitDimensions = new int[maxNoOfNodes];
+        splitValues = new double[maxNoOfNodes];
+        leftChildren = new int[maxNoOfNodes];
+        rightChildren = new int[maxNoOfNodes];
+        starts = new int[maxNoOfNodes];
+        ends = new int[maxNoOfNodes];
+    }
+
+    /**
+     * Build the index of a set of centroids
+     *
+     * @param centroids      centroids, holding noOfDimensions coordinates per centroid. Must not be modified after.
+     * @param noOfCentroids  number of centroids
+     * @param noOfDimensions number of coordinates of a centroid
+     * @return the index, or null if there are no centroids or a centroid has a coordinate which is not finite
+     */
+    public static CentroidIndex build(double[] centroids, int noOfCentroids, int noOfDimensions) {
+        if (noOfCentroids == 0) {
+            return null;
+        }
+        for (int i = 0; i < noOfCentroids * noOfDimensions; i++) {
+            if (Double.isNaN(centroids[i]) || Double.isInfinite(centroids[i])) {
+                return null;
+            }
+        }
+        CentroidIndex index = new CentroidIndex(centroids, noOfCentroids, noOfDimensions);
+        for (int i = 0; i < noOfCentroids; i++) {
+            index.leafCentroidIndices[i] = i;
+        }
+        index.addNode(0, noOfCentroids);
+        for (int i = 0; i < noOfCentroids; i++) {
+            System.arraycopy(centroids, index.leafCentroidIndices[i] * noOfDimensions, index.leafCentroids,
+                    i * noOfDimensions, noOfDimensions);
+        }
+        return index;
+    }
+
+    /**
+     * @return the indexed centroids
+     */
+    public double[] getCentroids() {
+        return centroids;
+    }
+
+    /**
+     * Find the nearest centroid to a point
+     *
+     * @param coordinates coordinates of the point
+     * @return index of the nearest centroid, the first one on a tie
+     */
+    public int nearest(double[] coordinates) {
+        Nearest nearest = new Nearest();
+        search(0, coordinates, nearest);
+        if (nearest.index < 0) {
+            // a coordinate of the point is NaN, hence no distance is less than another
+            return DistanceKernel.nearest(centroids, noOfCentroids, coordinates, 0, noOfDimensions);
+        }
+        return nearest.index;
+    }
+
+    private void search(int node, double[] coordinates, Nearest nearest) {
+        int splitDimension = splitDimensions[node];
+        if (splitDimension == LEAF) {
+            for (int i = starts[node]; i < ends[node]; i++) {
+                double distance = MathUtil.squaredEuclideanDistance(leafCentroids, i * noOfDimensions, coordinates,
+                        0, noOfDimensions);
+                int centroidIndex = leafCentroidIndices[i];
+                if (distance < nearest.distance
+                        || distance == nearest.distance && centroidIndex < nearest.index) {
+                    nearest.distance = distance;
+                    nearest.index = centroidIndex;
+                }
+            }
+            return;
+        }
+        double difference = splitValues[node] - coordinates[splitDimension];
+        int nearChild = difference > 0 ? leftChildren[node] : rightChildren[node];
+        int farChild = difference > 0 ? rightChildren[node] : leftChildren[node];
+        search(nearChild, coordinates, nearest);
+        // a centroid at the same distance is still visited, as it may come before the nearest one found so far
+        if (difference * difference <= nearest.distance) {
+            search(farChild, coordinates, nearest);
+        }
+    }
+
+    /**
+     * Add the node of the centroids from start to end of leafCentroidIndices, reordering them by the split
+     *
+     * @return index of the node
+     */
+    private int addNode(int start, int end) {
+        int node = noOfNodes++;
+        starts[node] = start;
+        ends[node] = end;
+        if (end - start <= LEAF_SIZE) {
+            splitDimensions[node] = LEAF;
+            return node;
+        }
+        int splitDimension = 0;
+        double maxSpread = -1;
+        for (int j = 0; j < noOfDimensions; j++) {
+            double min = Double.POSITIVE_INFINITY;
+            double max = Double.NEGATIVE_INFINITY;
+            for (int i = start; i < end; i++) {
+                double value = centroids[leafCentroidIndices[i] * noOfDimensions + j];
+                min = Math.min(min, value);
+                max = Math.max(max, value);
+            }
+            if (max - min > maxSpread) {
+                maxSpread = max - min;
+                splitDimension = j;
+            }
+        }
+        int middle = (start + end) >>> 1;
+        select(start, end, middle, splitDimension);
+        splitDimensions[node] = splitDimension;
+        splitValues[node] = centroids[leafCentroidIndices[middle] * noOfDimensions + splitDimension];
+        leftChildren[node] = addNode(start, middle);
+        rightChildren[node] = addNode(middle, end);
+        return node;
+    }
+
+    /**
+     * Reorder the centroids from start to end so that the one at k is the one which would be there if they were
+     * sorted by the given dimension, the ones before it are not larger and the ones after it are not smaller
+     */
+    private void select(int start, int end, int k, int dimension) {
+        int low = start;
+        int high = end - 1;
+        while (low < high) {
+            double pivot = value(low + ((high - low) >>> 1), dimension);
+            int i = low;
+            int j = high;
+            while (i <= j) {
+                while (value(i, dimension) < pivot) {
+                    i++;
+                }
+                while (value(j, dimension) > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    int swap = leafCentroidIndices[i];
+                    leafCentroidIndices[i] = leafCentroidIndices[j];
+                    leafCentroidIndices[j] = swap;
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j) {
+                high = j;
+            } else if (k >= i) {
+                low = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private double value(int i, int dimension) {
+        return centroids[leafCentroidIndices[i] * noOfDimensions + dimension];
+    }
+
+    /**
+     * Nearest centroid found so far by a search
+     */
+    private static class Nearest {
+        private double distance = Double.POSITIVE_INFINITY;
+        private int index = -1;
+    }
+}
@@ -0,0 +1,310 @@
+/*
+ * Copyright (C) 2017 WSO2 Inc. (http://wso2.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.wso2.extension.siddhi.gpl.execution.streamingml.clustering.clustree.util;
+
+import io.siddhi.core.exception.SiddhiAppCreationException;
+import io.siddhi.core.executor.ConstantExpressionExecutor;
+import io.siddhi.core.executor.ExpressionExecutor;
+import io.siddhi.core.util.config.ConfigReader;
+import io.siddhi.query.api.definition.Attribute;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.MathUtil;
+
+/**
+ * Number of clusters and hyper-parameters of a ClusTree, read once from the query and applied to each model
+ * created by the query.
+ */
+public class ClusTreeConfig {
+    public static final int NUMBER_OF_HYPER_PARAMETERS = 4;
+    public static final String CENTROID_INDEX = "centroidIndex";
+    static final String AUTO_CENTROID_INDEX = "auto";
+    static final String KD_TREE_CENTROID_INDEX = "kdTree";
+    static final String NO_CENTROID_INDEX = "none";
+    public static final String KMEANS_ALGORITHM = "kMeansAlgorithm";
+    public static final String KMEANS_TOLERANCE = "kMeansTolerance";
+    public static final String KMEANS_SEEDING = "kMeansSeeding";
+    public static final String KMEANS_WARM_START = "kMeansWarmStart";
+    public static final String KMEANS_WARM_START_ITERATIONS = "kMeansWarmStartIterations";
+    public static final String MACRO_MODEL_UPDATE = "macroModelUpdate";
+    public static final String MINI_BATCH_SIZE = "miniBatchSize";
+    // the number of centroids from which the auto mode indexes them, below which a scan over them is as fast
+    static final int MIN_NO_OF_CENTROIDS_TO_INDEX = 32;
+
+    private int noOfClusters;
+    private int maxIterations = 40;
+    private int noOfEventsToRefreshMacroModel = 500;
+    private int maxHeightOfTree = 8;
+    private int horizon = 1000;
+    private int minNoOfCentroidsToIndex = MIN_NO_OF_CENTROIDS_TO_INDEX;
+    private KMeansAlgorithm kMeansAlgorithm = KMeansAlgorithm.LLOYD;
+    private double kMeansTolerance = 0;
+    private KMeansSeeding kMeansSeeding = KMeansSeeding.FIRST_DISTINCT;
+    private boolean kMeansWarmStart = false;
+    private int kMeansWarmStartIterations = 0;
+    private MacroModelUpdate macroModelUpdate = MacroModelUpdate.REFRESH;
+    private int miniBatchSize = 10;
+
+    /**
+     * Read the number of clusters and the hyper-parameters from the parameters of the query
+     *
+     * @param attributeExpressionExecutors parameters of the query
+     * @param firstIndex                   index of the number of clusters
+     * @param withHyperParameters          whether the hyper-parameters follow the number of clusters
+     * @return the configuration
+     */
+    public static ClusTreeConfig fromParameters(ExpressionExecutor[] attributeExpressionExecutors, int firstIndex,
+                                                boolean withHyperParameters) {
+        ClusTreeConfig config = new ClusTreeConfig();
+        //expressionExecutors[0] --> numberOfClusters
+        ExpressionExecutor executor = attributeExpressionExecutors[firstIndex];
+        if (!(executor instanceof ConstantExpressionExecutor)) {
+            throw new SiddhiAppCreationException("noOfClusters has to be a constant but found " +
+                    executor.getClass().getCanonicalName());
+        }
+        if (executor.getReturnType() == Attribute.Type.INT) {
+            config.noOfClusters = (Integer) ((ConstantExpressionExecutor) executor).getValue();
+            if (config.noOfClusters <= 0) {
+                throw new SiddhiAppCreationException("noOfClusters should be a positive integer " +
+                        "but found " + config.noOfClusters);
+            }
+        } else {
+            throw new SiddhiAppCreationException("noOfClusters should be of type int but found " +
+                    executor.getReturnType());
+        }
+        if (!withHyperParameters) {
+            return config;
+        }
+
+        //expressionExecutors[1] --> maxIterations
+        executor = attributeExpressionExecutors[firstIndex + 1];
+        if (!(executor instanceof ConstantExpressionExecutor)) {
+            throw new SiddhiAppCreationException("Maximum iterations has to be a constant but found " +
+                    executor.getClass().getCanonicalName());
+        }
+        if (executor.getReturnType() == Attribute.Type.INT) {
+            config.maxIterations = (Integer) ((ConstantExpressionExecutor) executor).getValue();
+            if (config.maxIterations <= 0) {
+                throw new SiddhiAppCreationException("maxIterations should be a positive integer " +
+                        "but found " + config.maxIterations);
+            }
+        } else {
+            throw new SiddhiAppCreationException("Maximum iterations should be of type int but found " +
+                    executor.getReturnType());
+        }
+
+        //expressionExecutors[2] --> noOfEventsToRefreshMacroModel
+        executor = attributeExpressionExecutors[firstIndex + 2];
+        if (!(executor instanceof ConstantExpressionExecutor)) {
+            throw new SiddhiAppCreationException("noOfEventsToRefreshMacroModel has to be a constant but found " +
+                    executor.getClass().getCanonicalName());
+        }
+        if (executor.getReturnType() == Attribute.Type.INT) {
+            config.noOfEventsToRefreshMacroModel = (Integer) ((ConstantExpressionExecutor) executor).getValue();
+            if (config.noOfEventsToRefreshMacroModel <= 0) {
+                throw new SiddhiAppCreationException("noOfEventsToRefreshMacroModel should be a positive integer " +
+                        "but found " + config.noOfEventsToRefreshMacroModel);
+            }
+        } else {
+            throw new SiddhiAppCreationException("noOfEventsToRefreshMacroModel should be of type int but found " +
+                    executor.getReturnType());
+        }
+
+        //expressionExecutors[3] --> maxHeightOfTree
+        executor = attributeExpressionExecutors[firstIndex + 3];
+        if (!(executor instanceof ConstantExpressionExecutor)) {
+            throw new SiddhiAppCreationException("maxHeightOfTree has to be a constant but found " +
+                    executor.getClass().getCanonicalName());
+        }
+        if (executor.getReturnType() == Attribute.Type.INT) {
+            config.maxHeightOfTree = (Integer) ((ConstantExpressionExecutor) executor).getValue();
+            double minHeightOfTree = (Math.log(config.noOfClusters) / Math.log(3));
+            minHeightOfTree = MathUtil.roundOff(minHeightOfTree, 4);
+            if (config.maxHeightOfTree < minHeightOfTree) {
+                throw new SiddhiAppCreationException("maxHeightOfTree should be an int greater than " +
+                        minHeightOfTree + " but found " + config.maxHeightOfTree);
+            }
+        } else {
+            throw new SiddhiAppCreationException("maxHeightOfTree should be of type int but found " +
+                    executor.getReturnType());
+        }
+        config.maxHeightOfTree -= 1; //MOA implementation is in such a way that if we pass 0 to maxHeightOfTree
+        // it will build a tree with one level. but user should be able to give 1 and get one level.
+
+        //expressionExecutors[4] --> horizon
+        executor = attributeExpressionExecutors[firstIndex + 4];
+        if (!(executor instanceof ConstantExpressionExecutor)) {
+            throw new SiddhiAppCreationException("horizon has to be a constant but found " +
+                    executor.getClass().getCanonicalName());
+        }
+        if (executor.getReturnType() == Attribute.Type.INT) {
+            config.horizon = (Integer) ((ConstantExpressionExecutor) executor).getValue();
+            if (config.horizon <= 0) {
+                throw new SiddhiAppCreationException("horizon should be a positive integer " +
+                        "but found " + config.horizon);
+            }
+        } else {
+            throw new SiddhiAppCreationException("horizon should be of type int but found " +
+                    executor.getReturnType());
+        }
+        return config;
+    }
+
+    /**
+     * Read the system parameters of the query
+     *
+     * @param configReader reader of the system parameters
+     * @return this configuration
+     */
+    public ClusTreeConfig withSystemParameters(ConfigReader configReader) {
+        String centroidIndex = configReader.readConfig(CENTROID_INDEX, AUTO_CENTROID_INDEX).trim();
+        switch (centroidIndex) {
+            case AUTO_CENTROID_INDEX:
+                minNoOfCentroidsToIndex = MIN_NO_OF_CENTROIDS_TO_INDEX;
+                break;
+            case KD_TREE_CENTROID_INDEX:
+                minNoOfCentroidsToIndex = 1;
+                break;
+            case NO_CENTROID_INDEX:
+                minNoOfCentroidsToIndex = Integer.MAX_VALUE;
+                break;
+            default:
+                throw new SiddhiAppCreationException(String.format("%s should be either %s, %s or %s but found %s",
+                        CENTROID_INDEX, AUTO_CENTROID_INDEX, KD_TREE_CENTROID_INDEX, NO_CENTROID_INDEX,
+                        centroidIndex));
+        }
+        kMeansAlgorithm = KMeansAlgorithm.fromConfigValue(configReader.readConfig(KMEANS_ALGORITHM,
+                KMeansAlgorithm.LLOYD.getConfigValue()).trim());
+        String tolerance = configReader.readConfig(KMEANS_TOLERANCE, "0").trim();
+        try {
+            kMeansTolerance = Double.parseDouble(tolerance);
+        } catch (NumberFormatException e) {
+            kMeansTolerance = -1;
+        }
+        if (!(kMeansTolerance >= 0) || Double.isInfinite(kMeansTolerance)) {
+            throw new SiddhiAppCreationException(String.format("%s should be a non negative number but found %s",
+                    KMEANS_TOLERANCE, tolerance));
+        }
+        kMeansSeeding = KMeansSeeding.fromConfigValue(configReader.readConfig(KMEANS_SEEDING,
+                KMeansSeeding.FIRST_DISTINCT.getConfigValue()).trim());
+        String warmStart = configReader.readConfig(KMEANS_WARM_START, "false").trim();
+        if (!"true".equalsIgnoreCase(warmStart) && !"false".equalsIgnoreCase(warmStart)) {
+            throw new SiddhiAppCreationException(String.format("%s should be either true or false but found %s",
+                    KMEANS_WARM_START, warmStart));
+        }
+        kMeansWarmStart = Boolean.parseBoolean(warmStart);
+        String warmStartIterations = configReader.readConfig(KMEANS_WARM_START_ITERATIONS, "0").trim();
+        try {
+            kMeansWarmStartIterations = Integer.parseInt(warmStartIterations);
+        } catch (NumberFormatException e) {
+            kMeansWarmStartIterations = -1;
+        }
+        if (kMeansWarmStartIterations < 0) {
+            throw new SiddhiAppCreationException(String.format("%s should be a non negative integer but found %s",
+                    KMEANS_WARM_START_ITERATIONS, warmStartIterations));
+        }
+        macroModelUpdate = MacroModelUpdate.fromConfigValue(configReader.readConfig(MACRO_MODEL_UPDATE,
+                MacroModelUpdate.REFRESH.getConfigValue()).trim());
+        String batchSize = configReader.readConfig(MINI_BATCH_SIZE, "10").trim();
+        try {
+            miniBatchSize = Integer.parseInt(batchSize);
+        } catch (NumberFormatException e) {
+            miniBatchSize = -1;
+        }
+        if (miniBatchSize <= 0) {
+            throw new SiddhiAppCreationException(String.format("%s should be a positive integer but found %s",
+                    MINI_BATCH_SIZE, batchSize));
+        }
+        return this;
+    }
+
+    /**
+     * @return a new ClusTree model configured with the hyper-parameters
+     */
+    public ClusTreeModel createClusTreeModel() {
+        ClusTreeModel clusTreeModel = new ClusTreeModel();
+        clusTreeModel.init(maxHeightOfTree, horizon);
+        return clusTreeModel;
+    }
+
+    public int getNoOfClusters() {
+        return noOfClusters;
+    }
+
+    public int getMaxIterations() {
+        return maxIterations;
+    }
+
+    /**
+     * @return the number of centroids from which the centroids of a kmeans model are indexed
+     */
+    public int getMinNoOfCentroidsToIndex() {
+        return minNoOfCentroidsToIndex;
+    }
+
+    public KMeansAlgorithm getKMeansAlgorithm() {
+        return kMeansAlgorithm;
+    }
+
+    /**
+     * @return distance up to which each centroid may move in an iteration of kmeans for it to have converged
+     */
+    public double getKMeansTolerance() {
+        return kMeansTolerance;
+    }
+
+    /**
+     * @return how the initial centroids of kmeans are chosen
+     */
+    public KMeansSeeding getKMeansSeeding() {
+        return kMeansSeeding;
+    }
+
+    /**
+     * @return whether kmeans starts from the centroids of the previous refresh
+     */
+    public boolean isKMeansWarmStart() {
+        return kMeansWarmStart;
+    }
+
+    /**
+     * @return maximum number of iterations of kmeans when it starts from the centroids of the previous refresh
+     */
+    public int getKMeansWarmStartIterations() {
+        return kMeansWarmStartIterations == 0 ? maxIterations : Math.min(kMeansWarmStartIterations, maxIterations);
+    }
+
+    /**
+     * @return how the kmeans model follows the stream once it has found all of its centroids
+     */
+    public MacroModelUpdate getMacroModelUpdate() {
+        return macroModelUpdate;
+    }
+
+    /**
+     * @return number of events by which the centroids are moved at once in the mini-batch mode
+     */
+    public int getMiniBatchSize() {
+        return miniBatchSize;
+    }
+
+    public int getHorizon() {
+        return horizon;
+    }
+
+    public int getNoOfEventsToRefreshMacroModel() {
+        return noOfEventsToRefreshMacroModel;
+    }
+}
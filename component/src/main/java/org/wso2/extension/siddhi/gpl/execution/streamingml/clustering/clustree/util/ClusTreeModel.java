@@ -24,16 +24,19 @@ import moa.clusterers.clustree.ClusTree;
 import moa.core.ObjectRepository;
 import moa.options.AbstractOptionHandler;
 import moa.tasks.TaskMonitor;
-
-import java.util.LinkedList;
-import java.util.List;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.ModelSnapshotReader;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.ModelSnapshotType;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.ModelSnapshotWriter;
 
 /**
  * Represents the ClusTree model
  */
 public class ClusTreeModel  extends AbstractOptionHandler {
     private static final long serialVersionUID = -7485124336894867529L;
+    private static final int SNAPSHOT_VERSION = 1;
     private ClusTree clusTree;
+    // size of the last snapshot, which sizes the buffer of the next one
+    private transient int snapshotSize;
 
     public ClusTreeModel() {
     }
@@ -49,6 +52,38 @@ public class ClusTreeModel  extends AbstractOptionHandler {
         this.clusTree.prepareForUse();
     }
 
+    /**
+     * @return snapshot of the model, read by {@link #fromSnapshot(byte[])}
+     */
+    public byte[] toSnapshot() {
+        return writeSnapshot().toByteArray();
+    }
+
+    /**
+     * Write the model into a snapshot, which is encoded by {@link ModelSnapshotWriter#toByteArray()} once the
+     * caller no longer has to keep the model from being trained
+     *
+     * @return the writer of the snapshot, read by {@link #fromSnapshot(byte[])} once it is encoded
+     */
+    public ModelSnapshotWriter writeSnapshot() {
+        ModelSnapshotWriter writer = new ModelSnapshotWriter(ModelSnapshotType.CLUSTREE, SNAPSHOT_VERSION,
+                snapshotSize);
+        writer.writeLearner(clusTree);
+        snapshotSize = writer.size();
+        return writer;
+    }
+
+    /**
+     * @param snapshot snapshot written by {@link #toSnapshot()}
+     * @return the model
+     */
+    public static ClusTreeModel fromSnapshot(byte[] snapshot) {
+        ModelSnapshotReader reader = new ModelSnapshotReader(snapshot, ModelSnapshotType.CLUSTREE, SNAPSHOT_VERSION);
+        ClusTreeModel model = new ClusTreeModel();
+        model.clusTree = reader.readLearner(ClusTree.class);
+        return model;
+    }
+
     /**
      * @param cepEvent   event data
      *
@@ -82,15 +117,16 @@ public class ClusTreeModel  extends AbstractOptionHandler {
         return clusTree.getMicroClusteringResult();
     }
 
-    public List<DataPoint> getMicroClusteringAsDPArray() {
-        List<DataPoint> microClusterDPArray = new LinkedList<>();
+    /**
+     * @param noOfDimensions number of coordinates of a micro cluster center
+     * @return centers of the micro clusters, weighted by the weights of the micro clusters
+     */
+    public WeightedPointSet getMicroClusteringAsPointSet(int noOfDimensions) {
         Clustering microClusters = getMicroClustering();
+        WeightedPointSet microClusterPoints = new WeightedPointSet(microClusters.size(), noOfDimensions);
         for (int i = 0; i < microClusters.size(); i++) {
-            DataPoint dp = new DataPoint();
-            dp.setCoordinates(microClusters.get(i).getCenter());
-            dp.setWeight(microClusters.get(i).getWeight());
-            microClusterDPArray.add(dp);
+            microClusterPoints.set(i, microClusters.get(i).getCenter(), microClusters.get(i).getWeight());
         }
-        return microClusterDPArray;
+        return microClusterPoints;
     }
 }
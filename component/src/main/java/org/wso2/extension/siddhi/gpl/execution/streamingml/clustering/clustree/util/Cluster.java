@@ -14,67 +14,25 @@
  * You should have received a copy of the GNU General Public License
  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
-
 package org.wso2.extension.siddhi.gpl.execution.streamingml.clustering.clustree.util;
 
 import java.io.Serializable;
-import java.util.Arrays;
-import java.util.LinkedList;
-import java.util.List;
 
 /**
- * This class represents a single cluster in the model
+ * A cluster of the kmeans model of the earlier releases, which kept its centroid as a data point
+ * <p>
+ * It is only read from the snapshots of the earlier releases, and migrated into the flat arrays of
+ * {@link KMeansModel} as the model is read. The members of the cluster are not needed by the model, hence they are
+ * skipped as the cluster is read.
  */
-public class Cluster implements Serializable {
+final class Cluster implements Serializable {
     private static final long serialVersionUID = 1917517756301230642L;
     private DataPoint centroid;
-    private List<DataPoint> dataPointsInCluster;
 
-    public Cluster(DataPoint centroid) {
-        this.centroid = centroid;
-        dataPointsInCluster = new LinkedList<>();
+    private Cluster() {
     }
 
-    public DataPoint getCentroid() {
+    DataPoint getCentroid() {
         return centroid;
     }
-
-
-    public List<DataPoint> getDataPointsInCluster() {
-        return dataPointsInCluster;
-    }
-
-    public void clearDataPointsInCluster() {
-        dataPointsInCluster.clear();
-    }
-
-    public void addToCluster(DataPoint currentDataPoint) {
-        dataPointsInCluster.add(currentDataPoint);
-    }
-
-    public String getMemberInfo() {
-        StringBuilder s = new StringBuilder();
-        for (DataPoint d: dataPointsInCluster) {
-            s.append(Arrays.toString(d.getCoordinates()));
-        }
-        return s.toString();
-    }
-
-    @Override
-    public boolean equals(Object o) {
-        if (this == o) {
-            return true;
-        }
-        if (!(o instanceof Cluster)) {
-            return false;
-        }
-
-        Cluster that = (Cluster) o;
-        return Arrays.equals(centroid.getCoordinates(), that.getCentroid().getCoordinates());
-    }
-
-    @Override
-    public int hashCode() {
-        return Arrays.hashCode(centroid.getCoordinates());
-    }
 }
@@ -14,67 +14,24 @@
  * You should have received a copy of the GNU General Public License
  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
-
 package org.wso2.extension.siddhi.gpl.execution.streamingml.clustering.clustree.util;
 
-import io.siddhi.query.api.exception.SiddhiAppValidationException;
-
 import java.io.Serializable;
-import java.util.Arrays;
 
 /**
- * Object which holds the data from each event and information about centroids in terms of coordinates
+ * A centroid or a member of a cluster of the kmeans model of the earlier releases
+ * <p>
+ * It is only read from the snapshots of the earlier releases, see {@link Cluster}. The weight of the point is not
+ * needed by the model, hence it is skipped as the point is read.
  */
-public class DataPoint implements Serializable {
+final class DataPoint implements Serializable {
     private static final long serialVersionUID = -3694544849918946452L;
     private double[] coordinates;
-    private double weight;
-
-    public double[] getCoordinates() {
-        if (coordinates != null) {
-            return coordinates.clone();
-        } else {
-            throw new SiddhiAppValidationException("No coordinates have been set. Hence null return value.");
-        }
-    }
-
-    public void setCoordinates(double[] coordinates) {
-        if (this.coordinates != null) {
-            if (this.coordinates.length == coordinates.length) {
-                this.coordinates = coordinates.clone();
-            } else {
-                throw new SiddhiAppValidationException("The dimensionality of the coordinate is " +
-                        this.coordinates.length + " but the dimensionality of the received array is " +
-                        coordinates.length);
-            }
-        } else  {
-            this.coordinates = coordinates.clone();
-        }
-    }
-
-    public double getWeight() {
-        return weight;
-    }
-
-    public void setWeight(double weight) {
-        this.weight = weight;
-    }
-
-    @Override
-    public boolean equals(Object o) {
-        if (this == o) {
-            return true;
-        }
-        if (!(o instanceof DataPoint)) {
-            return false;
-        }
 
-        DataPoint that = (DataPoint) o;
-        return Arrays.equals(getCoordinates(), that.getCoordinates());
+    private DataPoint() {
     }
 
-    @Override
-    public int hashCode() {
-        return Arrays.hashCode(getCoordinates());
+    double[] getCoordinates() {
+        return coordinates;
     }
 }
@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2017 WSO2 Inc. (http://wso2.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.wso2.extension.siddhi.gpl.execution.streamingml.clustering.clustree.util;
+
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.MathUtil;
+
+/**
+ * Squared euclidean distances of a point against all the centroids of a flat centroid array, computed in one pass.
+ * <p>
+ * Centroids are taken in blocks of four, and each coordinate of the point is loaded once per block and subtracted
+ * from the four centroids, so that the four independent sums are computed side by side rather than as one long
+ * chain of dependent additions. Each sum adds up the dimensions in the same order as
+ * {@link MathUtil#squaredEuclideanDistance}, so the distances are exactly the same as the ones computed one
+ * centroid at a time. The centroids which do not fill a block are computed one at a time.
+ */
+public final class DistanceKernel {
+    private static final int BLOCK_SIZE = 4;
+
+    private DistanceKernel() {
+    }
+
+    /**
+     * Compute the squared distances of a point to each centroid
+     *
+     * @param centroids      centroids, holding noOfDimensions coordinates per centroid
+     * @param noOfCentroids  number of centroids
+     * @param coordinates    array holding the point
+     * @param offset         index of the first coordinate of the point
+     * @param noOfDimensions number of coordinates of a point
+     * @param distances      filled with the squared distance to centroid c at index c
+     */
+    public static void squaredDistances(double[] centroids, int noOfCentroids, double[] coordinates, int offset,
+                                        int noOfDimensions, double[] distances) {
+        int c = 0;
+        for (; c + BLOCK_SIZE <= noOfCentroids; c += BLOCK_SIZE) {
+            int offset0 = c * noOfDimensions;
+            int offset1 = offset0 + noOfDimensions;
+            int offset2 = offset1 + noOfDimensions;
+            int offset3 = offset2 + noOfDimensions;
+            double sum0 = 0.0;
+            double sum1 = 0.0;
+            double sum2 = 0.0;
+            double sum3 = 0.0;
+            for (int i = 0; i < noOfDimensions; i++) {
+                double value = coordinates[offset + i];
+                double difference0 = centroids[offset0 + i] - value;
+                double difference1 = centroids[offset1 + i] - value;
+                double difference2 = centroids[offset2 + i] - value;
+                double difference3 = centroids[offset3 + i] - value;
+                sum0 += difference0 * difference0;
+                sum1 += difference1 * difference1;
+                sum2 += difference2 * difference2;
+                sum3 += difference3 * difference3;
+            }
+            distances[c] = sum0;
+            distances[c + 1] = sum1;
+            distances[c + 2] = sum2;
+            distances[c + 3] = sum3;
+        }
+        for (; c < noOfCentroids; c++) {
+            distances[c] = MathUtil.squaredEuclideanDistance(centroids, c * noOfDimensions, coordinates, offset,
+                    noOfDimensions);
+        }
+    }
+
+    /**
+     * Find the nearest centroid to a point, without storing the distances to the other centroids
+     *
+     * @param centroids      centroids, holding noOfDimensions coordinates per centroid
+     * @param noOfCentroids  number of centroids, at least one
+     * @param coordinates    array holding the point
+     * @param offset         index of the first coordinate of the point
+     * @param noOfDimensions number of coordinates of a point
+     * @return index of the nearest centroid, the first one on a tie. A centroid at a NaN distance is never the
+     * nearest, and the first centroid is returned if no distance is less than infinity, e.g., for a point with a NaN
+     * coordinate.
+     */
+    public static int nearest(double[] centroids, int noOfCentroids, double[] coordinates, int offset,
+                              int noOfDimensions) {
+        int nearest = 0;
+        double minDistance = Double.POSITIVE_INFINITY;
+        int c = 0;
+        for (; c + BLOCK_SIZE <= noOfCentroids; c += BLOCK_SIZE) {
+            int offset0 = c * noOfDimensions;
+            int offset1 = offset0 + noOfDimensions;
+            int offset2 = offset1 + noOfDimensions;
+            int offset3 = offset2 + noOfDimensions;
+            double sum0 = 0.0;
+            double sum1 = 0.0;
+            double sum2 = 0.0;
+            double sum3 = 0.0;
+            for (int i = 0; i < noOfDimensions; i++) {
+                double value = coordinates[offset + i];
+                double difference0 = centroids[offset0 + i] - value;
+                double difference1 = centroids[offset1 + i] - value;
+                double difference2 = centroids[offset2 + i] - value;
+                double difference3 = centroids[offset3 + i] - value;
+                sum0 += difference0 * difference0;
+                sum1 += difference1 * difference1;
+                sum2 += difference2 * difference2;
+                sum3 += difference3 * difference3;
+            }
+            // compared in the order of the centroids, so that ties go to the first centroid
+            if (sum0 < minDistance) {
+                minDistance = sum0;
+                nearest = c;
+            }
+            if (sum1 < minDistance) {
+                minDistance = sum1;
+                nearest = c + 1;
+            }
+            if (sum2 < minDistance) {
+                minDistance = sum2;
+                nearest = c + 2;
+            }
+            if (sum3 < minDistance) {
+                minDistance = sum3;
+                nearest = c + 3;
+            }
+        }
+        for (; c < noOfCentroids; c++) {
+            double distance = MathUtil.squaredEuclideanDistance(centroids, c * noOfDimensions, coordinates, offset,
+                    noOfDimensions);
+            if (distance < minDistance) {
+                minDistance = distance;
+                nearest = c;
+            }
+        }
+        return nearest;
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2017 WSO2 Inc. (http://wso2.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.wso2.extension.siddhi.gpl.execution.streamingml.clustering.clustree.util;
+
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.MathUtil;
+
+/**
+ * Bounds kept by Hamerly's algorithm for each point: an upper bound on the distance to the centroid it is assigned
+ * to, and a lower bound on the distance to any other centroid. A point keeps its centroid without computing any
+ * distance while the upper bound is less than the lower bound, or than half the distance from its centroid to the
+ * nearest other centroid.
+ * <p>
+ * The bounds are widened by a small margin over the rounding errors of computing them, so that a point only keeps
+ * its centroid if it is the one Lloyd's algorithm finds as well. The points are otherwise assigned the same way as
+ * {@link WeightedKMeans#findAssociatedCluster}, hence both algorithms find the same centroids.
+ */
+class HamerlyBounds {
+    private static final double MARGIN = 1.0E-9;
+
+    private final double[] upperBounds;
+    private final double[] lowerBounds;
+    private final double[] halfSeparations;
+    private final double[] moves;
+    private final double[] distances;
+    private boolean initialized;
+
+    HamerlyBounds(int noOfPoints, int noOfClusters) {
+        upperBounds = new double[noOfPoints];
+        lowerBounds = new double[noOfPoints];
+        halfSeparations = new double[noOfClusters];
+        moves = new double[noOfClusters];
+        distances = new double[noOfClusters];
+    }
+
+    /**
+     * finds the nearest centroid to each point, computing the distances of the points only where the bounds do
+     * not rule out a centroid nearer than the one it is assigned to
+     *
+     * @param associatedClusters index of the nearest centroid of each point, as found in the previous iteration.
+     *                           Filled with the index of the nearest centroid of each point.
+     */
+    void assignToCluster(WeightedPointSet points, double[] centroids, int noOfClusters, int[] associatedClusters) {
+        int noOfDimensions = points.getNoOfDimensions();
+        double[] coordinates = points.getCoordinates();
+        if (initialized) {
+            computeHalfSeparations(centroids, noOfClusters, noOfDimensions);
+        }
+        for (int i = 0; i < associatedClusters.length; i++) {
+            int offset = i * noOfDimensions;
+            if (initialized) {
+                int cluster = associatedClusters[i];
+                double bound = Math.max(halfSeparations[cluster], lowerBounds[i]);
+                if (upperBounds[i] * (1 + MARGIN) < bound) {
+                    continue;
+                }
+                upperBounds[i] = Math.sqrt(MathUtil.squaredEuclideanDistance(centroids, cluster * noOfDimensions,
+                        coordinates, offset, noOfDimensions));
+                if (upperBounds[i] * (1 + MARGIN) < bound) {
+                    continue;
+                }
+            }
+            DistanceKernel.squaredDistances(centroids, noOfClusters, coordinates, offset, noOfDimensions,
+                    distances);
+            // the nearest centroid is chosen the same way as by findAssociatedCluster, the first one on a tie
+            int nearest = 0;
+            double minDistance = distances[0];
+            for (int c = 1; c < noOfClusters; c++) {
+                if (distances[c] < minDistance) {
+                    minDistance = distances[c];
+                    nearest = c;
+                }
+            }
+            double secondMinDistance = Double.POSITIVE_INFINITY;
+            for (int c = 0; c < noOfClusters; c++) {
+                if (c != nearest) {
+                    // a NaN distance makes the bound NaN, so that the point is assigned afresh in each iteration
+                    secondMinDistance = Math.min(secondMinDistance, distances[c]);
+                }
+            }
+            associatedClusters[i] = nearest;
+            upperBounds[i] = Math.sqrt(minDistance);
+            lowerBounds[i] = Math.sqrt(secondMinDistance);
+        }
+        initialized = true;
+    }
+
+    /**
+     * Update the bounds for the centroids moving to their new positions
+     */
+    void moveCentroids(double[] centroids, double[] newCentroids, int noOfClusters, int noOfDimensions,
+                       int[] associatedClusters) {
+        int maxMoved = 0;
+        double maxMove = 0;
+        double secondMaxMove = 0;
+        for (int c = 0; c < noOfClusters; c++) {
+            moves[c] = Math.sqrt(MathUtil.squaredEuclideanDistance(centroids, c * noOfDimensions, newCentroids,
+                    c * noOfDimensions, noOfDimensions));
+            if (moves[c] > maxMove || Double.isNaN(moves[c])) {
+                secondMaxMove = maxMove;
+                maxMove = moves[c];
+                maxMoved = c;
+            } else if (moves[c] > secondMaxMove) {
+                secondMaxMove = moves[c];
+            }
+        }
+        for (int i = 0; i < associatedClusters.length; i++) {
+            int cluster = associatedClusters[i];
+            double move = moves[cluster];
+            double otherMove = cluster == maxMoved ? secondMaxMove : maxMove;
+            upperBounds[i] += move + MARGIN * (upperBounds[i] + move);
+            lowerBounds[i] -= otherMove + MARGIN * (lowerBounds[i] + otherMove);
+        }
+    }
+
+    /**
+     * Compute half the distance from each centroid to the nearest other centroid
+     */
+    private void computeHalfSeparations(double[] centroids, int noOfClusters, int noOfDimensions) {
+        for (int c = 0; c < noOfClusters; c++) {
+            DistanceKernel.squaredDistances(centroids, noOfClusters, centroids, c * noOfDimensions, noOfDimensions,
+                    distances);
+            double minDistance = Double.POSITIVE_INFINITY;
+            for (int other = 0; other < noOfClusters; other++) {
+                if (other != c) {
+                    minDistance = Math.min(minDistance, distances[other]);
+                }
+            }
+            halfSeparations[c] = Math.sqrt(minDistance) / 2;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2017 WSO2 Inc. (http://wso2.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.wso2.extension.siddhi.gpl.execution.streamingml.clustering.clustree.util;
+
+import io.siddhi.core.exception.SiddhiAppCreationException;
+
+/**
+ * How {@link WeightedKMeans} assigns the micro clusters to the nearest centroids in each iteration
+ */
+public enum KMeansAlgorithm {
+    /**
+     * Lloyd's algorithm, which computes the distance from each micro cluster to every centroid in each iteration
+     */
+    LLOYD("lloyd"),
+    /**
+     * Hamerly's algorithm, which keeps bounds on the distances to the nearest and the second nearest centroids, and
+     * only computes the distances of a micro cluster when the triangle inequality cannot rule out a nearer centroid
+     */
+    HAMERLY("hamerly");
+
+    private final String configValue;
+
+    KMeansAlgorithm(String configValue) {
+        this.configValue = configValue;
+    }
+
+    public String getConfigValue() {
+        return configValue;
+    }
+
+    public static KMeansAlgorithm fromConfigValue(String configValue) {
+        for (KMeansAlgorithm algorithm : values()) {
+            if (algorithm.configValue.equalsIgnoreCase(configValue)) {
+                return algorithm;
+            }
+        }
+        throw new SiddhiAppCreationException(String.format("kMeansAlgorithm should be either lloyd or hamerly "
+                + "but found %s", configValue));
+    }
+}
@@ -17,95 +17,281 @@
 
 package org.wso2.extension.siddhi.gpl.execution.streamingml.clustering.clustree.util;
 
-import org.apache.log4j.Logger;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.MathUtil;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.ModelEvents;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.ModelSnapshotReader;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.ModelSnapshotType;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.ModelSnapshotWriter;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
 import java.util.Arrays;
-import java.util.LinkedList;
 import java.util.List;
 
 /**
  * stores info about the kmeans model
+ * <p>
+ * The centroids are kept in a flat array holding noOfDimensions coordinates per centroid. Each refresh publishes
+ * the new centroids, along with their cluster weights and their index, as a single holder by swapping
+ * the reference to it. A published holder is never modified afterwards, so predictions and snapshots
+ * read it without taking any lock, and never mix the centroids of one refresh with the weights of another.
+ * <p>
+ * If there are enough centroids, a refresh indexes the new centroids as well. The index is not part of a snapshot,
+ * hence a restored model scans the centroids until it is refreshed.
+ * <p>
+ * In the mini-batch mode, the centroids are moved towards each mini-batch of events by the thread that trains the
+ * model, and each move publishes new centroids as a refresh does. The moves and the publishing of a refresh, which
+ * may complete on another thread, are serialized by the lock of the model, so that neither is lost in between the
+ * reads and the writes of the other. The events of an incomplete mini-batch are not part of a snapshot.
+ * <p>
+ * The earlier releases kept the model as a list of clusters, which Siddhi persisted by serializing the model. The
+ * serialized form of the model still reads such a list, and migrates it into the flat array of centroids.
  */
 public class KMeansModel implements Serializable {
     private static final long serialVersionUID = 7997333339345312740L;
-    private List<Cluster> clusterList;
-    private boolean trained;
-    private static final Logger logger = Logger.getLogger(KMeansModel.class.getName());
+    private static final int SNAPSHOT_VERSION = 2;
+    private static final String LEGACY_CLUSTER_LIST = "clusterList";
+    private static final ObjectStreamField[] serialPersistentFields = {
+            new ObjectStreamField("noOfDimensions", int.class),
+            new ObjectStreamField("centroids", double[].class),
+            new ObjectStreamField("clusterWeights", double[].class)};
+    private static final Centroids NO_CENTROIDS = new Centroids(new double[0], null, null);
+    // not final, as it is set by readObject
+    private int noOfDimensions;
+    // not final, as it is set by readObject, and serialized as the fields of serialPersistentFields
+    private transient volatile Centroids published = NO_CENTROIDS;
+    private transient volatile long noOfRefreshes;
+    // events of the current mini-batch, holding noOfDimensions coordinates per event
+    private transient double[] miniBatch;
+    private transient int[] miniBatchClusters;
+    private transient int miniBatchLength;
 
-    public KMeansModel() {
-        clusterList = new LinkedList<>();
+    public KMeansModel(int noOfDimensions) {
+        this.noOfDimensions = noOfDimensions;
     }
 
-    public synchronized List<Cluster> getClusterList() {
-        return clusterList;
+    public boolean isTrained() {
+        return published.centroids.length != 0;
     }
 
-    public synchronized void setClusterList(List<Cluster> clusterList) {
-        this.clusterList = clusterList;
+    public int getNoOfCentroids() {
+        return published.centroids.length / noOfDimensions;
     }
 
-    public synchronized boolean isTrained() {
-        return trained;
+    /**
+     * @return a copy of the centroids, holding noOfDimensions coordinates per centroid
+     */
+    public double[] getCentroids() {
+        return published.centroids.clone();
     }
 
-    public synchronized void clearClusterMembers() {
-        for (Cluster c: clusterList) {
-            if (c != null) {
-                c.clearDataPointsInCluster();
-            }
+    /**
+     * @return number of times the centroids have been refreshed, as refreshes are published asynchronously
+     */
+    public long getNoOfRefreshes() {
+        return noOfRefreshes;
+    }
+
+    /**
+     * @return snapshot of the published centroids, read by {@link #fromSnapshot(byte[])}
+     */
+    public byte[] toSnapshot() {
+        ModelSnapshotWriter writer = new ModelSnapshotWriter(ModelSnapshotType.KMEANS, SNAPSHOT_VERSION);
+        Centroids published = this.published;
+        writer.writeInt(noOfDimensions);
+        writer.writeDoubles(published.centroids);
+        writer.writeDoubles(published.clusterWeights);
+        return writer.toByteArray();
+    }
+
+    /**
+     * @param snapshot snapshot written by {@link #toSnapshot()}
+     * @return the model
+     */
+    public static KMeansModel fromSnapshot(byte[] snapshot) {
+        ModelSnapshotReader reader = new ModelSnapshotReader(snapshot, ModelSnapshotType.KMEANS, SNAPSHOT_VERSION);
+        KMeansModel model = new KMeansModel(reader.readInt());
+        double[] centroids = reader.readDoubles();
+        double[] clusterWeights = reader.getVersion() >= 2 ? reader.readDoubles() : null;
+        model.published = Centroids.of(centroids, clusterWeights);
+        return model;
+    }
+
+    /**
+     * Return the k-means model restored by Siddhi, which is either a snapshot of the model, or the model itself if
+     * it was persisted by the earlier releases
+     *
+     * @param state          restored state of the model
+     * @param noOfDimensions number of dimensions of the ClusTree
+     * @return the model, or an untrained model if no centroids were persisted
+     */
+    public static KMeansModel fromState(Object state, int noOfDimensions) {
+        if (state instanceof byte[]) {
+            return fromSnapshot((byte[]) state);
+        }
+        if (state instanceof KMeansModel && ((KMeansModel) state).noOfDimensions == noOfDimensions) {
+            return (KMeansModel) state;
         }
+        return new KMeansModel(noOfDimensions);
     }
 
-    public synchronized boolean contains(DataPoint x) {
-        for (Cluster c: clusterList) {
-            if (c.getCentroid().equals(x)) {
-                return true;
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        Centroids published = this.published;
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("noOfDimensions", noOfDimensions);
+        fields.put("centroids", published.centroids);
+        fields.put("clusterWeights", published.clusterWeights);
+        out.writeFields();
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        if (fields.getObjectStreamClass().getField(LEGACY_CLUSTER_LIST) != null) {
+            // model of the earlier releases, holding a centroid per cluster
+            List<?> clusters = (List<?>) fields.get(LEGACY_CLUSTER_LIST, null);
+            if (clusters == null || clusters.isEmpty()) {
+                published = NO_CENTROIDS;
+                return;
+            }
+            noOfDimensions = ((Cluster) clusters.get(0)).getCentroid().getCoordinates().length;
+            double[] centroids = new double[clusters.size() * noOfDimensions];
+            for (int i = 0; i < clusters.size(); i++) {
+                double[] coordinates = ((Cluster) clusters.get(i)).getCentroid().getCoordinates();
+                System.arraycopy(coordinates, 0, centroids, i * noOfDimensions, noOfDimensions);
             }
+            published = Centroids.of(centroids, null);
+        } else {
+            noOfDimensions = fields.get("noOfDimensions", 0);
+            published = Centroids.of((double[]) fields.get("centroids", null),
+                    (double[]) fields.get("clusterWeights", null));
         }
-        return false;
     }
 
-    public synchronized void add(DataPoint x) {
-        if (logger.isDebugEnabled()) {
-            logger.debug("adding a new cluster with centroid " + Arrays.toString(x.getCoordinates()));
+    /**
+     * Run kmeans on the points and publish the resulting centroids in place of the current ones. If the ClusTree
+     * warm starts kmeans, it starts from the current centroids.
+     */
+    public void refresh(WeightedPointSet points, ClusTreeConfig config) {
+        ModelEvents.KMeansRefresh event = ModelEvents.AVAILABLE ? new ModelEvents.KMeansRefresh() : null;
+        double[] previousCentroids = published.centroids;
+        double[] centroids;
+        if (event != null && event.isEnabled()) {
+            int[] noOfIterations = new int[1];
+            event.begin();
+            centroids = WeightedKMeans.run(points, config, previousCentroids, noOfIterations);
+            event.end();
+            event.noOfPoints = points.size();
+            event.noOfCentroids = centroids.length / noOfDimensions;
+            event.noOfIterations = noOfIterations[0];
+            event.commit();
+        } else {
+            centroids = WeightedKMeans.run(points, config, previousCentroids);
+        }
+        double[] clusterWeights = config.getMacroModelUpdate() == MacroModelUpdate.MINI_BATCH
+                ? WeightedKMeans.calculateClusterWeights(points, centroids, config.getHorizon()) : null;
+        synchronized (this) {
+            publish(centroids, clusterWeights, config);
+            noOfRefreshes++;
         }
-        Cluster c = new Cluster(x);
-        clusterList.add(c);
     }
 
-    public synchronized int size() {
-        return clusterList.size();
+    /**
+     * Add an event to the current mini-batch, and move the centroids towards the events of the mini-batch once it
+     * is full. Called only by the thread that trains the model, once the model has all of its centroids.
+     *
+     * @param coordinateValuesOfCurrentDataPoint coordinates of the event
+     */
+    public void trainOnMiniBatch(double[] coordinateValuesOfCurrentDataPoint, ClusTreeConfig config) {
+        int miniBatchSize = config.getMiniBatchSize();
+        if (miniBatch == null) {
+            miniBatch = new double[miniBatchSize * noOfDimensions];
+            miniBatchClusters = new int[miniBatchSize];
+        }
+        System.arraycopy(coordinateValuesOfCurrentDataPoint, 0, miniBatch, miniBatchLength * noOfDimensions,
+                noOfDimensions);
+        if (++miniBatchLength < miniBatchSize) {
+            return;
+        }
+        miniBatchLength = 0;
+        synchronized (this) {
+            Centroids published = this.published;
+            // the published arrays are never modified, hence the centroids and the weights are moved in copies
+            double[] centroids = published.centroids.clone();
+            double[] clusterWeights;
+            if (published.clusterWeights == null
+                    || published.clusterWeights.length != centroids.length / noOfDimensions) {
+                // the weights are not known, e.g., in a model restored from an earlier release, hence the centroids
+                // are taken to be settled
+                clusterWeights = new double[centroids.length / noOfDimensions];
+                Arrays.fill(clusterWeights, config.getHorizon());
+            } else {
+                clusterWeights = published.clusterWeights.clone();
+            }
+            WeightedKMeans.updateMiniBatch(centroids, clusterWeights, miniBatch, miniBatchSize, noOfDimensions,
+                    config.getHorizon(), miniBatchClusters);
+            publish(centroids, clusterWeights, config);
+        }
     }
 
-    public synchronized double[] getCoordinatesOfCentroidOfCluster(int index) {
-        return clusterList.get(index).getCentroid().getCoordinates();
+    /**
+     * Called holding the lock of the model
+     */
+    private void publish(double[] centroids, double[] clusterWeights, ClusTreeConfig config) {
+        int noOfCentroids = centroids.length / noOfDimensions;
+        CentroidIndex centroidIndex = noOfCentroids >= config.getMinNoOfCentroidsToIndex()
+                ? CentroidIndex.build(centroids, noOfCentroids, noOfDimensions) : null;
+        this.published = new Centroids(centroids, clusterWeights, centroidIndex);
     }
 
+    /**
+     * @param coordinateValuesOfCurrentDataPoint coordinates of the point
+     * @return the distance to the closest centroid followed by the coordinates of the closest centroid
+     */
+    public Object[] getPrediction(double[] coordinateValuesOfCurrentDataPoint) {
+        // read the published centroids once, so that a concurrent refresh does not mix two sets of centroids
+        Centroids published = this.published;
+        double[] centroids = published.centroids;
+        int associatedCluster;
+        if (published.centroidIndex != null) {
+            associatedCluster = published.centroidIndex.nearest(coordinateValuesOfCurrentDataPoint);
+        } else {
+            associatedCluster = WeightedKMeans.findAssociatedCluster(centroids, centroids.length / noOfDimensions,
+                    coordinateValuesOfCurrentDataPoint, 0, noOfDimensions);
+        }
+        int centroidOffset = associatedCluster * noOfDimensions;
+        double minDistance = Math.sqrt(MathUtil.squaredEuclideanDistance(centroids, centroidOffset,
+                coordinateValuesOfCurrentDataPoint, 0, noOfDimensions));
 
-    public synchronized String getModelInfo() {
-        StringBuilder s = new StringBuilder();
-        for (Cluster c: clusterList) {
-            s.append(Arrays.toString(c.getCentroid().getCoordinates())).append(" with members : ")
-                    .append(c.getMemberInfo()).append("\n");
+        Object[] associatedCentroidInfo = new Object[noOfDimensions + 1];
+        associatedCentroidInfo[0] = MathUtil.roundOff(minDistance, 4);
+        for (int i = 0; i < noOfDimensions; i++) {
+            associatedCentroidInfo[i + 1] = centroids[centroidOffset + i];
         }
-        return s.toString();
+        return associatedCentroidInfo;
     }
 
-    public synchronized void setTrained(boolean trained) {
-        this.trained = trained;
-    }
+    /**
+     * Centroids published by a refresh or a mini-batch, which are never modified once published
+     */
+    private static final class Centroids {
+        private final double[] centroids;
+        // total weight of each cluster, from which the mini-batch mode derives the learning rates of the centroids,
+        // or null if the centroids have not been moved in mini-batches since they were refreshed in the other mode
+        private final double[] clusterWeights;
+        // index of the centroids, or null if they are not indexed
+        private final CentroidIndex centroidIndex;
 
-    public void refresh(List<DataPoint> dataPointsArray, int noOfClusters, int maxIterations,
-                        int noOfDimensions) {
-        this.setClusterList(WeightedKMeans.run(dataPointsArray, noOfClusters, maxIterations,
-                noOfDimensions));
-        this.setTrained(true);
-    }
+        private Centroids(double[] centroids, double[] clusterWeights, CentroidIndex centroidIndex) {
+            this.centroids = centroids;
+            this.clusterWeights = clusterWeights;
+            this.centroidIndex = centroidIndex;
+        }
 
-    public synchronized Object[] getPrediction(double[] coordinateValuesOfCurrentDataPoint) {
-        DataPoint d = new DataPoint();
-        d.setCoordinates(coordinateValuesOfCurrentDataPoint);
-        return WeightedKMeans.getAssociatedCentroidInfo(d, this);
+        private static Centroids of(double[] centroids, double[] clusterWeights) {
+            return centroids == null ? NO_CENTROIDS : new Centroids(centroids, clusterWeights, null);
+        }
     }
 }
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2017 WSO2 Inc. (http://wso2.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.wso2.extension.siddhi.gpl.execution.streamingml.clustering.clustree.util;
+
+import org.apache.log4j.Logger;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Refreshes the kmeans model of a ClusTree in the background.
+ * <p>
+ * At most one refresh runs at a time. Refreshes requested while one is running are coalesced, so that only the
+ * latest micro clustering is used for the next run and the older ones are dropped. The new centroids are published
+ * to the kmeans model with an atomic swap, hence predictions never wait for a refresh.
+ */
+public class KMeansRefresher implements Runnable {
+    private static final Logger logger = Logger.getLogger(KMeansRefresher.class.getName());
+
+    private final ExecutorService executorService;
+    private final ClusTreeConfig config;
+    private final AtomicReference<Refresh> pendingRefresh = new AtomicReference<>();
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    public KMeansRefresher(ExecutorService executorService, ClusTreeConfig config) {
+        this.executorService = executorService;
+        this.config = config;
+    }
+
+    /**
+     * Request a refresh of the kmeans model. Replaces any refresh which is still waiting to be run.
+     *
+     * @param kMeansModel model to publish the new centroids to
+     * @param points      micro clusters of the ClusTree. Must not be modified after submission.
+     */
+    public void submit(KMeansModel kMeansModel, WeightedPointSet points) {
+        Refresh dropped = pendingRefresh.getAndSet(new Refresh(kMeansModel, points));
+        if (dropped != null && logger.isDebugEnabled()) {
+            logger.debug("Coalesced a pending kmeans model refresh with a newer one");
+        }
+        schedule();
+    }
+
+    private void schedule() {
+        if (running.compareAndSet(false, true)) {
+            try {
+                executorService.execute(this);
+            } catch (RejectedExecutionException e) {
+                running.set(false);
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Kmeans model refresh was rejected as the executor is shut down", e);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            Refresh refresh;
+            while ((refresh = pendingRefresh.getAndSet(null)) != null) {
+                refresh.kMeansModel.refresh(refresh.points, config);
+            }
+        } catch (RuntimeException e) {
+            logger.error("Error while refreshing the kmeans model", e);
+        } finally {
+            running.set(false);
+        }
+        // a refresh submitted after the last poll but before the flag is reset would otherwise be left behind
+        if (pendingRefresh.get() != null) {
+            schedule();
+        }
+    }
+
+    private static class Refresh {
+        private final KMeansModel kMeansModel;
+        private final WeightedPointSet points;
+
+        private Refresh(KMeansModel kMeansModel, WeightedPointSet points) {
+            this.kMeansModel = kMeansModel;
+            this.points = points;
+        }
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) 2017 WSO2 Inc. (http://wso2.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.wso2.extension.siddhi.gpl.execution.streamingml.clustering.clustree.util;
+
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.MathUtil;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Chooses the initial centroids of {@link WeightedKMeans} with weighted k-means++ or k-means||.
+ * <p>
+ * The random choices are seeded with a constant, so that the same micro clusters always give the same centroids.
+ */
+final class KMeansSeeder {
+    private static final long RANDOM_SEED = 42;
+    // number of passes of k-means|| over the points, and the number of candidates sampled per pass per cluster
+    private static final int NO_OF_PARALLEL_ROUNDS = 5;
+    private static final int OVERSAMPLING_FACTOR = 2;
+
+    private KMeansSeeder() {
+    }
+
+    /**
+     * Choose the initial centroids with weighted k-means++
+     *
+     * @return centroids, less than noOfClusters of them if the points do not have that many distinct coordinates
+     */
+    static double[] kMeansPlusPlus(WeightedPointSet points, int noOfClusters) {
+        return kMeansPlusPlus(points, noOfClusters, new Random(RANDOM_SEED));
+    }
+
+    /**
+     * Choose the initial centroids with weighted k-means||
+     *
+     * @return centroids, less than noOfClusters of them if the points do not have that many distinct coordinates
+     */
+    static double[] kMeansParallel(WeightedPointSet points, int noOfClusters) {
+        int noOfDimensions = points.getNoOfDimensions();
+        double[] coordinates = points.getCoordinates();
+        double[] weights = points.getWeights();
+        Random random = new Random(RANDOM_SEED);
+        int first = choose(weights, null, totalWeight(weights, null), random);
+        if (first < 0) {
+            return new double[0];
+        }
+        int[] candidates = new int[Math.max(16, noOfClusters)];
+        int noOfCandidates = 0;
+        candidates[noOfCandidates++] = first;
+        double[] distances = new double[points.size()];
+        Arrays.fill(distances, Double.POSITIVE_INFINITY);
+        updateDistances(coordinates, noOfDimensions, first * noOfDimensions, coordinates, distances);
+        double oversampling = (double) OVERSAMPLING_FACTOR * noOfClusters;
+        for (int round = 0; round < NO_OF_PARALLEL_ROUNDS; round++) {
+            double cost = totalWeight(weights, distances);
+            if (!(cost > 0)) {
+                break;
+            }
+            int noOfOldCandidates = noOfCandidates;
+            for (int i = 0; i < distances.length; i++) {
+                if (random.nextDouble() * cost < oversampling * weights[i] * distances[i]) {
+                    if (noOfCandidates == candidates.length) {
+                        candidates = Arrays.copyOf(candidates, noOfCandidates << 1);
+                    }
+                    candidates[noOfCandidates++] = i;
+                }
+            }
+            for (int c = noOfOldCandidates; c < noOfCandidates; c++) {
+                updateDistances(coordinates, noOfDimensions, candidates[c] * noOfDimensions, coordinates,
+                        distances);
+            }
+        }
+        // each candidate is weighted by the points it is the nearest candidate of
+        WeightedPointSet candidatePoints = new WeightedPointSet(noOfCandidates, noOfDimensions);
+        double[] candidateCoordinates = candidatePoints.getCoordinates();
+        double[] candidateWeights = candidatePoints.getWeights();
+        for (int c = 0; c < noOfCandidates; c++) {
+            System.arraycopy(coordinates, candidates[c] * noOfDimensions, candidateCoordinates, c * noOfDimensions,
+                    noOfDimensions);
+        }
+        for (int i = 0; i < points.size(); i++) {
+            int nearest = DistanceKernel.nearest(candidateCoordinates, noOfCandidates, coordinates,
+                    i * noOfDimensions, noOfDimensions);
+            candidateWeights[nearest] += weights[i];
+        }
+        return kMeansPlusPlus(candidatePoints, noOfClusters, random);
+    }
+
+    private static double[] kMeansPlusPlus(WeightedPointSet points, int noOfClusters, Random random) {
+        int noOfDimensions = points.getNoOfDimensions();
+        double[] coordinates = points.getCoordinates();
+        double[] weights = points.getWeights();
+        double[] centroids = new double[noOfClusters * noOfDimensions];
+        double[] distances = new double[points.size()];
+        Arrays.fill(distances, Double.POSITIVE_INFINITY);
+        int noOfCentroids = 0;
+        int chosen = choose(weights, null, totalWeight(weights, null), random);
+        while (chosen >= 0) {
+            System.arraycopy(coordinates, chosen * noOfDimensions, centroids, noOfCentroids * noOfDimensions,
+                    noOfDimensions);
+            noOfCentroids++;
+            if (noOfCentroids == noOfClusters) {
+                break;
+            }
+            updateDistances(centroids, noOfDimensions, (noOfCentroids - 1) * noOfDimensions, coordinates,
+                    distances);
+            // points at a distance of 0 are never chosen, hence the centroids are distinct
+            chosen = choose(weights, distances, totalWeight(weights, distances), random);
+        }
+        return noOfCentroids == noOfClusters ? centroids : Arrays.copyOf(centroids, noOfCentroids * noOfDimensions);
+    }
+
+    /**
+     * Reduce the squared distance of each point to the nearest centroid by the distance to a new centroid
+     */
+    private static void updateDistances(double[] centroids, int noOfDimensions, int centroidOffset,
+                                        double[] coordinates, double[] distances) {
+        for (int i = 0; i < distances.length; i++) {
+            double distance = MathUtil.squaredEuclideanDistance(centroids, centroidOffset, coordinates,
+                    i * noOfDimensions, noOfDimensions);
+            if (distance < distances[i]) {
+                distances[i] = distance;
+            }
+        }
+    }
+
+    /**
+     * @return sum of the weights of the points, times their squared distances to the nearest centroid if given
+     */
+    private static double totalWeight(double[] weights, double[] distances) {
+        double total = 0;
+        for (int i = 0; i < weights.length; i++) {
+            total += distances == null ? weights[i] : weights[i] * distances[i];
+        }
+        return total;
+    }
+
+    /**
+     * Choose a point with a probability proportional to its weight, times its squared distance if given
+     *
+     * @return index of the point, or -1 if the total is not positive
+     */
+    private static int choose(double[] weights, double[] distances, double total, Random random) {
+        if (!(total > 0) || Double.isInfinite(total)) {
+            return -1;
+        }
+        double target = random.nextDouble() * total;
+        int last = -1;
+        double sum = 0;
+        for (int i = 0; i < weights.length; i++) {
+            double weight = distances == null ? weights[i] : weights[i] * distances[i];
+            if (weight > 0) {
+                sum += weight;
+                last = i;
+                if (sum > target) {
+                    return i;
+                }
+            }
+        }
+        // the sum may fall short of the target by rounding errors
+        return last;
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2017 WSO2 Inc. (http://wso2.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.wso2.extension.siddhi.gpl.execution.streamingml.clustering.clustree.util;
+
+import io.siddhi.core.exception.SiddhiAppCreationException;
+
+/**
+ * How {@link WeightedKMeans} chooses the initial centroids among the micro clusters
+ */
+public enum KMeansSeeding {
+    /**
+     * The first distinct micro clusters, in the order of the micro clusters
+     */
+    FIRST_DISTINCT("firstDistinct"),
+    /**
+     * Weighted k-means++, which chooses each centroid at random with a probability proportional to the weight of a
+     * micro cluster times its squared distance to the nearest centroid chosen so far
+     */
+    K_MEANS_PLUS_PLUS("kMeansPlusPlus"),
+    /**
+     * Weighted k-means||, which oversamples candidates in a few passes over the micro clusters, and chooses the
+     * centroids among the candidates with k-means++
+     */
+    K_MEANS_PARALLEL("kMeansParallel");
+
+    private final String configValue;
+
+    KMeansSeeding(String configValue) {
+        this.configValue = configValue;
+    }
+
+    public String getConfigValue() {
+        return configValue;
+    }
+
+    public static KMeansSeeding fromConfigValue(String configValue) {
+        for (KMeansSeeding seeding : values()) {
+            if (seeding.configValue.equalsIgnoreCase(configValue)) {
+                return seeding;
+            }
+        }
+        throw new SiddhiAppCreationException(String.format("kMeansSeeding should be either firstDistinct, "
+                + "kMeansPlusPlus or kMeansParallel but found %s", configValue));
+    }
+}
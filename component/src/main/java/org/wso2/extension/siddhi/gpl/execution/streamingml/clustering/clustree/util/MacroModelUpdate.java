@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2017 WSO2 Inc. (http://wso2.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.wso2.extension.siddhi.gpl.execution.streamingml.clustering.clustree.util;
+
+import io.siddhi.core.exception.SiddhiAppCreationException;
+
+/**
+ * How the kmeans model of a ClusTree follows the stream once it has found all of its centroids
+ */
+public enum MacroModelUpdate {
+    /**
+     * Run kmeans on the micro clusters after every noOfEventsToRefreshMacroModel events
+     */
+    REFRESH("refresh"),
+    /**
+     * Move the centroids towards each mini-batch of events, with a learning rate per centroid, so that each event
+     * costs the same
+     */
+    MINI_BATCH("miniBatch");
+
+    private final String configValue;
+
+    MacroModelUpdate(String configValue) {
+        this.configValue = configValue;
+    }
+
+    public String getConfigValue() {
+        return configValue;
+    }
+
+    public static MacroModelUpdate fromConfigValue(String configValue) {
+        for (MacroModelUpdate update : values()) {
+            if (update.configValue.equalsIgnoreCase(configValue)) {
+                return update;
+            }
+        }
+        throw new SiddhiAppCreationException(String.format("macroModelUpdate should be either refresh or "
+                + "miniBatch but found %s", configValue));
+    }
+}
@@ -20,165 +20,335 @@ package org.wso2.extension.siddhi.gpl.execution.streamingml.clustering.clustree.
 import org.apache.log4j.Logger;
 import org.wso2.extension.siddhi.gpl.execution.streamingml.util.MathUtil;
 
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.LinkedList;
-import java.util.List;
 
 /**
- * perform weighted kmeans calculations. a singleton class
+ * perform weighted kmeans calculations.
+ * <p>
+ * Centroids are kept in a flat array holding noOfDimensions coordinates per centroid, the same layout as the
+ * coordinates of a {@link WeightedPointSet}.
  */
 public class WeightedKMeans {
     private static final Logger logger = Logger.getLogger(WeightedKMeans.class.getName());
 
-    public static List<Cluster> run(List<DataPoint> dataPointsArray, int noOfClusters, int maximumIterations,
-                             int noOfDimensions) {
-        KMeansModel model = new KMeansModel();
-        cluster(dataPointsArray, model, noOfClusters, maximumIterations, noOfDimensions);
-        return model.getClusterList();
+    private WeightedKMeans() {
     }
 
+    /**
+     * Perform clustering with Lloyd's algorithm, until the centroids do not change
+     *
+     * @return centroids of the clusters. There are less than noOfClusters centroids if the points do not have
+     * that many distinct coordinates.
+     */
+    public static double[] run(WeightedPointSet points, int noOfClusters, int maximumIterations) {
+        return run(points, noOfClusters, maximumIterations, KMeansAlgorithm.LLOYD, KMeansSeeding.FIRST_DISTINCT,
+                0);
+    }
+
+    /**
+     * Perform clustering with the algorithm, the seeding and the convergence tolerance of a ClusTree. If the
+     * ClusTree warm starts kmeans, the clustering starts from the previous centroids instead, as long as there are
+     * noOfClusters of them.
+     *
+     * @param previousCentroids centroids of the previous clustering, or null if there was none. Not modified.
+     * @return centroids of the clusters. There are less than noOfClusters centroids if the points do not have
+     * that many distinct coordinates.
+     */
+    public static double[] run(WeightedPointSet points, ClusTreeConfig config, double[] previousCentroids) {
+        return run(points, config, previousCentroids, null);
+    }
+
+    /**
+     * Perform clustering with the algorithm, the seeding and the convergence tolerance of a ClusTree, as
+     * {@link #run(WeightedPointSet, ClusTreeConfig, double[])} does
+     *
+     * @param previousCentroids centroids of the previous clustering, or null if there was none. Not modified.
+     * @param noOfIterations    if not null, its first element is set to the number of iterations run
+     * @return centroids of the clusters. There are less than noOfClusters centroids if the points do not have
+     * that many distinct coordinates.
+     */
+    public static double[] run(WeightedPointSet points, ClusTreeConfig config, double[] previousCentroids,
+                               int[] noOfIterations) {
+        if (config.isKMeansWarmStart() && canWarmStart(previousCentroids, config.getNoOfClusters(),
+                points.getNoOfDimensions())) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("warm starting the clustering from the previous centroids");
+            }
+            return refine(points, previousCentroids.clone(), config.getNoOfClusters(),
+                    config.getKMeansWarmStartIterations(), config.getKMeansAlgorithm(), config.getKMeansTolerance(),
+                    noOfIterations);
+        }
+        return refine(points, seed(points, config.getNoOfClusters(), config.getKMeansSeeding()),
+                config.getNoOfClusters(), config.getMaxIterations(), config.getKMeansAlgorithm(),
+                config.getKMeansTolerance(), noOfIterations);
+    }
 
     /**
      * Perform clustering
+     *
+     * @param seeding   how the initial centroids are chosen
+     * @param tolerance distance up to which each centroid may move in an iteration for the clustering to have
+     *                  converged. The clustering converges only once the centroids do not change if it is 0.
+     * @return centroids of the clusters. There are less than noOfClusters centroids if the points do not have
+     * that many distinct coordinates.
      */
-    private static void cluster(List<DataPoint> dataPointsArray, KMeansModel model, int noOfClusters,
-                                int maximumIterations, int noOfDimensions) {
+    public static double[] run(WeightedPointSet points, int noOfClusters, int maximumIterations,
+                               KMeansAlgorithm algorithm, KMeansSeeding seeding, double tolerance) {
+        return refine(points, seed(points, noOfClusters, seeding), noOfClusters, maximumIterations, algorithm,
+                tolerance, null);
+    }
+
+    /**
+     * @return the initial centroids, chosen by the seeding
+     */
+    private static double[] seed(WeightedPointSet points, int noOfClusters, KMeansSeeding seeding) {
         if (logger.isDebugEnabled()) {
             logger.debug("initial Clustering");
         }
-        buildModel(dataPointsArray, model, noOfClusters);
+        switch (seeding) {
+            case K_MEANS_PLUS_PLUS:
+                return KMeansSeeder.kMeansPlusPlus(points, noOfClusters);
+            case K_MEANS_PARALLEL:
+                return KMeansSeeder.kMeansParallel(points, noOfClusters);
+            default:
+                return buildModel(points, noOfClusters);
+        }
+    }
 
-        int iter = 0;
-        if (dataPointsArray.size() != 0 && (model.size() == noOfClusters)) {
-            boolean centroidShifted;
-            while (iter < maximumIterations) {
+    /**
+     * Perform clustering from the given initial centroids
+     *
+     * @param centroids      initial centroids, which may be modified. Not refined if there are less than
+     *                       noOfClusters of them.
+     * @param noOfIterations if not null, its first element is set to the number of iterations run
+     * @return centroids of the clusters
+     */
+    private static double[] refine(WeightedPointSet points, double[] centroids, int noOfClusters,
+                                   int maximumIterations, KMeansAlgorithm algorithm, double tolerance,
+                                   int[] noOfIterations) {
+        int noOfDimensions = points.getNoOfDimensions();
+        int iterations = 0;
+        if (points.size() != 0 && (centroids.length == noOfClusters * noOfDimensions)) {
+            int[] associatedClusters = new int[points.size()];
+            double[] newCentroids = new double[centroids.length];
+            double[] totalWeights = new double[noOfClusters];
+            HamerlyBounds bounds = algorithm == KMeansAlgorithm.HAMERLY
+                    ? new HamerlyBounds(points.size(), noOfClusters) : null;
+            for (int iter = 0; iter < maximumIterations; iter++) {
                 if (logger.isDebugEnabled()) {
-                    logger.debug("Current model : \n" + model.getModelInfo() + "\nclustering iteration : " + iter);
+                    logger.debug("Current model : " + Arrays.toString(centroids) + "\nclustering iteration : "
+                            + iter);
                 }
-                assignToCluster(dataPointsArray, model);
-                if (logger.isDebugEnabled()) {
-                    logger.debug("Current model : \n" + model.getModelInfo());
+                iterations++;
+                if (bounds != null) {
+                    bounds.assignToCluster(points, centroids, noOfClusters, associatedClusters);
+                } else {
+                    assignToCluster(points, centroids, noOfClusters, associatedClusters);
                 }
-                List<Cluster> newClusterList = calculateNewClusters(model, noOfDimensions);
+                calculateNewCentroids(points, associatedClusters, noOfClusters, newCentroids, totalWeights);
 
-                centroidShifted = !model.getClusterList().equals(newClusterList);
-                if (!centroidShifted) {
+                if (hasConverged(centroids, newCentroids, noOfDimensions, tolerance)) {
+                    centroids = newCentroids;
                     break;
                 }
-                model.setClusterList(newClusterList);
-                iter++;
+                if (bounds != null) {
+                    bounds.moveCentroids(centroids, newCentroids, noOfClusters, noOfDimensions, associatedClusters);
+                }
+                double[] previousCentroids = centroids;
+                centroids = newCentroids;
+                newCentroids = previousCentroids;
             }
         }
+        if (noOfIterations != null) {
+            noOfIterations[0] = iterations;
+        }
+        return centroids;
     }
 
-    private static void buildModel(List<DataPoint> dataPointsArray, KMeansModel model, int noOfClusters) {
-        int distinctCount = model.size();
-        for (DataPoint currentDataPoint : dataPointsArray) {
-            if (distinctCount >= noOfClusters) {
-                break;
+    /**
+     * @return whether there are noOfClusters previous centroids, all of them finite, as a centroid left without
+     * points in the previous clustering has no coordinates to start from
+     */
+    private static boolean canWarmStart(double[] previousCentroids, int noOfClusters, int noOfDimensions) {
+        if (previousCentroids == null || previousCentroids.length != noOfClusters * noOfDimensions) {
+            return false;
+        }
+        for (double coordinate : previousCentroids) {
+            if (Double.isNaN(coordinate) || Double.isInfinite(coordinate)) {
+                return false;
             }
-            DataPoint coordinatesOfCurrentDataPoint = new DataPoint();
-            coordinatesOfCurrentDataPoint.setCoordinates(currentDataPoint.getCoordinates());
-            if (!model.contains(coordinatesOfCurrentDataPoint)) {
-                model.add(coordinatesOfCurrentDataPoint);
-                distinctCount++;
+        }
+        return true;
+    }
+
+    /**
+     * @return whether no centroid moved farther than the tolerance, or at all if the tolerance is 0
+     */
+    private static boolean hasConverged(double[] centroids, double[] newCentroids, int noOfDimensions,
+                                        double tolerance) {
+        if (tolerance == 0) {
+            return Arrays.equals(centroids, newCentroids);
+        }
+        double squaredTolerance = tolerance * tolerance;
+        for (int offset = 0; offset < centroids.length; offset += noOfDimensions) {
+            double shift = MathUtil.squaredEuclideanDistance(centroids, offset, newCentroids, offset,
+                    noOfDimensions);
+            if (!(shift <= squaredTolerance)) {
+                return false;
             }
         }
+        return true;
     }
 
     /**
-     * finds the nearest centroid to each data point in the input array
-     * @param dataPointsArray arraylist containing datapoints for which we need to assign centroids
+     * take the first noOfClusters distinct points as the initial centroids
      */
-    private static void assignToCluster(List<DataPoint> dataPointsArray, KMeansModel model) {
-        logger.debug("Running function assignToCluster");
-        model.clearClusterMembers();
-        for (DataPoint currentDataPoint : dataPointsArray) {
-            Cluster associatedCluster = findAssociatedCluster(currentDataPoint, model);
-            logger.debug("Associated cluster of " + Arrays.toString(currentDataPoint.getCoordinates()) + " is " +
-                    Arrays.toString(associatedCluster.getCentroid().getCoordinates()));
-            associatedCluster.addToCluster(currentDataPoint);
+    private static double[] buildModel(WeightedPointSet points, int noOfClusters) {
+        int noOfDimensions = points.getNoOfDimensions();
+        double[] coordinates = points.getCoordinates();
+        double[] centroids = new double[noOfClusters * noOfDimensions];
+        int distinctCount = 0;
+        for (int i = 0; i < points.size() && distinctCount < noOfClusters; i++) {
+            int offset = i * noOfDimensions;
+            if (!containsCentroid(centroids, distinctCount, coordinates, offset, noOfDimensions)) {
+                if (logger.isDebugEnabled()) {
+                    logger.debug("adding a new cluster with centroid " + Arrays.toString(
+                            Arrays.copyOfRange(coordinates, offset, offset + noOfDimensions)));
+                }
+                System.arraycopy(coordinates, offset, centroids, distinctCount * noOfDimensions, noOfDimensions);
+                distinctCount++;
+            }
         }
+        return distinctCount == noOfClusters ? centroids : Arrays.copyOf(centroids, distinctCount * noOfDimensions);
+    }
+
+    private static boolean containsCentroid(double[] centroids, int noOfCentroids, double[] coordinates,
+                                            int offset, int noOfDimensions) {
+        for (int c = 0; c < noOfCentroids; c++) {
+            int centroidOffset = c * noOfDimensions;
+            boolean equal = true;
+            for (int i = 0; i < noOfDimensions && equal; i++) {
+                equal = Double.doubleToLongBits(centroids[centroidOffset + i])
+                        == Double.doubleToLongBits(coordinates[offset + i]);
+            }
+            if (equal) {
+                return true;
+            }
+        }
+        return false;
     }
 
     /**
-     * after assigning data points to closest centroids this method calculates new centroids using
-     * the assigned points
+     * finds the nearest centroid to each point
      *
-     * @return returns an array list of coordinate objects each representing a centroid
+     * @param associatedClusters filled with the index of the nearest centroid of each point
      */
-    private static List<Cluster> calculateNewClusters(KMeansModel model, int noOfDimensions) {
-        List<Cluster> newClusterList = new LinkedList<>();
-        double[] totalOfCoordinates = new double[noOfDimensions];
-        double totalWeight;
-        for (Cluster c: model.getClusterList()) {
-            //clear the array
+    private static void assignToCluster(WeightedPointSet points, double[] centroids, int noOfClusters,
+                                        int[] associatedClusters) {
+        int noOfDimensions = points.getNoOfDimensions();
+        double[] coordinates = points.getCoordinates();
+        for (int i = 0; i < associatedClusters.length; i++) {
+            associatedClusters[i] = findAssociatedCluster(centroids, noOfClusters, coordinates,
+                    i * noOfDimensions, noOfDimensions);
+        }
+    }
+
+    /**
+     * after assigning points to the closest centroids this method calculates the new centroids as the weighted
+     * mean of the assigned points
+     */
+    private static void calculateNewCentroids(WeightedPointSet points, int[] associatedClusters, int noOfClusters,
+                                              double[] newCentroids, double[] totalWeights) {
+        int noOfDimensions = points.getNoOfDimensions();
+        double[] coordinates = points.getCoordinates();
+        double[] weights = points.getWeights();
+        Arrays.fill(newCentroids, 0);
+        Arrays.fill(totalWeights, 0);
+        for (int i = 0; i < associatedClusters.length; i++) {
+            int centroidOffset = associatedClusters[i] * noOfDimensions;
+            int offset = i * noOfDimensions;
+            double weight = weights[i];
+            totalWeights[associatedClusters[i]] += weight;
             for (int j = 0; j < noOfDimensions; j++) {
-                totalOfCoordinates[j] = 0;
-            }
-            totalWeight = 0;
-            for (DataPoint d: c.getDataPointsInCluster()) {
-                double[] coordinatesOfd = d.getCoordinates();
-                totalWeight += d.getWeight();
-                for (int i = 0; i < noOfDimensions; i++) {
-                    totalOfCoordinates[i] += (coordinatesOfd[i] * d.getWeight());
-                }
+                newCentroids[centroidOffset + j] += coordinates[offset + j] * weight;
             }
-            for (int i = 0; i < noOfDimensions; i++) {
-                totalOfCoordinates[i] = MathUtil.roundOff(totalOfCoordinates[i] / totalWeight, 4);
+        }
+        for (int c = 0; c < noOfClusters; c++) {
+            int centroidOffset = c * noOfDimensions;
+            for (int j = 0; j < noOfDimensions; j++) {
+                newCentroids[centroidOffset + j] = MathUtil.roundOff(newCentroids[centroidOffset + j]
+                        / totalWeights[c], 4);
             }
+        }
+    }
 
-            DataPoint d1 = new DataPoint();
-            d1.setCoordinates(totalOfCoordinates);
-            Cluster c1 = new Cluster(d1);
-            newClusterList.add(c1);
+    /**
+     * @param maxClusterWeight weight up to which the total weight of a cluster is counted
+     * @return total weight of the points nearest to each centroid, capped at maxClusterWeight
+     */
+    public static double[] calculateClusterWeights(WeightedPointSet points, double[] centroids,
+                                                   double maxClusterWeight) {
+        int noOfDimensions = points.getNoOfDimensions();
+        int noOfCentroids = centroids.length / noOfDimensions;
+        double[] coordinates = points.getCoordinates();
+        double[] weights = points.getWeights();
+        double[] clusterWeights = new double[noOfCentroids];
+        for (int i = 0; i < points.size(); i++) {
+            clusterWeights[findAssociatedCluster(centroids, noOfCentroids, coordinates, i * noOfDimensions,
+                    noOfDimensions)] += weights[i];
         }
-        return newClusterList;
+        for (int c = 0; c < noOfCentroids; c++) {
+            clusterWeights[c] = Math.min(clusterWeights[c], maxClusterWeight);
+        }
+        return clusterWeights;
     }
 
     /**
-     * finds the nearest centroid to a given DataPoint
+     * Move the centroids towards a mini-batch of points, as in the mini-batch kmeans of Sculley. Each point is
+     * assigned to the centroid nearest to it before the mini-batch, and then moves that centroid by a learning rate
+     * of one over the total weight of the cluster, the point included. As the total weight of a cluster is capped,
+     * its learning rate does not drop below 1 / maxClusterWeight, so that the centroids keep following the stream.
      *
-     * @param currentDatapoint input DataPoint to which we need to find nearest centroid
-     * @return centroid - the nearest centroid to the input DataPoint
+     * @param centroids          centroids, moved in place
+     * @param clusterWeights     total weight of the points of each cluster so far, updated in place
+     * @param points             array holding the points of the mini-batch, each of weight 1
+     * @param noOfPoints         number of points in the mini-batch
+     * @param noOfDimensions     number of coordinates of a point
+     * @param maxClusterWeight   weight up to which the total weight of a cluster is counted
+     * @param associatedClusters filled with the index of the nearest centroid of each point
      */
-    private static Cluster findAssociatedCluster(DataPoint currentDatapoint, KMeansModel model) {
-        double minDistance = MathUtil.euclideanDistance(model.getCoordinatesOfCentroidOfCluster(0),
-                currentDatapoint.getCoordinates());
-        Cluster associatedCluster = model.getClusterList().get(0);
-        for (int i = 0; i < model.size(); i++) {
-            Cluster cluster = model.getClusterList().get(i);
-            double dist = MathUtil.euclideanDistance(cluster.getCentroid().getCoordinates(),
-                    currentDatapoint.getCoordinates());
-            if (dist < minDistance) {
-                minDistance = dist;
-                associatedCluster = cluster;
+    public static void updateMiniBatch(double[] centroids, double[] clusterWeights, double[] points,
+                                       int noOfPoints, int noOfDimensions, double maxClusterWeight,
+                                       int[] associatedClusters) {
+        int noOfCentroids = clusterWeights.length;
+        for (int i = 0; i < noOfPoints; i++) {
+            associatedClusters[i] = findAssociatedCluster(centroids, noOfCentroids, points, i * noOfDimensions,
+                    noOfDimensions);
+        }
+        for (int i = 0; i < noOfPoints; i++) {
+            int cluster = associatedClusters[i];
+            clusterWeights[cluster] = Math.min(clusterWeights[cluster] + 1, maxClusterWeight);
+            double learningRate = 1 / clusterWeights[cluster];
+            int centroidOffset = cluster * noOfDimensions;
+            int offset = i * noOfDimensions;
+            for (int j = 0; j < noOfDimensions; j++) {
+                centroids[centroidOffset + j] += learningRate * (points[offset + j] - centroids[centroidOffset + j]);
             }
         }
-        return associatedCluster;
     }
 
     /**
-     * similar to findAssociatedCluster method but return an Object[] array with the distance
-     * to closest centroid and the coordinates of the closest centroid
+     * finds the nearest centroid to a given point
      *
-     * @param currentDatapoint the input dataPoint for which the closest centroid needs to be found
-     * @return an Object[] array as mentioned above
+     * @param centroids      centroids of the model
+     * @param noOfCentroids  number of centroids
+     * @param coordinates    array holding the point
+     * @param offset         index of the first coordinate of the point
+     * @param noOfDimensions number of coordinates of a point
+     * @return index of the nearest centroid, the first one on a tie
      */
-    public static Object[] getAssociatedCentroidInfo(DataPoint currentDatapoint, KMeansModel model) {
-        Cluster associatedCluster = findAssociatedCluster(currentDatapoint, model);
-        double minDistance = MathUtil.euclideanDistance(currentDatapoint.getCoordinates(),
-                associatedCluster.getCentroid().getCoordinates());
-        List<Double> associatedCentroidInfoList = new ArrayList<Double>();
-        associatedCentroidInfoList.add(minDistance);
-
-        for (double x : associatedCluster.getCentroid().getCoordinates()) {
-            associatedCentroidInfoList.add(x);
-        }
-
-        Object[] associatedCentroidInfo = new Object[associatedCentroidInfoList.size()];
-        associatedCentroidInfoList.toArray(associatedCentroidInfo);
-        return associatedCentroidInfo;
+    public static int findAssociatedCluster(double[] centroids, int noOfCentroids, double[] coordinates,
+                                            int offset, int noOfDimensions) {
+        return DistanceKernel.nearest(centroids, noOfCentroids, coordinates, offset, noOfDimensions);
     }
 }
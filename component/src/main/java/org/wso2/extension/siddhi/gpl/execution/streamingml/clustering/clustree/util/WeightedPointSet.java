@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2017 WSO2 Inc. (http://wso2.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.wso2.extension.siddhi.gpl.execution.streamingml.clustering.clustree.util;
+
+/**
+ * Weighted points stored in flat arrays. The coordinates of point i are at indices
+ * [i * noOfDimensions, (i + 1) * noOfDimensions) of the coordinates array.
+ */
+public class WeightedPointSet {
+    private final double[] coordinates;
+    private final double[] weights;
+    private final int noOfDimensions;
+
+    public WeightedPointSet(int size, int noOfDimensions) {
+        this.coordinates = new double[size * noOfDimensions];
+        this.weights = new double[size];
+        this.noOfDimensions = noOfDimensions;
+    }
+
+    /**
+     * @param index       index of the point
+     * @param coordinates coordinates of the point
+     * @param weight      weight of the point
+     */
+    public void set(int index, double[] coordinates, double weight) {
+        System.arraycopy(coordinates, 0, this.coordinates, index * noOfDimensions, noOfDimensions);
+        this.weights[index] = weight;
+    }
+
+    public double[] getCoordinates() {
+        return coordinates;
+    }
+
+    public double[] getWeights() {
+        return weights;
+    }
+
+    public int getNoOfDimensions() {
+        return noOfDimensions;
+    }
+
+    public int size() {
+        return weights.length;
+    }
+}
@@ -25,4 +25,23 @@ public interface Regressor {
     double trainOnEvent(double[] cepEvent);
 
     Object[] getPrediction(double[] cepEvent);
+
+    /**
+     * Train the model on a batch of events, in order.
+     *
+     * @param cepEvents         event data, one row per event with the target as the last value of the row
+     * @param noOfEvents        number of rows to train on
+     * @param meanSquaredErrors filled with the mean squared error of the model after each event
+     */
+    void trainOnEvents(double[][] cepEvents, int noOfEvents, double[] meanSquaredErrors);
+
+    /**
+     * Predict the target of a batch of events.
+     *
+     * @param cepEvents   event data, one row per event
+     * @param noOfEvents  number of rows to predict
+     * @param predictions filled with the prediction for each event
+     * @return mean squared error of the model
+     */
+    double getPredictions(double[][] cepEvents, int noOfEvents, double[] predictions);
 }
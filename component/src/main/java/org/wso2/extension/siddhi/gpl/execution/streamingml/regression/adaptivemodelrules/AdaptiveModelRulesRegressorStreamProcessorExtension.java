@@ -20,19 +20,17 @@ import io.siddhi.annotation.Example;
 import io.siddhi.annotation.Extension;
 import io.siddhi.annotation.Parameter;
 import io.siddhi.annotation.ReturnAttribute;
+import io.siddhi.annotation.SystemParameter;
 import io.siddhi.annotation.util.DataType;
 import io.siddhi.core.config.SiddhiQueryContext;
-import io.siddhi.core.event.ComplexEvent;
 import io.siddhi.core.event.ComplexEventChunk;
 import io.siddhi.core.event.stream.MetaStreamEvent;
 import io.siddhi.core.event.stream.StreamEvent;
 import io.siddhi.core.event.stream.StreamEventCloner;
 import io.siddhi.core.event.stream.holder.StreamEventClonerHolder;
 import io.siddhi.core.event.stream.populater.ComplexEventPopulater;
-import io.siddhi.core.exception.SiddhiAppRuntimeException;
 import io.siddhi.core.executor.ConstantExpressionExecutor;
 import io.siddhi.core.executor.ExpressionExecutor;
-import io.siddhi.core.executor.VariableExpressionExecutor;
 import io.siddhi.core.query.processor.ProcessingMode;
 import io.siddhi.core.query.processor.Processor;
 import io.siddhi.core.query.processor.stream.StreamProcessor;
@@ -42,9 +40,13 @@ import io.siddhi.core.util.snapshot.state.StateFactory;
 import io.siddhi.query.api.definition.AbstractDefinition;
 import io.siddhi.query.api.definition.Attribute;
 import io.siddhi.query.api.exception.SiddhiAppValidationException;
-import org.wso2.extension.siddhi.gpl.execution.streamingml.regression.RegressorModelHolder;
 import org.wso2.extension.siddhi.gpl.execution.streamingml.regression.adaptivemodelrules.util.AdaptiveModelRulesModel;
 import org.wso2.extension.siddhi.gpl.execution.streamingml.util.CoreUtils;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.FeatureBatch;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.FeatureExtractor;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.MappedModelStore;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.ModelRegistry;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.ModelStatistics;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -65,6 +67,15 @@ import java.util.List;
                         description = "The feature vector for the regression analysis.",
                         type = {DataType.INT, DataType.FLOAT, DataType.FLOAT, DataType.DOUBLE}),
         },
+        systemParameter = {
+                @SystemParameter(name = "modelStoreDirectory",
+                        description = "The directory of the memory-mapped model files written by "
+                                + "`streamingml:updateAMRulesRegressor`. If the model has not been built in this node "
+                                + "yet, it is read from its file, so that predictions start right away after a "
+                                + "restart.",
+                        defaultValue = "none",
+                        possibleParameters = "Any directory path")
+        },
         returnAttributes = {
                 @ReturnAttribute(name = "prediction",
                         description = "The predicted value.",
@@ -98,9 +109,12 @@ public class AdaptiveModelRulesRegressorStreamProcessorExtension extends StreamP
     private static final int minNoOfParameters = 1;
 
     private String modelName;
+    private AdaptiveModelRulesModel model;
     private int noOfFeatures;
-    private List<VariableExpressionExecutor> featureVariableExpressionExecutors = new ArrayList<>();
-    private double[] cepEvent;
+    private FeatureExtractor featureExtractor;
+    private FeatureBatch batch;
+    private ModelStatistics statistics;
+    private final Object[] outputData = new Object[2];
     //set attributes for Output Stream
     List<Attribute> attributes = new ArrayList<>();
 
@@ -134,7 +148,12 @@ public class AdaptiveModelRulesRegressorStreamProcessorExtension extends StreamP
                             + "model.name and %s feature atttributes, but found %s.",
                     noOfFeatures, attributeExpressionLength));
         }
-        AdaptiveModelRulesModel model = RegressorModelHolder.getInstance().getAMRulesRegressorModel(modelName);
+        model = ModelRegistry.getInstance().getModel(AdaptiveModelRulesModel.class, modelName);
+        MappedModelStore modelStore = MappedModelStore.fromConfig(configReader);
+        if (model == null && modelStore != null) {
+            model = ModelRegistry.getInstance().getOrCreateModel(AdaptiveModelRulesModel.class, modelName,
+                    name -> modelStore.load(name, AdaptiveModelRulesModel::fromSnapshot));
+        }
         if (model == null || !model.isInitialized()) {
             throw new SiddhiAppValidationException(String.format("Model [%s] needs to initialized "
                     + "prior to be used with streamingml:AMRulesRegressor. "
@@ -153,10 +172,11 @@ public class AdaptiveModelRulesRegressorStreamProcessorExtension extends StreamP
                             + "but found %s parameters", (minNoOfParameters + (model.getNoOfFeatures())),
                     model.getNoOfFeatures(), (attributeExpressionExecutors.length - minNoOfParameters)));
         }
-        featureVariableExpressionExecutors = CoreUtils.extractAndValidateFeatures(inputDefinition,
-                attributeExpressionExecutors, (attributeExpressionLength - noOfFeatures), noOfFeatures);
+        featureExtractor = new FeatureExtractor(CoreUtils.extractAndValidateFeatures(inputDefinition,
+                attributeExpressionExecutors, (attributeExpressionLength - noOfFeatures), noOfFeatures), modelName);
 
-        cepEvent = new double[noOfFeatures + 1];
+        batch = new FeatureBatch(noOfFeatures);
+        statistics = ModelStatistics.create(siddhiQueryContext, modelPrefix, "prediction");
 
         attributes.add(new Attribute("prediction", Attribute.Type.DOUBLE));
         attributes.add(new Attribute("meanSquaredError", Attribute.Type.DOUBLE));
@@ -168,24 +188,21 @@ public class AdaptiveModelRulesRegressorStreamProcessorExtension extends StreamP
                            StreamEventCloner streamEventCloner, ComplexEventPopulater complexEventPopulater,
                            State state) {
         synchronized (this) {
+            // predict the whole chunk at once and populate the events afterwards
+            statistics.markIn();
+            batch.clear();
             while (streamEventChunk.hasNext()) {
-                ComplexEvent complexEvent = streamEventChunk.next();
-                // Set feature_attributes
-                for (int i = 0; i < noOfFeatures; i++) {
-                    try {
-                        cepEvent[i] = ((Number) featureVariableExpressionExecutors.get(i)
-                                .execute(complexEvent)).doubleValue();
-                    } catch (ClassCastException e) {
-                        throw new SiddhiAppRuntimeException(String.format("Incompatible attribute feature type"
-                                + " at position %s. Not of any numeric type. Please refer the stream definition "
-                                + "of Model[%s]", (i + 1), modelName));
-                    }
-                }
-                AdaptiveModelRulesModel model = RegressorModelHolder.getInstance()
-                        .getAMRulesRegressorModel(modelName);
-                Object[] outputData = model.getPrediction(cepEvent);
-                complexEventPopulater.populateComplexEvent(complexEvent, outputData);
+                featureExtractor.extractFeatures(streamEventChunk.next(), batch.nextRow());
+            }
+            double[] predictions = batch.getResults();
+            outputData[1] = model.getPredictions(batch.getRows(), batch.size(), predictions);
+            statistics.eventsIn(batch.size());
+            streamEventChunk.reset();
+            for (int i = 0; streamEventChunk.hasNext(); i++) {
+                outputData[0] = predictions[i];
+                complexEventPopulater.populateComplexEvent(streamEventChunk.next(), outputData);
             }
+            statistics.markOut();
             nextProcessor.process(streamEventChunk);
         }
     }
@@ -20,19 +20,17 @@ import io.siddhi.annotation.Example;
 import io.siddhi.annotation.Extension;
 import io.siddhi.annotation.Parameter;
 import io.siddhi.annotation.ReturnAttribute;
+import io.siddhi.annotation.SystemParameter;
 import io.siddhi.annotation.util.DataType;
 import io.siddhi.core.config.SiddhiQueryContext;
-import io.siddhi.core.event.ComplexEvent;
 import io.siddhi.core.event.ComplexEventChunk;
 import io.siddhi.core.event.stream.MetaStreamEvent;
 import io.siddhi.core.event.stream.StreamEvent;
 import io.siddhi.core.event.stream.StreamEventCloner;
 import io.siddhi.core.event.stream.holder.StreamEventClonerHolder;
 import io.siddhi.core.event.stream.populater.ComplexEventPopulater;
-import io.siddhi.core.exception.SiddhiAppRuntimeException;
 import io.siddhi.core.executor.ConstantExpressionExecutor;
 import io.siddhi.core.executor.ExpressionExecutor;
-import io.siddhi.core.executor.VariableExpressionExecutor;
 import io.siddhi.core.query.processor.ProcessingMode;
 import io.siddhi.core.query.processor.Processor;
 import io.siddhi.core.query.processor.stream.StreamProcessor;
@@ -43,10 +41,17 @@ import io.siddhi.query.api.definition.AbstractDefinition;
 import io.siddhi.query.api.definition.Attribute;
 import io.siddhi.query.api.exception.SiddhiAppValidationException;
 import org.apache.log4j.Logger;
-import org.wso2.extension.siddhi.gpl.execution.streamingml.regression.Regressor;
-import org.wso2.extension.siddhi.gpl.execution.streamingml.regression.RegressorModelHolder;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.regression.adaptivemodelrules.util.AdaptiveModelRulesConfig;
 import org.wso2.extension.siddhi.gpl.execution.streamingml.regression.adaptivemodelrules.util.AdaptiveModelRulesModel;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.AsyncModelTrainer;
 import org.wso2.extension.siddhi.gpl.execution.streamingml.util.CoreUtils;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.FeatureBatch;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.FeatureExtractor;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.MappedModelStore;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.ModelCheckpoint;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.ModelEvents;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.ModelRegistry;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.ModelStatistics;
 
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -108,6 +113,36 @@ import java.util.Map;
                         description = "The features of the model that should be attributes of the stream.",
                         type = {DataType.DOUBLE, DataType.FLOAT, DataType.LONG, DataType.INT})
         },
+        systemParameter = {
+                @SystemParameter(name = "trainingMode",
+                        description = "Whether the model is trained on the event processing thread (`sync`), or on "
+                                + "a dedicated worker thread fed through a bounded queue (`async`). In the `async` "
+                                + "mode, the events are output without waiting for the training, with the "
+                                + "mean squared error most recently computed by the worker.",
+                        defaultValue = "sync",
+                        possibleParameters = {"sync", "async"}),
+                @SystemParameter(name = "trainingQueueSize",
+                        description = "The number of events that can wait to be trained on in the `async` training "
+                                + "mode. It is rounded up to a power of two.",
+                        defaultValue = "1024",
+                        possibleParameters = "Any positive integer"),
+                @SystemParameter(name = "backpressurePolicy",
+                        description = "How the events are handled when the training queue is full in the `async` "
+                                + "training mode. `block` waits for space in the queue, `dropOldest` discards the "
+                                + "oldest queued event, and `sample` discards every second event once the queue is "
+                                + "half full and every event once it is full.",
+                        defaultValue = "block",
+                        possibleParameters = {"block", "dropOldest", "sample"}),
+                @SystemParameter(name = "modelStoreDirectory",
+                        description = "The directory in which the model is kept in a memory-mapped file, named "
+                                + "after the Siddhi app and the model. The file is written in the background after "
+                                + "each checkpoint of the Siddhi app at which the model has changed, and when the app "
+                                + "is shut down, and the model is read from it when the app is started, so that a "
+                                + "restarted node uses the model right away. "
+                                + "The model is not kept in a file if the directory is `none`.",
+                        defaultValue = "none",
+                        possibleParameters = "Any directory path")
+        },
         returnAttributes = {
                 @ReturnAttribute(name = "meanSquaredError",
                         description = "The current Mean Squared Error of the model",
@@ -150,15 +185,22 @@ public class AdaptiveModelRulesUpdaterStreamProcessorExtension extends
 
     private static final int MINIMUM_NUMBER_OF_FEATURES = 2;
     private static final int MINIMUM_NUMBER_OF_PARAMETERS = 1;
-    private static final int NUMBER_OF_HYPERPARAMETERS = 5;
+    private static final int NUMBER_OF_HYPERPARAMETERS = AdaptiveModelRulesConfig.NUMBER_OF_HYPER_PARAMETERS;
 
     private int noOfAttributes;
     private int noOfParameters;
     private String modelName;
+    private AdaptiveModelRulesModel model;
 
-    private List<VariableExpressionExecutor> featureVariableExpressionExecutors = new ArrayList<>();
+    private FeatureExtractor featureExtractor;
 
+    private FeatureBatch batch;
     private double[] cepEvent;
+    private AsyncModelTrainer trainer;
+    private MappedModelStore modelStore;
+    private ModelStatistics statistics;
+    private volatile double meanSquaredError;
+    private final Object[] outputData = new Object[1];
     //set attributes for OutputStream
     List<Attribute> attributes = new ArrayList<>();
 
@@ -193,26 +235,34 @@ public class AdaptiveModelRulesUpdaterStreamProcessorExtension extends
             }
 
             if (noOfAttributes > MINIMUM_NUMBER_OF_FEATURES) {
-                featureVariableExpressionExecutors = CoreUtils
+                featureExtractor = new FeatureExtractor(CoreUtils
                         .extractAndValidateFeatures(inputDefinition, attributeExpressionExecutors,
-                                (attributeExpressionLength - noOfAttributes), noOfAttributes);
+                                (attributeExpressionLength - noOfAttributes), noOfAttributes), modelName);
             } else {
                 throw new SiddhiAppValidationException(
                         "Number of features must be greater than 2 but" + " found "
                                 + noOfAttributes);
             }
-            AdaptiveModelRulesModel model
-                    = RegressorModelHolder.getInstance().getAMRulesRegressorModel(modelName);
-            if (model == null) {
-                model = RegressorModelHolder.getInstance().createAMRulesRegressorModel(modelName);
-            }
+            modelStore = MappedModelStore.fromConfig(configReader);
+            model = ModelRegistry.getInstance().getOrCreateModel(AdaptiveModelRulesModel.class, modelName,
+                    name -> MappedModelStore.loadOrCreate(modelStore, name, AdaptiveModelRulesModel::fromSnapshot,
+                            AdaptiveModelRulesModel::new));
             if (!model.isInitialized()) {
                 if (logger.isDebugEnabled()) {
                     logger.debug(String.format("Model [%s] has not been initialized.", modelName));
                 }
                 model.init(noOfAttributes);
             }
-            cepEvent = new double[noOfAttributes];
+            trainer = AsyncModelTrainer.fromConfig(configReader, modelName, noOfAttributes,
+                    (features, target) -> meanSquaredError = model.trainOnEvent(features));
+            if (trainer == null) {
+                batch = new FeatureBatch(noOfAttributes);
+            } else {
+                cepEvent = new double[noOfAttributes];
+            }
+            statistics = ModelStatistics.create(siddhiQueryContext, modelPrefix, "training");
+            statistics.registerSizeGauge("noOfRules", model::getNoOfRules);
+            statistics.registerMemoryUsage(model);
             if (noOfParameters > MINIMUM_NUMBER_OF_PARAMETERS) {
                 //configuation with hyper-parameters
                 if (noOfParameters == (MINIMUM_NUMBER_OF_PARAMETERS + NUMBER_OF_HYPERPARAMETERS)) {
@@ -220,7 +270,8 @@ public class AdaptiveModelRulesUpdaterStreamProcessorExtension extends
                     if (logger.isDebugEnabled()) {
                         logger.debug("AMRules Regressor model is configured with hyper-parameters");
                     }
-                    configureModelWithHyperParameters(modelName);
+                    AdaptiveModelRulesConfig.fromParameters(attributeExpressionExecutors,
+                            MINIMUM_NUMBER_OF_PARAMETERS).applyTo(model);
                 } else {
                     throw new SiddhiAppValidationException(String.format("Number of hyper-parameters needed for model"
                                     + " manual configuration is %s but found %s",
@@ -237,103 +288,7 @@ public class AdaptiveModelRulesUpdaterStreamProcessorExtension extends
         }
 
         attributes.add(new Attribute("meanSquaredError", Attribute.Type.DOUBLE));
-        return () -> new ExtensionState(modelName);
-    }
-
-    private void configureModelWithHyperParameters(String modelName) {
-        //default configurations for AMRules Regressor Model
-        double splitConfidence = 1.0E-7D;
-        double tieBreakThreshold = 0.05D;
-        int gracePeriod = 200;
-        int changeDetector = 2;
-        int anomalyDetector = 2;
-
-        int parameterPosition = MINIMUM_NUMBER_OF_PARAMETERS;
-
-        List<String> hyperParameters = new ArrayList<>();
-        hyperParameters.add("Split Confidence");
-        hyperParameters.add("Tie Break Threshold");
-        hyperParameters.add("Grace Period");
-        hyperParameters.add("Change Detector");
-        hyperParameters.add("Anomaly Detector");
-
-        for (int i = parameterPosition; i < noOfParameters; i++) {
-            if (attributeExpressionExecutors[i] instanceof ConstantExpressionExecutor) {
-                switch (i) {
-                    case 1:
-                        Attribute.Type splitConfidenceType = attributeExpressionExecutors[1].getReturnType();
-                        if (CoreUtils.isNumeric(splitConfidenceType)) {
-                            splitConfidence = ((Number) ((ConstantExpressionExecutor)
-                                    attributeExpressionExecutors[1]).getValue()).doubleValue();
-                            parameterPosition++;
-                        } else {
-                            throw new SiddhiAppValidationException(String.format("Split Confidence must be an %s."
-                                            + " But found %s at position %s",
-                                    Attribute.Type.DOUBLE, attributeExpressionExecutors[1].getReturnType(), (i + 1)));
-                        }
-                        break;
-                    case 2:
-                        Attribute.Type tieBreakThresholdType = attributeExpressionExecutors[2].getReturnType();
-                        if (CoreUtils.isNumeric(tieBreakThresholdType)) {
-                            tieBreakThreshold = ((Number) ((ConstantExpressionExecutor)
-                                    attributeExpressionExecutors[2]).getValue()).doubleValue();
-                            parameterPosition++;
-                        } else {
-                            throw new SiddhiAppValidationException(String.format("Tie Break Threshold must be an %s."
-                                            + " But found %s at position %s",
-                                    Attribute.Type.DOUBLE, attributeExpressionExecutors[2].getReturnType(), (i + 1)));
-                        }
-                        break;
-                    case 3:
-                        if (attributeExpressionExecutors[3].getReturnType() == Attribute.Type.INT) {
-                            gracePeriod = (Integer) ((ConstantExpressionExecutor)
-                                    attributeExpressionExecutors[3]).getValue();
-                            parameterPosition++;
-                        } else {
-                            throw new SiddhiAppValidationException(String.format("Grace Period must be a %s. "
-                                            + "But found %s at position %s.",
-                                    Attribute.Type.DOUBLE, attributeExpressionExecutors[3].getReturnType(), (i + 1)));
-                        }
-                        break;
-                    case 4:
-                        if (attributeExpressionExecutors[4].getReturnType() == Attribute.Type.INT) {
-                            changeDetector = (Integer) ((ConstantExpressionExecutor)
-                                    attributeExpressionExecutors[4]).getValue();
-                            parameterPosition++;
-                        } else {
-                            throw new SiddhiAppValidationException(String.format("Change Detector must be a %s. "
-                                            + "But found %s at position %s.",
-                                    Attribute.Type.INT, attributeExpressionExecutors[4].getReturnType(), (i + 1)));
-                        }
-                        break;
-                    case 5:
-                        if (attributeExpressionExecutors[5].getReturnType() == Attribute.Type.INT) {
-                            anomalyDetector = (Integer) ((ConstantExpressionExecutor)
-                                    attributeExpressionExecutors[5]).getValue();
-                            parameterPosition++;
-                        } else {
-                            throw new SiddhiAppValidationException(String.format("Anomaly Detector must be a %s. "
-                                            + "But found %s at position %s.",
-                                    Attribute.Type.INT, attributeExpressionExecutors[5].getReturnType(), (i + 1)));
-                        }
-                        break;
-                    default:
-                }
-            } else {
-                throw new SiddhiAppValidationException(String.format("%s must be (ConstantExpressionExecutor) "
-                                + "but found %s in position %s.", hyperParameters.get(i - MINIMUM_NUMBER_OF_PARAMETERS),
-                        attributeExpressionExecutors[i].getClass().getCanonicalName(), (i + 1)));
-            }
-        }
-        if (parameterPosition == (NUMBER_OF_HYPERPARAMETERS + MINIMUM_NUMBER_OF_PARAMETERS)) {
-            AdaptiveModelRulesModel model = RegressorModelHolder.getInstance()
-                    .getAMRulesRegressorModel(modelName);
-            model.setConfigurations(splitConfidence, tieBreakThreshold, gracePeriod, changeDetector, anomalyDetector);
-        } else {
-            throw new SiddhiAppValidationException("Number of hyper-parameters needed for model "
-                    + "manual configuration is " + NUMBER_OF_HYPERPARAMETERS + " but found "
-                    + (parameterPosition - MINIMUM_NUMBER_OF_PARAMETERS));
-        }
+        return () -> new ExtensionState(model, trainer, modelStore);
     }
 
     @Override
@@ -341,35 +296,53 @@ public class AdaptiveModelRulesUpdaterStreamProcessorExtension extends
                            StreamEventCloner streamEventCloner, ComplexEventPopulater complexEventPopulater,
                            ExtensionState state) {
         synchronized (this) {
-            while (streamEventChunk.hasNext()) {
-                ComplexEvent complexEvent = streamEventChunk.next();
-                for (int i = 0; i < noOfAttributes; i++) {
-                    try {
-                        cepEvent[i] = ((Number) featureVariableExpressionExecutors.get(i)
-                                .execute(complexEvent)).doubleValue();
-                    } catch (ClassCastException e) {
-                        throw new SiddhiAppRuntimeException(String.format("Incompatible attribute feature type"
-                                + " at position %s. Not of numeric type. Please refer the stream definition "
-                                + "of Model[%s]", (i + 1), state.modelName));
-                    }
+            statistics.markIn();
+            if (trainer == null) {
+                // train on the whole chunk at once and populate the events afterwards
+                batch.clear();
+                while (streamEventChunk.hasNext()) {
+                    featureExtractor.extractFeatures(streamEventChunk.next(), batch.nextRow());
+                }
+                double[] meanSquaredErrors = batch.getResults();
+                model.trainOnEvents(batch.getRows(), batch.size(), meanSquaredErrors);
+                statistics.eventsIn(batch.size());
+                streamEventChunk.reset();
+                for (int i = 0; streamEventChunk.hasNext(); i++) {
+                    outputData[0] = meanSquaredErrors[i];
+                    complexEventPopulater.populateComplexEvent(streamEventChunk.next(), outputData);
+                }
+            } else {
+                // hand the events over to the trainer and output the latest error known
+                while (streamEventChunk.hasNext()) {
+                    StreamEvent streamEvent = streamEventChunk.next();
+                    statistics.eventIn();
+                    featureExtractor.extractFeatures(streamEvent, cepEvent);
+                    trainer.offer(cepEvent, null);
+                    outputData[0] = meanSquaredError;
+                    complexEventPopulater.populateComplexEvent(streamEvent, outputData);
                 }
-                AdaptiveModelRulesModel model = RegressorModelHolder.getInstance().
-                        getAMRulesRegressorModel(state.modelName);
-                double meanSquaredError = model.trainOnEvent(cepEvent);
-                complexEventPopulater.populateComplexEvent(complexEvent, new Object[]{meanSquaredError});
             }
+            statistics.markOut();
             nextProcessor.process(streamEventChunk);
         }
     }
 
     @Override
     public void start() {
-
+        if (trainer != null) {
+            trainer.start();
+        }
     }
 
     @Override
     public void stop() {
-        RegressorModelHolder.getInstance().deleteRegressorModel(modelName);
+        if (trainer != null) {
+            trainer.stop();
+        }
+        if (modelStore != null) {
+            modelStore.save(modelName, model::toSnapshot);
+        }
+        ModelRegistry.getInstance().deleteModel(AdaptiveModelRulesModel.class, modelName);
     }
 
 
@@ -385,10 +358,16 @@ public class AdaptiveModelRulesUpdaterStreamProcessorExtension extends
     }
 
     static class ExtensionState extends State {
-        private String modelName;
+        private final AdaptiveModelRulesModel model;
+        private final AsyncModelTrainer trainer;
+        private final MappedModelStore modelStore;
+        private final ModelCheckpoint checkpoint = new ModelCheckpoint();
 
-        private ExtensionState(String modelName) {
-            this.modelName = modelName;
+        private ExtensionState(AdaptiveModelRulesModel model, AsyncModelTrainer trainer,
+                               MappedModelStore modelStore) {
+            this.model = model;
+            this.trainer = trainer;
+            this.modelStore = modelStore;
         }
 
         @Override
@@ -398,15 +377,39 @@ public class AdaptiveModelRulesUpdaterStreamProcessorExtension extends
 
         @Override
         public Map<String, Object> snapshot() {
+            if (trainer != null) {
+                trainer.flush();
+            }
+            ModelEvents.ModelSnapshot event = ModelEvents.beginSnapshot(model.getModelName(), false);
             Map<String, Object> currentState = new HashMap<>();
-            currentState.put("RegressorModel", RegressorModelHolder.getInstance().getClonedPerceptronModel(modelName));
+            boolean snapshotRequired = checkpoint.isSnapshotRequired(model.getVersion());
+            if (snapshotRequired) {
+                byte[] snapshot = model.toSnapshot();
+                if (modelStore != null) {
+                    modelStore.saveInBackground(model.getModelName(), () -> snapshot);
+                }
+                currentState.put("RegressorModel", checkpoint.toSnapshot(snapshot));
+            }
+            ModelEvents.commitSnapshot(event, !snapshotRequired);
             return currentState;
         }
 
         @Override
         public void restore(Map<String, Object> state) {
-            RegressorModelHolder.getInstance().addRegressorModel(modelName, (Regressor)
-                    state.get("RegressorModel"));
+            if (trainer != null) {
+                trainer.flush();
+            }
+            ModelEvents.ModelSnapshot event = ModelEvents.beginSnapshot(model.getModelName(), true);
+            Object snapshot = ModelCheckpoint.getLatestState(state.get("RegressorModel"));
+            if (snapshot instanceof byte[]) {
+                model.restoreFrom(AdaptiveModelRulesModel.fromSnapshot(model.getModelName(),
+                        (byte[]) snapshot));
+            } else {
+                // snapshot of the earlier releases
+                model.restoreFrom((AdaptiveModelRulesModel) snapshot);
+            }
+            checkpoint.reset();
+            ModelEvents.commitSnapshot(event, false);
         }
     }
 }
@@ -0,0 +1,218 @@
+/*
+ * Copyright (C) 2017 WSO2 Inc. (http://wso2.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.wso2.extension.siddhi.gpl.execution.streamingml.regression.adaptivemodelrules;
+
+import io.siddhi.annotation.Example;
+import io.siddhi.annotation.Extension;
+import io.siddhi.annotation.Parameter;
+import io.siddhi.annotation.ReturnAttribute;
+import io.siddhi.annotation.util.DataType;
+import io.siddhi.core.config.SiddhiQueryContext;
+import io.siddhi.core.event.ComplexEventChunk;
+import io.siddhi.core.event.stream.MetaStreamEvent;
+import io.siddhi.core.event.stream.StreamEvent;
+import io.siddhi.core.event.stream.StreamEventCloner;
+import io.siddhi.core.event.stream.holder.StreamEventClonerHolder;
+import io.siddhi.core.event.stream.populater.ComplexEventPopulater;
+import io.siddhi.core.executor.ConstantExpressionExecutor;
+import io.siddhi.core.executor.ExpressionExecutor;
+import io.siddhi.core.executor.VariableExpressionExecutor;
+import io.siddhi.core.query.processor.ProcessingMode;
+import io.siddhi.core.query.processor.Processor;
+import io.siddhi.core.query.processor.stream.StreamProcessor;
+import io.siddhi.core.util.config.ConfigReader;
+import io.siddhi.core.util.snapshot.state.State;
+import io.siddhi.core.util.snapshot.state.StateFactory;
+import io.siddhi.query.api.definition.AbstractDefinition;
+import io.siddhi.query.api.definition.Attribute;
+import io.siddhi.query.api.exception.SiddhiAppValidationException;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.regression.adaptivemodelrules.util.AdaptiveModelRulesModel;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.CoreUtils;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.FeatureExtractor;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.KeyedModels;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.ModelRegistry;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.ModelStatistics;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Perform regression analysis using the Adaptive Model Rules Regressor model of a key.
+ * built via @{@link KeyedAdaptiveModelRulesUpdaterStreamProcessorExtension}
+ */
+@Extension(
+        name = "keyedAMRulesRegressor",
+        namespace = "streamingml",
+        description = "This extension performs regression tasks using the `AMRulesRegressor` model built for the " +
+                "value of a key attribute by `streamingml:updateKeyedAMRulesRegressor`. If no model has been built " +
+                "for the key yet, or the model of the key has been evicted, the prediction and the " +
+                "`MeanSquaredError` are `null`.",
+        parameters = {
+                @Parameter(name = "model.name",
+                        description = "The name of the family of models to be used for prediction.",
+                        type = {DataType.STRING}),
+                @Parameter(name = "model.key",
+                        description = "The attribute of the stream whose value selects the model to be used for " +
+                                "prediction.",
+                        type = {DataType.STRING, DataType.INT, DataType.LONG}),
+                @Parameter(name = "model.feature",
+                        description = "The feature vector for the regression analysis.",
+                        type = {DataType.INT, DataType.FLOAT, DataType.LONG, DataType.DOUBLE}),
+        },
+        returnAttributes = {
+                @ReturnAttribute(name = "prediction",
+                        description = "The predicted value.",
+                        type = {DataType.DOUBLE}),
+                @ReturnAttribute(name = "meanSquaredError",
+                        description = "The `MeanSquaredError` of the predicting model.",
+                        type = {DataType.DOUBLE})
+        },
+        examples = {
+                @Example(
+                        syntax = "define stream StreamA (sensorId string, attribute_0 double, attribute_1 double, "
+                                + "attribute_2 double, attribute_3 double);\n"
+                                + "\n"
+                                + "from StreamA#streamingml:keyedAMRulesRegressor('model1', sensorId, "
+                                + " attribute_0, attribute_1, attribute_2, attribute_3) \n"
+                                + "select sensorId, attribute_0, attribute_1, attribute_2, attribute_3, "
+                                + "prediction, meanSquaredError insert into OutputStream;",
+                        description = "This query uses the `AMRules` model of the `sensorId` in the family `model1` " +
+                                "to predict the value for the feature vector represented by `attribute_0`, " +
+                                "`attribute_1`, `attribute_2`, and `attribute_3`. The predicted value along with " +
+                                "the `MeanSquaredError` of the model and the feature vector are output to a stream " +
+                                "named `OutputStream`."
+                )
+        }
+)
+public class KeyedAdaptiveModelRulesRegressorStreamProcessorExtension extends StreamProcessor<State> {
+    private static final int minNoOfParameters = 2;
+    // output of the keys without a model
+    private static final Object[] NO_PREDICTION = new Object[2];
+
+    private String modelName;
+    private KeyedModels<AdaptiveModelRulesModel> models;
+    private int noOfFeatures;
+    private FeatureExtractor featureExtractor;
+    private VariableExpressionExecutor keyVariableExecutor;
+    private ModelStatistics statistics;
+    // chunks of different threads are processed in parallel, hence each thread has its own buffer
+    private final ThreadLocal<double[]> featureBuffer = ThreadLocal.withInitial(() -> new double[noOfFeatures]);
+    //set attributes for Output Stream
+    List<Attribute> attributes = new ArrayList<>();
+
+    @Override
+    protected StateFactory<State> init(MetaStreamEvent metaStreamEvent, AbstractDefinition inputDefinition,
+                                       ExpressionExecutor[] attributeExpressionExecutors, ConfigReader configReader,
+                                       StreamEventClonerHolder streamEventClonerHolder,
+                                       boolean outputExpectsExpiredEvents, boolean findToBeExecuted,
+                                       SiddhiQueryContext siddhiQueryContext) {
+        String modelPrefix;
+        // the key attribute is not a feature of the models
+        noOfFeatures = inputDefinition.getAttributeList().size() - 1;
+        if (attributeExpressionLength > minNoOfParameters) {
+            if (attributeExpressionExecutors[0] instanceof ConstantExpressionExecutor) {
+                if (attributeExpressionExecutors[0].getReturnType() == Attribute.Type.STRING) {
+                    modelPrefix = (String) ((ConstantExpressionExecutor)
+                            attributeExpressionExecutors[0]).getValue();
+                    // model name = user given name + siddhi app name
+                    modelName = siddhiQueryContext.getSiddhiAppContext().getName() + "." + modelPrefix;
+                } else {
+                    throw new SiddhiAppValidationException(String.format("Invalid parameter type found for the "
+                                    + "model.name argument, required %s, but found %s.",
+                            Attribute.Type.STRING, attributeExpressionExecutors[0].getReturnType().toString()));
+                }
+            } else {
+                throw new SiddhiAppValidationException("Parameter model.name must be a constant but found "
+                        + attributeExpressionExecutors[0].getClass().getCanonicalName());
+            }
+        } else {
+            throw new SiddhiAppValidationException(String.format("streamingML:keyedAMRulesRegressor needs exactly "
+                            + "model.name, model.key and %s feature atttributes, but found %s.",
+                    noOfFeatures, attributeExpressionLength));
+        }
+        keyVariableExecutor = CoreUtils.extractAndValidateKey(inputDefinition, attributeExpressionExecutors, 1);
+        models = ModelRegistry.getInstance().getKeyedModels(AdaptiveModelRulesModel.class, modelName);
+        if (models == null || !models.getPrototype().isInitialized()) {
+            throw new SiddhiAppValidationException(String.format("Models [%s] need to be initialized "
+                    + "prior to be used with streamingml:keyedAMRulesRegressor. "
+                    + "Perform streamingml:updateKeyedAMRulesRegressor process first.", modelName));
+        }
+        AdaptiveModelRulesModel prototype = models.getPrototype();
+        if (!prototype.isValidStreamHeader(noOfFeatures)) {
+            throw new SiddhiAppValidationException(String.format("Invalid number of parameters for "
+                            + "streamingml:keyedAMRulesRegressor. Models [%s] expect %s features, but "
+                            + "the input specifies %s features.",
+                    this.modelName, prototype.getNoOfFeatures(), noOfFeatures));
+        }
+        if (attributeExpressionLength != (prototype.getNoOfFeatures() + minNoOfParameters)) {
+            throw new SiddhiAppValidationException(String.format("Invalid number of parameters for "
+                            + "streamingml:keyedAMRulesRegressor. This Stream Processor requires  %s "
+                            + "parameters, namely, model.name, model.key and %s feature_attributes, "
+                            + "but found %s parameters", (minNoOfParameters + prototype.getNoOfFeatures()),
+                    prototype.getNoOfFeatures(), attributeExpressionLength));
+        }
+        featureExtractor = new FeatureExtractor(CoreUtils.extractAndValidateFeatures(inputDefinition,
+                attributeExpressionExecutors, minNoOfParameters, noOfFeatures), modelName);
+        statistics = ModelStatistics.create(siddhiQueryContext, modelPrefix, "prediction");
+        attributes.add(new Attribute("prediction", Attribute.Type.DOUBLE));
+        attributes.add(new Attribute("meanSquaredError", Attribute.Type.DOUBLE));
+        return null;
+    }
+
+    @Override
+    protected void process(ComplexEventChunk<StreamEvent> streamEventChunk, Processor nextProcessor,
+                           StreamEventCloner streamEventCloner, ComplexEventPopulater complexEventPopulater,
+                           State state) {
+        // the events of a chunk may select different models, hence they are predicted one by one, taking only the
+        // read lock of their model
+        double[] cepEvent = featureBuffer.get();
+        statistics.markIn();
+        while (streamEventChunk.hasNext()) {
+            StreamEvent streamEvent = streamEventChunk.next();
+            statistics.eventIn();
+            AdaptiveModelRulesModel model = models.findModel(keyVariableExecutor.execute(streamEvent));
+            Object[] outputData;
+            if (model != null) {
+                featureExtractor.extractFeatures(streamEvent, cepEvent);
+                outputData = model.getPrediction(cepEvent);
+            } else {
+                outputData = NO_PREDICTION;
+            }
+            complexEventPopulater.populateComplexEvent(streamEvent, outputData);
+        }
+        statistics.markOut();
+        nextProcessor.process(streamEventChunk);
+    }
+
+    @Override
+    public void start() {
+    }
+
+    @Override
+    public void stop() {
+    }
+
+    @Override
+    public List<Attribute> getReturnAttributes() {
+        return attributes;
+    }
+
+    @Override
+    public ProcessingMode getProcessingMode() {
+        return ProcessingMode.BATCH;
+    }
+}
@@ -0,0 +1,352 @@
+/*
+ * Copyright (C) 2017 WSO2 Inc. (http://wso2.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.wso2.extension.siddhi.gpl.execution.streamingml.regression.adaptivemodelrules;
+
+import io.siddhi.annotation.Example;
+import io.siddhi.annotation.Extension;
+import io.siddhi.annotation.Parameter;
+import io.siddhi.annotation.ReturnAttribute;
+import io.siddhi.annotation.SystemParameter;
+import io.siddhi.annotation.util.DataType;
+import io.siddhi.core.config.SiddhiQueryContext;
+import io.siddhi.core.event.ComplexEventChunk;
+import io.siddhi.core.event.stream.MetaStreamEvent;
+import io.siddhi.core.event.stream.StreamEvent;
+import io.siddhi.core.event.stream.StreamEventCloner;
+import io.siddhi.core.event.stream.holder.StreamEventClonerHolder;
+import io.siddhi.core.event.stream.populater.ComplexEventPopulater;
+import io.siddhi.core.executor.ConstantExpressionExecutor;
+import io.siddhi.core.executor.ExpressionExecutor;
+import io.siddhi.core.executor.VariableExpressionExecutor;
+import io.siddhi.core.query.processor.ProcessingMode;
+import io.siddhi.core.query.processor.Processor;
+import io.siddhi.core.query.processor.stream.StreamProcessor;
+import io.siddhi.core.util.config.ConfigReader;
+import io.siddhi.core.util.snapshot.state.Snapshot;
+import io.siddhi.core.util.snapshot.state.State;
+import io.siddhi.core.util.snapshot.state.StateFactory;
+import io.siddhi.query.api.definition.AbstractDefinition;
+import io.siddhi.query.api.definition.Attribute;
+import io.siddhi.query.api.exception.SiddhiAppValidationException;
+import org.apache.log4j.Logger;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.regression.adaptivemodelrules.util.AdaptiveModelRulesConfig;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.regression.adaptivemodelrules.util.AdaptiveModelRulesModel;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.CoreUtils;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.FeatureExtractor;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.KeyedModelCheckpoint;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.KeyedModelStore;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.KeyedModels;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.ModelRegistry;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Build/update an Adaptive Model Rules Regressor Model per key for regression analysis.
+ * {@link KeyedAdaptiveModelRulesUpdaterStreamProcessorExtension}
+ */
+@Extension(
+        name = "updateKeyedAMRulesRegressor",
+        namespace = "streamingml",
+        description = "This extension performs the build/update of an AMRules Regressor model per value of a key " +
+                "attribute, e.g., one model per sensor. All the models share the hyper-parameters of the query. " +
+                "The number of models kept is bounded, and the least recently used models are evicted first. " +
+                "The models are used for prediction by `streamingml:keyedAMRulesRegressor`.",
+        parameters = {
+                @Parameter(name = "model.name",
+                        description = "The name of the family of models to be built/updated.",
+                        type = {DataType.STRING}),
+                @Parameter(name = "model.key",
+                        description = "The attribute of the stream whose value selects the model to be " +
+                                "built/updated.",
+                        type = {DataType.STRING, DataType.INT, DataType.LONG}),
+                @Parameter(name = "split.confidence",
+                        description = "This is a Hoeffding Bound parameter. It defines the percentage of error that " +
+                                "to be allowed in a split decision. min:0 max:1",
+                        type = {DataType.DOUBLE},
+                        optional = true,
+                        defaultValue = "1.0E-7D"),
+                @Parameter(name = "tie.break.threshold",
+                        description = "This is a Hoeffding Bound parameter. It specifies the threshold below which a " +
+                                "split must be forced to break ties. min:0 max:1",
+                        type = {DataType.DOUBLE},
+                        optional = true,
+                        defaultValue = "0.05D"),
+                @Parameter(name = "grace.period",
+                        description = "This is a Hoeffding Bound parameter. The number of instances a leaf should "
+                                + "observe between split attempts.",
+                        type = {DataType.INT},
+                        optional = true,
+                        defaultValue = "200"),
+                @Parameter(name = "change.detector",
+                        description = " The Concept Drift Detection methodology to be used. The possible values " +
+                                "are as follows.\n " +
+                                "`0`:NoChangeDetection\n" +
+                                "`1`:ADWINChangeDetector \n " +
+                                "`2`:PageHinkleyDM",
+                        type = {DataType.INT},
+                        optional = true,
+                        defaultValue = "2:PageHinkleyDM"),
+                @Parameter(name = "anomaly.detector",
+                        description = "The Anomaly Detection methodology to be used. The possible values are as " +
+                                "follows:" +
+                                "`0`:NoAnomalyDetection\n" +
+                                "`1`:AnomalinessRatioScore\n" +
+                                "`2`:OddsRatioScore",
+                        type = {DataType.INT},
+                        optional = true,
+                        defaultValue = "2:OddsRatioScore"),
+                @Parameter(name = "model.features",
+                        description = "The features of the model that should be attributes of the stream.",
+                        type = {DataType.DOUBLE, DataType.FLOAT, DataType.LONG, DataType.INT})
+        },
+        systemParameter = {
+                @SystemParameter(name = "maxNoOfModels",
+                        description = "The maximum number of models kept by a query, as a count of models " +
+                                "rather than of memory. Once it is reached, the least recently used model is " +
+                                "evicted, and its key starts over with a new model.",
+                        defaultValue = "10000",
+                        possibleParameters = "Any positive integer"),
+                @SystemParameter(name = "modelIdleTimeout",
+                        description = "The time in milliseconds after which a model that has not been used is " +
+                                "evicted. `0` keeps the models until the maximum number of models is reached.",
+                        defaultValue = "0",
+                        possibleParameters = "Any non negative integer")
+        },
+        returnAttributes = {
+                @ReturnAttribute(name = "meanSquaredError",
+                        description = "The current Mean Squared Error of the model of the key",
+                        type = {DataType.DOUBLE})
+        },
+        examples = {
+                @Example(
+                        syntax = "define stream StreamA (sensorId string, attribute_0 double, attribute_1 double, "
+                                + "attribute_2 double, attribute_3 double, attribute_4 double );\n"
+                                + "\n"
+                                + "from StreamA#streamingml:updateKeyedAMRulesRegressor('model1', sensorId) \n"
+                                + "select sensorId, attribute_0, attribute_1, attribute_2, attribute_3, "
+                                + "meanSquaredError insert into OutputStream;",
+                        description = "In this query, an AMRulesRegressor model is built/updated for each " +
+                                "`sensorId` using `attribute_0`, `attribute_1`, `attribute_2`, and `attribute_3` " +
+                                "attributes as features, and `attribute_4` as the target_value. The mean squared " +
+                                "error of the model of the sensor is output to the OutputStream stream."
+                )
+        }
+)
+public class KeyedAdaptiveModelRulesUpdaterStreamProcessorExtension extends
+        StreamProcessor<KeyedAdaptiveModelRulesUpdaterStreamProcessorExtension.ExtensionState> {
+    private static final Logger logger =
+            Logger.getLogger(KeyedAdaptiveModelRulesUpdaterStreamProcessorExtension.class);
+
+    private static final int MINIMUM_NUMBER_OF_FEATURES = 2;
+    private static final int MINIMUM_NUMBER_OF_PARAMETERS = 2;
+    private static final int NUMBER_OF_HYPERPARAMETERS = AdaptiveModelRulesConfig.NUMBER_OF_HYPER_PARAMETERS;
+
+    private int noOfAttributes;
+    private String modelName;
+    private AdaptiveModelRulesConfig config;
+    private AdaptiveModelRulesModel prototype;
+    private KeyedModelStore<AdaptiveModelRulesModel> emptyModelStore;
+    // stores of the states of the query, one per partition key if the query is partitioned
+    private final List<KeyedModelStore<AdaptiveModelRulesModel>> modelStores = new CopyOnWriteArrayList<>();
+
+    private FeatureExtractor featureExtractor;
+    private VariableExpressionExecutor keyVariableExecutor;
+
+    private double[] cepEvent;
+    private final Object[] outputData = new Object[1];
+    //set attributes for OutputStream
+    private List<Attribute> attributes = new ArrayList<>();
+
+    @Override
+    protected StateFactory<ExtensionState> init(MetaStreamEvent metaStreamEvent, AbstractDefinition inputDefinition,
+                                                ExpressionExecutor[] attributeExpressionExecutors,
+                                                ConfigReader configReader,
+                                                StreamEventClonerHolder streamEventClonerHolder,
+                                                boolean outputExpectsExpiredEvents, boolean findToBeExecuted,
+                                                SiddhiQueryContext siddhiQueryContext) {
+        // the key attribute is not a feature of the models
+        noOfAttributes = inputDefinition.getAttributeList().size() - 1;
+        int noOfParameters = attributeExpressionLength - noOfAttributes;
+
+        if (attributeExpressionLength >= MINIMUM_NUMBER_OF_PARAMETERS + MINIMUM_NUMBER_OF_FEATURES) {
+            if (attributeExpressionExecutors[0] instanceof ConstantExpressionExecutor) {
+                ConstantExpressionExecutor modelNameExecutor =
+                        (ConstantExpressionExecutor) attributeExpressionExecutors[0];
+                if (modelNameExecutor.getReturnType() == Attribute.Type.STRING) {
+                    // model name = user given name + siddhi app name
+                    modelName = siddhiQueryContext.getSiddhiAppContext().getName() + "."
+                            + modelNameExecutor.getValue();
+                } else {
+                    throw new SiddhiAppValidationException(
+                            "Invalid parameter type found for the model.name argument, "
+                                    + "required " + Attribute.Type.STRING + " but found "
+                                    + modelNameExecutor.getReturnType().toString());
+                }
+            } else {
+                throw new SiddhiAppValidationException("Model.name must be a Constant but found "
+                        + attributeExpressionExecutors[0].getClass().getCanonicalName());
+            }
+
+            keyVariableExecutor = CoreUtils.extractAndValidateKey(inputDefinition, attributeExpressionExecutors, 1);
+
+            if (noOfAttributes > MINIMUM_NUMBER_OF_FEATURES) {
+                featureExtractor = new FeatureExtractor(CoreUtils
+                        .extractAndValidateFeatures(inputDefinition, attributeExpressionExecutors,
+                                noOfParameters, noOfAttributes), modelName);
+                cepEvent = new double[noOfAttributes];
+            } else {
+                throw new SiddhiAppValidationException(
+                        "Number of features must be greater than 2 but" + " found "
+                                + noOfAttributes);
+            }
+            if (noOfParameters > MINIMUM_NUMBER_OF_PARAMETERS) {
+                //configuation with hyper-parameters, shared by the models of all the keys
+                if (noOfParameters == (MINIMUM_NUMBER_OF_PARAMETERS + NUMBER_OF_HYPERPARAMETERS)) {
+                    config = AdaptiveModelRulesConfig.fromParameters(attributeExpressionExecutors,
+                            MINIMUM_NUMBER_OF_PARAMETERS);
+                } else {
+                    throw new SiddhiAppValidationException(String.format("Number of hyper-parameters needed for "
+                                    + "model manual configuration is %s but found %s",
+                            NUMBER_OF_HYPERPARAMETERS, (noOfParameters - MINIMUM_NUMBER_OF_PARAMETERS)));
+                }
+            }
+            // the models are created as their keys arrive, hence the configuration is validated upfront
+            prototype = createModel("prototype");
+            emptyModelStore = KeyedModelStore.fromConfig(configReader, this::createModel);
+            ModelRegistry.getInstance().putKeyedModels(AdaptiveModelRulesModel.class, modelName,
+                    new PredictionModels());
+        } else {
+            throw new SiddhiAppValidationException(String.format("Invalid number of attributes for "
+                            + "streamingml:updateKeyedAMRulesRegressor. This Stream Processor requires at least %s ,"
+                            + "parameters namely, model.name, model.key and %s features but found %s parameters "
+                            + "and %s features", MINIMUM_NUMBER_OF_PARAMETERS, MINIMUM_NUMBER_OF_FEATURES,
+                    (attributeExpressionLength - noOfAttributes), noOfAttributes));
+        }
+
+        attributes.add(new Attribute("meanSquaredError", Attribute.Type.DOUBLE));
+        return ExtensionState::new;
+    }
+
+    private AdaptiveModelRulesModel createModel(Object key) {
+        if (logger.isDebugEnabled()) {
+            logger.debug(String.format("Model of key [%s] of [%s] is being created.", key, modelName));
+        }
+        AdaptiveModelRulesModel model = new AdaptiveModelRulesModel(modelName + "." + key);
+        model.init(noOfAttributes);
+        if (config != null) {
+            config.applyTo(model);
+        }
+        return model;
+    }
+
+    @Override
+    protected void process(ComplexEventChunk<StreamEvent> streamEventChunk, Processor nextProcessor,
+                           StreamEventCloner streamEventCloner, ComplexEventPopulater complexEventPopulater,
+                           ExtensionState state) {
+        synchronized (this) {
+            while (streamEventChunk.hasNext()) {
+                StreamEvent streamEvent = streamEventChunk.next();
+                AdaptiveModelRulesModel model = state.models.getModel(keyVariableExecutor.execute(streamEvent));
+                featureExtractor.extractFeatures(streamEvent, cepEvent);
+                outputData[0] = model.trainOnEvent(cepEvent);
+                complexEventPopulater.populateComplexEvent(streamEvent, outputData);
+            }
+            nextProcessor.process(streamEventChunk);
+        }
+    }
+
+    @Override
+    public void start() {
+
+    }
+
+    @Override
+    public void stop() {
+        ModelRegistry.getInstance().deleteKeyedModels(AdaptiveModelRulesModel.class, modelName);
+    }
+
+    @Override
+    public List<Attribute> getReturnAttributes() {
+        return attributes;
+    }
+
+    @Override
+    public ProcessingMode getProcessingMode() {
+        return ProcessingMode.BATCH;
+    }
+
+    /**
+     * Models of the keys as used by {@link KeyedAdaptiveModelRulesRegressorStreamProcessorExtension}
+     */
+    private class PredictionModels implements KeyedModels<AdaptiveModelRulesModel> {
+
+        @Override
+        public AdaptiveModelRulesModel findModel(Object key) {
+            for (KeyedModelStore<AdaptiveModelRulesModel> models : modelStores) {
+                AdaptiveModelRulesModel model = models.findModel(key);
+                if (model != null) {
+                    return model;
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public AdaptiveModelRulesModel getPrototype() {
+            return prototype;
+        }
+    }
+
+    class ExtensionState extends State {
+        private final KeyedModelStore<AdaptiveModelRulesModel> models = emptyModelStore.newEmptyStore();
+        private final KeyedModelCheckpoint<AdaptiveModelRulesModel> checkpoint = new KeyedModelCheckpoint<>(models,
+                AdaptiveModelRulesModel::toSnapshot,
+                (key, snapshot) -> AdaptiveModelRulesModel.fromSnapshot(modelName + "." + key, snapshot));
+
+        ExtensionState() {
+            modelStores.add(models);
+        }
+
+        @Override
+        public boolean canDestroy() {
+            return false;
+        }
+
+        @Override
+        public Map<String, Object> snapshot() {
+            synchronized (KeyedAdaptiveModelRulesUpdaterStreamProcessorExtension.this) {
+                Map<String, Object> currentState = new HashMap<>();
+                Snapshot snapshot = checkpoint.snapshot();
+                if (snapshot != null) {
+                    currentState.put("RegressorModels", snapshot);
+                }
+                return currentState;
+            }
+        }
+
+        @Override
+        public void restore(Map<String, Object> state) {
+            synchronized (KeyedAdaptiveModelRulesUpdaterStreamProcessorExtension.this) {
+                checkpoint.restore(state.get("RegressorModels"));
+            }
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2017 WSO2 Inc. (http://wso2.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.wso2.extension.siddhi.gpl.execution.streamingml.regression.adaptivemodelrules.util;
+
+import io.siddhi.core.executor.ConstantExpressionExecutor;
+import io.siddhi.core.executor.ExpressionExecutor;
+import io.siddhi.query.api.definition.Attribute;
+import io.siddhi.query.api.exception.SiddhiAppValidationException;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.CoreUtils;
+
+/**
+ * Hyper-parameters of an AMRules Regressor, read once from the query and applied to each model configured by the
+ * query.
+ */
+public class AdaptiveModelRulesConfig {
+    public static final int NUMBER_OF_HYPER_PARAMETERS = 5;
+    private static final String[] HYPER_PARAMETERS = {"Split Confidence", "Tie Break Threshold", "Grace Period",
+            "Change Detector", "Anomaly Detector"};
+
+    //default configurations for AMRules Regressor Model
+    private double splitConfidence = 1.0E-7D;
+    private double tieBreakThreshold = 0.05D;
+    private int gracePeriod = 200;
+    private int changeDetector = 2;
+    private int anomalyDetector = 2;
+
+    /**
+     * Read the hyper-parameters from the parameters of the query
+     *
+     * @param attributeExpressionExecutors parameters of the query
+     * @param firstIndex                   index of the first hyper-parameter
+     * @return the hyper-parameters
+     */
+    public static AdaptiveModelRulesConfig fromParameters(ExpressionExecutor[] attributeExpressionExecutors,
+                                                          int firstIndex) {
+        AdaptiveModelRulesConfig config = new AdaptiveModelRulesConfig();
+        for (int i = firstIndex; i < firstIndex + NUMBER_OF_HYPER_PARAMETERS; i++) {
+            ExpressionExecutor executor = attributeExpressionExecutors[i];
+            if (!(executor instanceof ConstantExpressionExecutor)) {
+                throw new SiddhiAppValidationException(String.format("%s must be (ConstantExpressionExecutor) "
+                                + "but found %s in position %s.", HYPER_PARAMETERS[i - firstIndex],
+                        executor.getClass().getCanonicalName(), (i + 1)));
+            }
+            Object value = ((ConstantExpressionExecutor) executor).getValue();
+            switch (i - firstIndex) {
+                case 0:
+                    if (CoreUtils.isNumeric(executor.getReturnType())) {
+                        config.splitConfidence = ((Number) value).doubleValue();
+                    } else {
+                        throw new SiddhiAppValidationException(String.format("Split Confidence must be an %s."
+                                        + " But found %s at position %s",
+                                Attribute.Type.DOUBLE, executor.getReturnType(), (i + 1)));
+                    }
+                    break;
+                case 1:
+                    if (CoreUtils.isNumeric(executor.getReturnType())) {
+                        config.tieBreakThreshold = ((Number) value).doubleValue();
+                    } else {
+                        throw new SiddhiAppValidationException(String.format("Tie Break Threshold must be an %s."
+                                        + " But found %s at position %s",
+                                Attribute.Type.DOUBLE, executor.getReturnType(), (i + 1)));
+                    }
+                    break;
+                case 2:
+                    if (executor.getReturnType() == Attribute.Type.INT) {
+                        config.gracePeriod = (Integer) value;
+                    } else {
+                        throw new SiddhiAppValidationException(String.format("Grace Period must be a %s. "
+                                        + "But found %s at position %s.",
+                                Attribute.Type.DOUBLE, executor.getReturnType(), (i + 1)));
+                    }
+                    break;
+                case 3:
+                    if (executor.getReturnType() == Attribute.Type.INT) {
+                        config.changeDetector = (Integer) value;
+                    } else {
+                        throw new SiddhiAppValidationException(String.format("Change Detector must be a %s. "
+                                        + "But found %s at position %s.",
+                                Attribute.Type.INT, executor.getReturnType(), (i + 1)));
+                    }
+                    break;
+                default:
+                    if (executor.getReturnType() == Attribute.Type.INT) {
+                        config.anomalyDetector = (Integer) value;
+                    } else {
+                        throw new SiddhiAppValidationException(String.format("Anomaly Detector must be a %s. "
+                                        + "But found %s at position %s.",
+                                Attribute.Type.INT, executor.getReturnType(), (i + 1)));
+                    }
+            }
+        }
+        return config;
+    }
+
+    /**
+     * Configure the model with the hyper-parameters
+     */
+    public void applyTo(AdaptiveModelRulesModel model) {
+        model.setConfigurations(splitConfidence, tieBreakThreshold, gracePeriod, changeDetector, anomalyDetector);
+    }
+}
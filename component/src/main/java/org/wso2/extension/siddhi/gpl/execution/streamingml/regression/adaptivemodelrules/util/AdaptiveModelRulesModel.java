@@ -33,13 +33,25 @@ import org.apache.log4j.Logger;
 import org.wso2.extension.siddhi.gpl.execution.streamingml.regression.AbstractRegressor;
 import org.wso2.extension.siddhi.gpl.execution.streamingml.regression.Regressor;
 import org.wso2.extension.siddhi.gpl.execution.streamingml.util.MathUtil;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.ModelEvents;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.ModelSnapshotReader;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.ModelSnapshotType;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.ModelSnapshotWriter;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.locks.StampedLock;
 
 /**
  * Represents AMRules Regressor model
+ * <p>
+ * Training takes the write lock of the model, while predictions only take the read lock, so that predictions
+ * and the compilation of the rule set never see the rules of MOA while they are being expanded by a trainer on
+ * another thread.
  */
 public class AdaptiveModelRulesModel extends AbstractRegressor implements Regressor {
     private static final long serialVersionUID = 1L;
     private static final Logger logger = Logger.getLogger(AdaptiveModelRulesModel.class);
+    private static final int SNAPSHOT_VERSION = 1;
 
     private AMRulesRegressor amRulesRegressor;
 
@@ -49,16 +61,112 @@ public class AdaptiveModelRulesModel extends AbstractRegressor implements Regres
     private int noOfInstances = 0;
     private double squaredError = 0;
     private double meanSquaredError = 0;
+    private final StampedLock lock = new StampedLock();
+    // incremented on each update of the model, so that checkpoints can skip an unchanged model
+    private transient long version;
+    // size of the last snapshot, which sizes the buffer of the next one
+    private transient int snapshotSize;
+
+    // instance reused for training, so that no instance is created per event
+    private transient double[] trainValues;
+    private transient Instance trainInstance;
+
+    // prediction-only image of the rule set, compiled for the version of the model it was compiled for
+    private transient volatile CompiledModelRules compiledRules;
+    private transient volatile long compiledVersion = -1;
+    private transient volatile long lastPredictedVersion = -1;
 
     public AdaptiveModelRulesModel(String modelName) {
         this.modelName = modelName;
     }
 
     public AdaptiveModelRulesModel(AdaptiveModelRulesModel model) {
-        this.amRulesRegressor = model.amRulesRegressor;
-        this.modelName = model.modelName;
-        this.streamHeader = model.streamHeader;
-        this.noOfFeatures = model.noOfFeatures;
+        long stamp = model.lock.readLock();
+        try {
+            this.amRulesRegressor = model.amRulesRegressor;
+            this.modelName = model.modelName;
+            this.streamHeader = model.streamHeader;
+            this.noOfFeatures = model.noOfFeatures;
+        } finally {
+            model.lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Restore the state of this model from a snapshot of it, so that the stream processors which hold a
+     * reference to this model continue with the restored state.
+     *
+     * @param model snapshot of the model
+     */
+    public void restoreFrom(AdaptiveModelRulesModel model) {
+        long stamp = lock.writeLock();
+        try {
+            version++;
+            this.amRulesRegressor = model.amRulesRegressor;
+            this.streamHeader = model.streamHeader;
+            this.noOfFeatures = model.noOfFeatures;
+            this.initialized = model.amRulesRegressor != null;
+            if (initialized) {
+                createTrainingInstance();
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Write the state of the model into a binary snapshot. As with the earlier snapshots, the mean squared error
+     * is not part of it and is evaluated afresh after a restore. The model is only locked while it is being written.
+     *
+     * @return snapshot of the model, read by {@link #fromSnapshot(String, byte[])}
+     */
+    public byte[] toSnapshot() {
+        ModelSnapshotWriter writer = new ModelSnapshotWriter(ModelSnapshotType.AMRULES_REGRESSOR, SNAPSHOT_VERSION,
+                snapshotSize);
+        long stamp = lock.readLock();
+        try {
+            writer.writeBoolean(initialized);
+            if (initialized) {
+                writer.writeInt(noOfFeatures);
+                writer.writeLearner(amRulesRegressor);
+            }
+        } finally {
+            lock.unlockRead(stamp);
+        }
+        snapshotSize = writer.size();
+        return writer.toByteArray();
+    }
+
+    /**
+     * Read a model from a binary snapshot written by {@link #toSnapshot()}
+     *
+     * @param modelName name of the model
+     * @param snapshot  snapshot of the model
+     * @return the model
+     */
+    public static AdaptiveModelRulesModel fromSnapshot(String modelName, byte[] snapshot) {
+        return fromSnapshot(modelName, ByteBuffer.wrap(snapshot));
+    }
+
+    /**
+     * Read a model from a binary snapshot written by {@link #toSnapshot()}, e.g., mapped from a file
+     *
+     * @param modelName name of the model
+     * @param snapshot  snapshot of the model
+     * @return the model
+     */
+    public static AdaptiveModelRulesModel fromSnapshot(String modelName, ByteBuffer snapshot) {
+        ModelSnapshotReader reader = new ModelSnapshotReader(snapshot, ModelSnapshotType.AMRULES_REGRESSOR,
+                SNAPSHOT_VERSION);
+        AdaptiveModelRulesModel model = new AdaptiveModelRulesModel(modelName);
+        if (reader.readBoolean()) {
+            model.noOfFeatures = reader.readInt();
+            model.amRulesRegressor = reader.readLearner(AMRulesRegressor.class);
+            model.streamHeader = model.amRulesRegressor.getModelContext();
+            model.initialized = true;
+            model.createTrainingInstance();
+        }
+        return model;
     }
 
     @Override
@@ -75,12 +183,19 @@ public class AdaptiveModelRulesModel extends AbstractRegressor implements Regres
         if (logger.isDebugEnabled()) {
             logger.debug(String.format("Regressor model [%s] is being initialized.", this.modelName));
         }
-        this.noOfFeatures = noOfAttributes - 1;
-        generateHeader(noOfAttributes);
-        amRulesRegressor = new AMRulesRegressor();
-        amRulesRegressor.setModelContext(streamHeader);
-        amRulesRegressor.prepareForUse();
-        initialized = true;
+        long stamp = lock.writeLock();
+        try {
+            version++;
+            this.noOfFeatures = noOfAttributes - 1;
+            generateHeader(noOfAttributes);
+            amRulesRegressor = new AMRulesRegressor();
+            amRulesRegressor.setModelContext(streamHeader);
+            amRulesRegressor.prepareForUse();
+            createTrainingInstance();
+            initialized = true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
     }
 
     /**
@@ -88,23 +203,132 @@ public class AdaptiveModelRulesModel extends AbstractRegressor implements Regres
      */
     @Override
     public double trainOnEvent(double[] cepEvent) {
-        Instance trainInstance = createMOAInstance(cepEvent);
-        trainInstance.setClassValue(cepEvent[cepEvent.length - 1]);
-        trainInstance.setDataset(streamHeader);
+        long stamp = lock.writeLock();
+        try {
+            return train(cepEvent);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public void trainOnEvents(double[][] cepEvents, int noOfEvents, double[] meanSquaredErrors) {
+        long stamp = lock.writeLock();
+        try {
+            for (int i = 0; i < noOfEvents; i++) {
+                meanSquaredErrors[i] = train(cepEvents[i]);
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Train the model on an event. Called under the write lock.
+     */
+    private double train(double[] cepEvent) {
+        version++;
+        System.arraycopy(cepEvent, 0, trainValues, 0, trainValues.length);
 
-        double truth = cepEvent[cepEvent.length - 1];
+        double truth = cepEvent[noOfFeatures];
         double prediction = MathUtil.roundOff(amRulesRegressor.getVotesForInstance(trainInstance)[0], 3);
 
         //training on the event instance
-        amRulesRegressor.trainOnInstanceImpl(trainInstance);
+        trainOnInstance();
         return calMeanSquaredError(truth, prediction);
     }
 
+    /**
+     * Train the rule set on the training instance, and record the expansion of the rules if a recording has
+     * enabled it
+     */
+    private void trainOnInstance() {
+        if (!ModelEvents.isAMRulesRuleExpansionEnabled()) {
+            amRulesRegressor.trainOnInstanceImpl(trainInstance);
+            return;
+        }
+        ModelEvents.AMRulesRuleExpansion event = new ModelEvents.AMRulesRuleExpansion();
+        int noOfRules = CompiledModelRules.countRules(amRulesRegressor);
+        int noOfLiterals = CompiledModelRules.countLiterals(amRulesRegressor);
+        event.begin();
+        amRulesRegressor.trainOnInstanceImpl(trainInstance);
+        event.end();
+        event.noOfRules = CompiledModelRules.countRules(amRulesRegressor);
+        event.noOfLiterals = CompiledModelRules.countLiterals(amRulesRegressor);
+        if (noOfRules >= 0 && (event.noOfRules != noOfRules || event.noOfLiterals != noOfLiterals)) {
+            event.model = modelName;
+            event.rulesAdded = event.noOfRules - noOfRules;
+            event.literalsAdded = event.noOfLiterals - noOfLiterals;
+            event.commit();
+        }
+    }
+
     @Override
     public Object[] getPrediction(double[] cepEvent) {
-        Instance testInstance = createMOAInstance(cepEvent);
-        double votes = MathUtil.roundOff(amRulesRegressor.getVotesForInstance(testInstance)[0], 3);
-        return new Object[]{votes, meanSquaredError};
+        long stamp = lock.readLock();
+        try {
+            CompiledModelRules compiledRules = getCompiledRules();
+            double votes;
+            if (compiledRules != null) {
+                votes = MathUtil.roundOff(compiledRules.predict(cepEvent), 3);
+            } else {
+                Instance testInstance = createMOAInstance(cepEvent);
+                votes = MathUtil.roundOff(amRulesRegressor.getVotesForInstance(testInstance)[0], 3);
+            }
+            return new Object[]{votes, meanSquaredError};
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public double getPredictions(double[][] cepEvents, int noOfEvents, double[] predictions) {
+        long stamp = lock.readLock();
+        try {
+            CompiledModelRules compiledRules = getCompiledRules();
+            if (compiledRules != null) {
+                for (int i = 0; i < noOfEvents; i++) {
+                    predictions[i] = MathUtil.roundOff(compiledRules.predict(cepEvents[i]), 3);
+                }
+                return meanSquaredError;
+            }
+            // a single instance serves the whole batch, the target value of it is left as 0
+            double[] testValues = new double[noOfFeatures + 1];
+            Instance testInstance = createMOAInstance(testValues);
+            for (int i = 0; i < noOfEvents; i++) {
+                System.arraycopy(cepEvents[i], 0, testValues, 0, noOfFeatures);
+                predictions[i] = MathUtil.roundOff(amRulesRegressor.getVotesForInstance(testInstance)[0], 3);
+            }
+            return meanSquaredError;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Return the compiled rule set of the current version of the model. The rule set is compiled on the second
+     * prediction after the model is updated, so that a model which is trained between every prediction keeps
+     * predicting with MOA rather than compiling the rule set for each prediction. Called under the read lock.
+     *
+     * @return the compiled rule set, or null if the predictions are to be made by MOA
+     */
+    private CompiledModelRules getCompiledRules() {
+        if (compiledVersion == version) {
+            return compiledRules;
+        }
+        if (lastPredictedVersion != version) {
+            lastPredictedVersion = version;
+            return null;
+        }
+        CompiledModelRules rules = CompiledModelRules.compile(amRulesRegressor);
+        compiledRules = rules;
+        compiledVersion = version;
+        return rules;
+    }
+
+    private void createTrainingInstance() {
+        trainValues = new double[noOfFeatures + 1];
+        trainInstance = createMOAInstance(trainValues);
     }
 
     public boolean isInitialized() {
@@ -121,6 +345,17 @@ public class AdaptiveModelRulesModel extends AbstractRegressor implements Regres
 
     public void setConfigurations(double splitConfidence, double tieBreakThreshold, int gracePeriod,
                                   int changeDetector, int anomalyDetector) {
+        long stamp = lock.writeLock();
+        try {
+            version++;
+            setOptions(splitConfidence, tieBreakThreshold, gracePeriod, changeDetector, anomalyDetector);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private void setOptions(double splitConfidence, double tieBreakThreshold, int gracePeriod, int changeDetector,
+                            int anomalyDetector) {
         amRulesRegressor.splitConfidenceOption.setValue(splitConfidence);
         amRulesRegressor.tieThresholdOption.setValue(tieBreakThreshold);
         amRulesRegressor.gracePeriodOption.setValue(gracePeriod);
@@ -166,7 +401,8 @@ public class AdaptiveModelRulesModel extends AbstractRegressor implements Regres
 
     private double calMeanSquaredError(double truth, double prediction) {
         noOfInstances++;
-        squaredError += Math.pow((truth - prediction), 2);
+        double error = truth - prediction;
+        squaredError += error * error;
         return meanSquaredError = MathUtil.roundOff((squaredError / noOfInstances), 3);
     }
 
@@ -174,6 +410,34 @@ public class AdaptiveModelRulesModel extends AbstractRegressor implements Regres
         return noOfFeatures;
     }
 
+    public String getModelName() {
+        return modelName;
+    }
+
+    /**
+     * @return number of rules, not counting the default rule, or -1 if they cannot be counted
+     */
+    public long getNoOfRules() {
+        long stamp = lock.readLock();
+        try {
+            return amRulesRegressor == null ? 0 : CompiledModelRules.countRules(amRulesRegressor);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * @return version of the model, which changes whenever the model is updated
+     */
+    public long getVersion() {
+        long stamp = lock.readLock();
+        try {
+            return version;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
     @Override
     protected void prepareForUseImpl(TaskMonitor taskMonitor, ObjectRepository objectRepository) {
 
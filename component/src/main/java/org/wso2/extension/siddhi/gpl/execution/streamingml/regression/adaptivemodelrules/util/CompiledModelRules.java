@@ -0,0 +1,465 @@
+/*
+ * Copyright (C) 2017 WSO2 Inc. (http://wso2.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.wso2.extension.siddhi.gpl.execution.streamingml.regression.adaptivemodelrules.util;
+
+import moa.classifiers.Classifier;
+import moa.classifiers.multitarget.BasicMultiLabelLearner;
+import moa.classifiers.rules.AMRulesRegressor;
+import moa.classifiers.rules.core.NumericRulePredicate;
+import moa.classifiers.rules.functions.Perceptron;
+import moa.classifiers.rules.functions.TargetMean;
+import moa.classifiers.rules.multilabel.AMRulesMultiLabelLearner;
+import moa.classifiers.rules.multilabel.core.LearningLiteral;
+import moa.classifiers.rules.multilabel.core.Literal;
+import moa.classifiers.rules.multilabel.core.MultiLabelRule;
+import moa.classifiers.rules.multilabel.core.voting.InverseErrorWeightedVoteMultiLabel;
+import moa.classifiers.rules.multilabel.errormeasurers.MultiTargetErrorMeasurer;
+import moa.classifiers.rules.multilabel.functions.AdaptiveMultiTargetRegressor;
+import moa.classifiers.rules.multilabel.instancetransformers.InstanceOutputAttributesSelector;
+import moa.classifiers.rules.multilabel.instancetransformers.NoInstanceTransformation;
+import org.apache.log4j.Logger;
+
+import java.lang.reflect.Field;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Prediction-only image of the rule set of an {@link AMRulesRegressor}, compiled into flat arrays, so that an
+ * event is scored without creating a MOA instance and without walking the MOA object graph.
+ * <p>
+ * The antecedent of each rule is a run of (attribute, operator, threshold) literals, and the consequent is either
+ * the target mean or the linear model of the perceptron of the rule, whichever of the two the rule predicts with,
+ * held as a dense weight vector along with the statistics the perceptron normalizes the attributes with. The
+ * prediction is the one of {@link AMRulesRegressor#getVotesForInstance}: the prediction of the first rule which
+ * covers the event, or of the default rule if no rule covers it.
+ * <p>
+ * The image is a copy of the rule set when it is compiled, hence has to be compiled again once the rules are
+ * trained. Unordered rule sets, and rules other than the ones learnt on numeric attributes, cannot be compiled.
+ */
+public class CompiledModelRules {
+    private static final Logger logger = Logger.getLogger(CompiledModelRules.class);
+
+    private static final byte NO_PREDICTION = 0;
+    private static final byte TARGET_MEAN = 1;
+    private static final byte PERCEPTRON = 2;
+    // the error of a rule which has no error measurer, as per AMRulesMultiLabelLearner
+    private static final double DEFAULT_ERROR = Double.MAX_VALUE;
+    // added to the error to weight a vote, as per InverseErrorWeightedVoteMultiLabel
+    private static final double EPS = 1.0E-9;
+    private static final double SD_THRESHOLD = 1.0E-7;
+
+    private static final Field RULE_SET;
+    private static final Field DEFAULT_RULE;
+    private static final Field LITERALS;
+    private static final Field PREDICATE;
+    private static final Field ATTRIBUTE_VALUE;
+    private static final Field LEARNER;
+    private static final Field INSTANCE_TRANSFORMER;
+    private static final Field ADAPTIVE_HAS_STARTED;
+    private static final Field BASE_LEARNERS;
+    private static final Field ERROR_MEASURERS;
+    private static final Field BASIC_HAS_STARTED;
+    private static final Field ENSEMBLE;
+    private static final Field MEAN_N;
+    private static final Field MEAN_SUM;
+    private static final Field WEIGHTS;
+    private static final Field INITIALISE_PERCEPTRON;
+    private static final Field Y_SEEN;
+    private static final Field SUM_Y;
+    private static final Field SQUARED_SUM_Y;
+    private static final Field NUMERIC_ATTRIBUTES;
+
+    static {
+        Field[] fields;
+        try {
+            fields = new Field[]{
+                    AMRulesMultiLabelLearner.class.getDeclaredField("ruleSet"),
+                    AMRulesMultiLabelLearner.class.getDeclaredField("defaultRule"),
+                    MultiLabelRule.class.getDeclaredField("literalList"),
+                    Literal.class.getDeclaredField("predicate"),
+                    NumericRulePredicate.class.getDeclaredField("attributeValue"),
+                    LearningLiteral.class.getDeclaredField("learner"),
+                    LearningLiteral.class.getDeclaredField("instanceTransformer"),
+                    AdaptiveMultiTargetRegressor.class.getDeclaredField("hasStarted"),
+                    AdaptiveMultiTargetRegressor.class.getDeclaredField("baseLearner"),
+                    AdaptiveMultiTargetRegressor.class.getDeclaredField("errorMeasurer"),
+                    BasicMultiLabelLearner.class.getDeclaredField("hasStarted"),
+                    BasicMultiLabelLearner.class.getDeclaredField("ensemble"),
+                    TargetMean.class.getDeclaredField("n"),
+                    TargetMean.class.getDeclaredField("sum"),
+                    Perceptron.class.getDeclaredField("weightAttribute"),
+                    Perceptron.class.getDeclaredField("initialisePerceptron"),
+                    Perceptron.class.getDeclaredField("perceptronYSeen"),
+                    Perceptron.class.getDeclaredField("perceptronsumY"),
+                    Perceptron.class.getDeclaredField("squaredperceptronsumY"),
+                    Perceptron.class.getDeclaredField("numericAttributesIndex")};
+            for (Field field : fields) {
+                field.setAccessible(true);
+            }
+        } catch (NoSuchFieldException | RuntimeException e) {
+            logger.warn("AMRules rule sets cannot be compiled for this version of MOA, hence the predictions are "
+                    + "made by MOA.", e);
+            fields = new Field[20];
+        }
+        RULE_SET = fields[0];
+        DEFAULT_RULE = fields[1];
+        LITERALS = fields[2];
+        PREDICATE = fields[3];
+        ATTRIBUTE_VALUE = fields[4];
+        LEARNER = fields[5];
+        INSTANCE_TRANSFORMER = fields[6];
+        ADAPTIVE_HAS_STARTED = fields[7];
+        BASE_LEARNERS = fields[8];
+        ERROR_MEASURERS = fields[9];
+        BASIC_HAS_STARTED = fields[10];
+        ENSEMBLE = fields[11];
+        MEAN_N = fields[12];
+        MEAN_SUM = fields[13];
+        WEIGHTS = fields[14];
+        INITIALISE_PERCEPTRON = fields[15];
+        Y_SEEN = fields[16];
+        SUM_Y = fields[17];
+        SQUARED_SUM_Y = fields[18];
+        NUMERIC_ATTRIBUTES = fields[19];
+    }
+
+    private int noOfRules;
+    // antecedents: literals of rule i are the ones from literalOffsets[i] to literalOffsets[i + 1]
+    private int[] literalOffsets;
+    private int[] literalAttributes;
+    private double[] literalThresholds;
+    private boolean[] literalEqualOrLower;
+    private int noOfLiterals;
+
+    // consequents, of the rules followed by the default rule
+    private byte[] predictionKinds;
+    private double[] errors;
+    private double[] targetMeans;
+    private double[] targetStdDevs;
+    private double[] biases;
+    // linear models: the weights of rule i are the ones from weightOffsets[i] to weightOffsets[i + 1]
+    private int[] weightOffsets;
+    private int[] weightAttributes;
+    private double[] weights;
+    private double[] attributeMeans;
+    private double[] attributeStdDevs;
+    private int noOfWeights;
+
+    private CompiledModelRules(int noOfRules) {
+        this.noOfRules = noOfRules;
+        literalOffsets = new int[noOfRules + 1];
+        literalAttributes = new int[4 * noOfRules];
+        literalThresholds = new double[literalAttributes.length];
+        literalEqualOrLower = new boolean[literalAttributes.length];
+        predictionKinds = new byte[noOfRules + 1];
+        errors = new double[noOfRules + 1];
+        targetMeans = new double[noOfRules + 1];
+        targetStdDevs = new double[noOfRules + 1];
+        biases = new double[noOfRules + 1];
+        weightOffsets = new int[noOfRules + 2];
+        weightAttributes = new int[8 * (noOfRules + 1)];
+        weights = new double[weightAttributes.length];
+        attributeMeans = new double[weightAttributes.length];
+        attributeStdDevs = new double[weightAttributes.length];
+    }
+
+    /**
+     * Compile the rule set of a trained regressor
+     *
+     * @param regressor the regressor
+     * @return the compiled rule set, or null if the rule set holds rules which cannot be compiled
+     */
+    @SuppressWarnings("unchecked")
+    public static CompiledModelRules compile(AMRulesRegressor regressor) {
+        if (RULE_SET == null || regressor.unorderedRulesOption.isSet()
+                || !(regressor.newErrorWeightedVote() instanceof InverseErrorWeightedVoteMultiLabel)) {
+            return null;
+        }
+        try {
+            List<MultiLabelRule> rules = (List<MultiLabelRule>) RULE_SET.get(regressor);
+            MultiLabelRule defaultRule = (MultiLabelRule) DEFAULT_RULE.get(regressor);
+            if (rules == null || defaultRule == null) {
+                return null;
+            }
+            CompiledModelRules compiledRules = new CompiledModelRules(rules.size());
+            int rule = 0;
+            for (MultiLabelRule multiLabelRule : rules) {
+                compiledRules.addAntecedent(rule, (List<Literal>) LITERALS.get(multiLabelRule));
+                compiledRules.addConsequent(rule, multiLabelRule);
+                rule++;
+            }
+            compiledRules.literalOffsets[rule] = compiledRules.noOfLiterals;
+            compiledRules.addConsequent(rule, defaultRule);
+            return compiledRules;
+        } catch (IllegalAccessException | UnsupportedOperationException e) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("AMRules rule set cannot be compiled, hence the predictions are made by MOA.", e);
+            }
+            return null;
+        } catch (RuntimeException e) {
+            // the rule set was modified by a concurrent training while it was being compiled
+            if (logger.isDebugEnabled()) {
+                logger.debug("AMRules rule set changed while being compiled, hence the predictions are made by "
+                        + "MOA.", e);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * @param regressor the regressor
+     * @return number of rules of the regressor, not counting the default rule, or -1 if they cannot be counted for
+     * this version of MOA
+     */
+    public static int countRules(AMRulesRegressor regressor) {
+        if (RULE_SET == null) {
+            return -1;
+        }
+        try {
+            List<?> rules = (List<?>) RULE_SET.get(regressor);
+            return rules == null ? 0 : rules.size();
+        } catch (IllegalAccessException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * @param regressor the regressor
+     * @return number of literals of the rules of the regressor, not counting the default rule, or -1 if they cannot
+     * be counted for this version of MOA
+     */
+    public static int countLiterals(AMRulesRegressor regressor) {
+        if (RULE_SET == null) {
+            return -1;
+        }
+        try {
+            List<?> rules = (List<?>) RULE_SET.get(regressor);
+            if (rules == null) {
+                return 0;
+            }
+            int noOfLiterals = 0;
+            for (Object rule : rules) {
+                List<?> literals = (List<?>) LITERALS.get(rule);
+                noOfLiterals += literals == null ? 0 : literals.size();
+            }
+            return noOfLiterals;
+        } catch (IllegalAccessException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Predict the target, the same as {@link AMRulesRegressor#getVotesForInstance} does for the rule set when it
+     * was compiled.
+     *
+     * @param features values of the feature attributes
+     * @return the prediction
+     */
+    public double predict(double[] features) {
+        for (int rule = 0; rule < noOfRules; rule++) {
+            if (isCovering(rule, features)) {
+                // rules are ordered, hence only the first rule which covers the event votes
+                if (predictionKinds[rule] != NO_PREDICTION) {
+                    return weightedVote(rule, features);
+                }
+                break;
+            }
+        }
+        return predictionKinds[noOfRules] != NO_PREDICTION ? weightedVote(noOfRules, features) : 0.0;
+    }
+
+    /**
+     * @return number of rules, not counting the default rule
+     */
+    public int getNoOfRules() {
+        return noOfRules;
+    }
+
+    private boolean isCovering(int rule, double[] features) {
+        for (int i = literalOffsets[rule]; i < literalOffsets[rule + 1]; i++) {
+            double value = features[literalAttributes[i]];
+            if (Double.isNaN(value) || (value <= literalThresholds[i]) != literalEqualOrLower[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Vote of a single rule, weighted the same way as InverseErrorWeightedVoteMultiLabel weights it
+     */
+    private double weightedVote(int rule, double[] features) {
+        double weight = 1.0 / (errors[rule] + EPS);
+        double sumOfWeights = weight;
+        weight = sumOfWeights > 0.0 ? weight / sumOfWeights : 1.0;
+        return 0.0 + prediction(rule, features) * weight;
+    }
+
+    private double prediction(int rule, double[] features) {
+        if (predictionKinds[rule] == TARGET_MEAN) {
+            return targetMeans[rule];
+        }
+        // the prediction of the perceptron, computed the same way
+        double prediction = 0.0;
+        for (int i = weightOffsets[rule]; i < weightOffsets[rule + 1]; i++) {
+            double stdDev = attributeStdDevs[i];
+            double normalizedValue = stdDev > SD_THRESHOLD
+                    ? (features[weightAttributes[i]] - attributeMeans[i]) / stdDev
+                    : features[weightAttributes[i]] - attributeMeans[i];
+            prediction += weights[i] * normalizedValue;
+        }
+        prediction += biases[rule];
+        double targetStdDev = targetStdDevs[rule];
+        return targetStdDev > SD_THRESHOLD ? prediction * targetStdDev + targetMeans[rule]
+                : prediction + targetMeans[rule];
+    }
+
+    private void addAntecedent(int rule, List<Literal> literals) throws IllegalAccessException {
+        literalOffsets[rule] = noOfLiterals;
+        for (Literal literal : literals) {
+            Object predicate = PREDICATE.get(literal);
+            if (!(predicate instanceof NumericRulePredicate)) {
+                throw new UnsupportedOperationException("Predicate " + predicate + " cannot be compiled");
+            }
+            NumericRulePredicate numericPredicate = (NumericRulePredicate) predicate;
+            if (noOfLiterals == literalAttributes.length) {
+                int capacity = noOfLiterals << 1;
+                literalAttributes = Arrays.copyOf(literalAttributes, capacity);
+                literalThresholds = Arrays.copyOf(literalThresholds, capacity);
+                literalEqualOrLower = Arrays.copyOf(literalEqualOrLower, capacity);
+            }
+            literalAttributes[noOfLiterals] = numericPredicate.getAttributeIndex();
+            literalThresholds[noOfLiterals] = ATTRIBUTE_VALUE.getDouble(numericPredicate);
+            literalEqualOrLower[noOfLiterals] = numericPredicate.isEqualOrLess();
+            noOfLiterals++;
+        }
+    }
+
+    /**
+     * Add the learner which the rule predicts with, as chosen by AdaptiveMultiTargetRegressor
+     */
+    private void addConsequent(int rule, MultiLabelRule multiLabelRule) throws IllegalAccessException {
+        weightOffsets[rule + 1] = noOfWeights;
+        double[] ruleErrors = multiLabelRule.getCurrentErrors();
+        errors[rule] = ruleErrors == null ? DEFAULT_ERROR : ruleErrors[0];
+        LearningLiteral learningLiteral = multiLabelRule.getLearningNode();
+        Object learner = LEARNER.get(learningLiteral);
+        if (learner == null) {
+            predictionKinds[rule] = NO_PREDICTION;
+            return;
+        }
+        Object instanceTransformer = INSTANCE_TRANSFORMER.get(learningLiteral);
+        boolean selectsTarget = isTargetSelector(instanceTransformer);
+        if (!(learner instanceof AdaptiveMultiTargetRegressor)
+                || !selectsTarget && !(instanceTransformer instanceof NoInstanceTransformation)) {
+            throw new UnsupportedOperationException("Learner " + learner.getClass().getName() + " cannot be "
+                    + "compiled");
+        }
+        if (!ADAPTIVE_HAS_STARTED.getBoolean(learner)) {
+            if (selectsTarget) {
+                // MOA does not predict with a selector over a learner which has not started
+                throw new UnsupportedOperationException("Learner which has not started cannot be compiled");
+            }
+            predictionKinds[rule] = NO_PREDICTION;
+            return;
+        }
+        Object[] baseLearners = (Object[]) BASE_LEARNERS.get(learner);
+        MultiTargetErrorMeasurer[] errorMeasurers = (MultiTargetErrorMeasurer[]) ERROR_MEASURERS.get(learner);
+        int bestIndex = 0;
+        double minError = Double.MAX_VALUE;
+        for (int i = 0; i < baseLearners.length; i++) {
+            double error = errorMeasurers[i].getCurrentError();
+            if (error < minError) {
+                minError = error;
+                bestIndex = i;
+            }
+        }
+        Object baseLearner = baseLearners[bestIndex];
+        if (!(baseLearner instanceof BasicMultiLabelLearner)) {
+            throw new UnsupportedOperationException("Learner " + baseLearner.getClass().getName() + " cannot be "
+                    + "compiled");
+        }
+        if (!BASIC_HAS_STARTED.getBoolean(baseLearner)) {
+            if (selectsTarget) {
+                throw new UnsupportedOperationException("Learner which has not started cannot be compiled");
+            }
+            predictionKinds[rule] = NO_PREDICTION;
+            return;
+        }
+        Classifier[] ensemble = (Classifier[]) ENSEMBLE.get(baseLearner);
+        if (ensemble.length != 1) {
+            throw new UnsupportedOperationException("Learners of " + ensemble.length + " targets cannot be compiled");
+        }
+        if (ensemble[0] instanceof TargetMean) {
+            double n = MEAN_N.getDouble(ensemble[0]);
+            predictionKinds[rule] = TARGET_MEAN;
+            targetMeans[rule] = n > 0.0 ? MEAN_SUM.getDouble(ensemble[0]) / n : 0.0;
+        } else if (ensemble[0] instanceof Perceptron) {
+            addPerceptron(rule, (Perceptron) ensemble[0]);
+        } else {
+            throw new UnsupportedOperationException("Learner " + ensemble[0].getClass().getName() + " cannot be "
+                    + "compiled");
+        }
+    }
+
+    /**
+     * @return whether the transformer of the instances of a rule selects the only target, leaving the instance as
+     * it is. Rules are given such a transformer once they are expanded.
+     */
+    private static boolean isTargetSelector(Object instanceTransformer) {
+        if (!(instanceTransformer instanceof InstanceOutputAttributesSelector)) {
+            return false;
+        }
+        InstanceOutputAttributesSelector selector = (InstanceOutputAttributesSelector) instanceTransformer;
+        return selector.numSourceInstancesOutputs == 1 && selector.targetOutputIndices.length == 1
+                && selector.targetOutputIndices[0] == 0;
+    }
+
+    private void addPerceptron(int rule, Perceptron perceptron) throws IllegalAccessException {
+        if (INITIALISE_PERCEPTRON.getBoolean(perceptron)) {
+            // the perceptron predicts 0 until it is trained
+            predictionKinds[rule] = TARGET_MEAN;
+            targetMeans[rule] = 0.0;
+            return;
+        }
+        predictionKinds[rule] = PERCEPTRON;
+        int[] numericAttributes = (int[]) NUMERIC_ATTRIBUTES.get(perceptron);
+        double[] perceptronWeights = (double[]) WEIGHTS.get(perceptron);
+        double ySeen = Y_SEEN.getDouble(perceptron);
+        double sumY = SUM_Y.getDouble(perceptron);
+        if (noOfWeights + numericAttributes.length > weights.length) {
+            int capacity = Math.max(weights.length << 1, noOfWeights + numericAttributes.length);
+            weightAttributes = Arrays.copyOf(weightAttributes, capacity);
+            weights = Arrays.copyOf(weights, capacity);
+            attributeMeans = Arrays.copyOf(attributeMeans, capacity);
+            attributeStdDevs = Arrays.copyOf(attributeStdDevs, capacity);
+        }
+        for (int j = 0; j < numericAttributes.length; j++) {
+            double sum = perceptron.perceptronattributeStatistics.getValue(j);
+            weightAttributes[noOfWeights] = numericAttributes[j];
+            weights[noOfWeights] = perceptronWeights[j];
+            attributeMeans[noOfWeights] = sum / ySeen;
+            attributeStdDevs[noOfWeights] = perceptron.computeSD(
+                    perceptron.squaredperceptronattributeStatistics.getValue(j), sum, ySeen);
+            noOfWeights++;
+        }
+        weightOffsets[rule + 1] = noOfWeights;
+        biases[rule] = perceptronWeights[numericAttributes.length];
+        targetMeans[rule] = sumY / ySeen;
+        targetStdDevs[rule] = perceptron.computeSD(SQUARED_SUM_Y.getDouble(perceptron), sumY, ySeen);
+    }
+}
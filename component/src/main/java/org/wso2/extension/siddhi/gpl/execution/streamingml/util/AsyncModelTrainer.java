@@ -0,0 +1,259 @@
+/*
+ * Copyright (C) 2017 WSO2 Inc. (http://wso2.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.wso2.extension.siddhi.gpl.execution.streamingml.util;
+
+import io.siddhi.core.exception.SiddhiAppCreationException;
+import io.siddhi.core.util.config.ConfigReader;
+import org.apache.log4j.Logger;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Trains a model on a dedicated worker thread, so that the event processing thread only enqueues the features of
+ * the events and returns. The worker is the single writer of the model.
+ * <p>
+ * Events are passed through a bounded ring buffer of pre-allocated rows, written by a single producer, the stream
+ * processor which owns the trainer, and read by the worker. Events arriving while the buffer is full are handled as
+ * per the {@link BackpressurePolicy}.
+ */
+public class AsyncModelTrainer {
+    private static final Logger logger = Logger.getLogger(AsyncModelTrainer.class);
+
+    public static final String TRAINING_MODE = "trainingMode";
+    public static final String TRAINING_QUEUE_SIZE = "trainingQueueSize";
+    public static final String BACKPRESSURE_POLICY = "backpressurePolicy";
+    public static final String SYNC_TRAINING_MODE = "sync";
+    public static final String ASYNC_TRAINING_MODE = "async";
+    public static final String DEFAULT_TRAINING_QUEUE_SIZE = "1024";
+
+    private static final long WAIT_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    private static final long IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final String modelName;
+    private final TrainingFunction trainingFunction;
+    private final BackpressurePolicy backpressurePolicy;
+    private final int rowLength;
+    private final int mask;
+    private final double[][] rows;
+    private final Object[] labels;
+
+    // index of the next row to be trained on. Advanced by the worker, and by the producer when dropping rows.
+    private final AtomicLong head = new AtomicLong();
+    // index of the next row to be written. Advanced only by the producer.
+    private final AtomicLong tail = new AtomicLong();
+
+    private volatile boolean running;
+    private volatile boolean workerWaiting;
+    private volatile boolean training;
+    private volatile Thread worker;
+
+    private long sampledEvents;
+    private boolean dropping;
+
+    /**
+     * Trains the model on the features of an event
+     */
+    @FunctionalInterface
+    public interface TrainingFunction {
+        /**
+         * @param features features of the event. The array is reused for the next event.
+         * @param label    label of the event, or null if there is no label
+         */
+        void train(double[] features, Object label);
+    }
+
+    /**
+     * @param modelName          name of the model, used for the worker thread name and in the logs
+     * @param queueSize          number of events which can be queued, rounded up to a power of two
+     * @param rowLength          number of values per event
+     * @param backpressurePolicy how events arriving while the queue is full are handled
+     * @param trainingFunction   trains the model on an event
+     */
+    public AsyncModelTrainer(String modelName, int queueSize, int rowLength, BackpressurePolicy backpressurePolicy,
+                             TrainingFunction trainingFunction) {
+        int capacity = queueSize <= 1 ? 1 : Integer.highestOneBit(queueSize - 1) << 1;
+        this.modelName = modelName;
+        this.trainingFunction = trainingFunction;
+        this.backpressurePolicy = backpressurePolicy;
+        this.rowLength = rowLength;
+        this.mask = capacity - 1;
+        this.rows = new double[capacity][rowLength];
+        this.labels = new Object[capacity];
+    }
+
+    /**
+     * Create a trainer as per the system parameters of the extension.
+     *
+     * @return the trainer, or null if the model should be trained on the event processing thread
+     */
+    public static AsyncModelTrainer fromConfig(ConfigReader configReader, String modelName, int rowLength,
+                                               TrainingFunction trainingFunction) {
+        String trainingMode = configReader.readConfig(TRAINING_MODE, SYNC_TRAINING_MODE);
+        if (SYNC_TRAINING_MODE.equalsIgnoreCase(trainingMode)) {
+            return null;
+        } else if (!ASYNC_TRAINING_MODE.equalsIgnoreCase(trainingMode)) {
+            throw new SiddhiAppCreationException(String.format("Training mode should be either %s or %s but "
+                    + "found %s", SYNC_TRAINING_MODE, ASYNC_TRAINING_MODE, trainingMode));
+        }
+        String queueSizeConfig = configReader.readConfig(TRAINING_QUEUE_SIZE, DEFAULT_TRAINING_QUEUE_SIZE);
+        int queueSize;
+        try {
+            queueSize = Integer.parseInt(queueSizeConfig.trim());
+        } catch (NumberFormatException e) {
+            throw new SiddhiAppCreationException("Training queue size should be a positive integer but found "
+                    + queueSizeConfig, e);
+        }
+        if (queueSize <= 0) {
+            throw new SiddhiAppCreationException("Training queue size should be a positive integer but found "
+                    + queueSize);
+        }
+        BackpressurePolicy backpressurePolicy = BackpressurePolicy.fromConfigValue(configReader.readConfig(
+                BACKPRESSURE_POLICY, BackpressurePolicy.BLOCK.getConfigValue()));
+        if (logger.isDebugEnabled()) {
+            logger.debug(String.format("Model [%s] is trained asynchronously with a queue of %s events and the "
+                    + "%s backpressure policy.", modelName, queueSize, backpressurePolicy.getConfigValue()));
+        }
+        return new AsyncModelTrainer(modelName, queueSize, rowLength, backpressurePolicy, trainingFunction);
+    }
+
+    public synchronized void start() {
+        if (worker != null) {
+            return;
+        }
+        running = true;
+        worker = new Thread(this::work, "streamingml-trainer-" + modelName);
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Stop the worker once it has trained on the queued events
+     */
+    public synchronized void stop() {
+        if (worker == null) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(worker);
+        try {
+            worker.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        worker = null;
+    }
+
+    /**
+     * Queue an event for training. Must be called from one thread at a time.
+     *
+     * @param features features of the event, copied into the queue
+     * @param label    label of the event, or null if there is no label
+     * @return false if the event was discarded due to backpressure
+     */
+    public boolean offer(double[] features, Object label) {
+        long t = tail.get();
+        long queued = t - head.get();
+        if (queued > mask) {
+            switch (backpressurePolicy) {
+                case BLOCK:
+                    while (t - head.get() > mask) {
+                        if (!running) {
+                            // the worker has stopped, hence the space would never be made
+                            return false;
+                        }
+                        LockSupport.parkNanos(this, WAIT_NANOS);
+                    }
+                    break;
+                case DROP_OLDEST:
+                    long h = head.get();
+                    // fails only if the worker took the row meanwhile, which makes the space as well
+                    if (t - h > mask && head.compareAndSet(h, h + 1)) {
+                        onDropped();
+                    }
+                    break;
+                default:
+                    onDropped();
+                    return false;
+            }
+        } else if (backpressurePolicy == BackpressurePolicy.SAMPLE && queued > (mask >> 1)
+                && (sampledEvents++ & 1) == 1) {
+            onDropped();
+            return false;
+        } else {
+            dropping = false;
+        }
+        int index = (int) (t & mask);
+        System.arraycopy(features, 0, rows[index], 0, rowLength);
+        labels[index] = label;
+        tail.lazySet(t + 1);
+        if (workerWaiting) {
+            LockSupport.unpark(worker);
+        }
+        return true;
+    }
+
+    /**
+     * Wait until the worker has trained on the queued events
+     */
+    public void flush() {
+        Thread worker = this.worker;
+        while ((head.get() != tail.get() || training) && worker != null && worker.isAlive()) {
+            LockSupport.parkNanos(this, WAIT_NANOS);
+        }
+    }
+
+    private void onDropped() {
+        if (!dropping) {
+            dropping = true;
+            logger.warn(String.format("Training queue of model [%s] is full. Events are discarded as per the "
+                    + "%s backpressure policy.", modelName, backpressurePolicy.getConfigValue()));
+        }
+    }
+
+    private void work() {
+        double[] features = new double[rowLength];
+        while (true) {
+            long h = head.get();
+            if (h == tail.get()) {
+                if (!running) {
+                    return;
+                }
+                workerWaiting = true;
+                if (head.get() == tail.get() && running) {
+                    LockSupport.parkNanos(this, IDLE_NANOS);
+                }
+                workerWaiting = false;
+                continue;
+            }
+            training = true;
+            int index = (int) (h & mask);
+            System.arraycopy(rows[index], 0, features, 0, rowLength);
+            Object label = labels[index];
+            // the row is discarded if the producer dropped it while it was being read
+            if (head.compareAndSet(h, h + 1)) {
+                try {
+                    trainingFunction.train(features, label);
+                } catch (RuntimeException e) {
+                    logger.error(String.format("Error while training model [%s]", modelName), e);
+                }
+            }
+            training = false;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2017 WSO2 Inc. (http://wso2.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.wso2.extension.siddhi.gpl.execution.streamingml.util;
+
+import io.siddhi.core.exception.SiddhiAppCreationException;
+
+/**
+ * What an {@link AsyncModelTrainer} does with the events it receives faster than the model is trained on them
+ */
+public enum BackpressurePolicy {
+    /**
+     * The event processing thread waits until there is space in the training queue
+     */
+    BLOCK("block"),
+    /**
+     * The oldest queued event is discarded to make space for the new one
+     */
+    DROP_OLDEST("dropOldest"),
+    /**
+     * Once the training queue is half full every second event is discarded, and every event once it is full
+     */
+    SAMPLE("sample");
+
+    private final String configValue;
+
+    BackpressurePolicy(String configValue) {
+        this.configValue = configValue;
+    }
+
+    public String getConfigValue() {
+        return configValue;
+    }
+
+    public static BackpressurePolicy fromConfigValue(String configValue) {
+        for (BackpressurePolicy policy : values()) {
+            if (policy.configValue.equalsIgnoreCase(configValue)) {
+                return policy;
+            }
+        }
+        throw new SiddhiAppCreationException(String.format("Backpressure policy should be either block, "
+                + "dropOldest or sample but found %s", configValue));
+    }
+}
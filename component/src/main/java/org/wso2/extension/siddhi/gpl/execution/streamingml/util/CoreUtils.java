@@ -26,6 +26,7 @@ import org.wso2.extension.siddhi.gpl.execution.streamingml.classification.hoeffd
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Common utils for Streaming Machine Learning tasks.
@@ -34,6 +35,8 @@ public class CoreUtils {
     private static final List<Attribute.Type> numericTypes = Arrays.asList(Attribute.Type.INT,
             Attribute.Type.DOUBLE, Attribute.Type.LONG, Attribute.Type.FLOAT);
     private static final List<Attribute.Type> labelTypes = Arrays.asList(Attribute.Type.STRING, Attribute.Type.BOOL);
+    private static final List<Attribute.Type> keyTypes = Arrays.asList(Attribute.Type.STRING, Attribute.Type.INT,
+            Attribute.Type.LONG);
 
     /**
      * Get index of the Maximum from double array
@@ -152,6 +155,32 @@ public class CoreUtils {
         return classLabelVariableExecutor;
     }
 
+    /**
+     * Validate and extract the executor of the key attribute of a keyed stream processor
+     * @param inputDefinition the incoming stream definition
+     * @param attributeExpressionExecutors the executors of each function parameters
+     * @param keyIndex index of the key
+     * @return executor of key parameter
+     */
+    public static VariableExpressionExecutor extractAndValidateKey
+    (AbstractDefinition inputDefinition, ExpressionExecutor[] attributeExpressionExecutors, int keyIndex) {
+        if (!(attributeExpressionExecutors[keyIndex] instanceof VariableExpressionExecutor)) {
+            throw new SiddhiAppValidationException((keyIndex) + "th parameter is not " +
+                    "an attribute (VariableExpressionExecutor) present in the stream definition. Found a "
+                    + attributeExpressionExecutors[keyIndex].getClass().getCanonicalName());
+        }
+        VariableExpressionExecutor keyVariableExecutor =
+                (VariableExpressionExecutor) attributeExpressionExecutors[keyIndex];
+        Attribute.Type keyAttributeType = inputDefinition.getAttributeType(
+                keyVariableExecutor.getAttribute().getName());
+        if (!keyTypes.contains(keyAttributeType)) {
+            throw new SiddhiAppValidationException(String.format("[key attribute] in %s th index should be "
+                    + "either a %s, an %s or a %s but found %s", keyIndex, Attribute.Type.STRING,
+                    Attribute.Type.INT, Attribute.Type.LONG, keyAttributeType));
+        }
+        return keyVariableExecutor;
+    }
+
     /**
      * Check whether the model is initialized
      * @param model Instance of AdaptiveHoeffdingTree model
@@ -174,4 +203,20 @@ public class CoreUtils {
         }
         return initialized;
     }
+
+    /**
+     * Restore the Hoeffding model from a snapshot taken by {@link AdaptiveHoeffdingTreeModel#toSnapshot()}.
+     * Snapshots of the earlier releases, which map the model name to a copy of the model, are restored as well.
+     * @param model Instance of AdaptiveHoeffdingTree model
+     * @param state snapshot of the model
+     */
+    public static void restoreHoeffdingModel(AdaptiveHoeffdingTreeModel model, Object state) {
+        Object snapshot = state instanceof Map ? ((Map<?, ?>) state).get(model.getModelName()) : state;
+        if (snapshot instanceof byte[]) {
+            // decode before taking the lock of the model, so that restoring only swaps the state of it
+            model.restoreFrom(AdaptiveHoeffdingTreeModel.fromSnapshot(model.getModelName(), (byte[]) snapshot));
+        } else if (snapshot != null) {
+            model.restoreFrom((AdaptiveHoeffdingTreeModel) snapshot);
+        }
+    }
 }
@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2017 WSO2 Inc. (http://wso2.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.wso2.extension.siddhi.gpl.execution.streamingml.util;
+
+import io.siddhi.core.exception.SiddhiAppCreationException;
+import io.siddhi.core.util.config.ConfigReader;
+import org.apache.log4j.Logger;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.IntConsumer;
+
+/**
+ * Runs a task for each member of an ensemble on a fork-join pool, so that the members of an ensemble train and
+ * vote in parallel and an event takes about as long as it takes for its slowest member.
+ * <p>
+ * The pool is either the common pool of the JVM, or a pool of the executor started with the stream processor which
+ * owns it. Tasks run on the calling thread if the parallelism is 1 or the executor is stopped, including when it
+ * is stopped while a task is being submitted to its pool.
+ */
+public class EnsembleExecutor {
+    private static final Logger logger = Logger.getLogger(EnsembleExecutor.class);
+
+    public static final String ENSEMBLE_PARALLELISM = "ensembleParallelism";
+    public static final String COMMON_POOL = "common";
+
+    private final String modelName;
+    // number of threads of the pool of this executor, or 0 if the common pool is used
+    private final int parallelism;
+    private volatile ForkJoinPool pool;
+
+    /**
+     * @param modelName   name of the model, used in the logs
+     * @param parallelism number of threads of the pool of this executor, or 0 to use the common pool
+     */
+    public EnsembleExecutor(String modelName, int parallelism) {
+        this.modelName = modelName;
+        this.parallelism = parallelism;
+        if (parallelism == 0) {
+            pool = ForkJoinPool.commonPool();
+        }
+    }
+
+    /**
+     * Create an executor as per the system parameters of the extension
+     */
+    public static EnsembleExecutor fromConfig(ConfigReader configReader, String modelName) {
+        String parallelismConfig = configReader.readConfig(ENSEMBLE_PARALLELISM, COMMON_POOL).trim();
+        if (COMMON_POOL.equalsIgnoreCase(parallelismConfig)) {
+            return new EnsembleExecutor(modelName, 0);
+        }
+        int parallelism;
+        try {
+            parallelism = Integer.parseInt(parallelismConfig);
+        } catch (NumberFormatException e) {
+            throw new SiddhiAppCreationException(String.format("Ensemble parallelism should be either %s or a "
+                    + "positive integer but found %s", COMMON_POOL, parallelismConfig), e);
+        }
+        if (parallelism <= 0) {
+            throw new SiddhiAppCreationException(String.format("Ensemble parallelism should be either %s or a "
+                    + "positive integer but found %s", COMMON_POOL, parallelism));
+        }
+        return new EnsembleExecutor(modelName, parallelism);
+    }
+
+    public synchronized void start() {
+        if (parallelism > 1 && pool == null) {
+            if (logger.isDebugEnabled()) {
+                logger.debug(String.format("Members of model [%s] run on a pool of %s threads.", modelName,
+                        parallelism));
+            }
+            pool = new ForkJoinPool(parallelism);
+        }
+    }
+
+    public synchronized void stop() {
+        if (parallelism > 1 && pool != null) {
+            pool.shutdown();
+            pool = null;
+        }
+    }
+
+    /**
+     * Run the task for each member, and return once it has run for all of them. An exception thrown by the task
+     * is rethrown to the caller.
+     *
+     * @param noOfMembers number of members of the ensemble
+     * @param task        runs for the index of a member. Runs in parallel for different members.
+     */
+    public void forEach(int noOfMembers, IntConsumer task) {
+        ForkJoinPool pool = this.pool;
+        if (pool != null && noOfMembers > 1) {
+            MemberAction action = new MemberAction(task, 0, noOfMembers);
+            try {
+                pool.execute(action);
+            } catch (RejectedExecutionException e) {
+                // the pool was shut down by a concurrent stop after it was read. A rejected action has not run
+                // for any member, hence the members run on the calling thread instead. An action accepted before
+                // the shutdown still runs to completion.
+                action = null;
+            }
+            if (action != null) {
+                action.join();
+                return;
+            }
+        }
+        for (int i = 0; i < noOfMembers; i++) {
+            task.accept(i);
+        }
+    }
+
+    /**
+     * Runs the task for a range of members, forking the first half of the range until a single member is left
+     */
+    private static class MemberAction extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final IntConsumer task;
+        private final int from;
+        private final int to;
+
+        private MemberAction(IntConsumer task, int from, int to) {
+            this.task = task;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                task.accept(from);
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new MemberAction(task, from, middle), new MemberAction(task, middle, to));
+            }
+        }
+    }
+}
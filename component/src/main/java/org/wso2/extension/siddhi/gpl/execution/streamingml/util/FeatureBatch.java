@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2017 WSO2 Inc. (http://wso2.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.wso2.extension.siddhi.gpl.execution.streamingml.util;
+
+/**
+ * Reusable row-major buffer holding the features of the events of a chunk, along with a result per event.
+ * The buffer grows to the size of the largest chunk seen and is reused for the following chunks.
+ */
+public class FeatureBatch {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final int rowLength;
+    private double[][] rows;
+    private double[] results;
+    private int size;
+
+    /**
+     * @param rowLength number of values per event
+     */
+    public FeatureBatch(int rowLength) {
+        this.rowLength = rowLength;
+        this.rows = new double[INITIAL_CAPACITY][rowLength];
+        this.results = new double[INITIAL_CAPACITY];
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Append a row to the batch
+     *
+     * @return the row to be filled with the values of the event
+     */
+    public double[] nextRow() {
+        if (size == rows.length) {
+            grow();
+        }
+        return rows[size++];
+    }
+
+    public double[][] getRows() {
+        return rows;
+    }
+
+    public double[] getResults() {
+        return results;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void grow() {
+        int capacity = rows.length * 2;
+        double[][] newRows = new double[capacity][];
+        System.arraycopy(rows, 0, newRows, 0, rows.length);
+        for (int i = rows.length; i < capacity; i++) {
+            newRows[i] = new double[rowLength];
+        }
+        rows = newRows;
+        results = new double[capacity];
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2017 WSO2 Inc. (http://wso2.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.wso2.extension.siddhi.gpl.execution.streamingml.util;
+
+import io.siddhi.core.event.stream.StreamEvent;
+import io.siddhi.core.exception.SiddhiAppRuntimeException;
+import io.siddhi.core.executor.VariableExpressionExecutor;
+
+import java.util.List;
+
+import static io.siddhi.core.util.SiddhiConstants.BEFORE_WINDOW_DATA_INDEX;
+import static io.siddhi.core.util.SiddhiConstants.ON_AFTER_WINDOW_DATA_INDEX;
+import static io.siddhi.core.util.SiddhiConstants.STREAM_ATTRIBUTE_INDEX_IN_TYPE;
+import static io.siddhi.core.util.SiddhiConstants.STREAM_ATTRIBUTE_TYPE_INDEX;
+
+/**
+ * Reads the numeric feature attributes of a {@link StreamEvent} into a primitive buffer supplied by the caller.
+ * The attributes are read straight from the data arrays of the event, so that no expression executor is invoked
+ * and no object is created per event.
+ * <p>
+ * The positions of the attributes are assigned by Siddhi only after the stream processor is initialized, hence
+ * they are resolved from the {@link VariableExpressionExecutor}s when the first event arrives.
+ */
+public class FeatureExtractor {
+    private final VariableExpressionExecutor[] featureExecutors;
+    private final String modelName;
+    private final int[] dataTypeIndices;
+    private final int[] attributeIndices;
+    private volatile boolean resolved = false;
+
+    /**
+     * @param featureExecutors executors of the feature attributes, in the order of the features
+     * @param modelName        name of the model, used in the error messages. Can be null if there is no model name.
+     */
+    public FeatureExtractor(List<VariableExpressionExecutor> featureExecutors, String modelName) {
+        this.featureExecutors = featureExecutors.toArray(new VariableExpressionExecutor[0]);
+        this.modelName = modelName;
+        this.dataTypeIndices = new int[this.featureExecutors.length];
+        this.attributeIndices = new int[this.featureExecutors.length];
+    }
+
+    public int getNoOfFeatures() {
+        return featureExecutors.length;
+    }
+
+    /**
+     * Read the features of the event into the buffer, starting from index 0 of the buffer.
+     *
+     * @param streamEvent event to read the features from
+     * @param features    buffer with space for at least {@link #getNoOfFeatures()} values
+     */
+    public void extractFeatures(StreamEvent streamEvent, double[] features) {
+        if (!resolved) {
+            resolvePositions();
+        }
+        Object[] beforeWindowData = streamEvent.getBeforeWindowData();
+        Object[] onAfterWindowData = streamEvent.getOnAfterWindowData();
+        Object[] outputData = streamEvent.getOutputData();
+        for (int i = 0; i < attributeIndices.length; i++) {
+            Object[] data;
+            switch (dataTypeIndices[i]) {
+                case BEFORE_WINDOW_DATA_INDEX:
+                    data = beforeWindowData;
+                    break;
+                case ON_AFTER_WINDOW_DATA_INDEX:
+                    data = onAfterWindowData;
+                    break;
+                default:
+                    data = outputData;
+            }
+            Object value = data[attributeIndices[i]];
+            if (value instanceof Number) {
+                features[i] = ((Number) value).doubleValue();
+            } else {
+                throw createIncompatibleFeatureException(i, value);
+            }
+        }
+    }
+
+    private void resolvePositions() {
+        for (int i = 0; i < featureExecutors.length; i++) {
+            int[] position = featureExecutors[i].getPosition();
+            dataTypeIndices[i] = position[STREAM_ATTRIBUTE_TYPE_INDEX];
+            attributeIndices[i] = position[STREAM_ATTRIBUTE_INDEX_IN_TYPE];
+        }
+        resolved = true;
+    }
+
+    private SiddhiAppRuntimeException createIncompatibleFeatureException(int index, Object value) {
+        if (modelName != null) {
+            return new SiddhiAppRuntimeException(String.format("Incompatible attribute feature type"
+                    + " at position %s. Not of any numeric type. Please refer the stream definition "
+                    + "for Model[%s]", (index + 1), modelName));
+        } else {
+            return new SiddhiAppRuntimeException(String.format("Incompatible attribute feature type"
+                    + " at position %s. Expected int/float/double/long but found %s", (index + 1),
+                    value == null ? null : value.getClass()));
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2017 WSO2 Inc. (http://wso2.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.wso2.extension.siddhi.gpl.execution.streamingml.util;
+
+import io.siddhi.core.util.snapshot.SnapshotRequest;
+import io.siddhi.core.util.snapshot.state.Snapshot;
+import io.siddhi.core.util.snapshot.state.SnapshotStateList;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * Checkpoints the models of a {@link KeyedModelStore} incrementally.
+ * <p>
+ * A base holding the snapshots of all the models is followed by increments which only hold the snapshots of the
+ * models changed since the previous checkpoint and the keys of the evicted models, so that the size of a checkpoint
+ * follows the churn of the models rather than their number. The increments are compacted into a new base once
+ * there are {@link #MAX_NO_OF_INCREMENTS} of them, or once an increment would hold half of the models. Full
+ * checkpoints, taken when the state is not persisted to an incremental persistence store, are always bases.
+ *
+ * @param <M> type of the model
+ */
+public class KeyedModelCheckpoint<M> {
+    public static final int MAX_NO_OF_INCREMENTS = 100;
+    private static final int NO_BASE = -1;
+
+    private final KeyedModelStore<M> models;
+    private final Function<M, byte[]> encoder;
+    private final BiFunction<Object, byte[], M> decoder;
+    private int noOfIncrements = NO_BASE;
+
+    /**
+     * @param models  models checkpointed
+     * @param encoder writes the snapshot of a model
+     * @param decoder reads the model of a key from its snapshot
+     */
+    public KeyedModelCheckpoint(KeyedModelStore<M> models, Function<M, byte[]> encoder,
+                                BiFunction<Object, byte[], M> decoder) {
+        this.models = models;
+        this.encoder = encoder;
+        this.decoder = decoder;
+    }
+
+    /**
+     * @return the snapshot of the models, or null if no model has changed since the last checkpoint
+     */
+    public Snapshot snapshot() {
+        boolean base = noOfIncrements == NO_BASE || noOfIncrements >= MAX_NO_OF_INCREMENTS
+                || SnapshotRequest.isRequestForFullSnapshot();
+        KeyedModelStore.Changes<M> changes = models.collectChanges(base);
+        if (!base && changes.size() == 0) {
+            return null;
+        }
+        if (!base && 2 * changes.size() >= models.size()) {
+            base = true;
+            changes.getChangedModels().putAll(models.getModels());
+        }
+        HashMap<Object, byte[]> snapshots = new HashMap<>();
+        for (Map.Entry<Object, M> entry : changes.getChangedModels().entrySet()) {
+            snapshots.put(entry.getKey(), encoder.apply(entry.getValue()));
+        }
+        if (base) {
+            noOfIncrements = 0;
+            return new Snapshot(snapshots, false);
+        }
+        noOfIncrements++;
+        return new Snapshot(new Increment(snapshots, new HashSet<>(changes.getRemovedKeys())), true);
+    }
+
+    /**
+     * Restore the models from the base and the increments restored by Siddhi. The next checkpoint is a base.
+     *
+     * @param restoredState state restored by Siddhi
+     */
+    @SuppressWarnings("unchecked")
+    public void restore(Object restoredState) {
+        models.clear();
+        if (restoredState instanceof SnapshotStateList) {
+            for (Snapshot snapshot : ((SnapshotStateList) restoredState).getSnapshotStates().values()) {
+                if (snapshot.isIncrementalSnapshot()) {
+                    Increment increment = (Increment) snapshot.getState();
+                    for (Object key : increment.removedKeys) {
+                        models.removeModel(key);
+                    }
+                    putModels(increment.snapshots);
+                } else {
+                    models.clear();
+                    putModels((Map<Object, byte[]>) snapshot.getState());
+                }
+            }
+        } else if (restoredState != null) {
+            putModels((Map<Object, byte[]>) restoredState);
+        }
+        noOfIncrements = NO_BASE;
+    }
+
+    private void putModels(Map<Object, byte[]> snapshots) {
+        for (Map.Entry<Object, byte[]> entry : snapshots.entrySet()) {
+            models.putModel(entry.getKey(), decoder.apply(entry.getKey(), entry.getValue()));
+        }
+    }
+
+    /**
+     * Snapshots of the models changed since the previous checkpoint and the keys of the evicted models
+     */
+    private static class Increment implements Serializable {
+        private static final long serialVersionUID = 1L;
+        private final HashMap<Object, byte[]> snapshots;
+        private final HashSet<Object> removedKeys;
+
+        private Increment(HashMap<Object, byte[]> snapshots, HashSet<Object> removedKeys) {
+            this.snapshots = snapshots;
+            this.removedKeys = removedKeys;
+        }
+    }
+}
@@ -0,0 +1,338 @@
+/*
+ * Copyright (C) 2017 WSO2 Inc. (http://wso2.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.wso2.extension.siddhi.gpl.execution.streamingml.util;
+
+import io.siddhi.core.exception.SiddhiAppCreationException;
+import io.siddhi.core.util.config.ConfigReader;
+import org.apache.log4j.Logger;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Keeps a model per key for the keyed stream processors, creating the model of a key when the key is first seen.
+ * <p>
+ * The number of models is bounded. The bound is a count of models rather than of bytes, as the size of a MOA model
+ * is not known without walking it. Once the bound is reached, the least recently used model is evicted, and models
+ * which have not been used for the idle timeout are evicted as well. The models are spread over shards which are
+ * locked independently, so that threads using models of different shards do not wait for each other.
+ * <p>
+ * The store tracks the keys whose models have been used or added, hence possibly changed, and the keys whose models
+ * have been evicted, so that checkpoints only need to write the models changed since the last checkpoint.
+ *
+ * @param <M> type of the model
+ */
+public class KeyedModelStore<M> {
+    private static final Logger logger = Logger.getLogger(KeyedModelStore.class);
+
+    public static final String MAX_NO_OF_MODELS = "maxNoOfModels";
+    public static final String MODEL_IDLE_TIMEOUT = "modelIdleTimeout";
+    public static final String DEFAULT_MAX_NO_OF_MODELS = "10000";
+    public static final String DEFAULT_MODEL_IDLE_TIMEOUT = "0";
+
+    private static final int MAX_NO_OF_SHARDS = 16;
+
+    private final Shard<M>[] shards;
+    private final int maxNoOfModels;
+    private final long idleTimeoutMillis;
+    private final long idleTimeoutNanos;
+    private final Function<Object, ? extends M> factory;
+
+    /**
+     * @param maxNoOfModels     maximum number of models kept
+     * @param idleTimeoutMillis models not used for this long are evicted. 0 disables the idle eviction.
+     * @param factory           creates the model of a key
+     */
+    @SuppressWarnings("unchecked")
+    public KeyedModelStore(int maxNoOfModels, long idleTimeoutMillis, Function<Object, ? extends M> factory) {
+        int noOfShards = Math.min(MAX_NO_OF_SHARDS, Integer.highestOneBit(maxNoOfModels));
+        this.shards = new Shard[noOfShards];
+        for (int i = 0; i < noOfShards; i++) {
+            // the remainder of the models is spread over the first shards, so that the capacities add up to the bound
+            int capacity = maxNoOfModels / noOfShards + (i < maxNoOfModels % noOfShards ? 1 : 0);
+            shards[i] = new Shard<>(capacity);
+        }
+        this.maxNoOfModels = maxNoOfModels;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis);
+        this.factory = factory;
+    }
+
+    /**
+     * Create a store as per the system parameters of the extension
+     */
+    public static <M> KeyedModelStore<M> fromConfig(ConfigReader configReader,
+                                                    Function<Object, ? extends M> factory) {
+        int maxNoOfModels = (int) readLong(configReader, MAX_NO_OF_MODELS, DEFAULT_MAX_NO_OF_MODELS,
+                "Maximum number of models", 1, Integer.MAX_VALUE);
+        long idleTimeout = readLong(configReader, MODEL_IDLE_TIMEOUT, DEFAULT_MODEL_IDLE_TIMEOUT,
+                "Model idle timeout", 0, Long.MAX_VALUE / 1000000L);
+        return new KeyedModelStore<>(maxNoOfModels, idleTimeout, factory);
+    }
+
+    private static long readLong(ConfigReader configReader, String name, String defaultValue,
+                                 String description, long min, long max) {
+        String config = configReader.readConfig(name, defaultValue);
+        try {
+            long value = Long.parseLong(config.trim());
+            if (value >= min && value <= max) {
+                return value;
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new SiddhiAppCreationException(String.format("%s should be an integer between %s and %s but "
+                + "found %s", description, min, max, config));
+    }
+
+    /**
+     * @return an empty store with the same bounds and model factory as this store
+     */
+    public KeyedModelStore<M> newEmptyStore() {
+        return new KeyedModelStore<>(maxNoOfModels, idleTimeoutMillis, factory);
+    }
+
+    /**
+     * Return the model of the key, creating it if the key has no model
+     */
+    public M getModel(Object key) {
+        Shard<M> shard = shardOf(key);
+        synchronized (shard) {
+            long now = System.nanoTime();
+            if (idleTimeoutNanos > 0) {
+                shard.evictIdleModels(now - idleTimeoutNanos);
+            }
+            Entry<M> entry = shard.get(key);
+            if (entry == null) {
+                entry = new Entry<>(factory.apply(key));
+                shard.put(key, entry);
+            }
+            entry.lastUsed = now;
+            shard.markChanged(key, entry);
+            return entry.model;
+        }
+    }
+
+    /**
+     * Return the model of the key without creating it, e.g., to predict with it. The model counts as used, so that
+     * it is evicted after the models which are neither trained nor used for predictions, while it is not taken to be
+     * changed.
+     *
+     * @return the model, or null if the key has no model
+     */
+    public M findModel(Object key) {
+        Shard<M> shard = shardOf(key);
+        synchronized (shard) {
+            Entry<M> entry = shard.get(key);
+            if (entry == null) {
+                return null;
+            }
+            entry.lastUsed = System.nanoTime();
+            return entry.model;
+        }
+    }
+
+    /**
+     * Add or replace the model of a key
+     */
+    public void putModel(Object key, M model) {
+        Shard<M> shard = shardOf(key);
+        synchronized (shard) {
+            Entry<M> entry = new Entry<>(model);
+            entry.lastUsed = System.nanoTime();
+            shard.put(key, entry);
+            shard.markChanged(key, entry);
+        }
+    }
+
+    /**
+     * Remove the model of a key
+     */
+    public void removeModel(Object key) {
+        Shard<M> shard = shardOf(key);
+        synchronized (shard) {
+            if (shard.remove(key) != null) {
+                shard.markRemoved(key);
+            }
+        }
+    }
+
+    /**
+     * Collect the changes since the changes were last collected, and track the changes afresh from now on.
+     *
+     * @param allModels whether all the models are collected as changed, e.g., for a full checkpoint
+     * @return the changed models and the keys of the evicted models
+     */
+    public Changes<M> collectChanges(boolean allModels) {
+        Changes<M> changes = new Changes<>();
+        for (Shard<M> shard : shards) {
+            synchronized (shard) {
+                if (allModels) {
+                    for (Map.Entry<Object, Entry<M>> entry : shard.entrySet()) {
+                        changes.changedModels.put(entry.getKey(), entry.getValue().model);
+                    }
+                } else {
+                    for (Map.Entry<Object, Entry<M>> entry : shard.changedEntries.entrySet()) {
+                        changes.changedModels.put(entry.getKey(), entry.getValue().model);
+                    }
+                    changes.removedKeys.addAll(shard.removedKeys);
+                }
+                for (Entry<M> entry : shard.changedEntries.values()) {
+                    entry.changed = false;
+                }
+                shard.changedEntries.clear();
+                shard.removedKeys.clear();
+            }
+        }
+        return changes;
+    }
+
+    /**
+     * @return the models keyed by their keys. The map is a copy, while the models are not.
+     */
+    public Map<Object, M> getModels() {
+        Map<Object, M> models = new HashMap<>();
+        for (Shard<M> shard : shards) {
+            synchronized (shard) {
+                for (Map.Entry<Object, Entry<M>> entry : shard.entrySet()) {
+                    models.put(entry.getKey(), entry.getValue().model);
+                }
+            }
+        }
+        return models;
+    }
+
+    public void clear() {
+        for (Shard<M> shard : shards) {
+            synchronized (shard) {
+                shard.clear();
+                shard.changedEntries.clear();
+                shard.removedKeys.clear();
+            }
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Shard<M> shard : shards) {
+            synchronized (shard) {
+                size += shard.size();
+            }
+        }
+        return size;
+    }
+
+    private Shard<M> shardOf(Object key) {
+        int hash = key == null ? 0 : key.hashCode();
+        return shards[(hash ^ (hash >>> 16)) & (shards.length - 1)];
+    }
+
+    /**
+     * Changes of the models of a store, collected by {@link #collectChanges(boolean)}
+     *
+     * @param <M> type of the model
+     */
+    public static class Changes<M> {
+        private final Map<Object, M> changedModels = new HashMap<>();
+        private final Set<Object> removedKeys = new HashSet<>();
+
+        public Map<Object, M> getChangedModels() {
+            return changedModels;
+        }
+
+        public Set<Object> getRemovedKeys() {
+            return removedKeys;
+        }
+
+        public int size() {
+            return changedModels.size() + removedKeys.size();
+        }
+    }
+
+    private static class Entry<M> {
+        private final M model;
+        private long lastUsed;
+        private boolean changed;
+
+        private Entry(M model) {
+            this.model = model;
+        }
+    }
+
+    /**
+     * Models of a shard in the order of their use, the least recently used first
+     */
+    private static class Shard<M> extends LinkedHashMap<Object, Entry<M>> {
+        private static final long serialVersionUID = 1L;
+        private final int capacity;
+        // kept apart from the map of the shard, as looking up the map would change the order of use of the models
+        private final Map<Object, Entry<M>> changedEntries = new HashMap<>();
+        private final Set<Object> removedKeys = new HashSet<>();
+
+        private Shard(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Object, Entry<M>> eldest) {
+            if (size() > capacity) {
+                if (logger.isDebugEnabled()) {
+                    logger.debug(String.format("Model of key [%s] is evicted as the maximum number of models is "
+                            + "reached.", eldest.getKey()));
+                }
+                markRemoved(eldest.getKey());
+                return true;
+            }
+            return false;
+        }
+
+        private void evictIdleModels(long lastUsedBefore) {
+            Iterator<Map.Entry<Object, Entry<M>>> iterator = entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<Object, Entry<M>> entry = iterator.next();
+                if (entry.getValue().lastUsed - lastUsedBefore >= 0) {
+                    break;
+                }
+                if (logger.isDebugEnabled()) {
+                    logger.debug(String.format("Model of key [%s] is evicted as it has been idle.", entry.getKey()));
+                }
+                markRemoved(entry.getKey());
+                iterator.remove();
+            }
+        }
+
+        private void markChanged(Object key, Entry<M> entry) {
+            if (!entry.changed) {
+                entry.changed = true;
+                changedEntries.put(key, entry);
+                removedKeys.remove(key);
+            }
+        }
+
+        private void markRemoved(Object key) {
+            changedEntries.remove(key);
+            removedKeys.add(key);
+        }
+    }
+}
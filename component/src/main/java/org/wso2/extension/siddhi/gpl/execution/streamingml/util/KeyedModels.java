@@ -0,0 +1,39 @@
+/*
+ * Copyright (C) 2017 WSO2 Inc. (http://wso2.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.wso2.extension.siddhi.gpl.execution.streamingml.util;
+
+/**
+ * Family of models built per key by a keyed updater, as seen by the stream processors predicting with them.
+ *
+ * @param <M> type of the model
+ */
+public interface KeyedModels<M> {
+
+    /**
+     * Return the model of the key, without creating one if the key has no model yet
+     *
+     * @param key the key
+     * @return the model, or null if there is no model for the key
+     */
+    M findModel(Object key);
+
+    /**
+     * @return a model configured as the models of the family, which is never trained, so that the predictors can
+     * validate their features against it
+     */
+    M getPrototype();
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright (C) 2017 WSO2 Inc. (http://wso2.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.wso2.extension.siddhi.gpl.execution.streamingml.util;
+
+import io.siddhi.core.exception.SiddhiAppCreationException;
+import io.siddhi.core.exception.SiddhiAppRuntimeException;
+import io.siddhi.core.util.config.ConfigReader;
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Keeps the binary snapshots of the models in memory-mapped files, one file per model named after the
+ * siddhiAppName.modelName of the model, so that a restarted node maps the latest snapshot of a model and uses it
+ * right away instead of waiting for the Siddhi app state to be restored.
+ * <p>
+ * A Hoeffding tree model predicts with the compiled tree of its snapshot, and only deserializes its MOA tree once it
+ * is trained, so that loading it does not depend on the size of the MOA tree. The other models deserialize their
+ * MOA learners from the mapped snapshot when they are loaded, which does not copy the snapshot but still takes time
+ * in proportion to the size of the learners.
+ * <p>
+ * A snapshot is written to a temporary file which then replaces the file of the model, hence a file always holds a
+ * complete snapshot. The snapshots taken at the checkpoints of the Siddhi app are written by a background thread,
+ * so that a checkpoint does not wait for the file to be forced to the disk. The snapshots of a model which are
+ * requested while an earlier one is waiting to be written are written once.
+ */
+public class MappedModelStore {
+    private static final Logger logger = Logger.getLogger(MappedModelStore.class);
+
+    public static final String MODEL_STORE_DIRECTORY = "modelStoreDirectory";
+    public static final String NO_MODEL_STORE = "none";
+    private static final String FILE_EXTENSION = ".model";
+
+    // writes the snapshots in the background for all the stores
+    private static final ExecutorService WRITER = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "streamingml-model-store");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Path directory;
+    // snapshots of the models waiting to be written in the background, by model name
+    private final Map<String, Supplier<byte[]>> pendingSnapshots = new ConcurrentHashMap<>();
+
+    public MappedModelStore(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Create a store as per the system parameters of the extension.
+     *
+     * @return the store, or null if no model store directory is configured
+     */
+    public static MappedModelStore fromConfig(ConfigReader configReader) {
+        String directory = configReader.readConfig(MODEL_STORE_DIRECTORY, NO_MODEL_STORE).trim();
+        if (directory.isEmpty() || NO_MODEL_STORE.equals(directory)) {
+            return null;
+        }
+        Path path = Paths.get(directory);
+        try {
+            Files.createDirectories(path);
+        } catch (IOException e) {
+            throw new SiddhiAppCreationException("Model store directory " + directory + " cannot be created", e);
+        }
+        return new MappedModelStore(path);
+    }
+
+    /**
+     * Return the model read from the store, or a new model if the store is not configured or does not hold a
+     * readable snapshot of the model.
+     *
+     * @param store     the store, or null if the store is not configured
+     * @param modelName name of the model
+     * @param decoder   reads the model from its snapshot
+     * @param factory   creates a new model
+     */
+    public static <M> M loadOrCreate(MappedModelStore store, String modelName,
+                                     BiFunction<String, ByteBuffer, M> decoder, Function<String, M> factory) {
+        M model = store == null ? null : store.load(modelName, decoder);
+        return model == null ? factory.apply(modelName) : model;
+    }
+
+    /**
+     * Write the snapshot of a model into its file in the background. The snapshot is taken once it is written, and
+     * a model whose snapshot is already waiting to be written is only written once.
+     *
+     * @param modelName name of the model
+     * @param snapshot  takes the snapshot of the model
+     */
+    public void saveInBackground(String modelName, Supplier<byte[]> snapshot) {
+        if (pendingSnapshots.put(modelName, snapshot) == null) {
+            WRITER.execute(() -> {
+                Supplier<byte[]> pendingSnapshot = pendingSnapshots.remove(modelName);
+                if (pendingSnapshot != null) {
+                    write(modelName, pendingSnapshot);
+                }
+            });
+        }
+    }
+
+    /**
+     * Write the snapshot of a model into its file, e.g., when the Siddhi app is shut down, replacing a snapshot
+     * waiting to be written in the background. A failure is logged, as the model remains in memory.
+     *
+     * @param modelName name of the model
+     * @param snapshot  takes the snapshot of the model
+     */
+    public void save(String modelName, Supplier<byte[]> snapshot) {
+        pendingSnapshots.remove(modelName);
+        write(modelName, snapshot);
+    }
+
+    /**
+     * Take the snapshot of a model and write it. The snapshots are written one at a time, so that a file is not
+     * replaced by an earlier snapshot.
+     */
+    private synchronized void write(String modelName, Supplier<byte[]> snapshot) {
+        byte[] bytes;
+        try {
+            bytes = snapshot.get();
+        } catch (RuntimeException e) {
+            logger.error(String.format("Snapshot of model [%s] cannot be taken to be written to %s.", modelName,
+                    fileOf(modelName)), e);
+            return;
+        }
+        write(modelName, bytes);
+    }
+
+    private void write(String modelName, byte[] snapshot) {
+        Path file = fileOf(modelName);
+        Path temporaryFile = null;
+        try {
+            temporaryFile = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+            try (FileChannel channel = FileChannel.open(temporaryFile, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, snapshot.length);
+                buffer.put(snapshot);
+                buffer.force();
+            }
+            Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            if (logger.isDebugEnabled()) {
+                logger.debug(String.format("Model [%s] is written to %s.", modelName, file));
+            }
+        } catch (IOException e) {
+            logger.error(String.format("Model [%s] cannot be written to %s.", modelName, file), e);
+            if (temporaryFile != null) {
+                try {
+                    Files.deleteIfExists(temporaryFile);
+                } catch (IOException ignored) {
+                    // the temporary file is left behind
+                }
+            }
+        }
+    }
+
+    /**
+     * @param modelName name of the model
+     * @return the snapshot of the model mapped from its file, or null if the store does not hold the model
+     */
+    public ByteBuffer map(String modelName) {
+        Path file = fileOf(modelName);
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            // the mapping remains valid once the channel is closed
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException e) {
+            logger.error(String.format("Model [%s] cannot be read from %s.", modelName, file), e);
+            return null;
+        }
+    }
+
+    /**
+     * @param modelName name of the model
+     * @param decoder   reads the model from its snapshot
+     * @return the model, or null if the store does not hold a readable snapshot of the model
+     */
+    public <M> M load(String modelName, BiFunction<String, ByteBuffer, M> decoder) {
+        ByteBuffer snapshot = map(modelName);
+        if (snapshot == null) {
+            return null;
+        }
+        try {
+            M model = decoder.apply(modelName, snapshot);
+            if (logger.isDebugEnabled()) {
+                logger.debug(String.format("Model [%s] is loaded from %s.", modelName, fileOf(modelName)));
+            }
+            return model;
+        } catch (SiddhiAppRuntimeException e) {
+            logger.warn(String.format("Model [%s] stored in %s cannot be read, hence a new model is used.",
+                    modelName, fileOf(modelName)), e);
+            return null;
+        }
+    }
+
+    private Path fileOf(String modelName) {
+        return directory.resolve(modelName.replaceAll("[^A-Za-z0-9._-]", "_") + FILE_EXTENSION);
+    }
+}
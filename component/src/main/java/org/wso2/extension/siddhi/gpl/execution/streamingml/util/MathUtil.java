@@ -20,6 +20,9 @@ package org.wso2.extension.siddhi.gpl.execution.streamingml.util;
  * Special mathematical functions used in the ML algorithms.
  */
 public class MathUtil {
+    private static final long[] POWERS_OF_TEN = {1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L, 10000000L,
+            100000000L, 1000000000L, 10000000000L, 100000000000L, 1000000000000L, 10000000000000L,
+            100000000000000L, 1000000000000000L, 10000000000000000L, 100000000000000000L, 1000000000000000000L};
 
     /**
      * Calculate sum of double array
@@ -47,7 +50,8 @@ public class MathUtil {
             throw new IllegalArgumentException("Invalid value for decimalPlaces parameter. It should be 0 or " +
                     "a positive integer. But found " + decimalPlaces);
         }
-        long factor = (long) Math.pow(10, decimalPlaces);
+        long factor = decimalPlaces < POWERS_OF_TEN.length ? POWERS_OF_TEN[decimalPlaces]
+                : (long) Math.pow(10, decimalPlaces);
         value = value * factor;
         long tmp = Math.round(value);
         return (double) tmp / factor;
@@ -60,14 +64,27 @@ public class MathUtil {
      * @return euclidean distance between point1 and point2
      */
     public static double euclideanDistance(double[] point1, double[] point2) {
+        double dist = Math.sqrt(squaredEuclideanDistance(point1, 0, point2, 0, point1.length));
+        return roundOff(dist, 4);
+    }
 
+    /**
+     * Calculate the squared euclidean distance between two points stored in flat arrays. Being monotonic in the
+     * distance, it is used to compare distances without taking the square root.
+     * @param points1        array holding point one
+     * @param offset1        index of the first coordinate of point one
+     * @param points2        array holding point two
+     * @param offset2        index of the first coordinate of point two
+     * @param dimensionality number of coordinates of a point
+     * @return squared euclidean distance between the two points
+     */
+    public static double squaredEuclideanDistance(double[] points1, int offset1, double[] points2, int offset2,
+                                                  int dimensionality) {
         double sum = 0.0;
-        int dimensionality = point1.length;
         for (int i = 0; i < dimensionality; i++) {
-            sum += Math.pow((point1[i] - point2[i]), 2);
+            double difference = points1[offset1 + i] - points2[offset2 + i];
+            sum += difference * difference;
         }
-        double dist = Math.sqrt(sum);
-        dist = Math.round(dist * 10000.0) / 10000.0;
-        return dist;
+        return sum;
     }
 }
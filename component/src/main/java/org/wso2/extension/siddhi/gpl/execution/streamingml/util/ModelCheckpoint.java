@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2017 WSO2 Inc. (http://wso2.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.wso2.extension.siddhi.gpl.execution.streamingml.util;
+
+import io.siddhi.core.exception.SiddhiAppRuntimeException;
+import io.siddhi.core.util.snapshot.SnapshotRequest;
+import io.siddhi.core.util.snapshot.state.Snapshot;
+import io.siddhi.core.util.snapshot.state.SnapshotStateList;
+
+/**
+ * Checkpoints a model which is written as a whole, e.g., a MOA learner.
+ * <p>
+ * When the state is persisted to an incremental persistence store, a checkpoint skips the model if it has not been
+ * updated since the last checkpoint. Otherwise the snapshot of the model is handed to Siddhi either as a base, or
+ * as an increment holding the difference of the snapshot from the last base, so that the size of a checkpoint
+ * follows the churn of the model rather than its size. As each increment is the difference from the base, a restore
+ * applies only the latest increment to the base. The increments are compacted into a new base once there are
+ * {@link KeyedModelCheckpoint#MAX_NO_OF_INCREMENTS} of them, or once an increment would be half the size of the
+ * snapshot. Full checkpoints are always bases.
+ */
+public class ModelCheckpoint {
+    private static final long NO_CHECKPOINT = Long.MIN_VALUE;
+
+    private long checkpointedVersion = NO_CHECKPOINT;
+    // the last base, which the increments are the difference from, or null if the next checkpoint is a base
+    private byte[] base;
+    private int noOfIncrements;
+
+    /**
+     * @param version version of the model, which changes whenever the model is updated
+     * @return whether the snapshot of the model needs to be taken for this checkpoint
+     */
+    public boolean isSnapshotRequired(long version) {
+        if (version == checkpointedVersion && !SnapshotRequest.isRequestForFullSnapshot()) {
+            return false;
+        }
+        checkpointedVersion = version;
+        return true;
+    }
+
+    /**
+     * Make the next checkpoint write the model, e.g., after the model has been restored
+     */
+    public void reset() {
+        checkpointedVersion = NO_CHECKPOINT;
+        base = null;
+    }
+
+    /**
+     * @param snapshot snapshot of the model
+     * @return the snapshot as a base, or an increment holding the difference of the snapshot from the last base
+     */
+    public Snapshot toSnapshot(byte[] snapshot) {
+        if (base != null && noOfIncrements < KeyedModelCheckpoint.MAX_NO_OF_INCREMENTS
+                && !SnapshotRequest.isRequestForFullSnapshot()) {
+            SnapshotDelta delta = SnapshotDelta.diff(base, snapshot);
+            if (2L * delta.size() < snapshot.length) {
+                noOfIncrements++;
+                return new Snapshot(delta, true);
+            }
+        }
+        base = snapshot;
+        noOfIncrements = 0;
+        return new Snapshot(snapshot, false);
+    }
+
+    /**
+     * @param state snapshot of the model
+     * @return the snapshot wrapped as the base of incremental checkpoints
+     */
+    public static Snapshot toBase(Object state) {
+        return new Snapshot(state, false);
+    }
+
+    /**
+     * Unwrap the snapshot of a model restored by Siddhi, which is a list of the base and the increments taken since
+     * the base when the snapshot was written by {@link #toBase(Object)} or {@link #toSnapshot(byte[])}, or the plain
+     * snapshot if it was written by the earlier releases.
+     *
+     * @param restoredState state restored by Siddhi
+     * @return the latest snapshot of the model, or null if there is none
+     */
+    public static Object getLatestState(Object restoredState) {
+        if (restoredState instanceof SnapshotStateList) {
+            Object latestState = null;
+            byte[] base = null;
+            for (Snapshot snapshot : ((SnapshotStateList) restoredState).getSnapshotStates().values()) {
+                Object state = snapshot.getState();
+                if (state instanceof SnapshotDelta) {
+                    if (base == null) {
+                        throw new SiddhiAppRuntimeException("Base of the incremental snapshot of the model is not "
+                                + "found");
+                    }
+                    latestState = ((SnapshotDelta) state).apply(base);
+                } else {
+                    latestState = state;
+                    base = state instanceof byte[] ? (byte[]) state : null;
+                }
+            }
+            return latestState;
+        } else if (restoredState instanceof Snapshot) {
+            return ((Snapshot) restoredState).getState();
+        }
+        return restoredState;
+    }
+}
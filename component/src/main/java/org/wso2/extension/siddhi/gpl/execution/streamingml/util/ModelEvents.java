@@ -0,0 +1,196 @@
+/*
+ * Copyright (C) 2017 WSO2 Inc. (http://wso2.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.wso2.extension.siddhi.gpl.execution.streamingml.util;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JDK Flight Recorder events of the models, so that the latency spikes caused by the growth of a model, by a
+ * refresh or by a snapshot can be profiled with an always-on recording.
+ * <p>
+ * An event is created before the operation it records, and only does any work if a recording has enabled it:
+ * <pre>
+ *     ModelEvents.KMeansRefresh event = ModelEvents.AVAILABLE ? new ModelEvents.KMeansRefresh() : null;
+ *     if (event != null &amp;&amp; event.isEnabled()) { ... }
+ * </pre>
+ * The events recorded per training event are not created at all unless a recording has enabled them, which is
+ * checked on their cached event types instead:
+ * <pre>
+ *     if (ModelEvents.isHoeffdingTreeGrowthEnabled()) { ModelEvents.HoeffdingTreeGrowth event = ... }
+ * </pre>
+ * The events are not created at all on a JVM without the Flight Recorder, e.g., a Java 8 JVM older than 8u262.
+ */
+public final class ModelEvents {
+    /**
+     * Whether the JVM has the Flight Recorder, without which none of the events may be created
+     */
+    public static final boolean AVAILABLE = isFlightRecorderAvailable();
+
+    private static final String CATEGORY = "Siddhi Streaming ML";
+
+    private ModelEvents() {
+    }
+
+    private static boolean isFlightRecorderAvailable() {
+        try {
+            Class.forName("jdk.jfr.Event", false, ModelEvents.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    /**
+     * Training on an event which split a leaf of a Hoeffding tree or replaced a branch of it
+     */
+    @Name("org.wso2.siddhi.streamingml.HoeffdingTreeGrowth")
+    @Label("Hoeffding Tree Growth")
+    @Category(CATEGORY)
+    @Description("Training on an event which split a leaf, or started, replaced or pruned an alternate branch")
+    public static class HoeffdingTreeGrowth extends Event {
+        @Label("Model")
+        public String model;
+        @Label("Splits")
+        @Description("Number of leaves split by the event")
+        public int splits;
+        @Label("Split Nodes")
+        public int noOfSplitNodes;
+        @Label("Leaves")
+        public int noOfLeaves;
+        @Label("Alternate Trees Started")
+        public int alternateTreesStarted;
+        @Label("Branches Replaced")
+        @Description("Number of branches replaced by their alternate trees, as ADWIN detected a change")
+        public int branchesReplaced;
+        @Label("Alternate Trees Pruned")
+        public int alternateTreesPruned;
+    }
+
+    /**
+     * Training on an event which added rules to an AMRules rule set or expanded its rules
+     */
+    @Name("org.wso2.siddhi.streamingml.AMRulesRuleExpansion")
+    @Label("AMRules Rule Expansion")
+    @Category(CATEGORY)
+    @Description("Training on an event which added a rule or expanded a rule with a literal")
+    public static class AMRulesRuleExpansion extends Event {
+        @Label("Model")
+        public String model;
+        @Label("Rules Added")
+        public int rulesAdded;
+        @Label("Literals Added")
+        public int literalsAdded;
+        @Label("Rules")
+        public int noOfRules;
+        @Label("Literals")
+        public int noOfLiterals;
+    }
+
+    /**
+     * Run of weighted kmeans which refreshed the macro clusters of a ClusTree
+     */
+    @Name("org.wso2.siddhi.streamingml.KMeansRefresh")
+    @Label("KMeans Refresh")
+    @Category(CATEGORY)
+    @Description("Run of weighted kmeans on the micro clusters of a ClusTree")
+    public static class KMeansRefresh extends Event {
+        @Label("Points")
+        @Description("Number of micro clusters clustered")
+        public int noOfPoints;
+        @Label("Centroids")
+        public int noOfCentroids;
+        @Label("Iterations")
+        public int noOfIterations;
+    }
+
+    /**
+     * Snapshot or restore of the state of a stream processor holding models
+     */
+    @Name("org.wso2.siddhi.streamingml.ModelSnapshot")
+    @Label("Model Snapshot")
+    @Category(CATEGORY)
+    @Description("Snapshot or restore of the models of a stream processor")
+    public static class ModelSnapshot extends Event {
+        @Label("Model")
+        public String model;
+        @Label("Restore")
+        @Description("Whether the models were restored rather than snapshot")
+        public boolean restore;
+        @Label("Skipped")
+        @Description("Whether an incremental snapshot skipped the models as they had not changed")
+        public boolean skipped;
+    }
+
+    /**
+     * @return whether a recording has enabled the {@link HoeffdingTreeGrowth} events
+     */
+    public static boolean isHoeffdingTreeGrowthEnabled() {
+        return AVAILABLE && EventTypes.HOEFFDING_TREE_GROWTH.isEnabled();
+    }
+
+    /**
+     * @return whether a recording has enabled the {@link AMRulesRuleExpansion} events
+     */
+    public static boolean isAMRulesRuleExpansionEnabled() {
+        return AVAILABLE && EventTypes.AMRULES_RULE_EXPANSION.isEnabled();
+    }
+
+    /**
+     * @param model name of the model, or of the query if the model has no name
+     * @return an event begun for a snapshot of the model, or null if the event is not recorded
+     */
+    public static ModelSnapshot beginSnapshot(String model, boolean restore) {
+        if (!AVAILABLE) {
+            return null;
+        }
+        ModelSnapshot event = new ModelSnapshot();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.model = model;
+        event.restore = restore;
+        event.begin();
+        return event;
+    }
+
+    /**
+     * @param event   event returned by {@link #beginSnapshot(String, boolean)}
+     * @param skipped whether the snapshot skipped the models
+     */
+    public static void commitSnapshot(ModelSnapshot event, boolean skipped) {
+        if (event != null) {
+            event.skipped = skipped;
+            event.commit();
+        }
+    }
+
+    /**
+     * Types of the events checked on every training event, which are loaded only on a JVM with the Flight Recorder
+     */
+    private static final class EventTypes {
+        private static final EventType HOEFFDING_TREE_GROWTH = EventType.getEventType(HoeffdingTreeGrowth.class);
+        private static final EventType AMRULES_RULE_EXPANSION = EventType.getEventType(AMRulesRuleExpansion.class);
+
+        private EventTypes() {
+        }
+    }
+}
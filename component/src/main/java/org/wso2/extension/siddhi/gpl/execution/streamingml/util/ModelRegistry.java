@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2017 WSO2 Inc. (http://wso2.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.wso2.extension.siddhi.gpl.execution.streamingml.util;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+
+/**
+ * Data holder which keeps the model instances shared between the stream processors of the Siddhi apps.
+ * Models are grouped by their type, so that models of different algorithms can use the same name. The families of
+ * models built per key by the keyed updaters are kept apart from the models, as {@link KeyedModels}.
+ * Lookups do not take any lock, hence the registry can be used from the event processing threads.
+ */
+public class ModelRegistry {
+    private static final ModelRegistry instance = new ModelRegistry();
+
+    /**
+     * Key - type of the model
+     * Value - models of that type, keyed by the name of the model
+     */
+    private final ConcurrentMap<Class<?>, ConcurrentMap<String, Object>> modelMaps = new ConcurrentHashMap<>();
+    /**
+     * Key - type of the models of the families
+     * Value - families of models of that type, keyed by the name of the family
+     */
+    private final ConcurrentMap<Class<?>, ConcurrentMap<String, KeyedModels<?>>> keyedModelMaps =
+            new ConcurrentHashMap<>();
+
+    private ModelRegistry() {
+    }
+
+    public static ModelRegistry getInstance() {
+        return instance;
+    }
+
+    /**
+     * @param type type of the model
+     * @param name name of the model
+     * @return the model, or null if there is no such model
+     */
+    public <T> T getModel(Class<T> type, String name) {
+        ConcurrentMap<String, Object> models = modelMaps.get(type);
+        if (models == null) {
+            return null;
+        }
+        return type.cast(models.get(name));
+    }
+
+    /**
+     * Return the model with the given name, creating it atomically if it does not exist.
+     *
+     * @param type    type of the model
+     * @param name    name of the model
+     * @param factory creates the model from its name
+     * @return the registered model
+     */
+    public <T> T getOrCreateModel(Class<T> type, String name, Function<String, ? extends T> factory) {
+        T model = getModel(type, name);
+        if (model == null) {
+            model = type.cast(getModels(type).computeIfAbsent(name, factory));
+        }
+        return model;
+    }
+
+    public <T> void putModel(Class<T> type, String name, T model) {
+        getModels(type).put(name, model);
+    }
+
+    public void deleteModel(Class<?> type, String name) {
+        ConcurrentMap<String, Object> models = modelMaps.get(type);
+        if (models != null) {
+            models.remove(name);
+        }
+    }
+
+    /**
+     * @param type type of the models of the family
+     * @param name name of the family
+     * @return the family of models, or null if there is no such family
+     */
+    @SuppressWarnings("unchecked")
+    public <T> KeyedModels<T> getKeyedModels(Class<T> type, String name) {
+        ConcurrentMap<String, KeyedModels<?>> families = keyedModelMaps.get(type);
+        if (families == null) {
+            return null;
+        }
+        // families are only put with the type they are looked up with
+        return (KeyedModels<T>) families.get(name);
+    }
+
+    public <T> void putKeyedModels(Class<T> type, String name, KeyedModels<T> models) {
+        keyedModelMaps.computeIfAbsent(type, key -> new ConcurrentHashMap<>()).put(name, models);
+    }
+
+    public void deleteKeyedModels(Class<?> type, String name) {
+        ConcurrentMap<String, KeyedModels<?>> families = keyedModelMaps.get(type);
+        if (families != null) {
+            families.remove(name);
+        }
+    }
+
+    private ConcurrentMap<String, Object> getModels(Class<?> type) {
+        return modelMaps.computeIfAbsent(type, key -> new ConcurrentHashMap<>());
+    }
+}
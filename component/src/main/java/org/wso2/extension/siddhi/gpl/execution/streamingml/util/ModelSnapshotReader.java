@@ -0,0 +1,285 @@
+/*
+ * Copyright (C) 2017 WSO2 Inc. (http://wso2.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.wso2.extension.siddhi.gpl.execution.streamingml.util;
+
+import io.siddhi.core.exception.SiddhiAppRuntimeException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Reads a model snapshot written by {@link ModelSnapshotWriter}. The fields must be read in the order they were
+ * written.
+ * <p>
+ * The snapshot is read through a {@link ByteBuffer}, so that a snapshot mapped from a file is read in place
+ * without copying it to the heap first.
+ */
+public class ModelSnapshotReader {
+    private final ByteBuffer buffer;
+    private final ModelSnapshotType type;
+    private final int formatVersion;
+    private final int version;
+
+    /**
+     * @param snapshot   the snapshot
+     * @param type       type of the model expected in the snapshot
+     * @param maxVersion latest version of the layout of the model known by the reader
+     */
+    public ModelSnapshotReader(byte[] snapshot, ModelSnapshotType type, int maxVersion) {
+        this(ByteBuffer.wrap(snapshot), type, maxVersion);
+    }
+
+    /**
+     * @param snapshot   the snapshot, from the position of the buffer to its limit. The buffer is not modified.
+     * @param type       type of the model expected in the snapshot
+     * @param maxVersion latest version of the layout of the model known by the reader
+     */
+    public ModelSnapshotReader(ByteBuffer snapshot, ModelSnapshotType type, int maxVersion) {
+        this.buffer = snapshot.slice();
+        this.type = type;
+        if (readFixedInt() != ModelSnapshotWriter.MAGIC) {
+            throw new SiddhiAppRuntimeException("Invalid snapshot of " + type + " model");
+        }
+        formatVersion = readByte();
+        if (formatVersion > ModelSnapshotWriter.FORMAT_VERSION) {
+            throw new SiddhiAppRuntimeException(String.format("Snapshot format version %s is not supported. The "
+                    + "latest supported version is %s", formatVersion, ModelSnapshotWriter.FORMAT_VERSION));
+        }
+        ModelSnapshotType snapshotType = ModelSnapshotType.fromId(readByte());
+        if (snapshotType != type) {
+            throw new SiddhiAppRuntimeException(String.format("Snapshot of %s model is expected but found a "
+                    + "snapshot of %s model", type, snapshotType));
+        }
+        version = readInt();
+        if (version > maxVersion) {
+            throw new SiddhiAppRuntimeException(String.format("Version %s of the snapshot of %s model is not "
+                    + "supported. The latest supported version is %s", version, type, maxVersion));
+        }
+    }
+
+    /**
+     * @return version of the layout of the fields written by the model
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    public boolean readBoolean() {
+        return readByte() != 0;
+    }
+
+    public int readInt() {
+        return (int) readLong();
+    }
+
+    public long readLong() {
+        long encoded = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = readByte();
+            encoded |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                break;
+            }
+        }
+        return (encoded >>> 1) ^ -(encoded & 1);
+    }
+
+    public double readDouble() {
+        require(8);
+        return buffer.getDouble();
+    }
+
+    public double[] readDoubles() {
+        int length = readInt();
+        if (length < 0) {
+            return null;
+        }
+        require(length * 8L);
+        double[] values = new double[length];
+        buffer.asDoubleBuffer().get(values);
+        buffer.position(buffer.position() + length * 8);
+        return values;
+    }
+
+    public int[] readInts() {
+        int length = readInt();
+        if (length < 0) {
+            return null;
+        }
+        // each value takes at least a byte
+        require(length);
+        int[] values = new int[length];
+        for (int i = 0; i < length; i++) {
+            values[i] = readInt();
+        }
+        return values;
+    }
+
+    public String readString() {
+        return new String(readBytes(), StandardCharsets.UTF_8);
+    }
+
+    public List<String> readStrings() {
+        int length = readInt();
+        List<String> values = new ArrayList<>(length);
+        for (int i = 0; i < length; i++) {
+            values.add(readString());
+        }
+        return values;
+    }
+
+    public byte[] readBytes() {
+        int length = readInt();
+        require(length);
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Read a MOA learner written by {@link ModelSnapshotWriter#writeLearner}, or a learner of a snapshot written in
+     * an earlier format version
+     */
+    public <T> T readLearner(Class<T> learnerClass) {
+        boolean deflated = readLearnerEncoding() == ModelSnapshotWriter.DEFLATED_LEARNER;
+        int length = readLearnerLength();
+        InputStream learnerStream = new ByteBufferInputStream(slice(length));
+        return readLearner(deflated ? new InflaterInputStream(learnerStream) : learnerStream, learnerClass, type);
+    }
+
+    /**
+     * Skip a MOA learner written by {@link ModelSnapshotWriter#writeLearner}, so that it is only deserialized once
+     * it is needed. A learner which is not deflated is not copied, e.g., from a snapshot mapped from a file.
+     *
+     * @return the serialized learner, read by {@link #readLearner(ByteBuffer, Class, ModelSnapshotType)}
+     */
+    public ByteBuffer readLearnerImage() {
+        if (readLearnerEncoding() == ModelSnapshotWriter.RAW_LEARNER) {
+            return slice(readLearnerLength()).asReadOnlyBuffer();
+        }
+        int length = readLearnerLength();
+        ByteArrayOutputStream image = new ByteArrayOutputStream(length << 1);
+        try (InputStream learnerStream = new InflaterInputStream(new ByteBufferInputStream(slice(length)))) {
+            byte[] bytes = new byte[4096];
+            for (int noOfBytes; (noOfBytes = learnerStream.read(bytes)) != -1; ) {
+                image.write(bytes, 0, noOfBytes);
+            }
+        } catch (IOException e) {
+            throw new SiddhiAppRuntimeException("Error while inflating a learner of the snapshot of " + type
+                    + " model", e);
+        }
+        return ByteBuffer.wrap(image.toByteArray()).asReadOnlyBuffer();
+    }
+
+    /**
+     * @param image        serialized learner returned by {@link #readLearnerImage()}
+     * @param learnerClass class of the learner
+     * @param type         type of the model
+     * @return the learner
+     */
+    public static <T> T readLearner(ByteBuffer image, Class<T> learnerClass, ModelSnapshotType type) {
+        return readLearner(new ByteBufferInputStream(image.duplicate()), learnerClass, type);
+    }
+
+    private static <T> T readLearner(InputStream learnerStream, Class<T> learnerClass, ModelSnapshotType type) {
+        try (ObjectInputStream objectInputStream = new ObjectInputStream(learnerStream)) {
+            return learnerClass.cast(objectInputStream.readObject());
+        } catch (IOException | ClassNotFoundException e) {
+            throw new SiddhiAppRuntimeException("Error while reading the " + learnerClass.getSimpleName()
+                    + " of the snapshot of " + type + " model", e);
+        }
+    }
+
+    /**
+     * Read the encoding of a learner, which is only written from the third format version on
+     */
+    private int readLearnerEncoding() {
+        if (formatVersion <= ModelSnapshotWriter.DEFLATED_LEARNER_FORMAT_VERSION) {
+            return ModelSnapshotWriter.DEFLATED_LEARNER;
+        }
+        if (formatVersion <= ModelSnapshotWriter.RAW_LEARNER_FORMAT_VERSION) {
+            return ModelSnapshotWriter.RAW_LEARNER;
+        }
+        int encoding = readByte();
+        if (encoding != ModelSnapshotWriter.RAW_LEARNER && encoding != ModelSnapshotWriter.DEFLATED_LEARNER) {
+            throw new SiddhiAppRuntimeException("Invalid encoding " + encoding + " of a learner of the snapshot of "
+                    + type + " model");
+        }
+        return encoding;
+    }
+
+    private int readLearnerLength() {
+        return formatVersion <= ModelSnapshotWriter.DEFLATED_LEARNER_FORMAT_VERSION ? readInt() : readFixedInt();
+    }
+
+    private ByteBuffer slice(int length) {
+        require(length);
+        ByteBuffer bytes = buffer.slice();
+        bytes.limit(length);
+        buffer.position(buffer.position() + length);
+        return bytes;
+    }
+
+    private int readByte() {
+        require(1);
+        return buffer.get() & 0xFF;
+    }
+
+    private int readFixedInt() {
+        require(4);
+        return buffer.getInt();
+    }
+
+    private void require(long noOfBytes) {
+        if (noOfBytes < 0 || noOfBytes > buffer.remaining()) {
+            throw new SiddhiAppRuntimeException("Snapshot of " + type + " model is truncated");
+        }
+    }
+
+    /**
+     * Stream over the remaining bytes of a buffer
+     */
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        private ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int noOfBytes = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, noOfBytes);
+            return noOfBytes;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2017 WSO2 Inc. (http://wso2.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.wso2.extension.siddhi.gpl.execution.streamingml.util;
+
+/**
+ * Type of the model held by a binary model snapshot. The id is written to the snapshot, hence must never change.
+ */
+public enum ModelSnapshotType {
+    HOEFFDING_TREE(1),
+    AMRULES_REGRESSOR(2),
+    CLUSTREE(3),
+    KMEANS(4),
+    KEYED_CLUSTERING(5),
+    ADAPTIVE_RANDOM_FOREST(6),
+    ONLINE_BAGGING(7);
+
+    private final int id;
+
+    ModelSnapshotType(int id) {
+        this.id = id;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public static ModelSnapshotType fromId(int id) {
+        for (ModelSnapshotType type : values()) {
+            if (type.id == id) {
+                return type;
+            }
+        }
+        return null;
+    }
+}
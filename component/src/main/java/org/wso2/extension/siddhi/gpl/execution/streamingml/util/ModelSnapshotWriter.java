@@ -0,0 +1,319 @@
+/*
+ * Copyright (C) 2017 WSO2 Inc. (http://wso2.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.wso2.extension.siddhi.gpl.execution.streamingml.util;
+
+import io.siddhi.core.exception.SiddhiAppRuntimeException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Writes a model into a versioned binary snapshot, read back by {@link ModelSnapshotReader}.
+ * <p>
+ * A snapshot starts with a magic number, the version of the snapshot format, the type of the model and the version
+ * of the layout of that model, followed by the fields written by the model. Integers are written as variable length
+ * values and doubles as their raw bits. The MOA learners, whose internals are not part of this layout, are written
+ * as Java serialization, each in a frame of its encoding and its length.
+ * <p>
+ * A model is locked while it is written, hence the writer does no more than copy the model into its buffer: the
+ * learners are serialized straight into the buffer, which can be sized from the last snapshot of the model so that
+ * it does not grow while the model is written. The learners are deflated by {@link #toByteArray()}, which is to be
+ * called once the model is unlocked.
+ */
+public class ModelSnapshotWriter {
+    static final int MAGIC = 0x534d4c53;
+    static final int FORMAT_VERSION = 3;
+    // latest format version whose learners were deflated, and whose lengths were variable length values
+    static final int DEFLATED_LEARNER_FORMAT_VERSION = 1;
+    // latest format version whose learners were written without their encoding
+    static final int RAW_LEARNER_FORMAT_VERSION = 2;
+    // encodings of the learners
+    static final int RAW_LEARNER = 0;
+    static final int DEFLATED_LEARNER = 1;
+    private static final int MIN_CAPACITY = 256;
+    // learners smaller than this are not worth deflating
+    private static final int MIN_DEFLATED_LENGTH = 64;
+
+    private byte[] buffer;
+    private int size;
+    // offsets of the frames of the learners written so far
+    private int[] learnerOffsets = new int[2];
+    private int noOfLearners;
+
+    /**
+     * @param type    type of the model
+     * @param version version of the layout of the fields written by the model
+     */
+    public ModelSnapshotWriter(ModelSnapshotType type, int version) {
+        this(type, version, MIN_CAPACITY);
+    }
+
+    /**
+     * @param type     type of the model
+     * @param version  version of the layout of the fields written by the model
+     * @param capacity expected size of the snapshot, e.g., the size of the last snapshot of the model
+     */
+    public ModelSnapshotWriter(ModelSnapshotType type, int version, int capacity) {
+        buffer = new byte[Math.max(MIN_CAPACITY, capacity)];
+        writeFixedInt(MAGIC);
+        writeByte(FORMAT_VERSION);
+        writeByte(type.getId());
+        writeInt(version);
+    }
+
+    public void writeBoolean(boolean value) {
+        writeByte(value ? 1 : 0);
+    }
+
+    /**
+     * Write an int, in 1 to 5 bytes depending on its magnitude
+     */
+    public void writeInt(int value) {
+        writeLong(value);
+    }
+
+    /**
+     * Write a long, in 1 to 10 bytes depending on its magnitude
+     */
+    public void writeLong(long value) {
+        // zig-zag encoding, so that small negative values are short as well
+        long encoded = (value << 1) ^ (value >> 63);
+        ensureCapacity(10);
+        while ((encoded & ~0x7FL) != 0) {
+            buffer[size++] = (byte) ((encoded & 0x7F) | 0x80);
+            encoded >>>= 7;
+        }
+        buffer[size++] = (byte) encoded;
+    }
+
+    public void writeDouble(double value) {
+        long bits = Double.doubleToRawLongBits(value);
+        ensureCapacity(8);
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            buffer[size++] = (byte) (bits >>> shift);
+        }
+    }
+
+    /**
+     * Write an array of doubles, which may be null
+     */
+    public void writeDoubles(double[] values) {
+        if (values == null) {
+            writeInt(-1);
+            return;
+        }
+        writeInt(values.length);
+        for (double value : values) {
+            writeDouble(value);
+        }
+    }
+
+    /**
+     * Write an array of ints, which may be null
+     */
+    public void writeInts(int[] values) {
+        if (values == null) {
+            writeInt(-1);
+            return;
+        }
+        writeInt(values.length);
+        for (int value : values) {
+            writeInt(value);
+        }
+    }
+
+    public void writeString(String value) {
+        writeBytes(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public void writeStrings(List<String> values) {
+        writeInt(values.size());
+        for (String value : values) {
+            writeString(value);
+        }
+    }
+
+    /**
+     * Write an array of bytes, e.g., the snapshot of a nested model
+     */
+    public void writeBytes(byte[] bytes) {
+        writeInt(bytes.length);
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buffer, size, bytes.length);
+        size += bytes.length;
+    }
+
+    /**
+     * Write a MOA learner as Java serialization, preceded by its encoding and its length
+     */
+    public void writeLearner(Serializable learner) {
+        startLearner();
+        int lengthOffset = size;
+        writeFixedInt(0);
+        try (ObjectOutputStream objectOutputStream = new ObjectOutputStream(new BufferOutputStream())) {
+            objectOutputStream.writeObject(learner);
+        } catch (IOException e) {
+            throw new SiddhiAppRuntimeException("Error while writing the snapshot of "
+                    + learner.getClass().getSimpleName(), e);
+        }
+        int length = size - lengthOffset - 4;
+        for (int i = 0; i < 4; i++) {
+            buffer[lengthOffset + i] = (byte) (length >>> (24 - i * 8));
+        }
+    }
+
+    /**
+     * Write a learner which is already serialized, e.g., one which has not been read from the snapshot of the
+     * model yet
+     *
+     * @param image the serialized learner, as returned by {@link ModelSnapshotReader#readLearnerImage()}
+     */
+    public void writeLearnerImage(ByteBuffer image) {
+        ByteBuffer bytes = image.duplicate();
+        startLearner();
+        writeFixedInt(bytes.remaining());
+        ensureCapacity(bytes.remaining());
+        int length = bytes.remaining();
+        bytes.get(buffer, size, length);
+        size += length;
+    }
+
+    /**
+     * @return number of bytes written so far
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the snapshot, with its learners deflated
+     */
+    public byte[] toByteArray() {
+        if (noOfLearners == 0) {
+            return Arrays.copyOf(buffer, size);
+        }
+        ByteArrayOutputStream snapshot = new ByteArrayOutputStream(size / 2);
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            int offset = 0;
+            for (int i = 0; i < noOfLearners; i++) {
+                int learnerOffset = learnerOffsets[i];
+                snapshot.write(buffer, offset, learnerOffset - offset);
+                int length = readFixedInt(learnerOffset + 1);
+                offset = learnerOffset + 5 + length;
+                byte[] deflated = length < MIN_DEFLATED_LENGTH ? null
+                        : deflate(deflater, learnerOffset + 5, length);
+                if (deflated == null || deflated.length >= length) {
+                    snapshot.write(buffer, learnerOffset, offset - learnerOffset);
+                } else {
+                    snapshot.write(DEFLATED_LEARNER);
+                    writeFixedInt(snapshot, deflated.length);
+                    snapshot.write(deflated, 0, deflated.length);
+                }
+            }
+            snapshot.write(buffer, offset, size - offset);
+        } finally {
+            deflater.end();
+        }
+        return snapshot.toByteArray();
+    }
+
+    /**
+     * @return the snapshot, with its learners as written, so that they can be read in place, e.g., from a snapshot
+     * mapped from a file
+     */
+    public byte[] toUncompressedByteArray() {
+        return Arrays.copyOf(buffer, size);
+    }
+
+    private void startLearner() {
+        if (noOfLearners == learnerOffsets.length) {
+            learnerOffsets = Arrays.copyOf(learnerOffsets, noOfLearners << 1);
+        }
+        learnerOffsets[noOfLearners++] = size;
+        writeByte(RAW_LEARNER);
+    }
+
+    private byte[] deflate(Deflater deflater, int offset, int length) {
+        deflater.reset();
+        ByteArrayOutputStream deflated = new ByteArrayOutputStream(length / 2);
+        try (DeflaterOutputStream deflaterStream = new DeflaterOutputStream(deflated, deflater)) {
+            deflaterStream.write(buffer, offset, length);
+        } catch (IOException e) {
+            throw new SiddhiAppRuntimeException("Error while deflating a learner of the snapshot", e);
+        }
+        return deflated.toByteArray();
+    }
+
+    private int readFixedInt(int offset) {
+        int value = 0;
+        for (int i = 0; i < 4; i++) {
+            value = (value << 8) | (buffer[offset + i] & 0xFF);
+        }
+        return value;
+    }
+
+    private static void writeFixedInt(ByteArrayOutputStream stream, int value) {
+        for (int shift = 24; shift >= 0; shift -= 8) {
+            stream.write(value >>> shift);
+        }
+    }
+
+    private void writeByte(int value) {
+        ensureCapacity(1);
+        buffer[size++] = (byte) value;
+    }
+
+    private void writeFixedInt(int value) {
+        ensureCapacity(4);
+        for (int shift = 24; shift >= 0; shift -= 8) {
+            buffer[size++] = (byte) (value >>> shift);
+        }
+    }
+
+    private void ensureCapacity(int noOfBytes) {
+        if (size + noOfBytes > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length << 1, size + noOfBytes));
+        }
+    }
+
+    /**
+     * Stream appending to the buffer of the writer
+     */
+    private class BufferOutputStream extends OutputStream {
+        @Override
+        public void write(int b) {
+            writeByte(b);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) {
+            ensureCapacity(length);
+            System.arraycopy(bytes, offset, buffer, size, length);
+            size += length;
+        }
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2017 WSO2 Inc. (http://wso2.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.wso2.extension.siddhi.gpl.execution.streamingml.util;
+
+import io.siddhi.core.config.SiddhiAppContext;
+import io.siddhi.core.config.SiddhiQueryContext;
+import io.siddhi.core.util.SiddhiConstants;
+import io.siddhi.core.util.statistics.EventBufferHolder;
+import io.siddhi.core.util.statistics.LatencyTracker;
+import io.siddhi.core.util.statistics.StatisticsManager;
+import io.siddhi.core.util.statistics.StatisticsTrackerFactory;
+import io.siddhi.core.util.statistics.ThroughputTracker;
+import io.siddhi.core.util.statistics.metrics.Level;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Throughput and latency trackers and size gauges of a model, registered with the statistics manager of the Siddhi
+ * app, so that the cost of each model is reported apart from the latency of the query which uses it.
+ * <p>
+ * The metrics are named
+ * {@code <prefix>.SiddhiApps.<app>.Siddhi.StreamingML.<model>.<operation>.(throughput|latency)} for the trackers,
+ * {@code <prefix>.SiddhiApps.<app>.Siddhi.StreamingML.<model>.<gauge>} for the size gauges and
+ * {@code <prefix>.SiddhiApps.<app>.Siddhi.StreamingML.<model>.memory} for the estimated size of the model. Siddhi
+ * has no gauge tracker of its own, hence the size gauges are registered as buffered events trackers. The memory
+ * usage of a model is only tracked at the detail level, as Siddhi estimates it by walking the whole model.
+ * <p>
+ * Nothing is tracked if the statistics of the Siddhi app are off.
+ */
+public class ModelStatistics {
+    private static final String METRIC_INFIX_STREAMINGML = "StreamingML";
+
+    private final SiddhiAppContext siddhiAppContext;
+    private final String metricName;
+    private final ThroughputTracker throughputTracker;
+    private final LatencyTracker latencyTracker;
+
+    private ModelStatistics(SiddhiAppContext siddhiAppContext, String metricName,
+                            ThroughputTracker throughputTracker, LatencyTracker latencyTracker) {
+        this.siddhiAppContext = siddhiAppContext;
+        this.metricName = metricName;
+        this.throughputTracker = throughputTracker;
+        this.latencyTracker = latencyTracker;
+    }
+
+    /**
+     * Create the trackers of an operation on a model
+     *
+     * @param siddhiQueryContext context of the query which runs the operation
+     * @param model              name of the model as given in the query, or the name of the query if the model
+     *                           has no name
+     * @param operation          operation on the model, e.g., training or prediction
+     * @return the trackers, which track nothing if the statistics are off
+     */
+    public static ModelStatistics create(SiddhiQueryContext siddhiQueryContext, String model, String operation) {
+        SiddhiAppContext siddhiAppContext = siddhiQueryContext.getSiddhiAppContext();
+        String metricName = siddhiAppContext.getSiddhiContext().getStatisticsConfiguration().getMetricPrefix()
+                + SiddhiConstants.METRIC_DELIMITER + SiddhiConstants.METRIC_INFIX_SIDDHI_APPS
+                + SiddhiConstants.METRIC_DELIMITER + siddhiAppContext.getName()
+                + SiddhiConstants.METRIC_DELIMITER + SiddhiConstants.METRIC_INFIX_SIDDHI
+                + SiddhiConstants.METRIC_DELIMITER + METRIC_INFIX_STREAMINGML
+                + SiddhiConstants.METRIC_DELIMITER + model;
+        if (!isEnabled(siddhiAppContext, Level.BASIC)) {
+            return new ModelStatistics(siddhiAppContext, metricName, null, null);
+        }
+        StatisticsManager statisticsManager = siddhiAppContext.getStatisticsManager();
+        StatisticsTrackerFactory factory = siddhiAppContext.getSiddhiContext().getStatisticsConfiguration()
+                .getFactory();
+        String operationName = metricName + SiddhiConstants.METRIC_DELIMITER + operation
+                + SiddhiConstants.METRIC_DELIMITER;
+        return new ModelStatistics(siddhiAppContext, metricName,
+                factory.createThroughputTracker(operationName + SiddhiConstants.METRIC_TYPE_THROUGHPUT,
+                        statisticsManager),
+                factory.createLatencyTracker(operationName + SiddhiConstants.METRIC_TYPE_LATENCY,
+                        statisticsManager));
+    }
+
+    private static boolean isEnabled(SiddhiAppContext siddhiAppContext, Level level) {
+        return siddhiAppContext.getStatisticsManager() != null
+                && siddhiAppContext.getRootMetricsLevel().compareTo(level) >= 0;
+    }
+
+    /**
+     * Register a gauge of the size of the model, e.g., its number of nodes. The size is read by the reporter of
+     * the statistics, hence has to be safe to read while the model is being trained.
+     *
+     * @param gauge name of the gauge
+     * @param size  current size of the model
+     */
+    public void registerSizeGauge(String gauge, LongSupplier size) {
+        if (throughputTracker == null) {
+            return;
+        }
+        siddhiAppContext.getSiddhiContext().getStatisticsConfiguration().getFactory()
+                .createBufferSizeTracker(siddhiAppContext.getStatisticsManager())
+                .registerEventBufferHolder(new SizeGauge(size),
+                        metricName + SiddhiConstants.METRIC_DELIMITER + gauge);
+    }
+
+    /**
+     * Register the model for its memory usage to be estimated, at the detail level
+     *
+     * @param model the model
+     */
+    public void registerMemoryUsage(Object model) {
+        if (throughputTracker == null || !isEnabled(siddhiAppContext, Level.DETAIL)) {
+            return;
+        }
+        siddhiAppContext.getSiddhiContext().getStatisticsConfiguration().getFactory()
+                .createMemoryUsageTracker(siddhiAppContext.getStatisticsManager())
+                .registerObject(model, metricName + SiddhiConstants.METRIC_DELIMITER
+                        + SiddhiConstants.METRIC_TYPE_MEMORY);
+    }
+
+    /**
+     * Mark the start of an operation on a chunk of events
+     */
+    public void markIn() {
+        if (latencyTracker != null) {
+            latencyTracker.markIn();
+        }
+    }
+
+    /**
+     * Count an event processed by the operation
+     */
+    public void eventIn() {
+        if (throughputTracker != null) {
+            throughputTracker.eventIn();
+        }
+    }
+
+    /**
+     * Count the events of a chunk processed by the operation at once
+     *
+     * @param noOfEvents number of events
+     */
+    public void eventsIn(int noOfEvents) {
+        if (throughputTracker != null) {
+            throughputTracker.eventsIn(noOfEvents);
+        }
+    }
+
+    /**
+     * Mark the end of an operation on a chunk of events
+     */
+    public void markOut() {
+        if (latencyTracker != null) {
+            latencyTracker.markOut();
+        }
+    }
+
+    /**
+     * Reports a size of a model as the number of buffered events of a buffered events tracker
+     */
+    private static class SizeGauge implements EventBufferHolder {
+        private final LongSupplier size;
+
+        private SizeGauge(LongSupplier size) {
+            this.size = size;
+        }
+
+        @Override
+        public long getBufferedEvents() {
+            return size.getAsLong();
+        }
+
+        @Override
+        public boolean containsBufferedEvents() {
+            return size.getAsLong() > 0;
+        }
+    }
+}
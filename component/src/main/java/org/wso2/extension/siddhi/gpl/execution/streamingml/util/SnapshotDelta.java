@@ -0,0 +1,193 @@
+/*
+ * Copyright (C) 2017 WSO2 Inc. (http://wso2.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.wso2.extension.siddhi.gpl.execution.streamingml.util;
+
+import io.siddhi.core.exception.SiddhiAppRuntimeException;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Difference of a model snapshot from a base snapshot of the model, as a sequence of ranges copied from the base
+ * and of bytes which are not found in the base.
+ * <p>
+ * The base is split into blocks, and the snapshot is scanned with a rolling hash for the blocks of the base, so that
+ * the parts of the model which have not changed are found in the base even if the parts before them have grown or
+ * shrunk, e.g., when a tree has grown a node. A match is extended past the end of its block as long as the bytes
+ * are the same.
+ */
+class SnapshotDelta implements Serializable {
+    private static final long serialVersionUID = 1L;
+    static final int BLOCK_SIZE = 64;
+    private static final int HASH_MULTIPLIER = 31;
+    // offset of a range which is not copied from the base, but read from the literals
+    private static final int LITERAL = -1;
+
+    private final int length;
+    // offset of each range in the base, or LITERAL
+    private final int[] offsets;
+    private final int[] lengths;
+    private final byte[] literals;
+
+    private SnapshotDelta(int length, int[] offsets, int[] lengths, byte[] literals) {
+        this.length = length;
+        this.offsets = offsets;
+        this.lengths = lengths;
+        this.literals = literals;
+    }
+
+    /**
+     * @param base     base snapshot
+     * @param snapshot snapshot to be encoded
+     * @return the difference of the snapshot from the base
+     */
+    static SnapshotDelta diff(byte[] base, byte[] snapshot) {
+        Map<Integer, Integer> blocks = new HashMap<>(Math.max(16, base.length / BLOCK_SIZE * 2));
+        for (int offset = base.length - BLOCK_SIZE - base.length % BLOCK_SIZE; offset >= 0; offset -= BLOCK_SIZE) {
+            // the first block of the same hash is kept, so that equal blocks are copied from the earliest one
+            blocks.put(hash(base, offset), offset);
+        }
+        Builder builder = new Builder(snapshot.length);
+        int power = 1;
+        for (int i = 1; i < BLOCK_SIZE; i++) {
+            power *= HASH_MULTIPLIER;
+        }
+        int literalStart = 0;
+        int position = 0;
+        int hash = snapshot.length >= BLOCK_SIZE ? hash(snapshot, 0) : 0;
+        while (position + BLOCK_SIZE <= snapshot.length) {
+            Integer baseOffset = blocks.get(hash);
+            if (baseOffset != null && regionMatches(base, baseOffset, snapshot, position)) {
+                int matchLength = BLOCK_SIZE;
+                while (baseOffset + matchLength < base.length && position + matchLength < snapshot.length
+                        && base[baseOffset + matchLength] == snapshot[position + matchLength]) {
+                    matchLength++;
+                }
+                builder.addLiteral(snapshot, literalStart, position - literalStart);
+                builder.addCopy(baseOffset, matchLength);
+                position += matchLength;
+                literalStart = position;
+                if (position + BLOCK_SIZE <= snapshot.length) {
+                    hash = hash(snapshot, position);
+                }
+            } else {
+                if (position + BLOCK_SIZE < snapshot.length) {
+                    hash = (hash - snapshot[position] * power) * HASH_MULTIPLIER + snapshot[position + BLOCK_SIZE];
+                }
+                position++;
+            }
+        }
+        builder.addLiteral(snapshot, literalStart, snapshot.length - literalStart);
+        return builder.build();
+    }
+
+    /**
+     * @param base the base snapshot which the delta was computed from
+     * @return the snapshot
+     */
+    byte[] apply(byte[] base) {
+        byte[] snapshot = new byte[length];
+        int position = 0;
+        int literalPosition = 0;
+        for (int i = 0; i < offsets.length; i++) {
+            if (offsets[i] == LITERAL) {
+                System.arraycopy(literals, literalPosition, snapshot, position, lengths[i]);
+                literalPosition += lengths[i];
+            } else {
+                if (offsets[i] + lengths[i] > base.length) {
+                    throw new SiddhiAppRuntimeException("Incremental snapshot of the model does not match its base");
+                }
+                System.arraycopy(base, offsets[i], snapshot, position, lengths[i]);
+            }
+            position += lengths[i];
+        }
+        return snapshot;
+    }
+
+    /**
+     * @return approximate number of bytes the delta takes when persisted
+     */
+    int size() {
+        return literals.length + offsets.length * 8;
+    }
+
+    private static int hash(byte[] bytes, int offset) {
+        int hash = 0;
+        for (int i = offset; i < offset + BLOCK_SIZE; i++) {
+            hash = hash * HASH_MULTIPLIER + bytes[i];
+        }
+        return hash;
+    }
+
+    private static boolean regionMatches(byte[] base, int baseOffset, byte[] snapshot, int offset) {
+        for (int i = 0; i < BLOCK_SIZE; i++) {
+            if (base[baseOffset + i] != snapshot[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Collects the ranges of a delta
+     */
+    private static class Builder {
+        private final int length;
+        private int[] offsets = new int[16];
+        private int[] lengths = new int[16];
+        private byte[] literals = new byte[256];
+        private int noOfRanges;
+        private int noOfLiterals;
+
+        private Builder(int length) {
+            this.length = length;
+        }
+
+        private void addLiteral(byte[] snapshot, int offset, int literalLength) {
+            if (literalLength == 0) {
+                return;
+            }
+            if (noOfLiterals + literalLength > literals.length) {
+                literals = Arrays.copyOf(literals, Math.max(literals.length << 1, noOfLiterals + literalLength));
+            }
+            System.arraycopy(snapshot, offset, literals, noOfLiterals, literalLength);
+            noOfLiterals += literalLength;
+            addRange(LITERAL, literalLength);
+        }
+
+        private void addCopy(int baseOffset, int copyLength) {
+            addRange(baseOffset, copyLength);
+        }
+
+        private void addRange(int offset, int rangeLength) {
+            if (noOfRanges == offsets.length) {
+                offsets = Arrays.copyOf(offsets, noOfRanges << 1);
+                lengths = Arrays.copyOf(lengths, noOfRanges << 1);
+            }
+            offsets[noOfRanges] = offset;
+            lengths[noOfRanges] = rangeLength;
+            noOfRanges++;
+        }
+
+        private SnapshotDelta build() {
+            return new SnapshotDelta(length, Arrays.copyOf(offsets, noOfRanges), Arrays.copyOf(lengths, noOfRanges),
+                    Arrays.copyOf(literals, noOfLiterals));
+        }
+    }
+}
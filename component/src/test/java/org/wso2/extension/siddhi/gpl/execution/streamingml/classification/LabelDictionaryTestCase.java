@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2017 WSO2 Inc. (http://wso2.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.wso2.extension.siddhi.gpl.execution.streamingml.classification;
+
+import org.apache.log4j.Logger;
+import org.testng.AssertJUnit;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class LabelDictionaryTestCase {
+    private static final Logger logger = Logger.getLogger(LabelDictionaryTestCase.class);
+
+    @Test
+    public void testLabelDictionary1() {
+        logger.info("LabelDictionary TestCase - Labels are indexed in the order they are added");
+        LabelDictionary dictionary = new LabelDictionary();
+        List<String> labels = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            String label = "class" + i;
+            AssertJUnit.assertEquals(-1, dictionary.indexOf(label));
+            AssertJUnit.assertEquals(i, dictionary.add(label));
+            labels.add(label);
+        }
+        AssertJUnit.assertEquals(200, dictionary.size());
+        for (int i = 0; i < 200; i++) {
+            AssertJUnit.assertEquals(i, dictionary.indexOf("class" + i));
+            AssertJUnit.assertEquals("class" + i, dictionary.getLabel(i));
+        }
+        AssertJUnit.assertEquals(labels, dictionary.toList());
+    }
+
+    @Test
+    public void testLabelDictionary2() {
+        logger.info("LabelDictionary TestCase - Labels of a snapshot keep their indices");
+        LabelDictionary dictionary = new LabelDictionary(Arrays.asList("setosa", "versicolor", "virginica"));
+        AssertJUnit.assertEquals(3, dictionary.size());
+        AssertJUnit.assertEquals(1, dictionary.indexOf("versicolor"));
+        AssertJUnit.assertEquals("virginica", dictionary.getLabel(2));
+        AssertJUnit.assertEquals(3, dictionary.add("unknown"));
+        AssertJUnit.assertEquals(Arrays.asList("setosa", "versicolor", "virginica", "unknown"), dictionary.toList());
+    }
+
+    @Test(expectedExceptions = IndexOutOfBoundsException.class)
+    public void testLabelDictionary3() {
+        logger.info("LabelDictionary TestCase - Index without a label");
+        new LabelDictionary(Arrays.asList("setosa", "versicolor")).getLabel(2);
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright (C) 2017 WSO2 Inc. (http://wso2.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.wso2.extension.siddhi.gpl.execution.streamingml.classification.hoeffdingtree;
+
+import com.yahoo.labs.samoa.instances.Attribute;
+import com.yahoo.labs.samoa.instances.DenseInstance;
+import com.yahoo.labs.samoa.instances.Instance;
+import com.yahoo.labs.samoa.instances.Instances;
+import com.yahoo.labs.samoa.instances.InstancesHeader;
+import moa.classifiers.trees.HoeffdingAdaptiveTree;
+import org.apache.log4j.Logger;
+import org.testng.AssertJUnit;
+import org.testng.annotations.Test;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.classification.hoeffdingtree.util.AdaptiveHoeffdingTreeModel;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.classification.hoeffdingtree.util.CompiledHoeffdingTree;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.classification.hoeffdingtree.util.HoeffdingTreeStructure;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+public class CompiledHoeffdingTreeTestCase {
+    private static final Logger logger = Logger.getLogger(CompiledHoeffdingTreeTestCase.class);
+    private static final int NO_OF_ATTRIBUTES = 3;
+    private static final int NO_OF_CLASSES = 3;
+
+    @Test
+    public void testCompiledHoeffdingTree1() {
+        logger.info("CompiledHoeffdingTree TestCase - Same votes as MOA with majority class leaves");
+        assertSameVotes(0);
+    }
+
+    @Test
+    public void testCompiledHoeffdingTree2() {
+        logger.info("CompiledHoeffdingTree TestCase - Same votes as MOA with naive Bayes leaves");
+        assertSameVotes(1);
+    }
+
+    @Test
+    public void testCompiledHoeffdingTree3() {
+        logger.info("CompiledHoeffdingTree TestCase - Same votes as MOA with adaptive naive Bayes leaves");
+        assertSameVotes(2);
+    }
+
+    @Test
+    public void testCompiledHoeffdingTree4() {
+        logger.info("CompiledHoeffdingTree TestCase - Empty tree is not compiled");
+        HoeffdingAdaptiveTree tree = createTree(2);
+        AssertJUnit.assertNull(CompiledHoeffdingTree.compile(tree, NO_OF_CLASSES, NO_OF_ATTRIBUTES));
+    }
+
+    @Test
+    public void testCompiledHoeffdingTree5() {
+        logger.info("CompiledHoeffdingTree TestCase - Nodes of the tree and its alternate trees are counted");
+        HoeffdingAdaptiveTree tree = createTree(0);
+        AssertJUnit.assertEquals(0, CompiledHoeffdingTree.countNodes(tree));
+        Random random = new Random(5);
+        double[] trainValues = new double[NO_OF_ATTRIBUTES + 1];
+        Instance trainInstance = createInstance(tree, trainValues);
+        for (int i = 0; i < 5000; i++) {
+            for (int j = 0; j < NO_OF_ATTRIBUTES; j++) {
+                trainValues[j] = random.nextDouble() * 10;
+            }
+            trainValues[NO_OF_ATTRIBUTES] = label(trainValues[0], trainValues[1], random);
+            tree.trainOnInstanceImpl(trainInstance);
+        }
+        // a binary tree of the measured depth has at least two nodes per level below the root
+        AssertJUnit.assertTrue(CompiledHoeffdingTree.countNodes(tree) >= 2 * tree.measureTreeDepth() - 1);
+        AssertJUnit.assertTrue(CompiledHoeffdingTree.countNodes(tree) > 1);
+    }
+
+    @Test
+    public void testCompiledHoeffdingTree6() {
+        logger.info("CompiledHoeffdingTree TestCase - Model read from a mapped snapshot predicts with its compiled "
+                + "tree");
+        AdaptiveHoeffdingTreeModel model = new AdaptiveHoeffdingTreeModel("model");
+        model.init(NO_OF_ATTRIBUTES + 1, NO_OF_CLASSES);
+        model.setConfigurations(50, 0, 1e-7, 0.05, false, false, 2);
+        Random random = new Random(6);
+        train(model, random, 5000);
+        byte[] snapshot = model.toMappedSnapshot();
+        AdaptiveHoeffdingTreeModel restoredModel = AdaptiveHoeffdingTreeModel.fromSnapshot("model", snapshot);
+        assertSamePredictions(model, restoredModel, random);
+        // the MOA tree, which has not been read, is written as it was read
+        AssertJUnit.assertTrue(Arrays.equals(snapshot, restoredModel.toMappedSnapshot()));
+        // the snapshots of the checkpoints hold neither the compiled tree nor the MOA tree as it is serialized
+        AssertJUnit.assertTrue(restoredModel.toSnapshot().length < snapshot.length);
+        assertSamePredictions(model, AdaptiveHoeffdingTreeModel.fromSnapshot("model", model.toSnapshot()), random);
+        AssertJUnit.assertEquals(model.getNoOfNodes(), restoredModel.getNoOfNodes());
+
+        // the MOA tree is read to train the model, and is trained the same as the one it was written from
+        long seed = random.nextLong();
+        train(model, new Random(seed), 2000);
+        train(restoredModel, new Random(seed), 2000);
+        assertSamePredictions(model, restoredModel, random);
+    }
+
+    private static void train(AdaptiveHoeffdingTreeModel model, Random random, int noOfEvents) {
+        double[] values = new double[NO_OF_ATTRIBUTES];
+        for (int i = 0; i < noOfEvents; i++) {
+            for (int j = 0; j < NO_OF_ATTRIBUTES; j++) {
+                values[j] = random.nextDouble() * 10;
+            }
+            model.trainOnEvent(values, "class" + (int) label(values[0], values[1], random));
+        }
+    }
+
+    private static void assertSamePredictions(AdaptiveHoeffdingTreeModel expectedModel,
+                                              AdaptiveHoeffdingTreeModel model, Random random) {
+        double[] values = new double[NO_OF_ATTRIBUTES];
+        for (int i = 0; i < 200; i++) {
+            for (int j = 0; j < NO_OF_ATTRIBUTES; j++) {
+                values[j] = random.nextDouble() * 10;
+            }
+            AssertJUnit.assertTrue(Arrays.equals(expectedModel.getPrediction(values), model.getPrediction(values)));
+        }
+    }
+
+    private void assertSameVotes(int leafPrediction) {
+        HoeffdingAdaptiveTree tree = createTree(leafPrediction);
+        Random random = new Random(leafPrediction);
+        double[] trainValues = new double[NO_OF_ATTRIBUTES + 1];
+        Instance trainInstance = createInstance(tree, trainValues);
+        double[] testValues = new double[NO_OF_ATTRIBUTES + 1];
+        Instance testInstance = createInstance(tree, testValues);
+        // the tree is only compiled again once its structure changes, as the model compiles it
+        HoeffdingTreeStructure structure = new HoeffdingTreeStructure();
+        CompiledHoeffdingTree compiledTree = null;
+        int noOfCompilations = 0;
+        int noOfComparisons = 0;
+        for (int i = 1; i <= 20000; i++) {
+            for (int j = 0; j < NO_OF_ATTRIBUTES; j++) {
+                trainValues[j] = random.nextDouble() * 10;
+            }
+            // the concept drifts halfway, so that alternate trees are grown
+            trainValues[NO_OF_ATTRIBUTES] = i < 10000 ? label(trainValues[0], trainValues[1], random)
+                    : label(trainValues[2], trainValues[0], random);
+            tree.trainOnInstanceImpl(trainInstance);
+            if (structure.update(tree)) {
+                compiledTree = CompiledHoeffdingTree.compile(tree, NO_OF_CLASSES, NO_OF_ATTRIBUTES);
+                noOfCompilations++;
+            }
+            if (i % 10 != 0) {
+                continue;
+            }
+            AssertJUnit.assertNotNull(compiledTree);
+            for (int k = 0; k < 20; k++) {
+                for (int j = 0; j < NO_OF_ATTRIBUTES; j++) {
+                    // some values are missing, or fall on the split values
+                    testValues[j] = k % 5 == 0 ? Double.NaN : k % 7 == 0 ? Math.round(random.nextDouble() * 10)
+                            : random.nextDouble() * 10;
+                }
+                double[] expected = Arrays.copyOf(tree.getVotesForInstance(testInstance), NO_OF_CLASSES);
+                double[] actual = compiledTree.getVotes(Arrays.copyOf(testValues, NO_OF_ATTRIBUTES));
+                AssertJUnit.assertTrue(Arrays.toString(expected) + " is expected but found "
+                        + Arrays.toString(actual), Arrays.equals(expected, actual));
+                noOfComparisons++;
+            }
+        }
+        AssertJUnit.assertEquals(40000, noOfComparisons);
+        AssertJUnit.assertTrue(noOfCompilations < 2000);
+        AssertJUnit.assertTrue(tree.measureTreeDepth() > 1);
+    }
+
+    private static double label(double x, double y, Random random) {
+        if (random.nextDouble() < 0.1) {
+            return random.nextInt(NO_OF_CLASSES);
+        }
+        return x < 5 ? 0 : y < 5 ? 1 : 2;
+    }
+
+    private static HoeffdingAdaptiveTree createTree(int leafPrediction) {
+        List<Attribute> attributes = new ArrayList<>();
+        for (int i = 0; i < NO_OF_ATTRIBUTES; i++) {
+            attributes.add(new Attribute("numeric" + (i + 1)));
+        }
+        List<String> classLabels = new ArrayList<>();
+        for (int i = 0; i < NO_OF_CLASSES; i++) {
+            classLabels.add("class" + (i + 1));
+        }
+        attributes.add(new Attribute("class", classLabels));
+        InstancesHeader header = new InstancesHeader(new Instances("test", attributes, 0));
+        header.setClassIndex(NO_OF_ATTRIBUTES);
+        HoeffdingAdaptiveTree tree = new HoeffdingAdaptiveTree();
+        tree.setModelContext(header);
+        tree.gracePeriodOption.setValue(50);
+        tree.leafpredictionOption.setChosenIndex(leafPrediction);
+        tree.prepareForUse();
+        return tree;
+    }
+
+    private static Instance createInstance(HoeffdingAdaptiveTree tree, double[] values) {
+        Instance instance = new DenseInstance(1.0D, values);
+        instance.setDataset(tree.getModelContext());
+        return instance;
+    }
+}
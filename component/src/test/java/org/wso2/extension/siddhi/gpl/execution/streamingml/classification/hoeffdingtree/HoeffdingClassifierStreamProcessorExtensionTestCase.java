@@ -24,11 +24,19 @@ import io.siddhi.core.query.output.callback.QueryCallback;
 import io.siddhi.core.stream.input.InputHandler;
 import io.siddhi.core.util.EventPrinter;
 import io.siddhi.core.util.SiddhiTestHelper;
+import io.siddhi.core.util.config.InMemoryConfigManager;
 import org.apache.log4j.Logger;
 import org.testng.AssertJUnit;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
 
 public class HoeffdingClassifierStreamProcessorExtensionTestCase {
@@ -403,6 +411,139 @@ public class HoeffdingClassifierStreamProcessorExtensionTestCase {
             siddhiAppRuntime.shutdown();
         }
     }
-}
 
+    @Test
+    public void testClassificationStreamProcessorExtension13() throws Exception {
+        logger.info("HoeffdingClassifierStreamProcessorExtension TestCase - Predict with the model read from the "
+                + "model store after a restart");
+        File modelStoreDirectory = Files.createTempDirectory("hoeffdingTree").toFile();
+        Map<String, String> systemConfigs = new HashMap<>();
+        systemConfigs.put("streamingml.updateHoeffdingTree.modelStoreDirectory",
+                modelStoreDirectory.getAbsolutePath());
+        systemConfigs.put("streamingml.hoeffdingTreeClassifier.modelStoreDirectory",
+                modelStoreDirectory.getAbsolutePath());
+        SiddhiManager siddhiManager = new SiddhiManager();
+        siddhiManager.setConfigManager(new InMemoryConfigManager(systemConfigs, null));
+
+        SiddhiAppRuntime trainingAppRuntime = siddhiManager.createSiddhiAppRuntime(trainingStream + trainingQuery);
+        try {
+            InputHandler inputHandler = trainingAppRuntime.getInputHandler("StreamTrain");
+            trainingAppRuntime.start();
+
+            inputHandler.send(new Object[]{5.4, 3.4, 1.7, 0.2, "setosa"});
+            inputHandler.send(new Object[]{6.9, 3.1, 5.4, 2.1, "virginica"});
+            inputHandler.send(new Object[]{4.3, 3, 1.1, 0.1, "setosa"});
+            inputHandler.send(new Object[]{4.3, 3, 1.1, 0.1, "setosa"});
+            inputHandler.send(new Object[]{6, 2.2, 4, 1, "versicolor"});
+            inputHandler.send(new Object[]{6.1, 2.8, 4.7, 1.2, "versicolor"});
+            inputHandler.send(new Object[]{4.9, 3, 1.4, 0.2, "setosa"});
+            inputHandler.send(new Object[]{5.5, 2.5, 4, 1.3, "versicolor"});
+            inputHandler.send(new Object[]{5.4, 3.9, 1.3, 0.4, "setosa"});
+            inputHandler.send(new Object[]{6.8, 2.8, 4.8, 1.4, "versicolor"});
+            inputHandler.send(new Object[]{6.4, 3.1, 5.5, 1.8, "virginica"});
+            inputHandler.send(new Object[]{6.8, 3, 5.5, 2.1, "virginica"});
+            inputHandler.send(new Object[]{4.8, 3.4, 1.9, 0.2, "setosa"});
+        } finally {
+            // the model is written to the model store when the app is shut down
+            trainingAppRuntime.shutdown();
+        }
+
+        String inStreamDefinition = "@App:name('HoeffdingTestApp') \n" +
+                "define stream StreamA (attribute_0 double, attribute_1 double, attribute_2 double, " +
+                "attribute_3 double);";
+        String query = ("@info(name = 'query1') from StreamA#streamingml:hoeffdingTreeClassifier('ml', " +
+                " attribute_0, attribute_1, attribute_2, attribute_3) " +
+                "select attribute_0, attribute_1, attribute_2, attribute_3, prediction, confidenceLevel " +
+                "insert into outputStream;");
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(inStreamDefinition + query);
+        List<Object[]> predictions = Collections.synchronizedList(new ArrayList<>());
+        siddhiAppRuntime.addCallback("query1", new QueryCallback() {
+
+            @Override
+            public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                EventPrinter.print(inEvents);
+                for (Event event : inEvents) {
+                    predictions.add(event.getData());
+                    count.incrementAndGet();
+                }
+            }
+        });
+        try {
+            siddhiAppRuntime.start();
+            InputHandler inputHandler = siddhiAppRuntime.getInputHandler("StreamA");
+            inputHandler.send(new Object[]{5.1, 3.8, 1.6, 0.2});
+            inputHandler.send(new Object[]{6.5, 2.8, 4.6, 1.5});
+            inputHandler.send(new Object[]{5.7, 2.5, 5, 2});
+
+            SiddhiTestHelper.waitForEvents(200, 3, count, 60000);
+            AssertJUnit.assertArrayEquals(new Object[]{5.1, 3.8, 1.6, 0.2, "setosa", 1.0}, predictions.get(0));
+            AssertJUnit.assertArrayEquals(new Object[]{6.5, 2.8, 4.6, 1.5, "versicolor", 1.0}, predictions.get(1));
+            AssertJUnit.assertArrayEquals(new Object[]{5.7, 2.5, 5, 2, "versicolor", 1.0}, predictions.get(2));
+        } finally {
+            siddhiAppRuntime.shutdown();
+            siddhiManager.shutdown();
+            for (File file : modelStoreDirectory.listFiles()) {
+                file.delete();
+            }
+            modelStoreDirectory.delete();
+        }
+    }
+
+    @Test
+    public void testClassificationStreamProcessorExtension14() throws InterruptedException {
+        logger.info("HoeffdingClassifierStreamProcessorExtension TestCase - Assert the class indices predicted "
+                + "with the index prediction output");
+        Map<String, String> systemConfigs = new HashMap<>();
+        systemConfigs.put("streamingml.hoeffdingTreeClassifier.predictionOutput", "index");
+        SiddhiManager siddhiManager = new SiddhiManager();
+        siddhiManager.setConfigManager(new InMemoryConfigManager(systemConfigs, null));
+
+        String inStreamDefinition = "define stream StreamA (attribute_0 double, attribute_1 double, " +
+                "attribute_2 double, attribute_3 double);";
+        String query = ("@info(name = 'query1') from StreamA#streamingml:hoeffdingTreeClassifier('ml', " +
+                " attribute_0, attribute_1, attribute_2, attribute_3) " +
+                "select attribute_0, attribute_1, attribute_2, attribute_3, prediction, confidenceLevel " +
+                "insert into outputStream;");
+
+        List<Object> predictions = Collections.synchronizedList(new ArrayList<>());
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(trainingStream + inStreamDefinition
+                + trainingQuery + query);
+        siddhiAppRuntime.addCallback("query1", new QueryCallback() {
+
+            @Override
+            public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                EventPrinter.print(inEvents);
+                for (Event event : inEvents) {
+                    predictions.add(event.getData(4));
+                    count.incrementAndGet();
+                }
+            }
+        });
+        try {
+            InputHandler inputHandler = siddhiAppRuntime.getInputHandler("StreamTrain");
+            siddhiAppRuntime.start();
+
+            inputHandler.send(new Object[]{5.4, 3.4, 1.7, 0.2, "setosa"});
+            inputHandler.send(new Object[]{6.9, 3.1, 5.4, 2.1, "virginica"});
+            inputHandler.send(new Object[]{4.3, 3, 1.1, 0.1, "setosa"});
+            inputHandler.send(new Object[]{6, 2.2, 4, 1, "versicolor"});
+            inputHandler.send(new Object[]{4.9, 3, 1.4, 0.2, "setosa"});
+            inputHandler.send(new Object[]{6.4, 3.1, 5.5, 1.8, "virginica"});
 
+            InputHandler inputHandler1 = siddhiAppRuntime.getInputHandler("StreamA");
+            inputHandler1.send(new Object[]{5.1, 3.8, 1.6, 0.2});
+            inputHandler1.send(new Object[]{6.5, 2.8, 4.6, 1.5});
+
+            SiddhiTestHelper.waitForEvents(200, 2, count, 60000);
+            AssertJUnit.assertEquals(2, predictions.size());
+            for (Object prediction : predictions) {
+                AssertJUnit.assertTrue(prediction instanceof Integer);
+                AssertJUnit.assertTrue((Integer) prediction >= 0 && (Integer) prediction < 3);
+            }
+            // setosa is the first class label seen by the model
+            AssertJUnit.assertEquals(0, predictions.get(0));
+        } finally {
+            siddhiAppRuntime.shutdown();
+        }
+    }
+}
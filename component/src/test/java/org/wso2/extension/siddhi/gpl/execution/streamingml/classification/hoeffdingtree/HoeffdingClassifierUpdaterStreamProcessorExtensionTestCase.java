@@ -24,12 +24,18 @@ import io.siddhi.core.query.output.callback.QueryCallback;
 import io.siddhi.core.stream.input.InputHandler;
 import io.siddhi.core.util.EventPrinter;
 import io.siddhi.core.util.SiddhiTestHelper;
+import io.siddhi.core.util.config.InMemoryConfigManager;
 import io.siddhi.core.util.persistence.InMemoryPersistenceStore;
 import org.apache.log4j.Logger;
 import org.testng.AssertJUnit;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
 
 
@@ -745,6 +751,199 @@ public class HoeffdingClassifierUpdaterStreamProcessorExtensionTestCase {
         }
     }
 
+    @Test
+    public void testHoeffdingClassifierLearningExtension20() throws InterruptedException {
+        logger.info("HoeffdingClassifierUpdaterStreamProcessorExtension TestCase - Assert model build "
+                + "with asynchronous training");
+        Map<String, String> configMap = new HashMap<>();
+        configMap.put("streamingml.updateHoeffdingTree.trainingMode", "async");
+        configMap.put("streamingml.updateHoeffdingTree.trainingQueueSize", "4");
+        configMap.put("streamingml.updateHoeffdingTree.backpressurePolicy", "block");
+        SiddhiManager siddhiManager = new SiddhiManager();
+        siddhiManager.setConfigManager(new InMemoryConfigManager(configMap, null));
+        siddhiManager.setPersistenceStore(new InMemoryPersistenceStore());
 
-}
+        String inStreamDefinition = " define stream StreamA (attribute_0 double, attribute_1 double, attribute_2 "
+                + "double,attribute_3 double, attribute_4 string );";
+
+        String query = ("@info(name = 'query1') from StreamA#streamingml:updateHoeffdingTree('model1', 3, "
+                + "attribute_0, attribute_1 , attribute_2 ,attribute_3,attribute_4) select attribute_0, "
+                + "attribute_1, attribute_2, attribute_3, accuracy insert into outputStream;");
+
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(inStreamDefinition + query);
+        siddhiAppRuntime.addCallback("query1", new QueryCallback() {
+
+            @Override
+            public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                count.incrementAndGet();
+                EventPrinter.print(inEvents);
+                double accuracy = (Double) inEvents[0].getData(4);
+                AssertJUnit.assertTrue(accuracy >= 0 && accuracy <= 1);
+            }
+        });
+
+        try {
+            InputHandler inputHandler = siddhiAppRuntime.getInputHandler("StreamA");
+            siddhiAppRuntime.start();
+            for (int i = 0; i < 10; i++) {
+                inputHandler.send(new Object[]{6, 2.2, 4, 1, "versicolor"});
+                inputHandler.send(new Object[]{5.4, 3.4, 1.7, 0.2, "setosa"});
+                inputHandler.send(new Object[]{6.9, 3.1, 5.4, 2.1, "virginica"});
+            }
+            SiddhiTestHelper.waitForEvents(200, 30, count, 60000);
+            AssertJUnit.assertEquals(30, count.get());
+            // taking a snapshot waits for the queued events to be trained on
+            siddhiAppRuntime.persist();
+        } catch (Exception e) {
+            logger.error(e.getMessage(), e);
+            AssertJUnit.fail("Asynchronous training failed: " + e.getMessage());
+        } finally {
+            siddhiAppRuntime.shutdown();
+        }
+    }
+
+    @Test
+    public void testHoeffdingClassifierLearningExtension21() throws InterruptedException {
+        logger.info("HoeffdingClassifierUpdaterStreamProcessorExtension TestCase - Configure an invalid "
+                + "training mode");
+        Map<String, String> configMap = new HashMap<>();
+        configMap.put("streamingml.updateHoeffdingTree.trainingMode", "parallel");
+        SiddhiManager siddhiManager = new SiddhiManager();
+        siddhiManager.setConfigManager(new InMemoryConfigManager(configMap, null));
+
+        String inStreamDefinition = " define stream StreamA (attribute_0 double, attribute_1 double, attribute_2 "
+                + "double,attribute_3 double, attribute_4 string );";
+
+        String query = ("@info(name = 'query1') from StreamA#streamingml:updateHoeffdingTree('model1', 3, "
+                + "attribute_0, attribute_1 , attribute_2 ,attribute_3,attribute_4) select attribute_0, "
+                + "attribute_1, attribute_2, attribute_3, accuracy insert into outputStream;");
+        try {
+            siddhiManager.createSiddhiAppRuntime(inStreamDefinition + query);
+            AssertJUnit.fail("Expected the creation of the Siddhi app to fail");
+        } catch (SiddhiAppCreationException e) {
+            logger.error(e.getMessage());
+            AssertJUnit.assertTrue(e.getMessage().contains("Training mode should be either sync or async but "
+                    + "found parallel"));
+        }
+    }
+
+    @Test
+    public void testHoeffdingClassifierLearningExtension22() throws InterruptedException {
+        logger.info("HoeffdingClassifierUpdaterStreamProcessorExtension TestCase - Assert model build "
+                + "with the statistics of the Siddhi app enabled");
+        SiddhiManager siddhiManager = new SiddhiManager();
+
+        String inStreamDefinition = "@app:statistics(reporter = 'console', interval = '1') "
+                + "define stream StreamA (attribute_0 double, attribute_1 double, attribute_2 "
+                + "double,attribute_3 double, attribute_4 string );";
 
+        String query = ("@info(name = 'query1') from StreamA#streamingml:updateHoeffdingTree('model1', 3, "
+                + "attribute_0, attribute_1 , attribute_2 ,attribute_3,attribute_4) select attribute_0, "
+                + "attribute_1, attribute_2, attribute_3, accuracy insert into outputStream;");
+
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(inStreamDefinition + query);
+        siddhiAppRuntime.addCallback("query1", new QueryCallback() {
+
+            @Override
+            public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                count.incrementAndGet();
+                double accuracy = (Double) inEvents[0].getData(4);
+                AssertJUnit.assertTrue(accuracy >= 0 && accuracy <= 1);
+            }
+        });
+
+        try {
+            InputHandler inputHandler = siddhiAppRuntime.getInputHandler("StreamA");
+            siddhiAppRuntime.start();
+            for (int i = 0; i < 10; i++) {
+                inputHandler.send(new Object[]{6, 2.2, 4, 1, "versicolor"});
+                inputHandler.send(new Object[]{5.4, 3.4, 1.7, 0.2, "setosa"});
+                inputHandler.send(new Object[]{6.9, 3.1, 5.4, 2.1, "virginica"});
+            }
+            SiddhiTestHelper.waitForEvents(200, 30, count, 60000);
+            AssertJUnit.assertEquals(30, count.get());
+            // let the reporter read the trackers and the gauges of the model
+            Thread.sleep(1500);
+        } catch (Exception e) {
+            logger.error(e.getMessage(), e);
+            AssertJUnit.fail("Model fails build with statistics: " + e.getMessage());
+        } finally {
+            siddhiAppRuntime.shutdown();
+        }
+    }
+
+    @Test
+    public void testHoeffdingClassifierLearningExtension23() throws InterruptedException {
+        logger.info("HoeffdingClassifierUpdaterStreamProcessorExtension TestCase - Assert model build "
+                + "with more class labels than the number of classes, and dynamic classes");
+        Map<String, String> configMap = new HashMap<>();
+        configMap.put("streamingml.updateHoeffdingTree.dynamicClasses", "true");
+        SiddhiManager siddhiManager = new SiddhiManager();
+        siddhiManager.setConfigManager(new InMemoryConfigManager(configMap, null));
+
+        String inStreamDefinition = " define stream StreamA (attribute_0 double, attribute_1 double, attribute_2 "
+                + "double,attribute_3 double, attribute_4 string );";
+
+        String query = ("@info(name = 'query1') from StreamA#streamingml:updateHoeffdingTree('model1', 2, "
+                + "attribute_0, attribute_1 , attribute_2 ,attribute_3,attribute_4) select attribute_0, "
+                + "attribute_1, attribute_2, attribute_3, accuracy insert into outputStream;");
+
+        List<Double> accuracies = Collections.synchronizedList(new ArrayList<>());
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(inStreamDefinition + query);
+        siddhiAppRuntime.addCallback("query1", new QueryCallback() {
+
+            @Override
+            public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                EventPrinter.print(inEvents);
+                for (Event event : inEvents) {
+                    accuracies.add((Double) event.getData(4));
+                    count.incrementAndGet();
+                }
+            }
+        });
+
+        try {
+            InputHandler inputHandler = siddhiAppRuntime.getInputHandler("StreamA");
+            siddhiAppRuntime.start();
+            for (int i = 0; i < 10; i++) {
+                inputHandler.send(new Object[]{6, 2.2, 4, 1, "versicolor"});
+                inputHandler.send(new Object[]{5.4, 3.4, 1.7, 0.2, "setosa"});
+                inputHandler.send(new Object[]{6.9, 3.1, 5.4, 2.1, "virginica"});
+            }
+            SiddhiTestHelper.waitForEvents(200, 30, count, 60000);
+            AssertJUnit.assertEquals(30, accuracies.size());
+            // the tree learns the third class along with the first two, hence the model is not reset by it
+            AssertJUnit.assertTrue(accuracies.get(29) > 0.5);
+        } catch (Exception e) {
+            logger.error(e.getMessage(), e);
+            AssertJUnit.fail("Model fails to add a class: " + e.getMessage());
+        } finally {
+            siddhiAppRuntime.shutdown();
+        }
+    }
+
+    @Test
+    public void testHoeffdingClassifierLearningExtension24() throws InterruptedException {
+        logger.info("HoeffdingClassifierUpdaterStreamProcessorExtension TestCase - Configure an invalid "
+                + "dynamic classes option");
+        Map<String, String> configMap = new HashMap<>();
+        configMap.put("streamingml.updateHoeffdingTree.dynamicClasses", "sometimes");
+        SiddhiManager siddhiManager = new SiddhiManager();
+        siddhiManager.setConfigManager(new InMemoryConfigManager(configMap, null));
+
+        String inStreamDefinition = " define stream StreamA (attribute_0 double, attribute_1 double, attribute_2 "
+                + "double,attribute_3 double, attribute_4 string );";
+
+        String query = ("@info(name = 'query1') from StreamA#streamingml:updateHoeffdingTree('model1', 3, "
+                + "attribute_0, attribute_1 , attribute_2 ,attribute_3,attribute_4) select attribute_0, "
+                + "attribute_1, attribute_2, attribute_3, accuracy insert into outputStream;");
+        try {
+            siddhiManager.createSiddhiAppRuntime(inStreamDefinition + query);
+            AssertJUnit.fail("Expected the creation of the Siddhi app to fail");
+        } catch (SiddhiAppCreationException e) {
+            logger.error(e.getMessage());
+            AssertJUnit.assertTrue(e.getMessage().contains("dynamicClasses should be either true or false but "
+                    + "found sometimes"));
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2017 WSO2 Inc. (http://wso2.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.wso2.extension.siddhi.gpl.execution.streamingml.classification.hoeffdingtree;
+
+import io.siddhi.core.SiddhiAppRuntime;
+import io.siddhi.core.SiddhiManager;
+import io.siddhi.core.event.Event;
+import io.siddhi.core.exception.SiddhiAppCreationException;
+import io.siddhi.core.query.output.callback.QueryCallback;
+import io.siddhi.core.stream.input.InputHandler;
+import io.siddhi.core.util.EventPrinter;
+import io.siddhi.core.util.SiddhiTestHelper;
+import org.apache.log4j.Logger;
+import org.testng.AssertJUnit;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class KeyedHoeffdingClassifierStreamProcessorExtensionTestCase {
+    private static final Logger logger = Logger
+            .getLogger(KeyedHoeffdingClassifierStreamProcessorExtensionTestCase.class);
+
+    private static final String TRAINING_STREAM = "define stream StreamTrain (sensorId string, attribute_0 double, "
+            + "attribute_1 double, attribute_2 double, attribute_3 double, attribute_4 string );";
+    private static final String TRAINING_QUERY = "@info(name = 'query-train') "
+            + "from StreamTrain#streamingml:updateKeyedHoeffdingTree('ml', sensorId, 3, "
+            + "attribute_0, attribute_1, attribute_2, attribute_3, attribute_4) \n"
+            + "insert all events into trainOutputStream;\n";
+
+    private AtomicInteger count;
+
+    @BeforeMethod
+    public void init() {
+        count = new AtomicInteger(0);
+    }
+
+    @Test
+    public void testKeyedClassificationStreamProcessorExtension1() throws InterruptedException {
+        logger.info("KeyedHoeffdingClassifierStreamProcessorExtension TestCase - Assert each key is predicted by "
+                + "its own model");
+        SiddhiManager siddhiManager = new SiddhiManager();
+
+        String inStreamDefinition = "define stream StreamA (sensorId string, attribute_0 double, "
+                + "attribute_1 double, attribute_2 double, attribute_3 double);";
+        String query = ("@info(name = 'query1') from StreamA#streamingml:keyedHoeffdingTreeClassifier('ml', "
+                + "sensorId, attribute_0, attribute_1, attribute_2, attribute_3) "
+                + "select sensorId, prediction, confidenceLevel insert into outputStream;");
+
+        Map<String, Object[]> predictions = Collections.synchronizedMap(new HashMap<>());
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(TRAINING_STREAM
+                + inStreamDefinition + TRAINING_QUERY + query);
+        siddhiAppRuntime.addCallback("query1", new QueryCallback() {
+
+            @Override
+            public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                EventPrinter.print(inEvents);
+                for (Event event : inEvents) {
+                    predictions.put((String) event.getData(0), event.getData());
+                    count.incrementAndGet();
+                }
+            }
+        });
+        try {
+            InputHandler trainingHandler = siddhiAppRuntime.getInputHandler("StreamTrain");
+            siddhiAppRuntime.start();
+            // each sensor only sees a class of its own
+            trainingHandler.send(new Object[]{"sensor1", 5.4, 3.4, 1.7, 0.2, "setosa"});
+            trainingHandler.send(new Object[]{"sensor2", 6.1, 2.8, 4.7, 1.2, "versicolor"});
+            trainingHandler.send(new Object[]{"sensor1", 4.3, 3, 1.1, 0.1, "setosa"});
+            trainingHandler.send(new Object[]{"sensor2", 6, 2.2, 4, 1, "versicolor"});
+
+            InputHandler inputHandler = siddhiAppRuntime.getInputHandler("StreamA");
+            inputHandler.send(new Object[]{"sensor1", 6, 2.2, 4, 1});
+            inputHandler.send(new Object[]{"sensor2", 5.4, 3.4, 1.7, 0.2});
+            inputHandler.send(new Object[]{"sensor3", 5.4, 3.4, 1.7, 0.2});
+            SiddhiTestHelper.waitForEvents(200, 3, count, 60000);
+
+            AssertJUnit.assertEquals("setosa", predictions.get("sensor1")[1]);
+            AssertJUnit.assertNotNull(predictions.get("sensor1")[2]);
+            AssertJUnit.assertEquals("versicolor", predictions.get("sensor2")[1]);
+            AssertJUnit.assertNotNull(predictions.get("sensor2")[2]);
+            // no model has been built for the sensor
+            AssertJUnit.assertArrayEquals(new Object[]{"sensor3", null, null}, predictions.get("sensor3"));
+        } finally {
+            siddhiAppRuntime.shutdown();
+        }
+    }
+
+    @Test
+    public void testKeyedClassificationStreamProcessorExtension2() {
+        logger.info("KeyedHoeffdingClassifierStreamProcessorExtension TestCase - models which are not built");
+        SiddhiManager siddhiManager = new SiddhiManager();
+
+        String inStreamDefinition = "define stream StreamA (sensorId string, attribute_0 double, "
+                + "attribute_1 double, attribute_2 double, attribute_3 double);";
+        String query = ("@info(name = 'query1') from StreamA#streamingml:keyedHoeffdingTreeClassifier('ml', "
+                + "sensorId, attribute_0, attribute_1, attribute_2, attribute_3) "
+                + "select sensorId, prediction, confidenceLevel insert into outputStream;");
+        try {
+            siddhiManager.createSiddhiAppRuntime(inStreamDefinition + query);
+            AssertJUnit.fail();
+        } catch (Exception e) {
+            logger.error(e.getCause().getMessage());
+            AssertJUnit.assertTrue(e instanceof SiddhiAppCreationException);
+            AssertJUnit.assertTrue(e.getCause().getMessage().contains("Perform "
+                    + "streamingml:updateKeyedHoeffdingTree process first."));
+        }
+    }
+
+    @Test
+    public void testKeyedClassificationStreamProcessorExtension3() {
+        logger.info("KeyedHoeffdingClassifierStreamProcessorExtension TestCase - features which do not match the "
+                + "models");
+        SiddhiManager siddhiManager = new SiddhiManager();
+
+        String inStreamDefinition = "define stream StreamA (sensorId string, attribute_0 double, "
+                + "attribute_1 double, attribute_2 double);";
+        String query = ("@info(name = 'query1') from StreamA#streamingml:keyedHoeffdingTreeClassifier('ml', "
+                + "sensorId, attribute_0, attribute_1, attribute_2) "
+                + "select sensorId, prediction, confidenceLevel insert into outputStream;");
+        try {
+            siddhiManager.createSiddhiAppRuntime(TRAINING_STREAM + inStreamDefinition + TRAINING_QUERY + query);
+            AssertJUnit.fail();
+        } catch (Exception e) {
+            logger.error(e.getCause().getMessage());
+            AssertJUnit.assertTrue(e instanceof SiddhiAppCreationException);
+            AssertJUnit.assertTrue(e.getCause().getMessage().contains("expects 5 features"));
+        }
+    }
+}
@@ -0,0 +1,242 @@
+/*
+ * Copyright (C) 2017 WSO2 Inc. (http://wso2.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.wso2.extension.siddhi.gpl.execution.streamingml.classification.hoeffdingtree;
+
+import io.siddhi.core.SiddhiAppRuntime;
+import io.siddhi.core.SiddhiManager;
+import io.siddhi.core.event.Event;
+import io.siddhi.core.exception.SiddhiAppCreationException;
+import io.siddhi.core.query.output.callback.QueryCallback;
+import io.siddhi.core.stream.input.InputHandler;
+import io.siddhi.core.util.EventPrinter;
+import io.siddhi.core.util.SiddhiTestHelper;
+import io.siddhi.core.util.config.InMemoryConfigManager;
+import io.siddhi.core.util.persistence.InMemoryPersistenceStore;
+import org.apache.log4j.Logger;
+import org.testng.AssertJUnit;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class KeyedHoeffdingClassifierUpdaterStreamProcessorExtensionTestCase {
+
+    private static final Logger logger = Logger
+            .getLogger(KeyedHoeffdingClassifierUpdaterStreamProcessorExtensionTestCase.class);
+
+    private static final String STREAM_DEFINITION = " define stream StreamA (sensorId string, attribute_0 double, "
+            + "attribute_1 double, attribute_2 double, attribute_3 double, attribute_4 string );";
+    private static final Object[][] EVENTS = {
+            {6, 2.2, 4, 1, "versicolor"},
+            {5.4, 3.4, 1.7, 0.2, "setosa"},
+            {6.9, 3.1, 5.4, 2.1, "virginica"},
+            {4.3, 3, 1.1, 0.1, "setosa"},
+            {6.1, 2.8, 4.7, 1.2, "versicolor"},
+            {4.8, 3.4, 1.9, 0.2, "setosa"},
+            {5.8, 2.7, 4.1, 1, "versicolor"}};
+
+    private AtomicInteger count;
+
+    @BeforeMethod
+    public void init() {
+        count = new AtomicInteger(0);
+    }
+
+    private static Object[] withKey(String key, Object[] event) {
+        Object[] data = new Object[event.length + 1];
+        data[0] = key;
+        System.arraycopy(event, 0, data, 1, event.length);
+        return data;
+    }
+
+    @Test
+    public void testKeyedHoeffdingClassifierLearningExtension1() throws InterruptedException {
+        logger.info("KeyedHoeffdingClassifierUpdaterStreamProcessorExtension TestCase - Assert each key is "
+                + "trained on its own model");
+        SiddhiManager siddhiManager = new SiddhiManager();
+
+        String query = ("@info(name = 'query1') from StreamA#streamingml:updateKeyedHoeffdingTree('model1', "
+                + "sensorId, 3, attribute_0, attribute_1 , attribute_2 ,attribute_3,attribute_4) select sensorId, "
+                + "accuracy insert into outputStream;");
+
+        Map<String, List<Double>> accuracies = Collections.synchronizedMap(new HashMap<>());
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(STREAM_DEFINITION + query);
+        siddhiAppRuntime.addCallback("query1", new QueryCallback() {
+
+            @Override
+            public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                EventPrinter.print(inEvents);
+                for (Event event : inEvents) {
+                    accuracies.computeIfAbsent((String) event.getData(0), key -> new ArrayList<>())
+                            .add((Double) event.getData(1));
+                    count.incrementAndGet();
+                }
+            }
+        });
+
+        try {
+            InputHandler inputHandler = siddhiAppRuntime.getInputHandler("StreamA");
+            siddhiAppRuntime.start();
+            // the events of the second sensor are interleaved, in the reverse order
+            for (int i = 0; i < EVENTS.length; i++) {
+                inputHandler.send(withKey("sensor1", EVENTS[i]));
+                inputHandler.send(withKey("sensor2", EVENTS[EVENTS.length - 1 - i]));
+            }
+            SiddhiTestHelper.waitForEvents(200, 2 * EVENTS.length, count, 60000);
+
+            // the same accuracies as a single model trained on the events of the first sensor only
+            AssertJUnit.assertEquals(0.0, accuracies.get("sensor1").get(0));
+            AssertJUnit.assertEquals(0.333, accuracies.get("sensor1").get(5));
+            AssertJUnit.assertEquals(0.5, accuracies.get("sensor1").get(6));
+            AssertJUnit.assertEquals(EVENTS.length, accuracies.get("sensor2").size());
+        } finally {
+            siddhiAppRuntime.shutdown();
+        }
+    }
+
+    @Test
+    public void testKeyedHoeffdingClassifierLearningExtension2() throws InterruptedException {
+        logger.info("KeyedHoeffdingClassifierUpdaterStreamProcessorExtension TestCase - Assert the least "
+                + "recently used model is evicted once the maximum number of models is reached");
+        Map<String, String> systemConfigs = new HashMap<>();
+        systemConfigs.put("streamingml.updateKeyedHoeffdingTree.maxNoOfModels", "1");
+        SiddhiManager siddhiManager = new SiddhiManager();
+        siddhiManager.setConfigManager(new InMemoryConfigManager(systemConfigs, null));
+
+        String query = ("@info(name = 'query1') from StreamA#streamingml:updateKeyedHoeffdingTree('model1', "
+                + "sensorId, 3, attribute_0, attribute_1 , attribute_2 ,attribute_3,attribute_4) select sensorId, "
+                + "accuracy insert into outputStream;");
+
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(STREAM_DEFINITION + query);
+        siddhiAppRuntime.addCallback("query1", new QueryCallback() {
+
+            @Override
+            public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                EventPrinter.print(inEvents);
+                for (Event event : inEvents) {
+                    // the model of each sensor is evicted by the other, hence never sees all the classes
+                    AssertJUnit.assertEquals(0.0, event.getData(1));
+                    count.incrementAndGet();
+                }
+            }
+        });
+
+        try {
+            InputHandler inputHandler = siddhiAppRuntime.getInputHandler("StreamA");
+            siddhiAppRuntime.start();
+            for (Object[] event : EVENTS) {
+                inputHandler.send(withKey("sensor1", event));
+                inputHandler.send(withKey("sensor2", event));
+            }
+            SiddhiTestHelper.waitForEvents(200, 2 * EVENTS.length, count, 60000);
+            AssertJUnit.assertEquals(2 * EVENTS.length, count.get());
+        } finally {
+            siddhiAppRuntime.shutdown();
+        }
+    }
+
+    @Test
+    public void testKeyedHoeffdingClassifierLearningExtension3() throws InterruptedException {
+        logger.info("KeyedHoeffdingClassifierUpdaterStreamProcessorExtension TestCase - Assert the models of "
+                + "all the keys are restored");
+        SiddhiManager siddhiManager = new SiddhiManager();
+        siddhiManager.setPersistenceStore(new InMemoryPersistenceStore());
+
+        String query = ("@info(name = 'query1') from StreamA#streamingml:updateKeyedHoeffdingTree('model1', "
+                + "sensorId, 3, 5, 300, 1e-7, 0.05, false, false, 2, attribute_0, attribute_1 , attribute_2 ,"
+                + "attribute_3,attribute_4) select sensorId, accuracy insert into outputStream;");
+
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(STREAM_DEFINITION + query);
+        siddhiAppRuntime.addCallback("query1", new QueryCallback() {
+
+            @Override
+            public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                EventPrinter.print(inEvents);
+                count.addAndGet(inEvents.length);
+                if (count.get() == 2 * EVENTS.length + 1) {
+                    // the restored model of the sensor has seen all the classes
+                    double accuracy = (Double) inEvents[inEvents.length - 1].getData(1);
+                    AssertJUnit.assertTrue(accuracy > 0 && accuracy <= 1);
+                }
+            }
+        });
+
+        try {
+            InputHandler inputHandler = siddhiAppRuntime.getInputHandler("StreamA");
+            siddhiAppRuntime.start();
+            for (Object[] event : EVENTS) {
+                inputHandler.send(withKey("sensor1", event));
+                inputHandler.send(withKey("sensor2", event));
+            }
+            siddhiAppRuntime.persist();
+            siddhiAppRuntime.restoreLastRevision();
+            inputHandler.send(withKey("sensor2", EVENTS[5]));
+            SiddhiTestHelper.waitForEvents(200, 2 * EVENTS.length + 1, count, 60000);
+            AssertJUnit.assertEquals(2 * EVENTS.length + 1, count.get());
+        } catch (Exception e) {
+            logger.error(e.getMessage(), e);
+            AssertJUnit.fail("Model is not restored: " + e.getMessage());
+        } finally {
+            siddhiAppRuntime.shutdown();
+        }
+    }
+
+    @Test
+    public void testKeyedHoeffdingClassifierLearningExtension4() {
+        logger.info("KeyedHoeffdingClassifierUpdaterStreamProcessorExtension TestCase - key of an invalid type");
+        SiddhiManager siddhiManager = new SiddhiManager();
+
+        String query = ("@info(name = 'query1') from StreamA#streamingml:updateKeyedHoeffdingTree('model1', "
+                + "attribute_0, 3, attribute_0, attribute_1 , attribute_2 ,attribute_3,attribute_4) select "
+                + "accuracy insert into outputStream;");
+        try {
+            siddhiManager.createSiddhiAppRuntime(STREAM_DEFINITION + query);
+            AssertJUnit.fail();
+        } catch (Exception e) {
+            logger.error(e.getCause().getMessage());
+            AssertJUnit.assertTrue(e instanceof SiddhiAppCreationException);
+            AssertJUnit.assertTrue(e.getCause().getMessage().contains("[key attribute] in 1 th index should be "
+                    + "either a STRING, an INT or a LONG but found DOUBLE"));
+        }
+    }
+
+    @Test
+    public void testKeyedHoeffdingClassifierLearningExtension5() {
+        logger.info("KeyedHoeffdingClassifierUpdaterStreamProcessorExtension TestCase - invalid maximum number of "
+                + "models");
+        Map<String, String> systemConfigs = new HashMap<>();
+        systemConfigs.put("streamingml.updateKeyedHoeffdingTree.maxNoOfModels", "0");
+        SiddhiManager siddhiManager = new SiddhiManager();
+        siddhiManager.setConfigManager(new InMemoryConfigManager(systemConfigs, null));
+
+        String query = ("@info(name = 'query1') from StreamA#streamingml:updateKeyedHoeffdingTree('model1', "
+                + "sensorId, 3, attribute_0, attribute_1 , attribute_2 ,attribute_3,attribute_4) select "
+                + "accuracy insert into outputStream;");
+        try {
+            siddhiManager.createSiddhiAppRuntime(STREAM_DEFINITION + query);
+            AssertJUnit.fail();
+        } catch (SiddhiAppCreationException e) {
+            AssertJUnit.assertTrue(e.getMessage().contains("Maximum number of models should be an integer "
+                    + "between 1 and 2147483647 but found 0"));
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2017 WSO2 Inc. (http://wso2.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.wso2.extension.siddhi.gpl.execution.streamingml.classification.onlinebagging;
+
+import org.apache.log4j.Logger;
+import org.testng.AssertJUnit;
+import org.testng.annotations.Test;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.classification.onlinebagging.util.EnsembleVotes;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class EnsembleVotesTestCase {
+    private static final Logger logger = Logger.getLogger(EnsembleVotesTestCase.class);
+
+    @Test
+    public void testEnsembleVotes1() {
+        logger.info("EnsembleVotes TestCase - The votes are decided only on a strict lead over the remaining "
+                + "members");
+        AssertJUnit.assertTrue(EnsembleVotes.isDecided(new double[]{3, 0.5}, 2));
+        AssertJUnit.assertFalse(EnsembleVotes.isDecided(new double[]{3, 1}, 2));
+        AssertJUnit.assertFalse(EnsembleVotes.isDecided(new double[]{1, 3}, 2));
+        AssertJUnit.assertTrue(EnsembleVotes.isDecided(new double[]{1, 3.5, 0}, 2));
+        AssertJUnit.assertFalse(EnsembleVotes.isDecided(new double[]{2, 2, 0}, 0));
+        AssertJUnit.assertTrue(EnsembleVotes.isDecided(new double[]{2, 1.5, 1}, 0));
+        AssertJUnit.assertTrue(EnsembleVotes.isDecided(new double[]{0}, 5));
+    }
+
+    @Test
+    public void testEnsembleVotes2() {
+        logger.info("EnsembleVotes TestCase - The voting stops once the remaining members cannot change the "
+                + "winner");
+        double[][] memberVotes = new double[10][];
+        for (int i = 0; i < memberVotes.length; i++) {
+            memberVotes[i] = i < 6 ? new double[]{2, 0} : new double[]{0, 5};
+        }
+        AtomicInteger noOfEvaluations = new AtomicInteger();
+        double[] votes = new double[2];
+        int noOfVotingMembers = EnsembleVotes.vote(votes, memberVotes.length, i -> {
+            noOfEvaluations.incrementAndGet();
+            return memberVotes[i];
+        }, true);
+        // after 6 members the lead of 6 is more than the 4 members left
+        AssertJUnit.assertEquals(6, noOfVotingMembers);
+        AssertJUnit.assertEquals(6, noOfEvaluations.get());
+        AssertJUnit.assertTrue(Arrays.equals(new double[]{6, 0}, votes));
+
+        noOfEvaluations.set(0);
+        double[] fullVotes = new double[2];
+        AssertJUnit.assertEquals(10, EnsembleVotes.vote(fullVotes, memberVotes.length, i -> {
+            noOfEvaluations.incrementAndGet();
+            return memberVotes[i];
+        }, false));
+        AssertJUnit.assertEquals(10, noOfEvaluations.get());
+        AssertJUnit.assertTrue(Arrays.equals(new double[]{6, 4}, fullVotes));
+    }
+
+    @Test
+    public void testEnsembleVotes3() {
+        logger.info("EnsembleVotes TestCase - A lead equal to the remaining members does not stop the voting");
+        // after 5 members the lead of 5 equals the 5 members left, which could tie the votes
+        double[][] memberVotes = new double[10][];
+        for (int i = 0; i < memberVotes.length; i++) {
+            memberVotes[i] = i < 5 ? new double[]{1, 0} : new double[]{0, 1};
+        }
+        AtomicInteger noOfEvaluations = new AtomicInteger();
+        double[] votes = new double[2];
+        AssertJUnit.assertEquals(10, EnsembleVotes.vote(votes, memberVotes.length, i -> {
+            noOfEvaluations.incrementAndGet();
+            return memberVotes[i];
+        }, true));
+        AssertJUnit.assertEquals(10, noOfEvaluations.get());
+        AssertJUnit.assertTrue(Arrays.equals(new double[]{5, 5}, votes));
+
+        // a member without votes adds nothing, so the lead of 5 is more than the 4 members left after it
+        memberVotes[5] = new double[]{0, 0};
+        noOfEvaluations.set(0);
+        Arrays.fill(votes, 0);
+        AssertJUnit.assertEquals(6, EnsembleVotes.vote(votes, memberVotes.length, i -> {
+            noOfEvaluations.incrementAndGet();
+            return memberVotes[i];
+        }, true));
+        AssertJUnit.assertEquals(6, noOfEvaluations.get());
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright (C) 2017 WSO2 Inc. (http://wso2.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.wso2.extension.siddhi.gpl.execution.streamingml.classification.onlinebagging;
+
+import io.siddhi.core.SiddhiAppRuntime;
+import io.siddhi.core.SiddhiManager;
+import io.siddhi.core.event.Event;
+import io.siddhi.core.exception.SiddhiAppCreationException;
+import io.siddhi.core.query.output.callback.QueryCallback;
+import io.siddhi.core.stream.input.InputHandler;
+import io.siddhi.core.util.EventPrinter;
+import io.siddhi.core.util.SiddhiTestHelper;
+import io.siddhi.core.util.config.InMemoryConfigManager;
+import org.apache.log4j.Logger;
+import org.testng.AssertJUnit;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class OnlineBaggingClassifierStreamProcessorExtensionTestCase {
+    private static final Logger logger = Logger
+            .getLogger(OnlineBaggingClassifierStreamProcessorExtensionTestCase.class);
+    private AtomicInteger count;
+    private String trainingStream = "@App:name('OnlineBaggingTestApp') \n" +
+            "define stream StreamTrain (attribute_0 double, " +
+            "attribute_1 double, attribute_2 double, attribute_3 double, attribute_4 string );";
+    private String trainingQuery = ("@info(name = 'query-train') " +
+            "from StreamTrain#streamingml:updateOnlineBagging('ml', 3, " +
+            "attribute_0, attribute_1, attribute_2, attribute_3, attribute_4) \n"
+            + "insert all events into trainOutputStream;\n");
+    private String inStreamDefinition = "define stream StreamA (attribute_0 double, attribute_1 double, " +
+            "attribute_2 double, attribute_3 double);";
+    private String query = ("@info(name = 'query1') from StreamA#streamingml:onlineBaggingClassifier('ml', " +
+            " attribute_0, attribute_1, attribute_2, attribute_3) " +
+            "select attribute_0, attribute_1, attribute_2, attribute_3, prediction, confidenceLevel " +
+            "insert into outputStream;");
+
+    @BeforeMethod
+    public void init() {
+        count = new AtomicInteger(0);
+    }
+
+    @Test
+    public void testOnlineBaggingClassifierExtension1() throws InterruptedException {
+        logger.info("OnlineBaggingClassifierStreamProcessorExtension TestCase - Assert predictions");
+        List<Object[]> predictions = predict(new SiddhiManager());
+        AssertJUnit.assertEquals(3, predictions.size());
+        for (Object[] prediction : predictions) {
+            AssertJUnit.assertTrue(Arrays.asList("setosa", "versicolor", "virginica").contains(prediction[4]));
+            AssertJUnit.assertTrue((Double) prediction[5] > 0 && (Double) prediction[5] <= 1);
+        }
+        // the setosa flowers are set apart by their petals, even by an ensemble trained on a few events
+        AssertJUnit.assertEquals("setosa", predictions.get(0)[4]);
+    }
+
+    @Test
+    public void testOnlineBaggingClassifierExtension2() throws InterruptedException {
+        logger.info("OnlineBaggingClassifierStreamProcessorExtension TestCase - The voting that stops early "
+                + "predicts as the voting of all the trees");
+        Map<String, String> configMap = new HashMap<>();
+        configMap.put("streamingml.onlineBaggingClassifier.votingMode", "full");
+        SiddhiManager fullManager = new SiddhiManager();
+        fullManager.setConfigManager(new InMemoryConfigManager(configMap, null));
+        List<Object[]> fullPredictions = predict(fullManager);
+
+        count.set(0);
+        configMap.put("streamingml.onlineBaggingClassifier.votingMode", "earlyExit");
+        SiddhiManager earlyExitManager = new SiddhiManager();
+        earlyExitManager.setConfigManager(new InMemoryConfigManager(configMap, null));
+        List<Object[]> earlyExitPredictions = predict(earlyExitManager);
+        AssertJUnit.assertEquals(fullPredictions.size(), earlyExitPredictions.size());
+        for (int i = 0; i < fullPredictions.size(); i++) {
+            // the confidence level of an early exit is computed from the trees which voted
+            AssertJUnit.assertEquals(fullPredictions.get(i)[4], earlyExitPredictions.get(i)[4]);
+        }
+    }
+
+    @Test
+    public void testOnlineBaggingClassifierExtension3() {
+        logger.info("OnlineBaggingClassifierStreamProcessorExtension TestCase - Model is not trained");
+        SiddhiManager siddhiManager = new SiddhiManager();
+        try {
+            siddhiManager.createSiddhiAppRuntime(inStreamDefinition + query);
+            AssertJUnit.fail("Siddhi app is created without a model");
+        } catch (Exception e) {
+            logger.error(e.getCause().getMessage());
+            AssertJUnit.assertTrue(e instanceof SiddhiAppCreationException);
+            AssertJUnit.assertTrue(e.getCause().getMessage().contains("needs to initialized prior to be used with "
+                    + "streamingml:onlineBaggingClassifier"));
+        }
+    }
+
+    @Test
+    public void testOnlineBaggingClassifierExtension4() {
+        logger.info("OnlineBaggingClassifierStreamProcessorExtension TestCase - Number of features differs "
+                + "from the model");
+        SiddhiManager siddhiManager = new SiddhiManager();
+        String inStreamDefinition = "define stream StreamA (attribute_0 double, attribute_1 double, " +
+                "attribute_2 double);";
+        String query = ("@info(name = 'query1') from StreamA#streamingml:onlineBaggingClassifier('ml', " +
+                " attribute_0, attribute_1, attribute_2) " +
+                "select attribute_0, attribute_1, attribute_2, prediction, confidenceLevel " +
+                "insert into outputStream;");
+        try {
+            siddhiManager.createSiddhiAppRuntime(trainingStream + inStreamDefinition + trainingQuery + query);
+            AssertJUnit.fail("Siddhi app is created with less features than the model");
+        } catch (Exception e) {
+            logger.error(e.getCause().getMessage());
+            AssertJUnit.assertTrue(e instanceof SiddhiAppCreationException);
+            AssertJUnit.assertTrue(e.getCause().getMessage().contains("expects 4 features, but the "
+                    + "streamingml:onlineBaggingClassifier specifies 3 features"));
+        }
+    }
+
+    @Test
+    public void testOnlineBaggingClassifierExtension5() {
+        logger.info("OnlineBaggingClassifierStreamProcessorExtension TestCase - Invalid voting mode");
+        Map<String, String> configMap = new HashMap<>();
+        configMap.put("streamingml.onlineBaggingClassifier.votingMode", "majority");
+        SiddhiManager siddhiManager = new SiddhiManager();
+        siddhiManager.setConfigManager(new InMemoryConfigManager(configMap, null));
+        try {
+            siddhiManager.createSiddhiAppRuntime(trainingStream + inStreamDefinition + trainingQuery + query);
+            AssertJUnit.fail("Siddhi app is created with an invalid voting mode");
+        } catch (Exception e) {
+            logger.error(e.getMessage());
+            AssertJUnit.assertTrue(e instanceof SiddhiAppCreationException);
+            AssertJUnit.assertTrue(e.getMessage().contains("votingMode should be either full or earlyExit but "
+                    + "found majority"));
+        }
+    }
+
+    /**
+     * Train a model, and return the predictions of the model for a few unseen events
+     */
+    private List<Object[]> predict(SiddhiManager siddhiManager) throws InterruptedException {
+        List<Object[]> predictions = Collections.synchronizedList(new ArrayList<>());
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(trainingStream
+                + inStreamDefinition + trainingQuery + query);
+        siddhiAppRuntime.addCallback("query1", new QueryCallback() {
+
+            @Override
+            public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                EventPrinter.print(inEvents);
+                for (Event event : inEvents) {
+                    predictions.add(event.getData());
+                    count.incrementAndGet();
+                }
+            }
+        });
+        try {
+            InputHandler inputHandler = siddhiAppRuntime.getInputHandler("StreamTrain");
+            siddhiAppRuntime.start();
+            for (int i = 0; i < 5; i++) {
+                inputHandler.send(new Object[]{5.4, 3.4, 1.7, 0.2, "setosa"});
+                inputHandler.send(new Object[]{6.9, 3.1, 5.4, 2.1, "virginica"});
+                inputHandler.send(new Object[]{4.3, 3, 1.1, 0.1, "setosa"});
+                inputHandler.send(new Object[]{6, 2.2, 4, 1, "versicolor"});
+                inputHandler.send(new Object[]{6.1, 2.8, 4.7, 1.2, "versicolor"});
+                inputHandler.send(new Object[]{4.9, 3, 1.4, 0.2, "setosa"});
+                inputHandler.send(new Object[]{6.4, 3.1, 5.5, 1.8, "virginica"});
+                inputHandler.send(new Object[]{5.5, 2.5, 4, 1.3, "versicolor"});
+                inputHandler.send(new Object[]{6.8, 3, 5.5, 2.1, "virginica"});
+            }
+
+            InputHandler inputHandler1 = siddhiAppRuntime.getInputHandler("StreamA");
+            // send some unseen data for prediction
+            inputHandler1.send(new Object[]{5.1, 3.8, 1.6, 0.2});
+            inputHandler1.send(new Object[]{6.5, 2.8, 4.6, 1.5});
+            inputHandler1.send(new Object[]{5.7, 2.5, 5, 2});
+
+            SiddhiTestHelper.waitForEvents(200, 3, count, 60000);
+        } finally {
+            siddhiAppRuntime.shutdown();
+        }
+        return new ArrayList<>(predictions);
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright (C) 2017 WSO2 Inc. (http://wso2.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.wso2.extension.siddhi.gpl.execution.streamingml.classification.onlinebagging;
+
+import io.siddhi.core.SiddhiAppRuntime;
+import io.siddhi.core.SiddhiManager;
+import io.siddhi.core.event.Event;
+import io.siddhi.core.exception.SiddhiAppCreationException;
+import io.siddhi.core.query.output.callback.QueryCallback;
+import io.siddhi.core.stream.input.InputHandler;
+import io.siddhi.core.util.EventPrinter;
+import io.siddhi.core.util.SiddhiTestHelper;
+import io.siddhi.core.util.persistence.InMemoryPersistenceStore;
+import org.apache.log4j.Logger;
+import org.testng.AssertJUnit;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class OnlineBaggingClassifierUpdaterStreamProcessorExtensionTestCase {
+
+    private static final Logger logger = Logger
+            .getLogger(OnlineBaggingClassifierUpdaterStreamProcessorExtensionTestCase.class);
+
+    private static final Object[][] TRAINING_EVENTS = {
+            {6, 2.2, 4, 1, "versicolor"},
+            {5.4, 3.4, 1.7, 0.2, "setosa"},
+            {6.9, 3.1, 5.4, 2.1, "virginica"},
+            {4.3, 3, 1.1, 0.1, "setosa"},
+            {6.1, 2.8, 4.7, 1.2, "versicolor"},
+            {4.8, 3.4, 1.9, 0.2, "setosa"},
+            {5.8, 2.7, 4.1, 1, "versicolor"},
+            {6.4, 3.1, 5.5, 1.8, "virginica"},
+            {4.9, 3, 1.4, 0.2, "setosa"},
+            {6.8, 3, 5.5, 2.1, "virginica"}};
+
+    private AtomicInteger count;
+
+    @BeforeMethod
+    public void init() {
+        count = new AtomicInteger(0);
+    }
+
+    @Test
+    public void testOnlineBaggingLearningExtension1() throws InterruptedException {
+        logger.info("OnlineBaggingClassifierUpdaterStreamProcessorExtension TestCase - Assert Model Build with "
+                + "default parameters");
+        List<Double> accuracies = train(new SiddhiManager(), "'model1', 3");
+        AssertJUnit.assertEquals(TRAINING_EVENTS.length, accuracies.size());
+        // the accuracy is not evaluated until all the classes have been seen
+        AssertJUnit.assertEquals(0.0, accuracies.get(0));
+        AssertJUnit.assertEquals(0.0, accuracies.get(1));
+        for (double accuracy : accuracies) {
+            AssertJUnit.assertTrue(accuracy >= 0 && accuracy <= 1);
+        }
+    }
+
+    @Test
+    public void testOnlineBaggingLearningExtension2() throws InterruptedException {
+        logger.info("OnlineBaggingClassifierUpdaterStreamProcessorExtension TestCase - Assert model build "
+                + "with manual configurations");
+        List<Double> accuracies = train(new SiddhiManager(), "'model1', 3, 5, 1.0");
+        AssertJUnit.assertEquals(TRAINING_EVENTS.length, accuracies.size());
+    }
+
+    @Test
+    public void testOnlineBaggingLearningExtension3() throws InterruptedException {
+        logger.info("OnlineBaggingClassifierUpdaterStreamProcessorExtension TestCase - The Poisson weights of a "
+                + "new model are repeatable");
+        List<Double> accuracies = train(new SiddhiManager(), "'model1', 3");
+
+        count.set(0);
+        AssertJUnit.assertEquals(accuracies, train(new SiddhiManager(), "'model1', 3"));
+    }
+
+    @Test
+    public void testOnlineBaggingLearningExtension4() {
+        logger.info("OnlineBaggingClassifierUpdaterStreamProcessorExtension TestCase - Incomplete hyper-parameters");
+        SiddhiManager siddhiManager = new SiddhiManager();
+        try {
+            siddhiManager.createSiddhiAppRuntime(createApp("'model1', 3, 5"));
+            AssertJUnit.fail("Siddhi app is created with incomplete hyper-parameters");
+        } catch (Exception e) {
+            logger.error(e.getCause().getMessage());
+            AssertJUnit.assertTrue(e instanceof SiddhiAppCreationException);
+            AssertJUnit.assertTrue(e.getCause().getMessage().contains("Number of hyper-parameters needed for "
+                    + "model manual configuration is 2 but found 1"));
+        }
+    }
+
+    @Test
+    public void testOnlineBaggingLearningExtension5() {
+        logger.info("OnlineBaggingClassifierUpdaterStreamProcessorExtension TestCase - Ensemble size is not "
+                + "positive");
+        SiddhiManager siddhiManager = new SiddhiManager();
+        try {
+            siddhiManager.createSiddhiAppRuntime(createApp("'model1', 3, 0, 6.0"));
+            AssertJUnit.fail("Siddhi app is created with an empty ensemble");
+        } catch (Exception e) {
+            logger.error(e.getCause().getMessage());
+            AssertJUnit.assertTrue(e instanceof SiddhiAppCreationException);
+            AssertJUnit.assertTrue(e.getCause().getMessage().contains("Ensemble Size must be a positive INT"));
+        }
+    }
+
+    @Test
+    public void testOnlineBaggingLearningExtension6() {
+        logger.info("OnlineBaggingClassifierUpdaterStreamProcessorExtension TestCase - Lambda is not positive");
+        SiddhiManager siddhiManager = new SiddhiManager();
+        try {
+            siddhiManager.createSiddhiAppRuntime(createApp("'model1', 3, 10, 0.0"));
+            AssertJUnit.fail("Siddhi app is created with a lambda of 0");
+        } catch (Exception e) {
+            logger.error(e.getCause().getMessage());
+            AssertJUnit.assertTrue(e instanceof SiddhiAppCreationException);
+            AssertJUnit.assertTrue(e.getCause().getMessage().contains("Lambda must be a positive DOUBLE"));
+        }
+    }
+
+    @Test
+    public void testOnlineBaggingLearningExtension7() throws InterruptedException {
+        logger.info("OnlineBaggingClassifierUpdaterStreamProcessorExtension TestCase - Restore the model from a "
+                + "snapshot");
+        SiddhiManager siddhiManager = new SiddhiManager();
+        siddhiManager.setPersistenceStore(new InMemoryPersistenceStore());
+        List<Double> accuracies = Collections.synchronizedList(new ArrayList<>());
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(createApp("'model1', 3"));
+        addCallback(siddhiAppRuntime, accuracies);
+        try {
+            InputHandler inputHandler = siddhiAppRuntime.getInputHandler("StreamA");
+            siddhiAppRuntime.start();
+            for (Object[] event : TRAINING_EVENTS) {
+                inputHandler.send(event);
+            }
+            siddhiAppRuntime.persist();
+            Thread.sleep(500);
+            siddhiAppRuntime.restoreLastRevision();
+            inputHandler.send(TRAINING_EVENTS[0]);
+            SiddhiTestHelper.waitForEvents(200, TRAINING_EVENTS.length + 1, count, 60000);
+            AssertJUnit.assertEquals(TRAINING_EVENTS.length + 1, accuracies.size());
+        } catch (Exception e) {
+            logger.error(e.getMessage());
+            AssertJUnit.fail(e.getMessage());
+        } finally {
+            siddhiAppRuntime.shutdown();
+            siddhiManager.shutdown();
+        }
+    }
+
+    /**
+     * Train a model on the training events, and return the accuracies output for them
+     */
+    private List<Double> train(SiddhiManager siddhiManager, String parameters) throws InterruptedException {
+        List<Double> accuracies = Collections.synchronizedList(new ArrayList<>());
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(createApp(parameters));
+        addCallback(siddhiAppRuntime, accuracies);
+        try {
+            InputHandler inputHandler = siddhiAppRuntime.getInputHandler("StreamA");
+            siddhiAppRuntime.start();
+            for (Object[] event : TRAINING_EVENTS) {
+                inputHandler.send(event);
+            }
+            SiddhiTestHelper.waitForEvents(200, TRAINING_EVENTS.length, count, 60000);
+        } finally {
+            siddhiAppRuntime.shutdown();
+        }
+        return new ArrayList<>(accuracies);
+    }
+
+    private void addCallback(SiddhiAppRuntime siddhiAppRuntime, List<Double> accuracies) {
+        siddhiAppRuntime.addCallback("query1", new QueryCallback() {
+
+            @Override
+            public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                EventPrinter.print(inEvents);
+                for (Event event : inEvents) {
+                    accuracies.add((Double) event.getData(4));
+                    count.incrementAndGet();
+                }
+            }
+        });
+    }
+
+    private static String createApp(String parameters) {
+        return "define stream StreamA (attribute_0 double, attribute_1 double, attribute_2 double, "
+                + "attribute_3 double, attribute_4 string );"
+                + "@info(name = 'query1') from StreamA#streamingml:updateOnlineBagging(" + parameters
+                + ", attribute_0, attribute_1 , attribute_2 ,attribute_3,attribute_4) select attribute_0, "
+                + "attribute_1, attribute_2, attribute_3, accuracy insert into outputStream;";
+    }
+}
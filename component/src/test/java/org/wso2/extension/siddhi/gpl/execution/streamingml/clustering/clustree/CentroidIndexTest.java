@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2017 WSO2 Inc. (http://wso2.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.wso2.extension.siddhi.gpl.execution.streamingml.clustering.clustree;
+
+import org.apache.log4j.Logger;
+import org.testng.AssertJUnit;
+import org.testng.annotations.Test;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.clustering.clustree.util.CentroidIndex;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.clustering.clustree.util.DistanceKernel;
+
+import java.util.Random;
+
+public class CentroidIndexTest {
+    private static final Logger logger = Logger.getLogger(CentroidIndexTest.class);
+
+    @Test
+    public void testCentroidIndex1() {
+        logger.info("CentroidIndex Test - Same nearest centroids as found by comparing with every centroid");
+        Random random = new Random(1);
+        for (int noOfDimensions : new int[]{1, 2, 8, 64}) {
+            for (int noOfCentroids : new int[]{1, 7, 8, 9, 33, 100, 500}) {
+                double[] centroids = new double[noOfCentroids * noOfDimensions];
+                for (int i = 0; i < centroids.length; i++) {
+                    // some centroids share coordinates, or are duplicates of each other
+                    centroids[i] = noOfDimensions <= 2 ? random.nextInt(10) : random.nextGaussian() * 100;
+                }
+                CentroidIndex index = CentroidIndex.build(centroids, noOfCentroids, noOfDimensions);
+                AssertJUnit.assertNotNull(index);
+                double[] point = new double[noOfDimensions];
+                for (int p = 0; p < 200; p++) {
+                    for (int j = 0; j < noOfDimensions; j++) {
+                        point[j] = p % 5 == 0 ? random.nextInt(10) : random.nextGaussian() * 100;
+                    }
+                    AssertJUnit.assertEquals(DistanceKernel.nearest(centroids, noOfCentroids, point, 0,
+                            noOfDimensions), index.nearest(point));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testCentroidIndex2() {
+        logger.info("CentroidIndex Test - Points and centroids which are not finite");
+        double[] centroids = new double[40];
+        for (int i = 0; i < centroids.length; i++) {
+            centroids[i] = i;
+        }
+        CentroidIndex index = CentroidIndex.build(centroids, 20, 2);
+        AssertJUnit.assertEquals(DistanceKernel.nearest(centroids, 20, new double[]{Double.NaN, 3}, 0, 2),
+                index.nearest(new double[]{Double.NaN, 3}));
+        AssertJUnit.assertEquals(DistanceKernel.nearest(centroids, 20, new double[]{Double.POSITIVE_INFINITY, 3}, 0,
+                2), index.nearest(new double[]{Double.POSITIVE_INFINITY, 3}));
+        centroids[5] = Double.NaN;
+        AssertJUnit.assertNull(CentroidIndex.build(centroids, 20, 2));
+        AssertJUnit.assertNull(CentroidIndex.build(new double[0], 0, 2));
+    }
+}
@@ -25,6 +25,7 @@ import io.siddhi.core.query.output.callback.QueryCallback;
 import io.siddhi.core.stream.input.InputHandler;
 import io.siddhi.core.util.EventPrinter;
 import io.siddhi.core.util.SiddhiTestHelper;
+import io.siddhi.core.util.config.InMemoryConfigManager;
 import io.siddhi.core.util.persistence.InMemoryPersistenceStore;
 import io.siddhi.query.compiler.exception.SiddhiParserException;
 import org.apache.log4j.Logger;
@@ -32,7 +33,15 @@ import org.testng.AssertJUnit;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
 
 public class ClusTreeStreamProcessorExtensionTest {
@@ -765,4 +774,253 @@ public class ClusTreeStreamProcessorExtensionTest {
             siddhiAppRuntime.shutdown();
         }
     }
+
+    @Test
+    public void testClusTree2D_29() throws Exception {
+        logger.info("ClusTreeStreamProcessorExtension Test - Test case for centroids indexed in a KD-tree");
+        // more centroids than a leaf of the index holds, so that the searches go through its splits
+        int noOfClusters = 16;
+        Random random = new Random(1);
+        double[][] points = new double[120][];
+        for (int i = 0; i < points.length; i++) {
+            // the first 64 points are spread over a grid of groups, and the rest are scattered between them
+            points[i] = i < 64
+                    ? new double[]{(i % 8) * 10 + random.nextDouble(), (i / 8) * 10 + random.nextDouble()}
+                    : new double[]{random.nextDouble() * 80, random.nextDouble() * 80};
+        }
+        List<Object[]> indexedPredictions = predictWithCentroidIndex("kdTree", noOfClusters, points);
+        List<Object[]> predictions = predictWithCentroidIndex("none", noOfClusters, points);
+        AssertJUnit.assertEquals(points.length, indexedPredictions.size());
+        AssertJUnit.assertEquals(points.length, predictions.size());
+        Set<List<Object>> centroids = new HashSet<>();
+        // the model is built at the 64th event, and is not refreshed before the last event
+        for (int i = 63; i < points.length; i++) {
+            AssertJUnit.assertNotNull(predictions.get(i)[0]);
+            AssertJUnit.assertArrayEquals(predictions.get(i), indexedPredictions.get(i));
+            centroids.add(Arrays.asList(predictions.get(i)));
+        }
+        AssertJUnit.assertTrue(centroids.size() > 8);
+    }
+
+    private List<Object[]> predictWithCentroidIndex(String centroidIndex, int noOfClusters, double[][] points)
+            throws Exception {
+        Map<String, String> systemConfigs = new HashMap<>();
+        systemConfigs.put("streamingml.clusTree.centroidIndex", centroidIndex);
+        SiddhiManager siddhiManager = new SiddhiManager();
+        siddhiManager.setConfigManager(new InMemoryConfigManager(systemConfigs, null));
+        String inputStream = "define stream InputStream (x double, y double);";
+        String query = (
+                "@info(name = 'query1') " +
+                        "from InputStream#streamingml:clusTree(" + noOfClusters + ", 10, 64, 5, 1000, x, y) " +
+                        "select closestCentroidCoordinate1, closestCentroidCoordinate2, x, y " +
+                        "insert into OutputStream;");
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(inputStream + query);
+        List<Object[]> predictions = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger noOfEvents = new AtomicInteger(0);
+        siddhiAppRuntime.addCallback("query1", new QueryCallback() {
+            @Override
+            public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                for (Event event : inEvents) {
+                    predictions.add(new Object[]{event.getData(0), event.getData(1)});
+                    noOfEvents.incrementAndGet();
+                }
+            }
+        });
+        siddhiAppRuntime.start();
+        InputHandler inputHandler = siddhiAppRuntime.getInputHandler("InputStream");
+        try {
+            for (double[] point : points) {
+                inputHandler.send(new Object[]{point[0], point[1]});
+            }
+            SiddhiTestHelper.waitForEvents(100, points.length, noOfEvents, 1000);
+            return predictions;
+        } finally {
+            siddhiAppRuntime.shutdown();
+            siddhiManager.shutdown();
+        }
+    }
+
+    @Test
+    public void testClusTree2D_30() {
+        logger.info("ClusTreeStreamProcessorExtension Test - Test case to validate the centroid index");
+        Map<String, String> systemConfigs = new HashMap<>();
+        systemConfigs.put("streamingml.clusTree.centroidIndex", "ballTree");
+        SiddhiManager siddhiManager = new SiddhiManager();
+        siddhiManager.setConfigManager(new InMemoryConfigManager(systemConfigs, null));
+        String inputStream = "define stream InputStream (x double, y double);";
+        String query = (
+                "@info(name = 'query1') " +
+                        "from InputStream#streamingml:clusTree(2, 10, 20, 5, 50, x, y) " +
+                        "select closestCentroidCoordinate1, closestCentroidCoordinate2, x, y " +
+                        "insert into OutputStream;");
+        try {
+            siddhiManager.createSiddhiAppRuntime(inputStream + query);
+            AssertJUnit.fail();
+        } catch (Exception e) {
+            logger.error(e.getCause().getMessage());
+            AssertJUnit.assertTrue(e instanceof SiddhiAppCreationException);
+            AssertJUnit.assertTrue(e.getCause().getMessage().contains("centroidIndex should be either auto, kdTree "
+                    + "or none but found ballTree"));
+        } finally {
+            siddhiManager.shutdown();
+        }
+    }
+
+    @Test
+    public void testClusTree2D_31() {
+        logger.info("ClusTreeStreamProcessorExtension Test - Test case to validate the kmeans tolerance");
+        Map<String, String> systemConfigs = new HashMap<>();
+        systemConfigs.put("streamingml.clusTree.kMeansAlgorithm", "hamerly");
+        systemConfigs.put("streamingml.clusTree.kMeansTolerance", "-0.1");
+        SiddhiManager siddhiManager = new SiddhiManager();
+        siddhiManager.setConfigManager(new InMemoryConfigManager(systemConfigs, null));
+        String inputStream = "define stream InputStream (x double, y double);";
+        String query = (
+                "@info(name = 'query1') " +
+                        "from InputStream#streamingml:clusTree(2, 10, 20, 5, 50, x, y) " +
+                        "select closestCentroidCoordinate1, closestCentroidCoordinate2, x, y " +
+                        "insert into OutputStream;");
+        try {
+            siddhiManager.createSiddhiAppRuntime(inputStream + query);
+            AssertJUnit.fail();
+        } catch (Exception e) {
+            logger.error(e.getCause().getMessage());
+            AssertJUnit.assertTrue(e instanceof SiddhiAppCreationException);
+            AssertJUnit.assertTrue(e.getCause().getMessage().contains("kMeansTolerance should be a non negative "
+                    + "number but found -0.1"));
+        } finally {
+            siddhiManager.shutdown();
+        }
+    }
+
+    @Test
+    public void testClusTree2D_33() {
+        logger.info("ClusTreeStreamProcessorExtension Test - Test case to validate the kmeans seeding");
+        Map<String, String> systemConfigs = new HashMap<>();
+        systemConfigs.put("streamingml.clusTree.kMeansSeeding", "random");
+        SiddhiManager siddhiManager = new SiddhiManager();
+        siddhiManager.setConfigManager(new InMemoryConfigManager(systemConfigs, null));
+        String inputStream = "define stream InputStream (x double, y double);";
+        String query = (
+                "@info(name = 'query1') " +
+                        "from InputStream#streamingml:clusTree(2, 10, 20, 5, 50, x, y) " +
+                        "select closestCentroidCoordinate1, closestCentroidCoordinate2, x, y " +
+                        "insert into OutputStream;");
+        try {
+            siddhiManager.createSiddhiAppRuntime(inputStream + query);
+            AssertJUnit.fail();
+        } catch (Exception e) {
+            logger.error(e.getCause().getMessage());
+            AssertJUnit.assertTrue(e instanceof SiddhiAppCreationException);
+            AssertJUnit.assertTrue(e.getCause().getMessage().contains("kMeansSeeding should be either "
+                    + "firstDistinct, kMeansPlusPlus or kMeansParallel but found random"));
+        } finally {
+            siddhiManager.shutdown();
+        }
+    }
+
+    @Test
+    public void testClusTree2D_35() {
+        logger.info("ClusTreeStreamProcessorExtension Test - Test case to validate the kmeans warm start "
+                + "iterations");
+        Map<String, String> systemConfigs = new HashMap<>();
+        systemConfigs.put("streamingml.clusTree.kMeansWarmStartIterations", "-1");
+        SiddhiManager siddhiManager = new SiddhiManager();
+        siddhiManager.setConfigManager(new InMemoryConfigManager(systemConfigs, null));
+        String inputStream = "define stream InputStream (x double, y double);";
+        String query = (
+                "@info(name = 'query1') " +
+                        "from InputStream#streamingml:clusTree(2, 10, 20, 5, 50, x, y) " +
+                        "select closestCentroidCoordinate1, closestCentroidCoordinate2, x, y " +
+                        "insert into OutputStream;");
+        try {
+            siddhiManager.createSiddhiAppRuntime(inputStream + query);
+            AssertJUnit.fail();
+        } catch (Exception e) {
+            logger.error(e.getCause().getMessage());
+            AssertJUnit.assertTrue(e instanceof SiddhiAppCreationException);
+            AssertJUnit.assertTrue(e.getCause().getMessage().contains("kMeansWarmStartIterations should be "
+                    + "a non negative integer but found -1"));
+        } finally {
+            siddhiManager.shutdown();
+        }
+    }
+
+    @Test
+    public void testClusTree2D_36() throws Exception {
+        logger.info("ClusTreeStreamProcessorExtension Test - Test case for the centroids moved in mini-batches");
+        Map<String, String> systemConfigs = new HashMap<>();
+        systemConfigs.put("streamingml.clusTree.macroModelUpdate", "miniBatch");
+        systemConfigs.put("streamingml.clusTree.miniBatchSize", "2");
+        SiddhiManager siddhiManager = new SiddhiManager();
+        siddhiManager.setConfigManager(new InMemoryConfigManager(systemConfigs, null));
+        String inputStream = "define stream InputStream (x double, y double);";
+        String query = (
+                "@info(name = 'query1') " +
+                        "from InputStream#streamingml:clusTree(2, 10, 20, 5, 50, x, y) " +
+                        "select closestCentroidCoordinate1, closestCentroidCoordinate2, x, y " +
+                        "insert into OutputStream;");
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(inputStream + query);
+        List<Object[]> predictions = Collections.synchronizedList(new ArrayList<>());
+        siddhiAppRuntime.addCallback("query1", new QueryCallback() {
+            @Override
+            public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                for (Event event : inEvents) {
+                    predictions.add(new Object[]{event.getData(0), event.getData(1)});
+                    count.incrementAndGet();
+                }
+            }
+        });
+        siddhiAppRuntime.start();
+        InputHandler inputHandler = siddhiAppRuntime.getInputHandler("InputStream");
+        try {
+            double[][] points = {{5.7905, 7.7499}, {27.458, 23.8848}, {3.078, 9.1072}, {28.326, 26.7484},
+                    {2.2602, 4.6408}, {27.3099, 26.1816}, {0.9441, 0.6502}, {23.9204, 27.6745}, {2.0499, 9.9546},
+                    {23.7947, 20.8627}, {5.8456, 6.8879}, {26.7315, 25.5368}, {5.8812, 5.9116}, {24.5343, 26.77},
+                    {4.3866, 0.3132}, {22.7654, 25.1381}, {7.7824, 9.2299}, {23.5167, 24.1244}, {5.3086, 9.7503},
+                    {25.47, 25.8574}, {20.2568, 28.7882}, {2.9951, 3.9887}};
+            for (double[] point : points) {
+                inputHandler.send(new Object[]{point[0], point[1]});
+            }
+            SiddhiTestHelper.waitForEvents(100, 22, count, 1000);
+            // the first model is built by kmeans, and is not moved before the first mini-batch is full
+            AssertJUnit.assertArrayEquals(new Object[]{25.0406, 25.3906}, predictions.get(19));
+            AssertJUnit.assertArrayEquals(new Object[]{25.0406, 25.3906}, predictions.get(20));
+            // the mini-batch of the last two events moves the centroid of the last event towards it
+            double x = (Double) predictions.get(21)[0];
+            double y = (Double) predictions.get(21)[1];
+            AssertJUnit.assertTrue(x < 4.7675 && x > 2.9951);
+            AssertJUnit.assertTrue(y < 6.6013 && y > 3.9887);
+        } finally {
+            siddhiAppRuntime.shutdown();
+            siddhiManager.shutdown();
+        }
+    }
+
+    @Test
+    public void testClusTree2D_37() {
+        logger.info("ClusTreeStreamProcessorExtension Test - Test case to validate the mini-batch size");
+        Map<String, String> systemConfigs = new HashMap<>();
+        systemConfigs.put("streamingml.clusTree.macroModelUpdate", "miniBatch");
+        systemConfigs.put("streamingml.clusTree.miniBatchSize", "0");
+        SiddhiManager siddhiManager = new SiddhiManager();
+        siddhiManager.setConfigManager(new InMemoryConfigManager(systemConfigs, null));
+        String inputStream = "define stream InputStream (x double, y double);";
+        String query = (
+                "@info(name = 'query1') " +
+                        "from InputStream#streamingml:clusTree(2, 10, 20, 5, 50, x, y) " +
+                        "select closestCentroidCoordinate1, closestCentroidCoordinate2, x, y " +
+                        "insert into OutputStream;");
+        try {
+            siddhiManager.createSiddhiAppRuntime(inputStream + query);
+            AssertJUnit.fail();
+        } catch (Exception e) {
+            logger.error(e.getCause().getMessage());
+            AssertJUnit.assertTrue(e instanceof SiddhiAppCreationException);
+            AssertJUnit.assertTrue(e.getCause().getMessage().contains("miniBatchSize should be a positive "
+                    + "integer but found 0"));
+        } finally {
+            siddhiManager.shutdown();
+        }
+    }
 }
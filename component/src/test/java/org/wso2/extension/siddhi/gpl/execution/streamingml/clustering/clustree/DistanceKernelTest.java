@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2017 WSO2 Inc. (http://wso2.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.wso2.extension.siddhi.gpl.execution.streamingml.clustering.clustree;
+
+import org.apache.log4j.Logger;
+import org.testng.AssertJUnit;
+import org.testng.annotations.Test;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.clustering.clustree.util.DistanceKernel;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.util.MathUtil;
+
+import java.util.Arrays;
+import java.util.Random;
+
+public class DistanceKernelTest {
+    private static final Logger logger = Logger.getLogger(DistanceKernelTest.class);
+
+    @Test
+    public void testDistanceKernel1() {
+        logger.info("DistanceKernel Test - Same distances as computed one centroid at a time");
+        Random random = new Random(1);
+        for (int noOfDimensions : new int[]{1, 2, 3, 64}) {
+            for (int noOfCentroids = 1; noOfCentroids <= 9; noOfCentroids++) {
+                double[] centroids = randomPoints(random, noOfCentroids, noOfDimensions);
+                double[] points = randomPoints(random, 20, noOfDimensions);
+                double[] distances = new double[noOfCentroids];
+                for (int p = 0; p < 20; p++) {
+                    int offset = p * noOfDimensions;
+                    DistanceKernel.squaredDistances(centroids, noOfCentroids, points, offset, noOfDimensions,
+                            distances);
+                    int expectedNearest = 0;
+                    for (int c = 0; c < noOfCentroids; c++) {
+                        double expected = MathUtil.squaredEuclideanDistance(centroids, c * noOfDimensions, points,
+                                offset, noOfDimensions);
+                        AssertJUnit.assertEquals(Double.doubleToLongBits(expected),
+                                Double.doubleToLongBits(distances[c]));
+                        if (expected < distances[expectedNearest]) {
+                            expectedNearest = c;
+                        }
+                    }
+                    AssertJUnit.assertEquals(expectedNearest, DistanceKernel.nearest(centroids, noOfCentroids,
+                            points, offset, noOfDimensions));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testDistanceKernel2() {
+        logger.info("DistanceKernel Test - Ties go to the first centroid");
+        double[] centroids = {5, 5, 1, 1, 3, 3, 1, 1, 1, 1, 0, 2};
+        AssertJUnit.assertEquals(1, DistanceKernel.nearest(centroids, 6, new double[]{1, 1}, 0, 2));
+        AssertJUnit.assertEquals(1, DistanceKernel.nearest(centroids, 6, new double[]{0.5, 1.5}, 0, 2));
+        AssertJUnit.assertEquals(0, DistanceKernel.nearest(centroids, 1, new double[]{1, 1}, 0, 2));
+    }
+
+    @Test
+    public void testDistanceKernel3() {
+        logger.info("DistanceKernel Test - A NaN centroid does not capture the points");
+        for (int noOfDimensions : new int[]{1, 2, 3, 64}) {
+            double[] centroids = new double[3 * noOfDimensions];
+            for (int i = 0; i < noOfDimensions; i++) {
+                centroids[i] = i == 0 ? Double.NaN : 0;
+                centroids[noOfDimensions + i] = 1;
+                centroids[2 * noOfDimensions + i] = 5;
+            }
+            double[] point = new double[noOfDimensions];
+            Arrays.fill(point, 4);
+            AssertJUnit.assertEquals(2, DistanceKernel.nearest(centroids, 3, point, 0, noOfDimensions));
+            Arrays.fill(point, 0);
+            AssertJUnit.assertEquals(1, DistanceKernel.nearest(centroids, 3, point, 0, noOfDimensions));
+            point[0] = Double.NaN;
+            AssertJUnit.assertEquals(0, DistanceKernel.nearest(centroids, 3, point, 0, noOfDimensions));
+        }
+    }
+
+    private static double[] randomPoints(Random random, int noOfPoints, int noOfDimensions) {
+        double[] points = new double[noOfPoints * noOfDimensions];
+        for (int i = 0; i < points.length; i++) {
+            points[i] = random.nextInt(4) == 0 ? random.nextInt(3) : random.nextGaussian() * 100;
+        }
+        return points;
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2017 WSO2 Inc. (http://wso2.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.wso2.extension.siddhi.gpl.execution.streamingml.clustering.clustree;
+
+import io.siddhi.core.executor.ConstantExpressionExecutor;
+import io.siddhi.core.executor.ExpressionExecutor;
+import io.siddhi.core.util.config.InMemoryConfigReader;
+import io.siddhi.query.api.definition.Attribute;
+import org.apache.log4j.Logger;
+import org.testng.AssertJUnit;
+import org.testng.annotations.Test;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.clustering.clustree.util.ClusTreeConfig;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.clustering.clustree.util.KMeansModel;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.clustering.clustree.util.WeightedPointSet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+
+public class KMeansModelTest {
+    private static final Logger logger = Logger.getLogger(KMeansModelTest.class);
+
+    // kmeans model of 2 centroids, (5.7905, 7.7499) and (27.1786, 51.897), serialized by the earlier releases
+    // which kept the model as a list of clusters. The first cluster has a member.
+    private static final String LEGACY_MODEL =
+            "rO0ABXNyAFhvcmcud3NvMi5leHRlbnNpb24uc2lkZGhpLmdwbC5leGVjdXRpb24uc3RyZWFtaW5nbWwuY2x1c3RlcmluZy5j" +
+            "bHVzdHJlZS51dGlsLktNZWFuc01vZGVsbvw8TOoQ2+QCAAJaAAd0cmFpbmVkTAALY2x1c3Rlckxpc3R0ABBMamF2YS91dGls" +
+            "L0xpc3Q7eHABc3IAFGphdmEudXRpbC5MaW5rZWRMaXN0DClTXUpgiCIDAAB4cHcEAAAAAnNyAFRvcmcud3NvMi5leHRlbnNp" +
+            "b24uc2lkZGhpLmdwbC5leGVjdXRpb24uc3RyZWFtaW5nbWwuY2x1c3RlcmluZy5jbHVzdHJlZS51dGlsLkNsdXN0ZXIanGQ9" +
+            "atbCMgIAAkwACGNlbnRyb2lkdABYTG9yZy93c28yL2V4dGVuc2lvbi9zaWRkaGkvZ3BsL2V4ZWN1dGlvbi9zdHJlYW1pbmdt" +
+            "bC9jbHVzdGVyaW5nL2NsdXN0cmVlL3V0aWwvRGF0YVBvaW50O0wAE2RhdGFQb2ludHNJbkNsdXN0ZXJxAH4AAXhwc3IAVm9y" +
+            "Zy53c28yLmV4dGVuc2lvbi5zaWRkaGkuZ3BsLmV4ZWN1dGlvbi5zdHJlYW1pbmdtbC5jbHVzdGVyaW5nLmNsdXN0cmVlLnV0" +
+            "aWwuRGF0YVBvaW50zLpXCJXVE2wCAAJEAAZ3ZWlnaHRbAAtjb29yZGluYXRlc3QAAltEeHAAAAAAAAAAAHVyAAJbRD6mjBSr" +
+            "Y1oeAgAAeHAAAAACQBcpeNT987ZAHv/lyR0U5HNxAH4AA3cEAAAAAXNxAH4ACEAAAAAAAAAAdXEAfgALAAAAAkAUAAAAAAAA" +
+            "QBwAAAAAAAB4c3EAfgAFc3EAfgAIAAAAAAAAAAB1cQB+AAsAAAACQDstuLrHEMtASfLQ5WBBiXNxAH4AA3cEAAAAAHh4";
+
+    @Test
+    public void testKMeansModel1() throws Exception {
+        logger.info("KMeansModel Test - Migrate a model serialized by the earlier releases");
+        KMeansModel model = (KMeansModel) deserialize(Base64.getDecoder().decode(LEGACY_MODEL));
+        AssertJUnit.assertTrue(model.isTrained());
+        AssertJUnit.assertEquals(2, model.getNoOfCentroids());
+        AssertJUnit.assertTrue(Arrays.equals(new double[]{5.7905, 7.7499, 27.1786, 51.897},
+                model.getCentroids()));
+        Object[] prediction = model.getPrediction(new double[]{26, 50});
+        AssertJUnit.assertEquals(27.1786, prediction[1]);
+        AssertJUnit.assertEquals(51.897, prediction[2]);
+    }
+
+    @Test
+    public void testKMeansModel2() throws Exception {
+        logger.info("KMeansModel Test - Serialize and deserialize a model migrated from the earlier releases");
+        KMeansModel legacyModel = (KMeansModel) deserialize(Base64.getDecoder().decode(LEGACY_MODEL));
+        KMeansModel model = (KMeansModel) deserialize(serialize(legacyModel));
+        AssertJUnit.assertEquals(2, model.getNoOfCentroids());
+        AssertJUnit.assertTrue(Arrays.equals(legacyModel.getCentroids(), model.getCentroids()));
+        AssertJUnit.assertTrue(Arrays.equals(legacyModel.getCentroids(),
+                KMeansModel.fromSnapshot(model.toSnapshot()).getCentroids()));
+    }
+
+    @Test
+    public void testKMeansModel3() throws Exception {
+        logger.info("KMeansModel Test - Serialize and deserialize a model which has not been trained");
+        KMeansModel model = (KMeansModel) deserialize(serialize(new KMeansModel(3)));
+        AssertJUnit.assertFalse(model.isTrained());
+        AssertJUnit.assertEquals(0, model.getNoOfCentroids());
+    }
+
+    @Test
+    public void testKMeansModel4() throws Exception {
+        logger.info("KMeansModel Test - Restore the state of a model persisted by the earlier and current releases");
+        Object legacyState = deserialize(Base64.getDecoder().decode(LEGACY_MODEL));
+        KMeansModel model = KMeansModel.fromState(legacyState, 2);
+        AssertJUnit.assertEquals(2, model.getNoOfCentroids());
+        AssertJUnit.assertTrue(Arrays.equals(new double[]{5.7905, 7.7499, 27.1786, 51.897},
+                model.getCentroids()));
+
+        model = KMeansModel.fromState(model.toSnapshot(), 2);
+        AssertJUnit.assertEquals(2, model.getNoOfCentroids());
+
+        // a model of a different number of dimensions is not used by the ClusTree
+        AssertJUnit.assertFalse(KMeansModel.fromState(legacyState, 3).isTrained());
+        AssertJUnit.assertFalse(KMeansModel.fromState(null, 2).isTrained());
+    }
+
+    @Test
+    public void testKMeansModel5() {
+        logger.info("KMeansModel Test - Centroids moved in mini-batches along with the weights of their clusters");
+        Map<String, String> systemConfigs = new HashMap<>();
+        systemConfigs.put("streamingml.clusTree.macroModelUpdate", "miniBatch");
+        systemConfigs.put("streamingml.clusTree.miniBatchSize", "2");
+        ClusTreeConfig config = ClusTreeConfig.fromParameters(new ExpressionExecutor[]{
+                new ConstantExpressionExecutor(2, Attribute.Type.INT)}, 0, false)
+                .withSystemParameters(new InMemoryConfigReader("streamingml.clusTree", systemConfigs));
+        WeightedPointSet points = new WeightedPointSet(4, 1);
+        points.set(0, new double[]{0}, 1);
+        points.set(1, new double[]{1}, 3);
+        points.set(2, new double[]{10}, 1);
+        points.set(3, new double[]{11}, 1);
+        KMeansModel model = new KMeansModel(1);
+        model.refresh(points, config);
+        double[] refreshed = model.getCentroids();
+        byte[] snapshot = model.toSnapshot();
+
+        // the restored model moves its centroids by the same weights as the model the snapshot was taken from
+        KMeansModel restored = KMeansModel.fromSnapshot(snapshot);
+        for (double point : new double[]{2, 9, 3, 12}) {
+            model.trainOnMiniBatch(new double[]{point}, config);
+            restored.trainOnMiniBatch(new double[]{point}, config);
+        }
+        AssertJUnit.assertFalse(Arrays.equals(refreshed, model.getCentroids()));
+        AssertJUnit.assertTrue(Arrays.equals(model.getCentroids(), restored.getCentroids()));
+        AssertJUnit.assertTrue(Arrays.equals(model.toSnapshot(), restored.toSnapshot()));
+        // the moves do not modify the centroids and the weights published before them
+        AssertJUnit.assertTrue(Arrays.equals(refreshed, KMeansModel.fromSnapshot(snapshot).getCentroids()));
+        AssertJUnit.assertFalse(Arrays.equals(snapshot, model.toSnapshot()));
+    }
+
+    private static byte[] serialize(Object object) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(object);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Object deserialize(byte[] bytes) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return in.readObject();
+        }
+    }
+}
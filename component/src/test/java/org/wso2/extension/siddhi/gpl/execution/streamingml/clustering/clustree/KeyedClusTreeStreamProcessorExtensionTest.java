@@ -0,0 +1,207 @@
+/*
+ * Copyright (C) 2017 WSO2 Inc. (http://wso2.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.wso2.extension.siddhi.gpl.execution.streamingml.clustering.clustree;
+
+import io.siddhi.core.SiddhiAppRuntime;
+import io.siddhi.core.SiddhiManager;
+import io.siddhi.core.event.Event;
+import io.siddhi.core.exception.SiddhiAppCreationException;
+import io.siddhi.core.query.output.callback.QueryCallback;
+import io.siddhi.core.stream.input.InputHandler;
+import io.siddhi.core.util.EventPrinter;
+import io.siddhi.core.util.SiddhiTestHelper;
+import io.siddhi.core.util.persistence.InMemoryPersistenceStore;
+import io.siddhi.core.util.persistence.IncrementalFileSystemPersistenceStore;
+import org.apache.log4j.Logger;
+import org.testng.AssertJUnit;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class KeyedClusTreeStreamProcessorExtensionTest {
+    private static final Logger logger = Logger.getLogger(KeyedClusTreeStreamProcessorExtensionTest.class);
+    private static final double[][] POINTS = {
+            {5.7905, 7.7499}, {27.458, 23.8848}, {3.078, 9.1072}, {28.326, 26.7484}, {2.2602, 4.6408},
+            {27.3099, 26.1816}, {0.9441, 0.6502}, {23.9204, 27.6745}, {2.0499, 9.9546}, {23.7947, 20.8627},
+            {5.8456, 6.8879}, {26.7315, 25.5368}, {5.8812, 5.9116}, {24.5343, 26.77}, {4.3866, 0.3132},
+            {22.7654, 25.1381}, {7.7824, 9.2299}, {23.5167, 24.1244}, {5.3086, 9.7503}, {25.47, 25.8574},
+            {20.2568, 28.7882}, {2.9951, 3.9887}};
+    private static final String INPUT_STREAM = "define stream InputStream (sensorId string, x double, y double);";
+
+    private AtomicInteger count;
+
+    @BeforeMethod
+    public void init() {
+        count = new AtomicInteger(0);
+    }
+
+    @Test
+    public void testKeyedClusTree2D_0() throws Exception {
+        logger.info("KeyedClusTreeStreamProcessorExtension Test - Test case for 2D data points of two keys");
+        SiddhiManager siddhiManager = new SiddhiManager();
+        siddhiManager.setPersistenceStore(new InMemoryPersistenceStore());
+
+        String query = (
+                "@info(name = 'query1') " +
+                        "from InputStream#streamingml:keyedClusTree(sensorId, 2, 10, 20, 5, 50, x, y) " +
+                        "select sensorId, closestCentroidCoordinate1, closestCentroidCoordinate2 " +
+                        "insert into OutputStream;");
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(INPUT_STREAM + query);
+
+        Map<String, List<Object[]>> predictions = Collections.synchronizedMap(new HashMap<>());
+        siddhiAppRuntime.addCallback("query1", new QueryCallback() {
+            @Override
+            public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                EventPrinter.print(inEvents);
+                for (Event event : inEvents) {
+                    predictions.computeIfAbsent((String) event.getData(0), key -> new ArrayList<>())
+                            .add(new Object[]{event.getData(1), event.getData(2)});
+                    count.incrementAndGet();
+                }
+            }
+        });
+
+        siddhiAppRuntime.start();
+        InputHandler inputHandler = siddhiAppRuntime.getInputHandler("InputStream");
+        try {
+            // the points of the second sensor are far away from the ones of the first
+            for (double[] point : POINTS) {
+                inputHandler.send(new Object[]{"sensor1", point[0], point[1]});
+                inputHandler.send(new Object[]{"sensor2", point[0] + 1000, point[1] + 1000});
+            }
+            SiddhiTestHelper.waitForEvents(100, 2 * POINTS.length, count, 10000);
+
+            // the same predictions as a single model trained on the points of the first sensor only
+            List<Object[]> sensor1 = predictions.get("sensor1");
+            AssertJUnit.assertArrayEquals(new Object[]{null, null}, sensor1.get(18));
+            AssertJUnit.assertArrayEquals(new Object[]{25.0406, 25.3906}, sensor1.get(19));
+            AssertJUnit.assertArrayEquals(new Object[]{25.0406, 25.3906}, sensor1.get(20));
+            AssertJUnit.assertArrayEquals(new Object[]{4.7675, 6.6013}, sensor1.get(21));
+            for (Object[] prediction : predictions.get("sensor2").subList(19, POINTS.length)) {
+                AssertJUnit.assertTrue((Double) prediction[0] > 1000);
+            }
+
+            siddhiAppRuntime.persist();
+            siddhiAppRuntime.restoreLastRevision();
+            inputHandler.send(new Object[]{"sensor1", 2.9951, 3.9887});
+            SiddhiTestHelper.waitForEvents(100, 2 * POINTS.length + 1, count, 10000);
+            AssertJUnit.assertArrayEquals(new Object[]{4.7675, 6.6013}, sensor1.get(22));
+        } finally {
+            siddhiAppRuntime.shutdown();
+            siddhiManager.shutdown();
+        }
+    }
+
+    @Test
+    public void testKeyedClusTree2D_2() throws Exception {
+        logger.info("KeyedClusTreeStreamProcessorExtension Test - Restore from a base and an increment persisted "
+                + "to an incremental persistence store");
+        File storageFolder = Files.createTempDirectory("keyedClusTree").toFile();
+        SiddhiManager siddhiManager = new SiddhiManager();
+        siddhiManager.setIncrementalPersistenceStore(
+                new IncrementalFileSystemPersistenceStore(storageFolder.getAbsolutePath()));
+
+        String query = (
+                "@info(name = 'query1') " +
+                        "from InputStream#streamingml:keyedClusTree(sensorId, 2, 10, 20, 5, 50, x, y) " +
+                        "select sensorId, closestCentroidCoordinate1, closestCentroidCoordinate2 " +
+                        "insert into OutputStream;");
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(INPUT_STREAM + query);
+
+        Map<String, List<Object[]>> predictions = Collections.synchronizedMap(new HashMap<>());
+        siddhiAppRuntime.addCallback("query1", new QueryCallback() {
+            @Override
+            public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                for (Event event : inEvents) {
+                    predictions.computeIfAbsent((String) event.getData(0), key -> new ArrayList<>())
+                            .add(new Object[]{event.getData(1), event.getData(2)});
+                    count.incrementAndGet();
+                }
+            }
+        });
+
+        siddhiAppRuntime.start();
+        InputHandler inputHandler = siddhiAppRuntime.getInputHandler("InputStream");
+        try {
+            for (double[] point : POINTS) {
+                inputHandler.send(new Object[]{"sensor2", point[0] + 1000, point[1] + 1000});
+                inputHandler.send(new Object[]{"sensor3", point[0] - 1000, point[1] - 1000});
+            }
+            // the base holds the models of the second and the third sensors
+            siddhiAppRuntime.persist();
+            Thread.sleep(500);
+            for (double[] point : POINTS) {
+                inputHandler.send(new Object[]{"sensor1", point[0], point[1]});
+            }
+            // the increment holds the model of the first sensor only
+            siddhiAppRuntime.persist();
+            Thread.sleep(500);
+            SiddhiTestHelper.waitForEvents(100, 3 * POINTS.length, count, 10000);
+
+            siddhiAppRuntime.restoreLastRevision();
+            inputHandler.send(new Object[]{"sensor1", 2.9951, 3.9887});
+            inputHandler.send(new Object[]{"sensor2", 1002.9951, 1003.9887});
+            inputHandler.send(new Object[]{"sensor3", -997.0049, -996.0113});
+            SiddhiTestHelper.waitForEvents(100, 3 * POINTS.length + 3, count, 10000);
+            AssertJUnit.assertArrayEquals(new Object[]{4.7675, 6.6013}, predictions.get("sensor1").get(22));
+            AssertJUnit.assertTrue((Double) predictions.get("sensor2").get(22)[0] > 1000);
+            AssertJUnit.assertTrue((Double) predictions.get("sensor3").get(22)[0] < -900);
+        } finally {
+            siddhiAppRuntime.shutdown();
+            siddhiManager.shutdown();
+            for (File file : storageFolder.listFiles()) {
+                for (File revision : file.listFiles()) {
+                    revision.delete();
+                }
+                file.delete();
+            }
+            storageFolder.delete();
+        }
+    }
+
+    @Test
+    public void testKeyedClusTree2D_1() {
+        logger.info("KeyedClusTreeStreamProcessorExtension Test - key which is not an attribute");
+        SiddhiManager siddhiManager = new SiddhiManager();
+
+        String query = (
+                "@info(name = 'query1') " +
+                        "from InputStream#streamingml:keyedClusTree(2, 10, 20, 5, 50, x, y) " +
+                        "select closestCentroidCoordinate1, closestCentroidCoordinate2 " +
+                        "insert into OutputStream;");
+        try {
+            siddhiManager.createSiddhiAppRuntime(INPUT_STREAM + query);
+            AssertJUnit.fail();
+        } catch (Exception e) {
+            logger.error(e.getCause().getMessage());
+            AssertJUnit.assertTrue(e instanceof SiddhiAppCreationException);
+            AssertJUnit.assertTrue(e.getCause().getMessage().contains("0th parameter is not an attribute "
+                    + "(VariableExpressionExecutor) present in the stream definition."));
+        } finally {
+            siddhiManager.shutdown();
+        }
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) 2017 WSO2 Inc. (http://wso2.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.wso2.extension.siddhi.gpl.execution.streamingml.clustering.clustree;
+
+import io.siddhi.core.executor.ConstantExpressionExecutor;
+import io.siddhi.core.executor.ExpressionExecutor;
+import io.siddhi.core.util.config.InMemoryConfigReader;
+import io.siddhi.query.api.definition.Attribute;
+import org.apache.log4j.Logger;
+import org.testng.AssertJUnit;
+import org.testng.annotations.Test;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.clustering.clustree.util.ClusTreeConfig;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.clustering.clustree.util.KMeansAlgorithm;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.clustering.clustree.util.KMeansSeeding;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.clustering.clustree.util.WeightedKMeans;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.clustering.clustree.util.WeightedPointSet;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+public class WeightedKMeansTest {
+    private static final Logger logger = Logger.getLogger(WeightedKMeansTest.class);
+
+    @Test
+    public void testWeightedKMeans1() {
+        logger.info("WeightedKMeans Test - Hamerly's algorithm finds the same centroids as Lloyd's algorithm");
+        Random random = new Random(1);
+        for (int noOfDimensions : new int[]{1, 2, 16}) {
+            for (int noOfClusters : new int[]{1, 3, 20, 60}) {
+                WeightedPointSet points = createPoints(random, 3000, noOfDimensions, 25);
+                double[] expected = WeightedKMeans.run(points, noOfClusters, 100);
+                double[] actual = WeightedKMeans.run(points, noOfClusters, 100, KMeansAlgorithm.HAMERLY,
+                        KMeansSeeding.FIRST_DISTINCT, 0);
+                AssertJUnit.assertTrue(Arrays.equals(expected, actual));
+                AssertJUnit.assertEquals(noOfClusters * noOfDimensions, actual.length);
+            }
+        }
+    }
+
+    @Test
+    public void testWeightedKMeans2() {
+        logger.info("WeightedKMeans Test - Clustering converges once no centroid moves farther than the tolerance");
+        Random random = new Random(2);
+        WeightedPointSet points = createPoints(random, 2000, 2, 5);
+        // any move is within the tolerance, hence the clustering stops after the first iteration
+        for (KMeansAlgorithm algorithm : KMeansAlgorithm.values()) {
+            AssertJUnit.assertTrue(Arrays.equals(WeightedKMeans.run(points, 5, 1),
+                    WeightedKMeans.run(points, 5, 100, algorithm, KMeansSeeding.FIRST_DISTINCT, 1000)));
+        }
+        double[] converged = WeightedKMeans.run(points, 5, 1000);
+        double[] withinTolerance = WeightedKMeans.run(points, 5, 1000, KMeansAlgorithm.HAMERLY,
+                KMeansSeeding.FIRST_DISTINCT, 0.5);
+        for (int i = 0; i < converged.length; i++) {
+            AssertJUnit.assertEquals(converged[i], withinTolerance[i], 5);
+        }
+    }
+
+    @Test
+    public void testWeightedKMeans3() {
+        logger.info("WeightedKMeans Test - Less distinct points than clusters");
+        WeightedPointSet points = new WeightedPointSet(3, 2);
+        points.set(0, new double[]{1, 1}, 1);
+        points.set(1, new double[]{1, 1}, 2);
+        points.set(2, new double[]{2, 2}, 1);
+        for (KMeansAlgorithm algorithm : KMeansAlgorithm.values()) {
+            AssertJUnit.assertTrue(Arrays.equals(new double[]{1, 1, 2, 2},
+                    WeightedKMeans.run(points, 3, 10, algorithm, KMeansSeeding.FIRST_DISTINCT, 0)));
+            for (KMeansSeeding seeding : new KMeansSeeding[]{KMeansSeeding.K_MEANS_PLUS_PLUS,
+                    KMeansSeeding.K_MEANS_PARALLEL}) {
+                double[] centroids = WeightedKMeans.run(points, 3, 10, algorithm, seeding, 0);
+                AssertJUnit.assertEquals(4, centroids.length);
+                AssertJUnit.assertTrue(centroids[0] != centroids[2]);
+            }
+        }
+    }
+
+    @Test
+    public void testWeightedKMeans4() {
+        logger.info("WeightedKMeans Test - k-means++ and k-means|| seed a centroid in each well separated group of "
+                + "points");
+        Random random = new Random(4);
+        int noOfGroups = 6;
+        // the points are ordered by group, hence the first distinct points are all in the first group
+        WeightedPointSet points = new WeightedPointSet(600, 2);
+        for (int i = 0; i < points.size(); i++) {
+            int group = i / (points.size() / noOfGroups);
+            points.set(i, new double[]{group * 1000 + random.nextGaussian(), random.nextGaussian()},
+                    1 + random.nextDouble());
+        }
+        for (KMeansSeeding seeding : new KMeansSeeding[]{KMeansSeeding.K_MEANS_PLUS_PLUS,
+                KMeansSeeding.K_MEANS_PARALLEL}) {
+            // a single iteration is enough to find the groups
+            double[] centroids = WeightedKMeans.run(points, noOfGroups, 1, KMeansAlgorithm.LLOYD, seeding, 0);
+            boolean[] found = new boolean[noOfGroups];
+            for (int c = 0; c < noOfGroups; c++) {
+                int group = (int) Math.round(centroids[2 * c] / 1000);
+                AssertJUnit.assertEquals(group * 1000, centroids[2 * c], 1);
+                AssertJUnit.assertEquals(0, centroids[2 * c + 1], 1);
+                found[group] = true;
+            }
+            for (boolean groupFound : found) {
+                AssertJUnit.assertTrue(groupFound);
+            }
+            AssertJUnit.assertTrue(Arrays.equals(centroids,
+                    WeightedKMeans.run(points, noOfGroups, 1, KMeansAlgorithm.LLOYD, seeding, 0)));
+        }
+    }
+
+    @Test
+    public void testWeightedKMeans5() {
+        logger.info("WeightedKMeans Test - Warm start from the previous centroids");
+        Map<String, String> systemConfigs = new HashMap<>();
+        systemConfigs.put("streamingml.clusTree.kMeansWarmStart", "true");
+        systemConfigs.put("streamingml.clusTree.kMeansWarmStartIterations", "1");
+        ClusTreeConfig config = ClusTreeConfig.fromParameters(new ExpressionExecutor[]{
+                new ConstantExpressionExecutor(4, Attribute.Type.INT)}, 0, false)
+                .withSystemParameters(new InMemoryConfigReader("streamingml.clusTree", systemConfigs));
+        Random random = new Random(5);
+        WeightedPointSet points = createPoints(random, 2000, 3, 4);
+        double[] converged = WeightedKMeans.run(points, 4, 1000);
+
+        // the converged centroids do not move in the single iteration of a warm start
+        double[] previousCentroids = converged.clone();
+        AssertJUnit.assertTrue(Arrays.equals(converged, WeightedKMeans.run(points, config, previousCentroids)));
+        AssertJUnit.assertTrue(Arrays.equals(converged, previousCentroids));
+
+        // without a complete set of finite previous centroids, the clustering starts from seeded centroids
+        double[] coldStart = WeightedKMeans.run(points, 4, config.getMaxIterations());
+        AssertJUnit.assertTrue(Arrays.equals(coldStart, WeightedKMeans.run(points, config, null)));
+        AssertJUnit.assertTrue(Arrays.equals(coldStart, WeightedKMeans.run(points, config,
+                Arrays.copyOf(converged, 9))));
+        previousCentroids[0] = Double.NaN;
+        AssertJUnit.assertTrue(Arrays.equals(coldStart, WeightedKMeans.run(points, config, previousCentroids)));
+    }
+
+    @Test
+    public void testWeightedKMeans6() {
+        logger.info("WeightedKMeans Test - Mini-batch updates move each centroid by the inverse of its capped "
+                + "cluster weight");
+        WeightedPointSet points = new WeightedPointSet(3, 1);
+        points.set(0, new double[]{1}, 2);
+        points.set(1, new double[]{8}, 5);
+        points.set(2, new double[]{12}, 1);
+        double[] clusterWeights = WeightedKMeans.calculateClusterWeights(points, new double[]{0, 10}, 4);
+        AssertJUnit.assertTrue(Arrays.equals(new double[]{2, 4}, clusterWeights));
+
+        double[] centroids = {0, 10};
+        clusterWeights[0] = 1;
+        WeightedKMeans.updateMiniBatch(centroids, clusterWeights, new double[]{2, 9, 11}, 3, 1, 4, new int[3]);
+        // 2 moves the first centroid by 1 / 2, while 9 and 11 move the second one by 1 / 4 as its weight is capped
+        AssertJUnit.assertTrue(Arrays.equals(new double[]{1, 10.0625}, centroids));
+        AssertJUnit.assertTrue(Arrays.equals(new double[]{2, 4}, clusterWeights));
+    }
+
+    @Test
+    public void testWeightedKMeans7() {
+        logger.info("WeightedKMeans Test - Number of iterations run by a clustering");
+        Map<String, String> systemConfigs = new HashMap<>();
+        systemConfigs.put("streamingml.clusTree.kMeansWarmStart", "true");
+        systemConfigs.put("streamingml.clusTree.kMeansWarmStartIterations", "3");
+        ClusTreeConfig config = ClusTreeConfig.fromParameters(new ExpressionExecutor[]{
+                new ConstantExpressionExecutor(4, Attribute.Type.INT)}, 0, false)
+                .withSystemParameters(new InMemoryConfigReader("streamingml.clusTree", systemConfigs));
+        Random random = new Random(7);
+        WeightedPointSet points = createPoints(random, 2000, 3, 4);
+        int[] noOfIterations = new int[1];
+        double[] centroids = WeightedKMeans.run(points, config, null, noOfIterations);
+        AssertJUnit.assertTrue(Arrays.equals(centroids, WeightedKMeans.run(points, config, null)));
+        AssertJUnit.assertTrue(noOfIterations[0] > 0 && noOfIterations[0] <= config.getMaxIterations());
+
+        // a warm start from converged centroids stops after its first iteration
+        WeightedKMeans.run(points, config, WeightedKMeans.run(points, 4, 1000), noOfIterations);
+        AssertJUnit.assertEquals(1, noOfIterations[0]);
+    }
+
+    /**
+     * Weighted points around the given number of centers
+     */
+    private static WeightedPointSet createPoints(Random random, int noOfPoints, int noOfDimensions,
+                                                 int noOfCenters) {
+        double[] centers = new double[noOfCenters * noOfDimensions];
+        for (int i = 0; i < centers.length; i++) {
+            centers[i] = random.nextDouble() * 100;
+        }
+        WeightedPointSet points = new WeightedPointSet(noOfPoints, noOfDimensions);
+        double[] point = new double[noOfDimensions];
+        for (int i = 0; i < noOfPoints; i++) {
+            int center = random.nextInt(noOfCenters);
+            for (int j = 0; j < noOfDimensions; j++) {
+                point[j] = centers[center * noOfDimensions + j] + random.nextGaussian() * 5;
+            }
+            points.set(i, point, 1 + random.nextDouble() * 10);
+        }
+        return points;
+    }
+}
@@ -24,6 +24,7 @@ import io.siddhi.core.query.output.callback.QueryCallback;
 import io.siddhi.core.stream.input.InputHandler;
 import io.siddhi.core.util.EventPrinter;
 import io.siddhi.core.util.SiddhiTestHelper;
+import io.siddhi.core.util.config.InMemoryConfigManager;
 import io.siddhi.core.util.persistence.InMemoryPersistenceStore;
 import io.siddhi.query.api.exception.AttributeNotExistException;
 import org.apache.log4j.Logger;
@@ -31,6 +32,8 @@ import org.testng.AssertJUnit;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
 
 public class AdaptiveModelRulesRegressorUpdaterStreamProcessorExtensionTestcase {
@@ -594,4 +597,58 @@ public class AdaptiveModelRulesRegressorUpdaterStreamProcessorExtensionTestcase
                     + "But found STRING at position 2"));
         }
     }
+
+    @Test
+    public void testUpdateUpdateRegressionLearningStreamProcessorExtension17() throws InterruptedException {
+        logger.info("UpdateUpdateRegressionLearningStreamProcessorExtension TestCase " +
+                "- build/update an AMRules Regressor model with asynchronous training dropping the oldest events");
+        Map<String, String> configMap = new HashMap<>();
+        configMap.put("streamingml.updateAMRulesRegressor.trainingMode", "async");
+        configMap.put("streamingml.updateAMRulesRegressor.trainingQueueSize", "2");
+        configMap.put("streamingml.updateAMRulesRegressor.backpressurePolicy", "dropOldest");
+        SiddhiManager siddhiManager = new SiddhiManager();
+        siddhiManager.setConfigManager(new InMemoryConfigManager(configMap, null));
+        siddhiManager.setPersistenceStore(new InMemoryPersistenceStore());
+
+        String inStreamDefinition = "define stream StreamA (attribute_0 double, attribute_1 double, attribute_2 "
+                + "double, attribute_3 double, attribute_4 double );";
+
+        String query = ("@info(name = 'query1') "
+                + "from StreamA#streamingml:updateAMRulesRegressor('model1', "
+                + "attribute_0, attribute_1 , attribute_2, attribute_3, attribute_4)"
+                + " select attribute_0, attribute_1, attribute_2, attribute_3, meanSquaredError "
+                + "insert into outputStream;");
+
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(inStreamDefinition + query);
+        siddhiAppRuntime.addCallback("query1", new QueryCallback() {
+
+            @Override
+            public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                count.addAndGet(inEvents.length);
+                for (Event event : inEvents) {
+                    AssertJUnit.assertTrue((Double) event.getData(4) >= 0);
+                }
+            }
+        });
+        try {
+            InputHandler inputHandler = siddhiAppRuntime.getInputHandler("StreamA");
+            siddhiAppRuntime.start();
+            for (int i = 0; i < 100; i++) {
+                inputHandler.send(new Object[]{i % 10, 0.5 * i, 3.1, 1.2, 2.0 * (i % 10) + 1});
+            }
+            SiddhiTestHelper.waitForEvents(200, 100, count, 60000);
+            AssertJUnit.assertEquals(100, count.get());
+
+            siddhiAppRuntime.persist();
+            siddhiAppRuntime.restoreLastRevision();
+            inputHandler.send(new Object[]{1, 0.5, 3.1, 1.2, 3.0});
+            SiddhiTestHelper.waitForEvents(200, 101, count, 60000);
+            AssertJUnit.assertEquals(101, count.get());
+        } catch (Exception e) {
+            logger.error(e.getMessage(), e);
+            AssertJUnit.fail("Asynchronous training failed: " + e.getMessage());
+        } finally {
+            siddhiAppRuntime.shutdown();
+        }
+    }
 }
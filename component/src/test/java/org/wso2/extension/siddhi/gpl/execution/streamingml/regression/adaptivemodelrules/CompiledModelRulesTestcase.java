@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2017 WSO2 Inc. (http://wso2.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.wso2.extension.siddhi.gpl.execution.streamingml.regression.adaptivemodelrules;
+
+import com.yahoo.labs.samoa.instances.Attribute;
+import com.yahoo.labs.samoa.instances.DenseInstance;
+import com.yahoo.labs.samoa.instances.Instance;
+import com.yahoo.labs.samoa.instances.Instances;
+import com.yahoo.labs.samoa.instances.InstancesHeader;
+import moa.classifiers.rules.AMRulesRegressor;
+import org.apache.log4j.Logger;
+import org.testng.AssertJUnit;
+import org.testng.annotations.Test;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.regression.adaptivemodelrules.util.CompiledModelRules;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+public class CompiledModelRulesTestcase {
+    private static final Logger logger = Logger.getLogger(CompiledModelRulesTestcase.class);
+    private static final int NO_OF_ATTRIBUTES = 3;
+
+    @Test
+    public void testCompiledModelRules1() {
+        logger.info("CompiledModelRules TestCase - Same predictions as MOA");
+        AMRulesRegressor regressor = createRegressor();
+        Random random = new Random(1);
+        double[] trainValues = new double[NO_OF_ATTRIBUTES + 1];
+        Instance trainInstance = createInstance(regressor, trainValues);
+        double[] testValues = new double[NO_OF_ATTRIBUTES + 1];
+        Instance testInstance = createInstance(regressor, testValues);
+        int noOfComparisons = 0;
+        int maxNoOfRules = 0;
+        for (int i = 1; i <= 20000; i++) {
+            for (int j = 0; j < NO_OF_ATTRIBUTES; j++) {
+                trainValues[j] = random.nextDouble() * 10;
+            }
+            trainValues[NO_OF_ATTRIBUTES] = target(trainValues, i, random);
+            regressor.trainOnInstanceImpl(trainInstance);
+            if (i % 1000 != 0 && i > 10) {
+                continue;
+            }
+            CompiledModelRules compiledRules = CompiledModelRules.compile(regressor);
+            AssertJUnit.assertNotNull(compiledRules);
+            maxNoOfRules = Math.max(maxNoOfRules, compiledRules.getNoOfRules());
+            for (int k = 0; k < 200; k++) {
+                for (int j = 0; j < NO_OF_ATTRIBUTES; j++) {
+                    // some values are missing, or fall on the split values
+                    testValues[j] = k % 50 == 0 ? Double.NaN : k % 7 == 0 ? Math.round(random.nextDouble() * 10)
+                            : random.nextDouble() * 10;
+                }
+                double expected = regressor.getVotesForInstance(testInstance)[0];
+                double actual = compiledRules.predict(Arrays.copyOf(testValues, NO_OF_ATTRIBUTES));
+                AssertJUnit.assertEquals(Double.doubleToLongBits(expected), Double.doubleToLongBits(actual));
+                noOfComparisons++;
+            }
+        }
+        AssertJUnit.assertEquals(30 * 200, noOfComparisons);
+        AssertJUnit.assertTrue(maxNoOfRules > 1);
+    }
+
+    @Test
+    public void testCompiledModelRules2() {
+        logger.info("CompiledModelRules TestCase - Untrained rule set predicts 0");
+        AMRulesRegressor regressor = createRegressor();
+        CompiledModelRules compiledRules = CompiledModelRules.compile(regressor);
+        AssertJUnit.assertNotNull(compiledRules);
+        AssertJUnit.assertEquals(0, compiledRules.getNoOfRules());
+        AssertJUnit.assertEquals(0.0, compiledRules.predict(new double[]{1, 2, 3}));
+    }
+
+    @Test
+    public void testCompiledModelRules3() {
+        logger.info("CompiledModelRules TestCase - Unordered rule set is not compiled");
+        AMRulesRegressor regressor = createRegressor();
+        regressor.unorderedRulesOption.set();
+        AssertJUnit.assertNull(CompiledModelRules.compile(regressor));
+    }
+
+    /**
+     * Piecewise linear target, which drifts halfway so that rules are pruned and learnt again
+     */
+    private static double target(double[] values, int i, Random random) {
+        double noise = random.nextGaussian() * 0.1;
+        if (i < 10000) {
+            return values[0] < 5 ? 2 * values[1] + 1 + noise : values[0] > 7.5 ? -3 * values[2] + noise
+                    : 10 + noise;
+        }
+        return values[2] < 3 ? values[0] - values[1] + noise : 5 * values[1] + noise;
+    }
+
+    private static AMRulesRegressor createRegressor() {
+        List<Attribute> attributes = new ArrayList<>();
+        for (int i = 0; i <= NO_OF_ATTRIBUTES; i++) {
+            attributes.add(new Attribute("numeric" + (i + 1)));
+        }
+        InstancesHeader header = new InstancesHeader(new Instances("test", attributes, 0));
+        header.setClassIndex(NO_OF_ATTRIBUTES);
+        AMRulesRegressor regressor = new AMRulesRegressor();
+        regressor.setModelContext(header);
+        regressor.gracePeriodOption.setValue(100);
+        regressor.prepareForUse();
+        return regressor;
+    }
+
+    private static Instance createInstance(AMRulesRegressor regressor, double[] values) {
+        Instance instance = new DenseInstance(1.0D, values);
+        instance.setDataset(regressor.getModelContext());
+        return instance;
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2017 WSO2 Inc. (http://wso2.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.wso2.extension.siddhi.gpl.execution.streamingml.regression.adaptivemodelrules;
+
+import io.siddhi.core.SiddhiAppRuntime;
+import io.siddhi.core.SiddhiManager;
+import io.siddhi.core.event.Event;
+import io.siddhi.core.exception.SiddhiAppCreationException;
+import io.siddhi.core.query.output.callback.QueryCallback;
+import io.siddhi.core.stream.input.InputHandler;
+import io.siddhi.core.util.SiddhiTestHelper;
+import org.apache.log4j.Logger;
+import org.testng.AssertJUnit;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class KeyedAdaptiveModelRulesRegressorStreamProcessorExtensionTestcase {
+    private static final Logger logger = Logger
+            .getLogger(KeyedAdaptiveModelRulesRegressorStreamProcessorExtensionTestcase.class);
+
+    private static final String TRAINING_STREAM = "define stream StreamTrain (sensorId int, attribute_0 double, "
+            + "attribute_1 double, attribute_2 double, attribute_3 double, attribute_4 double );";
+    private static final String TRAINING_QUERY = "@info(name = 'query-train') "
+            + "from StreamTrain#streamingml:updateKeyedAMRulesRegressor('model1', sensorId, "
+            + "attribute_0, attribute_1, attribute_2, attribute_3, attribute_4) \n"
+            + "insert all events into trainOutputStream;\n";
+
+    private AtomicInteger count;
+
+    @BeforeMethod
+    public void init() {
+        count = new AtomicInteger(0);
+    }
+
+    @Test
+    public void testKeyedRegressionStreamProcessorExtension1() throws InterruptedException {
+        logger.info("KeyedAdaptiveModelRulesRegressorStreamProcessorExtension TestCase - Assert each key is "
+                + "predicted by its own model");
+        SiddhiManager siddhiManager = new SiddhiManager();
+
+        String inStreamDefinition = "define stream StreamA (sensorId int, attribute_0 double, attribute_1 double, "
+                + "attribute_2 double, attribute_3 double);";
+        String query = ("@info(name = 'query1') from StreamA#streamingml:keyedAMRulesRegressor('model1', "
+                + "sensorId, attribute_0, attribute_1, attribute_2, attribute_3) "
+                + "select sensorId, prediction, meanSquaredError insert into outputStream;");
+
+        Map<Integer, Object[]> predictions = Collections.synchronizedMap(new HashMap<>());
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(TRAINING_STREAM
+                + inStreamDefinition + TRAINING_QUERY + query);
+        siddhiAppRuntime.addCallback("query1", new QueryCallback() {
+
+            @Override
+            public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                for (Event event : inEvents) {
+                    predictions.put((Integer) event.getData(0), event.getData());
+                    count.incrementAndGet();
+                }
+            }
+        });
+        try {
+            InputHandler trainingHandler = siddhiAppRuntime.getInputHandler("StreamTrain");
+            siddhiAppRuntime.start();
+            // the target of each sensor is a constant of its own
+            for (int i = 0; i < 100; i++) {
+                trainingHandler.send(new Object[]{1, i % 10, 0.5 * i, 3.1, 1.2, 1.0});
+                trainingHandler.send(new Object[]{2, i % 10, 0.5 * i, 3.1, 1.2, 100.0});
+            }
+
+            InputHandler inputHandler = siddhiAppRuntime.getInputHandler("StreamA");
+            inputHandler.send(new Object[]{1, 5, 2.5, 3.1, 1.2});
+            inputHandler.send(new Object[]{2, 5, 2.5, 3.1, 1.2});
+            inputHandler.send(new Object[]{3, 5, 2.5, 3.1, 1.2});
+            SiddhiTestHelper.waitForEvents(200, 3, count, 60000);
+
+            double prediction1 = (Double) predictions.get(1)[1];
+            double prediction2 = (Double) predictions.get(2)[1];
+            AssertJUnit.assertTrue(Math.abs(prediction1 - 1.0) < Math.abs(prediction1 - 100.0));
+            AssertJUnit.assertTrue(Math.abs(prediction2 - 100.0) < Math.abs(prediction2 - 1.0));
+            AssertJUnit.assertNotNull(predictions.get(1)[2]);
+            // no model has been built for the sensor
+            AssertJUnit.assertArrayEquals(new Object[]{3, null, null}, predictions.get(3));
+        } finally {
+            siddhiAppRuntime.shutdown();
+        }
+    }
+
+    @Test
+    public void testKeyedRegressionStreamProcessorExtension2() {
+        logger.info("KeyedAdaptiveModelRulesRegressorStreamProcessorExtension TestCase - models which are not "
+                + "built");
+        SiddhiManager siddhiManager = new SiddhiManager();
+
+        String inStreamDefinition = "define stream StreamA (sensorId int, attribute_0 double, attribute_1 double, "
+                + "attribute_2 double, attribute_3 double);";
+        String query = ("@info(name = 'query1') from StreamA#streamingml:keyedAMRulesRegressor('model1', "
+                + "sensorId, attribute_0, attribute_1, attribute_2, attribute_3) "
+                + "select sensorId, prediction, meanSquaredError insert into outputStream;");
+        try {
+            siddhiManager.createSiddhiAppRuntime(inStreamDefinition + query);
+            AssertJUnit.fail();
+        } catch (Exception e) {
+            logger.error(e.getCause().getMessage());
+            AssertJUnit.assertTrue(e instanceof SiddhiAppCreationException);
+            AssertJUnit.assertTrue(e.getCause().getMessage().contains("Perform "
+                    + "streamingml:updateKeyedAMRulesRegressor process first."));
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2017 WSO2 Inc. (http://wso2.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.wso2.extension.siddhi.gpl.execution.streamingml.regression.adaptivemodelrules;
+
+import io.siddhi.core.SiddhiAppRuntime;
+import io.siddhi.core.SiddhiManager;
+import io.siddhi.core.event.Event;
+import io.siddhi.core.exception.SiddhiAppCreationException;
+import io.siddhi.core.query.output.callback.QueryCallback;
+import io.siddhi.core.stream.input.InputHandler;
+import io.siddhi.core.util.SiddhiTestHelper;
+import io.siddhi.core.util.persistence.InMemoryPersistenceStore;
+import org.apache.log4j.Logger;
+import org.testng.AssertJUnit;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class KeyedAdaptiveModelRulesUpdaterStreamProcessorExtensionTestcase {
+    private static final Logger logger = Logger
+            .getLogger(KeyedAdaptiveModelRulesUpdaterStreamProcessorExtensionTestcase.class);
+
+    private static final String STREAM_DEFINITION = "define stream StreamA (sensorId int, attribute_0 double, "
+            + "attribute_1 double, attribute_2 double, attribute_3 double, attribute_4 double );";
+
+    private AtomicInteger count;
+
+    @BeforeMethod
+    public void init() {
+        count = new AtomicInteger(0);
+    }
+
+    @Test
+    public void testKeyedRegressionLearningStreamProcessorExtension1() throws InterruptedException {
+        logger.info("KeyedAdaptiveModelRulesUpdaterStreamProcessorExtension TestCase - Assert each key is "
+                + "trained on its own model");
+        SiddhiManager siddhiManager = new SiddhiManager();
+        siddhiManager.setPersistenceStore(new InMemoryPersistenceStore());
+
+        String query = ("@info(name = 'query1') "
+                + "from StreamA#streamingml:updateKeyedAMRulesRegressor('model1', sensorId, "
+                + "attribute_0, attribute_1 , attribute_2, attribute_3, attribute_4)"
+                + " select sensorId, meanSquaredError insert into outputStream;");
+
+        Map<Integer, Double> meanSquaredErrors = Collections.synchronizedMap(new HashMap<>());
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(STREAM_DEFINITION + query);
+        siddhiAppRuntime.addCallback("query1", new QueryCallback() {
+
+            @Override
+            public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                for (Event event : inEvents) {
+                    meanSquaredErrors.put((Integer) event.getData(0), (Double) event.getData(1));
+                    count.incrementAndGet();
+                }
+            }
+        });
+        try {
+            InputHandler inputHandler = siddhiAppRuntime.getInputHandler("StreamA");
+            siddhiAppRuntime.start();
+            // the target of the first sensor is a constant, while the one of the second sensor is not
+            for (int i = 0; i < 100; i++) {
+                inputHandler.send(new Object[]{1, i % 10, 0.5 * i, 3.1, 1.2, 1.0});
+                inputHandler.send(new Object[]{2, i % 10, 0.5 * i, 3.1, 1.2, 20.0 * (i % 10) + 1});
+            }
+            SiddhiTestHelper.waitForEvents(200, 200, count, 60000);
+            AssertJUnit.assertEquals(200, count.get());
+            AssertJUnit.assertTrue(meanSquaredErrors.get(1) < meanSquaredErrors.get(2));
+
+            siddhiAppRuntime.persist();
+            siddhiAppRuntime.restoreLastRevision();
+            inputHandler.send(new Object[]{1, 1, 0.5, 3.1, 1.2, 1.0});
+            SiddhiTestHelper.waitForEvents(200, 201, count, 60000);
+            AssertJUnit.assertEquals(201, count.get());
+            AssertJUnit.assertTrue(meanSquaredErrors.get(1) < meanSquaredErrors.get(2));
+        } catch (Exception e) {
+            logger.error(e.getMessage(), e);
+            AssertJUnit.fail("Keyed training failed: " + e.getMessage());
+        } finally {
+            siddhiAppRuntime.shutdown();
+        }
+    }
+
+    @Test
+    public void testKeyedRegressionLearningStreamProcessorExtension2() {
+        logger.info("KeyedAdaptiveModelRulesUpdaterStreamProcessorExtension TestCase - invalid hyper-parameter "
+                + "shared by the models");
+        SiddhiManager siddhiManager = new SiddhiManager();
+
+        String query = ("@info(name = 'query1') "
+                + "from StreamA#streamingml:updateKeyedAMRulesRegressor('model1', sensorId, 1.0E-7D, 0.05D, 200, "
+                + "3, 0, attribute_0, attribute_1 , attribute_2, attribute_3, attribute_4)"
+                + " select sensorId, meanSquaredError insert into outputStream;");
+        try {
+            siddhiManager.createSiddhiAppRuntime(STREAM_DEFINITION + query);
+            AssertJUnit.fail();
+        } catch (Exception e) {
+            logger.error(e.getCause().getMessage());
+            AssertJUnit.assertTrue(e instanceof SiddhiAppCreationException);
+            AssertJUnit.assertTrue(e.getCause().getMessage().contains("Input for Change Detector hyper-parameter "
+                    + "needs to be either 0,1,2. But found 3."));
+        }
+    }
+}
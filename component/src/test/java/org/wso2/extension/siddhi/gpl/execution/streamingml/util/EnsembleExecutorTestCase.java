@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2017 WSO2 Inc. (http://wso2.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.wso2.extension.siddhi.gpl.execution.streamingml.util;
+
+import org.apache.log4j.Logger;
+import org.testng.AssertJUnit;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+public class EnsembleExecutorTestCase {
+    private static final Logger logger = Logger.getLogger(EnsembleExecutorTestCase.class);
+
+    @Test
+    public void testEnsembleExecutor() throws Exception {
+        logger.info("EnsembleExecutorTestCase - Run the members while the executor is stopped and started");
+        EnsembleExecutor executor = new EnsembleExecutor("model", 4);
+        executor.start();
+        AtomicBoolean running = new AtomicBoolean(true);
+        Thread restarter = new Thread(() -> {
+            while (running.get()) {
+                executor.stop();
+                executor.start();
+            }
+        });
+        restarter.start();
+        try {
+            int noOfMembers = 10;
+            for (int i = 0; i < 2000; i++) {
+                AtomicIntegerArray runs = new AtomicIntegerArray(noOfMembers);
+                executor.forEach(noOfMembers, runs::incrementAndGet);
+                for (int member = 0; member < noOfMembers; member++) {
+                    AssertJUnit.assertEquals(1, runs.get(member));
+                }
+            }
+        } finally {
+            running.set(false);
+            restarter.join();
+            executor.stop();
+        }
+        AtomicIntegerArray runs = new AtomicIntegerArray(3);
+        executor.forEach(3, runs::incrementAndGet);
+        AssertJUnit.assertEquals("[1, 1, 1]", runs.toString());
+    }
+}
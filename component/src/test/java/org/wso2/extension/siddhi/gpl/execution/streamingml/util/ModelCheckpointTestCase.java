@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2017 WSO2 Inc. (http://wso2.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.wso2.extension.siddhi.gpl.execution.streamingml.util;
+
+import io.siddhi.core.util.snapshot.state.Snapshot;
+import io.siddhi.core.util.snapshot.state.SnapshotStateList;
+import org.apache.log4j.Logger;
+import org.testng.AssertJUnit;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+public class ModelCheckpointTestCase {
+    private static final Logger logger = Logger.getLogger(ModelCheckpointTestCase.class);
+
+    @Test
+    public void testSnapshotDelta() {
+        logger.info("ModelCheckpointTestCase - Difference of a snapshot which has changed and grown");
+        byte[] base = randomBytes(64 * 1024, 1);
+        byte[] snapshot = new byte[base.length + 100];
+        // bytes inserted in the middle shift the rest of the snapshot, and a few bytes are changed after them
+        System.arraycopy(base, 0, snapshot, 0, 30000);
+        System.arraycopy(randomBytes(100, 2), 0, snapshot, 30000, 100);
+        System.arraycopy(base, 30000, snapshot, 30100, base.length - 30000);
+        snapshot[50000] ^= 1;
+        snapshot[60000] ^= 1;
+
+        SnapshotDelta delta = SnapshotDelta.diff(base, snapshot);
+        AssertJUnit.assertTrue(delta.size() < 4 * SnapshotDelta.BLOCK_SIZE + 100);
+        AssertJUnit.assertTrue(Arrays.equals(snapshot, delta.apply(base)));
+        AssertJUnit.assertTrue(Arrays.equals(new byte[0], SnapshotDelta.diff(base, new byte[0]).apply(base)));
+        AssertJUnit.assertTrue(Arrays.equals(base, SnapshotDelta.diff(new byte[0], base).apply(new byte[0])));
+    }
+
+    @Test
+    public void testModelCheckpoint() {
+        logger.info("ModelCheckpointTestCase - Restore a base and its increments");
+        ModelCheckpoint checkpoint = new ModelCheckpoint();
+        byte[] base = randomBytes(16 * 1024, 3);
+        Snapshot baseSnapshot = checkpoint.toSnapshot(base);
+        AssertJUnit.assertFalse(baseSnapshot.isIncrementalSnapshot());
+
+        byte[] firstUpdate = base.clone();
+        firstUpdate[100] ^= 1;
+        Snapshot firstIncrement = checkpoint.toSnapshot(firstUpdate);
+        AssertJUnit.assertTrue(firstIncrement.isIncrementalSnapshot());
+        byte[] secondUpdate = firstUpdate.clone();
+        secondUpdate[10000] ^= 1;
+        Snapshot secondIncrement = checkpoint.toSnapshot(secondUpdate);
+        AssertJUnit.assertTrue(secondIncrement.isIncrementalSnapshot());
+
+        SnapshotStateList restoredState = new SnapshotStateList();
+        restoredState.getSnapshotStates().put(1L, baseSnapshot);
+        restoredState.getSnapshotStates().put(2L, firstIncrement);
+        restoredState.getSnapshotStates().put(3L, secondIncrement);
+        AssertJUnit.assertTrue(Arrays.equals(secondUpdate, (byte[]) ModelCheckpoint.getLatestState(restoredState)));
+
+        // a snapshot which has mostly changed is compacted into a new base
+        AssertJUnit.assertFalse(checkpoint.toSnapshot(randomBytes(16 * 1024, 4)).isIncrementalSnapshot());
+        // as is the first snapshot after a restore
+        checkpoint.reset();
+        AssertJUnit.assertFalse(checkpoint.toSnapshot(secondUpdate).isIncrementalSnapshot());
+    }
+
+    private static byte[] randomBytes(int length, long seed) {
+        byte[] bytes = new byte[length];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+}
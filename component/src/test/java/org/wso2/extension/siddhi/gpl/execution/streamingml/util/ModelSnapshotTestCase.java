@@ -0,0 +1,276 @@
+/*
+ * Copyright (C) 2017 WSO2 Inc. (http://wso2.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.wso2.extension.siddhi.gpl.execution.streamingml.util;
+
+import io.siddhi.core.exception.SiddhiAppRuntimeException;
+import org.apache.log4j.Logger;
+import org.testng.AssertJUnit;
+import org.testng.annotations.Test;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.classification.ClassifierPrequentialModelEvaluation;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.classification.adaptiverandomforest.util.AdaptiveRandomForestConfig;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.classification.adaptiverandomforest.util.AdaptiveRandomForestModel;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.classification.onlinebagging.util.OnlineBaggingConfig;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.classification.onlinebagging.util.OnlineBaggingModel;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.clustering.clustree.util.ClusTreeModel;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.clustering.clustree.util.WeightedPointSet;
+import org.wso2.extension.siddhi.gpl.execution.streamingml.regression.adaptivemodelrules.util.AdaptiveModelRulesModel;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Random;
+
+public class ModelSnapshotTestCase {
+    private static final Logger logger = Logger.getLogger(ModelSnapshotTestCase.class);
+    private static final int NO_OF_ATTRIBUTES = 3;
+
+    // snapshot of a Hoeffding tree model written in the first format version, whose learners were deflated and
+    // preceded by variable length values. It holds 3, 1.5, [class0, class1], a list of 16 doubles from 0 to 7.5 as
+    // the learner and -42.
+    private static final String FORMAT_1_SNAPSHOT =
+            "U01MUwEBAgY/+AAAAAAAAAQMY2xhc3MwDGNsYXNzMfICeAFb85aBtbiIQTgrsSxRr7QkM0fPsagosdIns7ikovGS7MzjiXOZGRg9" +
+            "GViKM6tSKwoYGBgEyllAJFCTAFhTTmJeup5LfmlSTmrD5kNemtm/WZgYGF0YWMsSc0pTK1CU+ZXmJqUWta2ZKss95UE3EwMD2ESg" +
+            "cQwMxYUMdQxM9g/AHBjvAwrvBzLPAcKBqnQAuQkIIKY4cKDweFB4Aig8IRSeCApPDIUngcKTQuHJoPDkILwKAFusR3JT";
+
+    @Test
+    public void testModelSnapshot1() {
+        logger.info("ModelSnapshot TestCase - Fields and learners are read as they were written");
+        ModelSnapshotWriter writer = new ModelSnapshotWriter(ModelSnapshotType.ONLINE_BAGGING, 1);
+        ArrayList<Double> learner = createLearner(1000);
+        writer.writeInt(-3);
+        writer.writeLearner(learner);
+        writer.writeLong(Long.MAX_VALUE);
+        writer.writeLearner(new ArrayList<>(Arrays.asList("a", "b")));
+        writer.writeDoubles(new double[]{1.5, Double.NaN});
+        writer.writeString("model");
+
+        byte[] snapshot = writer.toByteArray();
+        byte[] uncompressedSnapshot = writer.toUncompressedByteArray();
+        // the large learner is deflated, while the small one is not worth deflating
+        AssertJUnit.assertTrue(snapshot.length < uncompressedSnapshot.length / 2);
+        for (byte[] bytes : Arrays.asList(snapshot, uncompressedSnapshot)) {
+            ModelSnapshotReader reader = new ModelSnapshotReader(bytes, ModelSnapshotType.ONLINE_BAGGING, 1);
+            AssertJUnit.assertEquals(1, reader.getVersion());
+            AssertJUnit.assertEquals(-3, reader.readInt());
+            AssertJUnit.assertEquals(learner, reader.readLearner(ArrayList.class));
+            AssertJUnit.assertEquals(Long.MAX_VALUE, reader.readLong());
+            AssertJUnit.assertEquals(Arrays.asList("a", "b"), reader.readLearner(ArrayList.class));
+            AssertJUnit.assertTrue(Arrays.equals(new double[]{1.5, Double.NaN}, reader.readDoubles()));
+            AssertJUnit.assertEquals("model", reader.readString());
+
+            // a learner which is skipped is read later, and is written again as it was read
+            reader = new ModelSnapshotReader(bytes, ModelSnapshotType.ONLINE_BAGGING, 1);
+            reader.readInt();
+            ByteBuffer image = reader.readLearnerImage();
+            AssertJUnit.assertEquals(Long.MAX_VALUE, reader.readLong());
+            AssertJUnit.assertEquals(learner, ModelSnapshotReader.readLearner(image, ArrayList.class,
+                    ModelSnapshotType.ONLINE_BAGGING));
+            ModelSnapshotWriter imageWriter = new ModelSnapshotWriter(ModelSnapshotType.ONLINE_BAGGING, 1);
+            imageWriter.writeInt(-3);
+            imageWriter.writeLearnerImage(image);
+            reader = new ModelSnapshotReader(imageWriter.toByteArray(), ModelSnapshotType.ONLINE_BAGGING, 1);
+            AssertJUnit.assertEquals(-3, reader.readInt());
+            AssertJUnit.assertEquals(learner, reader.readLearner(ArrayList.class));
+        }
+    }
+
+    @Test
+    public void testModelSnapshot2() {
+        logger.info("ModelSnapshot TestCase - Snapshot of the first format version is read");
+        byte[] snapshot = Base64.getDecoder().decode(FORMAT_1_SNAPSHOT);
+        ModelSnapshotReader reader = new ModelSnapshotReader(snapshot, ModelSnapshotType.HOEFFDING_TREE, 1);
+        AssertJUnit.assertEquals(3, reader.readInt());
+        AssertJUnit.assertEquals(1.5, reader.readDouble());
+        AssertJUnit.assertEquals(Arrays.asList("class0", "class1"), reader.readStrings());
+        AssertJUnit.assertEquals(createLearner(16), reader.readLearner(ArrayList.class));
+        AssertJUnit.assertEquals(-42, reader.readLong());
+
+        // a deflated learner is inflated once it is skipped
+        reader = new ModelSnapshotReader(snapshot, ModelSnapshotType.HOEFFDING_TREE, 1);
+        reader.readInt();
+        reader.readDouble();
+        reader.readStrings();
+        ByteBuffer image = reader.readLearnerImage();
+        AssertJUnit.assertEquals(-42, reader.readLong());
+        AssertJUnit.assertEquals(createLearner(16), ModelSnapshotReader.readLearner(image, ArrayList.class,
+                ModelSnapshotType.HOEFFDING_TREE));
+    }
+
+    @Test
+    public void testModelSnapshot3() {
+        logger.info("ModelSnapshot TestCase - Snapshots of another model, of a later version or truncated are "
+                + "rejected");
+        ModelSnapshotWriter writer = new ModelSnapshotWriter(ModelSnapshotType.CLUSTREE, 2);
+        writer.writeLearner(createLearner(100));
+        writer.writeInt(7);
+        byte[] snapshot = writer.toByteArray();
+        assertRejected(snapshot, ModelSnapshotType.KMEANS, 2);
+        // a later version of the layout of the model
+        assertRejected(snapshot, ModelSnapshotType.CLUSTREE, 1);
+        // a later format version
+        byte[] laterFormatSnapshot = snapshot.clone();
+        laterFormatSnapshot[4] = (byte) (ModelSnapshotWriter.FORMAT_VERSION + 1);
+        assertRejected(laterFormatSnapshot, ModelSnapshotType.CLUSTREE, 2);
+        // not a snapshot
+        byte[] invalidSnapshot = snapshot.clone();
+        invalidSnapshot[0] ^= 1;
+        assertRejected(invalidSnapshot, ModelSnapshotType.CLUSTREE, 2);
+        // an unknown encoding of the learner
+        byte[] invalidEncodingSnapshot = snapshot.clone();
+        invalidEncodingSnapshot[7] = 2;
+        assertRejected(invalidEncodingSnapshot, ModelSnapshotType.CLUSTREE, 2);
+
+        for (int length = 0; length < snapshot.length; length++) {
+            assertRejected(Arrays.copyOf(snapshot, length), ModelSnapshotType.CLUSTREE, 2);
+        }
+        ModelSnapshotReader reader = new ModelSnapshotReader(snapshot, ModelSnapshotType.CLUSTREE, 2);
+        AssertJUnit.assertEquals(createLearner(100), reader.readLearner(ArrayList.class));
+        AssertJUnit.assertEquals(7, reader.readInt());
+    }
+
+    @Test
+    public void testModelSnapshot4() {
+        logger.info("ModelSnapshot TestCase - AMRules model is restored from its snapshot");
+        AdaptiveModelRulesModel model = new AdaptiveModelRulesModel("model");
+        model.init(NO_OF_ATTRIBUTES + 1);
+        Random random = new Random(4);
+        for (int i = 0; i < 5000; i++) {
+            double[] values = randomValues(random, NO_OF_ATTRIBUTES + 1);
+            values[NO_OF_ATTRIBUTES] = values[0] < 5 ? 2 * values[1] : -values[2];
+            model.trainOnEvent(values);
+        }
+        AdaptiveModelRulesModel restoredModel = AdaptiveModelRulesModel.fromSnapshot("model", model.toSnapshot());
+        AssertJUnit.assertEquals(model.getNoOfRules(), restoredModel.getNoOfRules());
+        AssertJUnit.assertEquals(model.getNoOfFeatures(), restoredModel.getNoOfFeatures());
+        for (int i = 0; i < 100; i++) {
+            double[] values = randomValues(random, NO_OF_ATTRIBUTES);
+            // the mean squared error is not part of the snapshot
+            AssertJUnit.assertEquals(model.getPrediction(values)[0], restoredModel.getPrediction(values)[0]);
+        }
+        AssertJUnit.assertFalse(AdaptiveModelRulesModel.fromSnapshot("model",
+                new AdaptiveModelRulesModel("model").toSnapshot()).isInitialized());
+    }
+
+    @Test
+    public void testModelSnapshot5() {
+        logger.info("ModelSnapshot TestCase - ClusTree model is restored from its snapshot");
+        ClusTreeModel model = new ClusTreeModel();
+        model.init(8, 1000);
+        Random random = new Random(5);
+        for (int i = 0; i < 2000; i++) {
+            model.trainOnEvent(randomValues(random, 2));
+        }
+        ClusTreeModel restoredModel = ClusTreeModel.fromSnapshot(model.toSnapshot());
+        assertSameMicroClusters(model, restoredModel);
+        // the restored model is trained the same as the one it was written from
+        for (int i = 0; i < 1000; i++) {
+            double[] values = randomValues(random, 2);
+            model.trainOnEvent(values);
+            restoredModel.trainOnEvent(values);
+        }
+        assertSameMicroClusters(model, restoredModel);
+    }
+
+    @Test
+    public void testModelSnapshot6() {
+        logger.info("ModelSnapshot TestCase - Adaptive random forest model is restored from its snapshot");
+        AdaptiveRandomForestModel model = new AdaptiveRandomForestModel("model");
+        model.init(NO_OF_ATTRIBUTES + 1, 2, new AdaptiveRandomForestConfig());
+        EnsembleExecutor executor = new EnsembleExecutor("model", 0);
+        ClassifierPrequentialModelEvaluation evaluation = new ClassifierPrequentialModelEvaluation();
+        Random random = new Random(6);
+        for (int i = 0; i < 2000; i++) {
+            double[] values = randomValues(random, NO_OF_ATTRIBUTES);
+            model.trainOnEvent(evaluation, values, label(values), executor);
+        }
+        AdaptiveRandomForestModel restoredModel = AdaptiveRandomForestModel.fromSnapshot("model",
+                model.toSnapshot());
+        AssertJUnit.assertEquals(model.getClasses(), restoredModel.getClasses());
+        AssertJUnit.assertEquals(model.getNoOfBackgroundTrees(), restoredModel.getNoOfBackgroundTrees());
+        for (int i = 0; i < 100; i++) {
+            double[] values = randomValues(random, NO_OF_ATTRIBUTES);
+            AssertJUnit.assertTrue(Arrays.equals(model.getPrediction(values, executor),
+                    restoredModel.getPrediction(values, executor)));
+        }
+    }
+
+    @Test
+    public void testModelSnapshot7() {
+        logger.info("ModelSnapshot TestCase - Online bagging model is restored from its snapshot");
+        OnlineBaggingModel model = new OnlineBaggingModel("model");
+        model.init(NO_OF_ATTRIBUTES + 1, 2, new OnlineBaggingConfig());
+        Random random = new Random(7);
+        for (int i = 0; i < 2000; i++) {
+            double[] values = randomValues(random, NO_OF_ATTRIBUTES);
+            model.trainOnEvent(new ClassifierPrequentialModelEvaluation(), values, label(values));
+        }
+        OnlineBaggingModel restoredModel = OnlineBaggingModel.fromSnapshot("model", model.toSnapshot());
+        AssertJUnit.assertEquals(model.getClasses(), restoredModel.getClasses());
+        // the random numbers which weight the events are restored as well, so the models are trained the same
+        for (int i = 0; i < 1000; i++) {
+            double[] values = randomValues(random, NO_OF_ATTRIBUTES);
+            String label = label(values);
+            model.trainOnEvent(new ClassifierPrequentialModelEvaluation(), values, label);
+            restoredModel.trainOnEvent(new ClassifierPrequentialModelEvaluation(), values, label);
+        }
+        for (int i = 0; i < 100; i++) {
+            double[] values = randomValues(random, NO_OF_ATTRIBUTES);
+            AssertJUnit.assertTrue(Arrays.equals(model.getPrediction(values, false),
+                    restoredModel.getPrediction(values, false)));
+        }
+    }
+
+    private static void assertRejected(byte[] snapshot, ModelSnapshotType type, int maxVersion) {
+        try {
+            ModelSnapshotReader reader = new ModelSnapshotReader(snapshot, type, maxVersion);
+            reader.readLearner(ArrayList.class);
+            reader.readInt();
+            AssertJUnit.fail("Snapshot of " + snapshot.length + " bytes is read");
+        } catch (SiddhiAppRuntimeException e) {
+            AssertJUnit.assertNotNull(e.getMessage());
+        }
+    }
+
+    private static void assertSameMicroClusters(ClusTreeModel model, ClusTreeModel restoredModel) {
+        WeightedPointSet microClusters = model.getMicroClusteringAsPointSet(2);
+        WeightedPointSet restoredMicroClusters = restoredModel.getMicroClusteringAsPointSet(2);
+        AssertJUnit.assertTrue(microClusters.size() > 1);
+        AssertJUnit.assertTrue(Arrays.equals(microClusters.getCoordinates(), restoredMicroClusters.getCoordinates()));
+        AssertJUnit.assertTrue(Arrays.equals(microClusters.getWeights(), restoredMicroClusters.getWeights()));
+    }
+
+    private static ArrayList<Double> createLearner(int size) {
+        ArrayList<Double> learner = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            learner.add(i * 0.5);
+        }
+        return learner;
+    }
+
+    private static double[] randomValues(Random random, int noOfValues) {
+        double[] values = new double[noOfValues];
+        for (int i = 0; i < noOfValues; i++) {
+            values[i] = random.nextDouble() * 10;
+        }
+        return values;
+    }
+
+    private static String label(double[] values) {
+        return values[0] + values[1] > 10 ? "high" : "low";
+    }
+}